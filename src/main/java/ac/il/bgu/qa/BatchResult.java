@@ -0,0 +1,95 @@
+package ac.il.bgu.qa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reports the outcome of every item of a batch operation on the library.
+ * Items are reported in the order they were submitted; a failed item carries the exception
+ * the single-item operation would have thrown for it.
+ */
+public class BatchResult {
+
+    // The ISBNs of the items, as submitted.
+    private final List<String> ISBNs;
+    // The failure of each item, or null if the item succeeded.
+    private final RuntimeException[] failures;
+
+    /**
+     * Constructs a new BatchResult.
+     *
+     * @param ISBNs    The ISBNs of the items, as submitted.
+     * @param failures The failure of each item, null for the items that succeeded.
+     */
+    public BatchResult(List<String> ISBNs, RuntimeException[] failures) {
+        if (ISBNs.size() != failures.length) {
+            throw new IllegalArgumentException("Every item needs an outcome.");
+        }
+        this.ISBNs = Collections.unmodifiableList(new ArrayList<>(ISBNs));
+        this.failures = failures.clone();
+    }
+
+    /**
+     * Retrieves the number of items in the batch.
+     *
+     * @return The number of items.
+     */
+    public int size() {
+        return failures.length;
+    }
+
+    /**
+     * Retrieves the ISBN of an item.
+     *
+     * @param index The position of the item in the batch.
+     * @return The ISBN as submitted.
+     */
+    public String getISBN(int index) {
+        return ISBNs.get(index);
+    }
+
+    /**
+     * Checks whether an item succeeded.
+     *
+     * @param index The position of the item in the batch.
+     * @return true if the item succeeded, otherwise false.
+     */
+    public boolean isSuccess(int index) {
+        return failures[index] == null;
+    }
+
+    /**
+     * Retrieves the failure of an item.
+     *
+     * @param index The position of the item in the batch.
+     * @return The exception the item failed with, or null if it succeeded.
+     */
+    public RuntimeException getFailure(int index) {
+        return failures[index];
+    }
+
+    /**
+     * Retrieves the number of items that succeeded.
+     *
+     * @return The number of successful items.
+     */
+    public int getSuccessCount() {
+        int count = 0;
+        for (RuntimeException failure : failures) {
+            if (failure == null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether every item of the batch succeeded.
+     *
+     * @return true if no item failed, otherwise false.
+     */
+    public boolean isAllSuccessful() {
+        return getSuccessCount() == failures.length;
+    }
+}
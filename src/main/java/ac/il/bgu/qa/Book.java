@@ -1,5 +1,7 @@
 package ac.il.bgu.qa;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 /**
  * Represents a book with its essential details and borrowing status.
  */
@@ -10,8 +12,21 @@ public class Book {
     private final String title;
     // The name of the author of the book.
     private final String author;
-    // Status to check if the book is currently borrowed or not.
-    private boolean isBorrowed;
+    // Status to check if the book is currently borrowed or not, one of the state constants below.
+    // Only changed through compare-and-set so that concurrent borrowers cannot both succeed.
+    private volatile int borrowedState;
+
+    // The book is available.
+    private static final int AVAILABLE = 0;
+    // The book is borrowed.
+    private static final int BORROWED = 1;
+    // A borrow has claimed the book and is still recording the loan.
+    private static final int BORROWING = 2;
+    // A return has claimed the book and is still removing the loan.
+    private static final int RETURNING = 3;
+
+    private static final AtomicIntegerFieldUpdater<Book> BORROWED_STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Book.class, "borrowedState");
 
     /**
      * Constructs a new Book object.
@@ -24,7 +39,7 @@ public class Book {
         this.ISBN = ISBN;
         this.title = title;
         this.author = author;
-        this.isBorrowed = false;
+        this.borrowedState = AVAILABLE;
     }
 
     // Getter methods
@@ -62,7 +77,7 @@ public class Book {
      * @return true if the book is borrowed, otherwise false.
      */
     public boolean isBorrowed() {
-        return isBorrowed;
+        return borrowedState != AVAILABLE;
     }
 
     /**
@@ -70,9 +85,7 @@ public class Book {
      * Throws an exception if the book is already borrowed.
      */
     public void borrow() {
-        if (!isBorrowed) {
-            isBorrowed = true;
-        } else {
+        if (!tryBorrow()) {
             throw new IllegalStateException("Book is already borrowed!");
         }
     }
@@ -82,10 +95,65 @@ public class Book {
      * Throws an exception if the book was not previously borrowed.
      */
     public void returnBook() {
-        if (isBorrowed) {
-            isBorrowed = false;
-        } else {
+        if (!tryReturn()) {
             throw new IllegalStateException("ac.il.bgu.qa.Book wasn't borrowed!");
         }
     }
+
+    /**
+     * Atomically marks the book as borrowed if it is not borrowed yet.
+     * Among concurrent callers exactly one succeeds.
+     *
+     * @return true if this call borrowed the book, false if it was already borrowed.
+     */
+    public boolean tryBorrow() {
+        return BORROWED_STATE.compareAndSet(this, AVAILABLE, BORROWED);
+    }
+
+    /**
+     * Atomically marks the book as returned if it is currently borrowed.
+     *
+     * @return true if this call returned the book, false if it was not borrowed.
+     */
+    public boolean tryReturn() {
+        return BORROWED_STATE.compareAndSet(this, BORROWED, AVAILABLE);
+    }
+
+    /**
+     * Atomically claims an available book for a borrow whose loan is not recorded yet.
+     * Until {@link #endBorrow} is called the book counts as borrowed and cannot be returned.
+     *
+     * @return true if the book was claimed, false if it is borrowed or being returned.
+     */
+    boolean beginBorrow() {
+        return BORROWED_STATE.compareAndSet(this, AVAILABLE, BORROWING);
+    }
+
+    /**
+     * Completes a borrow started with {@link #beginBorrow}.
+     *
+     * @param committed true if the loan was recorded, false to make the book available again.
+     */
+    void endBorrow(boolean committed) {
+        borrowedState = committed ? BORROWED : AVAILABLE;
+    }
+
+    /**
+     * Atomically claims a borrowed book for a return whose loan is not removed yet.
+     * Until {@link #endReturn} is called the book counts as borrowed and cannot be borrowed again.
+     *
+     * @return true if the book was claimed, false if it is not borrowed or another call is changing it.
+     */
+    boolean beginReturn() {
+        return BORROWED_STATE.compareAndSet(this, BORROWED, RETURNING);
+    }
+
+    /**
+     * Completes a return started with {@link #beginReturn}.
+     *
+     * @param committed true if the loan was removed, false to keep the book borrowed.
+     */
+    void endReturn(boolean committed) {
+        borrowedState = committed ? AVAILABLE : BORROWED;
+    }
 }
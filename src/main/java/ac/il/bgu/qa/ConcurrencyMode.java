@@ -0,0 +1,26 @@
+package ac.il.bgu.qa;
+
+/**
+ * Selects how a {@link Library} protects the borrow and return sequences against concurrent callers.
+ */
+public enum ConcurrencyMode {
+
+    /**
+     * Checks the book's state and then changes it, as two separate steps.
+     * A concurrent borrower that loses the race fails with an {@link IllegalStateException} from {@link Book#borrow()}.
+     */
+    UNSYNCHRONIZED,
+
+    /**
+     * Claims the book with a single compare-and-set on its state, without any lock.
+     * Exactly one concurrent borrower wins, the others fail with a
+     * {@link ac.il.bgu.qa.errors.BookAlreadyBorrowedException}.
+     */
+    LOCK_FREE,
+
+    /**
+     * Runs each operation that reads and then writes the database under locks striped by ISBN and by user Id.
+     * Operations on unrelated books and users proceed in parallel, conflicting ones serialise.
+     */
+    TRANSACTIONAL
+}
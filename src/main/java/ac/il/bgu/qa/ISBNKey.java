@@ -0,0 +1,48 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.validation.IdentifierValidator;
+
+/**
+ * Canonical key of an ISBN-13, packed into a primitive long.
+ * The key holds the 13 digits of the ISBN as a decimal number, so hyphenated and bare
+ * forms of the same ISBN map to the same key and no String has to be hashed per lookup.
+ */
+public final class ISBNKey {
+
+    // Key returned for an input that is not a valid ISBN-13.
+    public static final long INVALID = IdentifierValidator.INVALID_KEY;
+
+    // Exclusive upper bound of a key, 10^13.
+    private static final long BOUND = 10_000_000_000_000L;
+
+    private ISBNKey() {
+    }
+
+    /**
+     * Normalises an ISBN into its canonical key.
+     *
+     * @param ISBN The International Standard Book Number, with or without hyphens.
+     * @return The canonical key, or {@link #INVALID} if the ISBN is not a valid ISBN-13.
+     */
+    public static long of(String ISBN) {
+        return IdentifierValidator.parseISBN(ISBN);
+    }
+
+    /**
+     * Formats a key back into the bare 13 digit form of the ISBN.
+     *
+     * @param key The canonical key of the ISBN.
+     * @return The ISBN without hyphens, left padded with zeros to 13 digits.
+     */
+    public static String toString(long key) {
+        if (key < 0 || key >= BOUND) {
+            throw new IllegalArgumentException("Invalid ISBN key.");
+        }
+        char[] digits = new char[IdentifierValidator.ISBN_LENGTH];
+        for (int i = digits.length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + (key % 10));
+            key /= 10;
+        }
+        return new String(digits);
+    }
+}
@@ -0,0 +1,98 @@
+package ac.il.bgu.qa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Summarises a bulk catalog load: how many books were added and which rows were rejected and why.
+ */
+public class IngestReport {
+
+    // Number of books added to the database.
+    private final long added;
+    // Rows that were not added, in source order.
+    private final List<Rejection> rejections;
+
+    /**
+     * Constructs a new IngestReport.
+     *
+     * @param added      The number of books added to the database.
+     * @param rejections The rows that were not added, in source order.
+     */
+    public IngestReport(long added, List<Rejection> rejections) {
+        this.added = added;
+        this.rejections = Collections.unmodifiableList(new ArrayList<>(rejections));
+    }
+
+    /**
+     * Retrieves the number of books added to the database.
+     *
+     * @return The number of added books.
+     */
+    public long getAdded() {
+        return added;
+    }
+
+    /**
+     * Retrieves the rows that were not added.
+     *
+     * @return The rejected rows, in source order.
+     */
+    public List<Rejection> getRejections() {
+        return rejections;
+    }
+
+    /**
+     * A source row that was not added to the database.
+     */
+    public static class Rejection {
+
+        // Zero based position of the row in the source.
+        private final long row;
+        // ISBN of the rejected book, or null if the row had no book.
+        private final String ISBN;
+        // Why the row was rejected.
+        private final String reason;
+
+        /**
+         * Constructs a new Rejection.
+         *
+         * @param row    The zero based position of the row in the source.
+         * @param ISBN   The ISBN of the rejected book, or null if the row had no book.
+         * @param reason Why the row was rejected.
+         */
+        public Rejection(long row, String ISBN, String reason) {
+            this.row = row;
+            this.ISBN = ISBN;
+            this.reason = reason;
+        }
+
+        /**
+         * Retrieves the position of the row in the source.
+         *
+         * @return The zero based row number.
+         */
+        public long getRow() {
+            return row;
+        }
+
+        /**
+         * Retrieves the ISBN of the rejected book.
+         *
+         * @return The ISBN as given in the source, or null if the row had no book.
+         */
+        public String getISBN() {
+            return ISBN;
+        }
+
+        /**
+         * Retrieves why the row was rejected.
+         *
+         * @return The same message {@link Library#addBook} would have thrown for the row.
+         */
+        public String getReason() {
+            return reason;
+        }
+    }
+}
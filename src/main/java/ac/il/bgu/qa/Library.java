@@ -1,10 +1,23 @@
 package ac.il.bgu.qa;
 
+import ac.il.bgu.qa.concurrent.LockStripes;
 import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.notifications.NotificationDispatcher;
+import ac.il.bgu.qa.notifications.NotificationOutbox;
+import ac.il.bgu.qa.notifications.ReviewMessageBuilder;
+import ac.il.bgu.qa.reservations.ReservationQueue;
 import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.PagedReviewIterator;
 import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.storage.LongHashSet;
+import ac.il.bgu.qa.validation.IdentifierValidator;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Represents a library which manages a collection of books and users.
@@ -17,10 +30,82 @@ public class Library {
     // Service to fetch reviews for a book
     private final ReviewService reviewService;
 
+    // How borrow and return are protected against concurrent callers
+    private final ConcurrencyMode concurrencyMode;
+
+    // Runs notification jobs and delivers the notifications
+    private final NotificationDispatcher notificationDispatcher;
+
+    // Durably queues notifications for later delivery, null to deliver them directly
+    private final NotificationOutbox notificationOutbox;
+
+    // Writes review notifications as the reviews stream in, capping them if configured
+    private final ReviewMessageBuilder reviewMessageBuilder;
+
+    // Locks striped by ISBN key and by user Id, only used in transactional mode.
+    // A borrow takes its book stripe before its user stripe, so no two operations wait on each other in a cycle.
+    private final LockStripes bookLocks;
+    private final LockStripes userLocks;
+
+    // Lock set of the operations that do not run under stripes.
+    private static final Lock[] NO_LOCKS = new Lock[0];
+
+    // Number of optional review notifications that failed, which do not fail the lookup that sent them
+    private final AtomicLong failedNotifications = new AtomicLong();
+
+    // Users waiting for borrowed books
+    private final ReservationQueue reservations = new ReservationQueue();
+
+    // Serialise changes to the reservation queue of a book with its hand-off to the next user in line
+    private final LockStripes reservationLocks = new LockStripes();
+
+    // Chunks of a bulk load with at least this many rows are validated in parallel.
+    private static final int PARALLEL_VALIDATION_THRESHOLD = 1024;
+
     // Constructor for Library, initializes both services
     public Library(DatabaseService databaseService, ReviewService reviewService) {
+        this(databaseService, reviewService, ConcurrencyMode.UNSYNCHRONIZED);
+    }
+
+    // Constructor for Library, initializes both services and the concurrency mode of borrow and return
+    public Library(DatabaseService databaseService, ReviewService reviewService, ConcurrencyMode concurrencyMode) {
+        this(databaseService, reviewService, concurrencyMode, NotificationDispatcher.direct());
+    }
+
+    // Constructor for Library, initializes both services, the concurrency mode and the dispatcher of notifications
+    public Library(DatabaseService databaseService, ReviewService reviewService, ConcurrencyMode concurrencyMode,
+                   NotificationDispatcher notificationDispatcher) {
+        this(databaseService, reviewService, concurrencyMode, notificationDispatcher, null);
+    }
+
+    // Constructor for Library, additionally hands every notification to a durable outbox instead of delivering it
+    public Library(DatabaseService databaseService, ReviewService reviewService, ConcurrencyMode concurrencyMode,
+                   NotificationDispatcher notificationDispatcher, NotificationOutbox notificationOutbox) {
+        this(databaseService, reviewService, concurrencyMode, notificationDispatcher, notificationOutbox,
+                ReviewMessageBuilder.unlimited());
+    }
+
+    // Constructor for Library, additionally sets how review notifications are written and capped
+    public Library(DatabaseService databaseService, ReviewService reviewService, ConcurrencyMode concurrencyMode,
+                   NotificationDispatcher notificationDispatcher, NotificationOutbox notificationOutbox,
+                   ReviewMessageBuilder reviewMessageBuilder) {
+        if (concurrencyMode == null) {
+            throw new IllegalArgumentException("Invalid concurrency mode.");
+        }
+        if (notificationDispatcher == null) {
+            throw new IllegalArgumentException("Invalid notification dispatcher.");
+        }
+        if (reviewMessageBuilder == null) {
+            throw new IllegalArgumentException("Invalid review message builder.");
+        }
         this.databaseService = databaseService;
         this.reviewService = reviewService;
+        this.concurrencyMode = concurrencyMode;
+        this.notificationDispatcher = notificationDispatcher;
+        this.notificationOutbox = notificationOutbox;
+        this.reviewMessageBuilder = reviewMessageBuilder;
+        this.bookLocks = concurrencyMode == ConcurrencyMode.TRANSACTIONAL ? new LockStripes() : null;
+        this.userLocks = concurrencyMode == ConcurrencyMode.TRANSACTIONAL ? new LockStripes() : null;
     }
 
     /**
@@ -32,65 +117,205 @@ public class Library {
         // Multiple checks to validate the book object's properties
         if (book == null) {
             throw new IllegalArgumentException("Invalid book.");
-        } else if (!isISBNValid(book.getISBN())){
-            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        long key = ISBNKey.of(book.getISBN());
+        String error = checkBook(book, key);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+
+        Lock lock = concurrencyMode == ConcurrencyMode.TRANSACTIONAL ? bookLocks.forKey(key) : null;
+        if (lock != null) {
+            lock.lock();
+        }
+        try {
+            // If book already exists in the database, throw exception
+            if (databaseService.getBookByISBN(book.getISBN()) != null)
+                throw new IllegalArgumentException("Book already exists.");
+
+            // If all checks pass, add the book to the database
+            databaseService.addBook(book.getISBN(), book);
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Validates the properties of a book before it is added.
+     *
+     * @param book The book to be validated.
+     * @param key  The canonical key of the book's ISBN.
+     * @return The reason the book is invalid, or null if it is valid.
+     */
+    private String checkBook(Book book, long key) {
+        if (key == ISBNKey.INVALID) {
+            return "Invalid ISBN.";
         } else if (book.getTitle() == null || book.getTitle().equals("")) {
-            throw new IllegalArgumentException("Invalid title.");
+            return "Invalid title.";
         } else if (!isAuthorValid(book.getAuthor())) {
-            throw new IllegalArgumentException("Invalid author.");
+            return "Invalid author.";
         } else if (book.isBorrowed()) {
-            throw new IllegalArgumentException("Book with invalid borrowed state.");
+            return "Book with invalid borrowed state.";
         }
+        return null;
+    }
 
-        // If book already exists in the database, throw exception
-        if (databaseService.getBookByISBN(book.getISBN()) != null)
-            throw new IllegalArgumentException("Book already exists.");
+    /**
+     * Loads a catalog feed into the library's collection.
+     * The source is consumed one chunk at a time: each chunk is validated in parallel, de-duplicated against
+     * the rows loaded before it, checked for existing books and written with one bulk database call. The next
+     * chunk is only pulled once the previous one is written, so a fast source cannot outrun the database. Besides
+     * one chunk of books, the load keeps the 8 byte key of every book added so far to detect duplicates, so its
+     * memory grows with the number of distinct books rather than with the rows themselves. Invalid rows are
+     * reported instead of aborting the load.
+     *
+     * @param books     The books to be added, in source order.
+     * @param chunkSize The number of books validated and written together.
+     * @return The number of added books and the rejected rows.
+     */
+    public IngestReport addBooks(Iterator<Book> books, int chunkSize) {
+        if (books == null) {
+            throw new IllegalArgumentException("Invalid book source.");
+        } else if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size.");
+        }
 
-        // If all checks pass, add the book to the database
-        databaseService.addBook(book.getISBN(), book);
+        List<IngestReport.Rejection> rejections = new ArrayList<>();
+        // Keys of the books added or being added by this load.
+        LongHashSet loaded = new LongHashSet();
+        Book[] chunk = new Book[chunkSize];
+        long row = 0;
+        long added = 0;
+        while (books.hasNext()) {
+            int size = 0;
+            while (size < chunkSize && books.hasNext()) {
+                chunk[size++] = books.next();
+            }
+            added += addChunk(chunk, size, row, loaded, rejections);
+            row += size;
+        }
+        return new IngestReport(added, rejections);
     }
 
     /**
-     *  Validates if input is of type ISBN-13.
+     * Loads a catalog feed into the library's collection.
      *
-     *  @param isbn The International Standard Book Number to be validated.
-     *  @return true if valid, false otherwise.
-    */
-    private boolean isISBNValid(String isbn) {
-        // Check if the ISBN is null, return false if it is
-        if (isbn == null) {
-            return false;
+     * @param books     The books to be added, in source order.
+     * @param chunkSize The number of books validated and written together.
+     * @return The number of added books and the rejected rows.
+     * @see #addBooks(Iterator, int)
+     */
+    public IngestReport addBooks(Stream<Book> books, int chunkSize) {
+        if (books == null) {
+            throw new IllegalArgumentException("Invalid book source.");
         }
+        return addBooks(books.iterator(), chunkSize);
+    }
 
-        // Remove any hyphen characters from the ISBN for standardization
-        isbn = isbn.replaceAll("-", "");
+    // Validates, de-duplicates and writes one chunk of a bulk load. Returns the number of books added.
+    private long addChunk(Book[] chunk, int size, long firstRow, LongHashSet loaded,
+                          List<IngestReport.Rejection> rejections) {
+        long[] keys = new long[size];
+        String[] errors = new String[size];
 
-        // Check if the sanitized ISBN is of length 13 and if contains only digits
-        if (isbn.length() != 13 || !isbn.matches("\\d+")) {
-            return false;
+        // The checks of different rows are independent, so large chunks are validated in parallel.
+        IntStream rows = IntStream.range(0, size);
+        if (size >= PARALLEL_VALIDATION_THRESHOLD) {
+            rows = rows.parallel();
         }
-
-        // Calculate the sum based on the ISBN-13 rules:
-        // Odd position numbers are multiplied by 1
-        // Even position numbers are multiplied by 3
-        int sum = 0;
-        for (int i = 0; i < 12; i++) {
-            int digit = Integer.parseInt(String.valueOf(isbn.charAt(i)));
-            if (i % 2 == 0) {
-                sum += digit;
+        rows.forEach(i -> {
+            Book book = chunk[i];
+            if (book == null) {
+                errors[i] = "Invalid book.";
             } else {
-                sum += digit * 3;
+                keys[i] = ISBNKey.of(book.getISBN());
+                errors[i] = checkBook(book, keys[i]);
+            }
+        });
+
+        // Keep only the first row of every ISBN, in source order.
+        int[] pending = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (errors[i] != null) {
+                continue;
+            }
+            if (!loaded.add(keys[i])) {
+                errors[i] = "Duplicate ISBN in load.";
+                continue;
             }
+            pending[count++] = i;
         }
 
-        // Calculate the check digit
-        int checkDigit = 10 - (sum % 10);
-        if (checkDigit == 10) {
-            checkDigit = 0;
+        long added = 0;
+        if (count > 0) {
+            long[] pendingKeys = new long[count];
+            for (int j = 0; j < count; j++) {
+                pendingKeys[j] = keys[pending[j]];
+            }
+            Lock[] locks = concurrencyMode == ConcurrencyMode.TRANSACTIONAL ? bookLocks.forKeys(pendingKeys) : NO_LOCKS;
+            lockAll(locks);
+            try {
+                added = writeChunk(chunk, Arrays.copyOf(pending, count), errors);
+            } finally {
+                unlockAll(locks);
+            }
+            // Rows that were not added do not count against later rows with the same ISBN.
+            for (int j = 0; j < count; j++) {
+                if (errors[pending[j]] != null) {
+                    loaded.remove(keys[pending[j]]);
+                }
+            }
         }
 
-        // Check if the calculated check digit matches the last digit of the ISBN
-        return checkDigit == Integer.parseInt(String.valueOf(isbn.charAt(12)));
+        for (int i = 0; i < size; i++) {
+            if (errors[i] != null) {
+                String ISBN = chunk[i] == null ? null : chunk[i].getISBN();
+                rejections.add(new IngestReport.Rejection(firstRow + i, ISBN, errors[i]));
+            }
+            chunk[i] = null;
+        }
+        return added;
+    }
+
+    // Skips the books of a chunk that already exist and adds the rest with one bulk call. The database gets the
+    // ISBNs as the books carry them, as addBook passes them.
+    private long writeChunk(Book[] chunk, int[] pending, String[] errors) {
+        String[] ISBNs = new String[pending.length];
+        for (int j = 0; j < pending.length; j++) {
+            ISBNs[j] = chunk[pending[j]].getISBN();
+        }
+        Book[] existing = databaseService.getBooksByISBN(ISBNs);
+        int count = 0;
+        for (int j = 0; j < pending.length; j++) {
+            if (existing[j] != null) {
+                errors[pending[j]] = "Book already exists.";
+            } else {
+                pending[count] = pending[j];
+                ISBNs[count++] = ISBNs[j];
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        Book[] books = new Book[count];
+        for (int j = 0; j < count; j++) {
+            books[j] = chunk[pending[j]];
+        }
+        try {
+            databaseService.addBooks(Arrays.copyOf(ISBNs, count), books);
+            return count;
+        } catch (RuntimeException e) {
+            // Only the books the database did not get to are rejected.
+            int written = writtenBeforeFailure(e);
+            for (int j = written; j < count; j++) {
+                errors[pending[j]] = e.getMessage() == null ? e.toString() : e.getMessage();
+            }
+            return written;
+        }
     }
 
     /**
@@ -148,7 +373,7 @@ public class Library {
         // Multiple checks to validate the user object's properties.
         if (user == null) {
             throw new IllegalArgumentException("Invalid user.");
-        } else if (user.getId() == null || !user.getId().matches("\\d{12}")) {
+        } else if (!IdentifierValidator.isValidUserId(user.getId())) {
             throw new IllegalArgumentException("Invalid user Id.");
         } else if (user.getName() == null || user.getName().equals("")) {
             throw new IllegalArgumentException("Invalid user name.");
@@ -156,16 +381,39 @@ public class Library {
             throw new IllegalArgumentException("Invalid notification service.");
         }
 
-        // Before registering, check if a user with the given Id already exists.
-        // If such a user is found, throw an exception.
-        if (databaseService.getUserById(user.getId()) != null)
-            throw new IllegalArgumentException("User already exists.");
-
-        // If all checks have passed, call the database service to register the user.
-        databaseService.registerUser(user.getId(), user);
+        Lock lock = concurrencyMode == ConcurrencyMode.TRANSACTIONAL
+                ? userLocks.forKey(IdentifierValidator.parseUserId(user.getId())) : null;
+        if (lock != null) {
+            lock.lock();
+        }
+        try {
+            // Before registering, check if a user with the given Id already exists.
+            // If such a user is found, throw an exception.
+            if (databaseService.getUserById(user.getId()) != null)
+                throw new IllegalArgumentException("User already exists.");
 
+            // If all checks have passed, call the database service to register the user.
+            databaseService.registerUser(user.getId(), user);
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
     }
 
+    /**
+     * Checks whether a user is registered.
+     *
+     * @param userId The Id of the user.
+     * @return true if a user with the Id is registered, false otherwise.
+     */
+    public boolean isUserRegistered(String userId) {
+        // Validate the user Id. If it's invalid, throw an exception.
+        if (!IdentifierValidator.isValidUserId(userId)) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        return databaseService.getUserById(userId) != null;
+    }
 
     /**
      * Borrows a book for a user.
@@ -174,35 +422,79 @@ public class Library {
      * @param userId The Id of the user borrowing the book.
      */
     public void borrowBook(String ISBN, String userId) {
+        LibraryStatus status = tryBorrowBook(ISBN, userId);
+        if (status != LibraryStatus.SUCCESS) {
+            throw failure(status);
+        }
+    }
 
-        // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
-            throw new IllegalArgumentException("Invalid ISBN.");
+    /**
+     * Borrows a book for a user like {@link #borrowBook(String, String)}, but reports every outcome as a status
+     * instead of throwing, so that callers expecting contention do not pay for exceptions.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book.
+     * @return {@link LibraryStatus#SUCCESS} if the book was borrowed, otherwise the reason it was not.
+     */
+    public LibraryStatus tryBorrowBook(String ISBN, String userId) {
+
+        // Validate the ISBN. If it's invalid, report it.
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            return LibraryStatus.INVALID_ISBN;
+        }
+
+        if (concurrencyMode != ConcurrencyMode.TRANSACTIONAL) {
+            return borrowValidated(ISBN, userId);
         }
 
+        // Hold the book and the user for the whole read-check-write sequence.
+        Lock bookLock = bookLocks.forKey(key);
+        Lock userLock = userLocks.forKey(IdentifierValidator.parseUserId(userId));
+        bookLock.lock();
+        userLock.lock();
+        try {
+            return borrowValidated(ISBN, userId);
+        } finally {
+            userLock.unlock();
+            bookLock.unlock();
+        }
+    }
+
+    /**
+     * Borrows a book for a user once the ISBN has been validated.
+     *
+     * @param ISBN   The International Standard Book Number of the book, as given by the caller.
+     * @param userId The Id of the user borrowing the book.
+     * @return The outcome of the borrow.
+     */
+    private LibraryStatus borrowValidated(String ISBN, String userId) {
+
         // Retrieve the book associated with the ISBN from the database.
         Book book = databaseService.getBookByISBN(ISBN);
 
-        // If no book is found for the given ISBN, throw an exception.
+        // If no book is found for the given ISBN, report it.
         if (book == null) {
-            throw new BookNotFoundException("Book not found!");
+            return LibraryStatus.BOOK_NOT_FOUND;
         }
 
         // Validate the user Id's format (should be a 12-digit number).
-        // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
-            throw new IllegalArgumentException("Invalid user Id.");
+        if (!IdentifierValidator.isValidUserId(userId)) {
+            return LibraryStatus.INVALID_USER_ID;
         }
 
         // Check if the user Id's corresponds to a registered user in the database.
-        // If not, throw an exception indicating the user is not registered.
         if (databaseService.getUserById(userId) == null) {
-            throw new UserNotRegisteredException("User not found!");
+            return LibraryStatus.USER_NOT_REGISTERED;
         }
 
-        // If the book is already borrowed, throw an exception.
+        if (concurrencyMode == ConcurrencyMode.LOCK_FREE) {
+            return borrowAtomically(book, ISBN, userId);
+        }
+
+        // If the book is already borrowed, report it.
         if (book.isBorrowed()) {
-            throw new BookAlreadyBorrowedException("Book is already borrowed!");
+            return LibraryStatus.BOOK_ALREADY_BORROWED;
         }
 
         // Mark the book as borrowed.
@@ -210,6 +502,7 @@ public class Library {
 
         // Record the borrowing transaction in the database by associating the book's ISBN with the user's Id.
         databaseService.borrowBook(ISBN, userId);
+        return LibraryStatus.SUCCESS;
     }
 
     /**
@@ -218,31 +511,682 @@ public class Library {
      * @param ISBN The International Standard Book Number of the book.
      */
     public void returnBook(String ISBN) {
-        
-        // Validate the ISBN. If it's not valid, throw an exception.
-        if (!isISBNValid(ISBN)) {
-            throw new IllegalArgumentException("Invalid ISBN.");
+        LibraryStatus status = tryReturnBook(ISBN);
+        if (status != LibraryStatus.SUCCESS) {
+            throw failure(status);
         }
+    }
+
+    /**
+     * Returns a previously borrowed book like {@link #returnBook(String)}, but reports every outcome as a status
+     * instead of throwing.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return {@link LibraryStatus#SUCCESS} if the book was returned, otherwise the reason it was not.
+     */
+    public LibraryStatus tryReturnBook(String ISBN) {
+
+        // Validate the ISBN. If it's not valid, report it.
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            return LibraryStatus.INVALID_ISBN;
+        }
+
+        // Users the book was lent to are only notified once the book's stripe is released.
+        List<ReadyReservation> ready = new ArrayList<>();
+        LibraryStatus status;
+        if (concurrencyMode != ConcurrencyMode.TRANSACTIONAL) {
+            status = returnBook(ISBN, key, ready);
+        } else {
+            Lock bookLock = bookLocks.forKey(key);
+            bookLock.lock();
+            try {
+                status = returnBook(ISBN, key, ready);
+            } finally {
+                bookLock.unlock();
+            }
+        }
+        notifyReservationsReady(ready);
+        return status;
+    }
+
+    /**
+     * Returns a previously borrowed book once the ISBN has been validated.
+     *
+     * @param ISBN  The International Standard Book Number of the book, as given by the caller.
+     * @param key   The canonical key of the book's ISBN.
+     * @param ready Receives the user the book was lent to, if it was reserved.
+     * @return The outcome of the return.
+     */
+    private LibraryStatus returnBook(String ISBN, long key, List<ReadyReservation> ready) {
 
         // Retrieve the book associated with the ISBN from the database.
         Book book = databaseService.getBookByISBN(ISBN);
 
-        // If no book is found for the given ISBN, throw a book not found exception.
+        // If no book is found for the given ISBN, report it.
         if (book == null) {
-            throw new BookNotFoundException("Book not found!");
+            return LibraryStatus.BOOK_NOT_FOUND;
+        }
+
+        // If users wait for the book, it passes straight to the next in line without becoming available.
+        if (!reservations.isEmpty()) {
+            LibraryStatus handOff = handOffToNextWaiter(book, ISBN, key, ready);
+            if (handOff != null) {
+                return handOff;
+            }
+        }
+
+        if (concurrencyMode == ConcurrencyMode.LOCK_FREE) {
+            LibraryStatus status = returnAtomically(book, ISBN);
+            if (status != LibraryStatus.SUCCESS) {
+                return status;
+            }
+        } else {
+            // Check if the book is currently borrowed. If not, it means it was never borrowed
+            // or it has already been returned, therefore report it.
+            if (!book.isBorrowed()) {
+                return LibraryStatus.BOOK_NOT_BORROWED;
+            }
+
+            // Change the status of the book to not borrowed.
+            book.returnBook();
+
+            // Update the database to reflect the returned status of the book.
+            databaseService.returnBook(ISBN);
+        }
+
+        // A reservation may have been made while the book was being returned; it is served now.
+        if (!reservations.isEmpty()) {
+            lendToNextWaiter(book, ISBN, key, ready);
+        }
+        return LibraryStatus.SUCCESS;
+    }
+
+    /**
+     * Checks whether a book can be borrowed right now, without borrowing it and without throwing.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return {@link LibraryStatus#SUCCESS} if the book is available, {@link LibraryStatus#BOOK_ALREADY_BORROWED}
+     *         if it is borrowed, or the reason the ISBN does not name a book.
+     */
+    public LibraryStatus checkAvailability(String ISBN) {
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            return LibraryStatus.INVALID_ISBN;
+        }
+        Book book = databaseService.getBookByISBN(ISBN);
+        if (book == null) {
+            return LibraryStatus.BOOK_NOT_FOUND;
+        }
+        return book.isBorrowed() ? LibraryStatus.BOOK_ALREADY_BORROWED : LibraryStatus.SUCCESS;
+    }
+
+    /**
+     * Builds the exception the throwing variant of an operation throws for a failed status.
+     *
+     * @param status The failed status.
+     * @return A new exception carrying its own stack trace.
+     */
+    private static RuntimeException failure(LibraryStatus status) {
+        switch (status) {
+            case INVALID_ISBN:
+                return new IllegalArgumentException("Invalid ISBN.");
+            case INVALID_USER_ID:
+                return new IllegalArgumentException("Invalid user Id.");
+            case BOOK_NOT_FOUND:
+                return new BookNotFoundException("Book not found!");
+            case USER_NOT_REGISTERED:
+                return new UserNotRegisteredException("User not found!");
+            case BOOK_ALREADY_BORROWED:
+                return new BookAlreadyBorrowedException("Book is already borrowed!");
+            case BOOK_NOT_BORROWED:
+                return new BookNotBorrowedException("Book wasn't borrowed!");
+            default:
+                throw new IllegalArgumentException("Invalid status.");
+        }
+    }
+
+    /**
+     * Borrows a book for a user, or reserves it for them if it is borrowed.
+     * Reserved books are handed to the users waiting for them, in order, as they are returned, and each user is
+     * notified once the book is borrowed for them, so there is no need to retry.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book.
+     * @return 0 if the book was borrowed, otherwise the position of the user in the book's queue, 1 for the next.
+     */
+    public int borrowOrReserve(String ISBN, String userId) {
+        // Validate the ISBN. If it's invalid, throw an exception.
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+
+        while (true) {
+            LibraryStatus status = tryBorrowBook(ISBN, userId);
+            if (status == LibraryStatus.SUCCESS) {
+                return 0;
+            } else if (status != LibraryStatus.BOOK_ALREADY_BORROWED) {
+                throw failure(status);
+            }
+            // The book and the user were validated before the book was found borrowed.
+            Book book = databaseService.getBookByISBN(ISBN);
+
+            Lock lock = reservationLocks.forKey(key);
+            lock.lock();
+            try {
+                // The reservation is counted before the book is checked again, and a return changes the book
+                // before it checks the count, so a book returned meanwhile is seen by one of the two.
+                int position = reservations.reserve(key, userId);
+                if (book.isBorrowed()) {
+                    return position;
+                }
+                reservations.cancel(key, userId);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes a user from the queue of a book they reserved.
+     *
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the waiting user.
+     * @return true if the user was waiting for the book, false otherwise.
+     */
+    public boolean cancelReservation(String ISBN, String userId) {
+        // Validate the ISBN. If it's invalid, throw an exception.
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        Lock lock = reservationLocks.forKey(key);
+        lock.lock();
+        try {
+            return reservations.cancel(key, userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the users waiting for a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The Ids of the waiting users, next in line first.
+     */
+    public List<String> getReservations(String ISBN) {
+        // Validate the ISBN. If it's invalid, throw an exception.
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return reservations.getWaiters(key);
+    }
+
+    /**
+     * Moves the loan of a borrowed book to the next user waiting for it. The book stays borrowed throughout.
+     * If the database records the return but not the new loan, the book is returned and the user keeps waiting,
+     * so the book's state matches the database.
+     *
+     * @param book  The book being returned.
+     * @param ISBN  The International Standard Book Number of the book, as given by the caller.
+     * @param key   The canonical key of the book's ISBN.
+     * @param ready Receives the user the book was handed to.
+     * @return The outcome of the return if the book was handed off or was not borrowed, null if nobody waits for it.
+     */
+    private LibraryStatus handOffToNextWaiter(Book book, String ISBN, long key, List<ReadyReservation> ready) {
+        String next;
+        Lock lock = reservationLocks.forKey(key);
+        lock.lock();
+        try {
+            next = reservations.peek(key);
+            if (next == null) {
+                return null;
+            }
+            boolean claimed = concurrencyMode == ConcurrencyMode.LOCK_FREE ? book.beginReturn() : book.isBorrowed();
+            if (!claimed) {
+                return LibraryStatus.BOOK_NOT_BORROWED;
+            }
+            boolean returned = false;
+            boolean lent = false;
+            try {
+                databaseService.returnBook(ISBN);
+                returned = true;
+                databaseService.borrowBook(ISBN, next);
+                lent = true;
+            } finally {
+                // The book stays borrowed unless only the return was recorded.
+                boolean available = returned && !lent;
+                if (concurrencyMode == ConcurrencyMode.LOCK_FREE) {
+                    book.endReturn(available);
+                } else if (available) {
+                    book.returnBook();
+                }
+            }
+            reservations.poll(key);
+        } finally {
+            lock.unlock();
+        }
+        ready.add(new ReadyReservation(book, next));
+        return LibraryStatus.SUCCESS;
+    }
+
+    /**
+     * Borrows an available book for the next user waiting for it.
+     * If the database does not record the loan, the book stays available and the user keeps waiting.
+     *
+     * @param book  The returned book.
+     * @param ISBN  The International Standard Book Number of the book, as given by the caller.
+     * @param key   The canonical key of the book's ISBN.
+     * @param ready Receives the user the book was lent to.
+     */
+    private void lendToNextWaiter(Book book, String ISBN, long key, List<ReadyReservation> ready) {
+        String next;
+        Lock lock = reservationLocks.forKey(key);
+        lock.lock();
+        try {
+            next = reservations.peek(key);
+            if (next == null) {
+                return;
+            }
+            if (concurrencyMode == ConcurrencyMode.LOCK_FREE) {
+                // Someone else borrowed the book first; the waiter gets it on its next return.
+                if (!book.beginBorrow()) {
+                    return;
+                }
+                boolean committed = false;
+                try {
+                    databaseService.borrowBook(ISBN, next);
+                    committed = true;
+                } finally {
+                    book.endBorrow(committed);
+                }
+            } else {
+                if (!book.tryBorrow()) {
+                    return;
+                }
+                boolean committed = false;
+                try {
+                    databaseService.borrowBook(ISBN, next);
+                    committed = true;
+                } finally {
+                    if (!committed) {
+                        book.returnBook();
+                    }
+                }
+            }
+            reservations.poll(key);
+        } finally {
+            lock.unlock();
+        }
+        ready.add(new ReadyReservation(book, next));
+    }
+
+    /**
+     * Tells users that the books they reserved are now borrowed for them. Called once no lock is held.
+     * The loans stand even if a notification fails, so each is a job of the notification dispatcher, which counts
+     * the failures in {@link NotificationDispatcher#getFailedCount()}.
+     *
+     * @param ready The users and the books lent to them.
+     */
+    private void notifyReservationsReady(List<ReadyReservation> ready) {
+        for (ReadyReservation reservation : ready) {
+            String userId = reservation.userId;
+            String notificationMessage = "Your reservation of '" + reservation.book.getTitle()
+                    + "' is ready: the book is now borrowed for you.";
+            notificationDispatcher.submit(() -> {
+                if (notificationOutbox != null) {
+                    notificationOutbox.enqueue(userId, notificationMessage);
+                } else {
+                    notificationDispatcher.deliver(getUserToNotify(userId), notificationMessage);
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Borrows several books for one user, for example every book scanned at a self-checkout kiosk.
+     * The user is validated and fetched once, and the books are fetched and their loans recorded with one bulk
+     * database call each. Every book is checked as {@link #borrowBook} would check it, and a failing book does
+     * not prevent the others from being borrowed. If the database fails part way, the loans it recorded stand and
+     * every other book fails with its own {@link DatabaseWriteException}.
+     *
+     * @param ISBNs  The International Standard Book Numbers of the books.
+     * @param userId The Id of the user borrowing the books.
+     * @return The outcome for every book, in the order of the ISBNs.
+     */
+    public BatchResult borrowBooks(List<String> ISBNs, String userId) {
+        if (ISBNs == null) {
+            throw new IllegalArgumentException("Invalid ISBN list.");
+        }
+        RuntimeException[] failures = new RuntimeException[ISBNs.size()];
+        int[] items = new int[ISBNs.size()];
+        long[] keys = parseISBNs(ISBNs, failures, items);
+
+        Lock[] locks = NO_LOCKS;
+        if (concurrencyMode == ConcurrencyMode.TRANSACTIONAL) {
+            // Book stripes in increasing order, then the user stripe, as a single borrow does.
+            Lock[] bookStripes = bookLocks.forKeys(keys);
+            locks = Arrays.copyOf(bookStripes, bookStripes.length + 1);
+            locks[bookStripes.length] = userLocks.forKey(IdentifierValidator.parseUserId(userId));
+        }
+        lockAll(locks);
+        try {
+            borrowBooks(ISBNs, items, keys.length, userId, failures);
+        } finally {
+            unlockAll(locks);
+        }
+        return new BatchResult(ISBNs, failures);
+    }
+
+    /**
+     * Returns several previously borrowed books.
+     * The books are fetched and their loans removed with one bulk database call each. Every book is checked as
+     * {@link #returnBook} would check it, and a failing book does not prevent the others from being returned.
+     * If the database fails part way, the returns it recorded stand and every other book fails with its own
+     * {@link DatabaseWriteException}. A book that users wait for is handed to the next in line as by
+     * {@link #returnBook}, and they are notified once the batch released its locks.
+     *
+     * @param ISBNs The International Standard Book Numbers of the books.
+     * @return The outcome for every book, in the order of the ISBNs.
+     */
+    public BatchResult returnBooks(List<String> ISBNs) {
+        if (ISBNs == null) {
+            throw new IllegalArgumentException("Invalid ISBN list.");
+        }
+        RuntimeException[] failures = new RuntimeException[ISBNs.size()];
+        int[] items = new int[ISBNs.size()];
+        long[] keys = parseISBNs(ISBNs, failures, items);
+
+        List<ReadyReservation> ready = new ArrayList<>();
+        Lock[] locks = concurrencyMode == ConcurrencyMode.TRANSACTIONAL ? bookLocks.forKeys(keys) : NO_LOCKS;
+        lockAll(locks);
+        try {
+            returnBooks(ISBNs, keys, items, failures, ready);
+        } finally {
+            unlockAll(locks);
+        }
+        notifyReservationsReady(ready);
+        return new BatchResult(ISBNs, failures);
+    }
+
+    // Parses the ISBNs of a batch. Invalid ISBNs are recorded as failures, the keys of the valid ones are
+    // returned in batch order and their positions in the batch are stored in items.
+    private static long[] parseISBNs(List<String> ISBNs, RuntimeException[] failures, int[] items) {
+        long[] keys = new long[ISBNs.size()];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            long key = ISBNKey.of(ISBNs.get(i));
+            if (key == ISBNKey.INVALID) {
+                failures[i] = new IllegalArgumentException("Invalid ISBN.");
+            } else {
+                items[count] = i;
+                keys[count++] = key;
+            }
         }
+        return Arrays.copyOf(keys, count);
+    }
+
+    // The ISBNs of the first count valid items of a batch, as the caller gave them.
+    private static String[] ISBNsOf(List<String> ISBNs, int[] items, int count) {
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = ISBNs.get(items[i]);
+        }
+        return result;
+    }
+
+    // Checks each book of a batch, claims the available ones and records all their loans at once.
+    private void borrowBooks(List<String> ISBNs, int[] items, int count, String userId,
+                             RuntimeException[] failures) {
+        Book[] books = databaseService.getBooksByISBN(ISBNsOf(ISBNs, items, count));
+        boolean userValid = IdentifierValidator.isValidUserId(userId);
+        User user = null;
+        boolean userFetched = false;
+
+        int claimed = 0;
+        for (int i = 0; i < count; i++) {
+            int item = items[i];
+            Book book = books[i];
+            if (book == null) {
+                failures[item] = new BookNotFoundException("Book not found!");
+                continue;
+            }
+            if (!userValid) {
+                failures[item] = new IllegalArgumentException("Invalid user Id.");
+                continue;
+            }
+            if (!userFetched) {
+                user = databaseService.getUserById(userId);
+                userFetched = true;
+            }
+            if (user == null) {
+                failures[item] = new UserNotRegisteredException("User not found!");
+                continue;
+            }
+            RuntimeException failure = claimForBorrow(book);
+            if (failure != null) {
+                failures[item] = failure;
+                continue;
+            }
+            items[claimed] = item;
+            books[claimed] = book;
+            claimed++;
+        }
+        if (claimed == 0) {
+            return;
+        }
+
+        // Each book is settled by whether its own loan was written, which a partly failed batch reports.
+        int written = 0;
+        try {
+            databaseService.borrowBooks(ISBNsOf(ISBNs, items, claimed), userId);
+            written = claimed;
+        } catch (RuntimeException e) {
+            written = writtenBeforeFailure(e);
+            recordWriteFailures(e, written, claimed, items, failures);
+        } finally {
+            for (int i = 0; i < claimed; i++) {
+                settleBorrow(books[i], i < written);
+            }
+        }
+    }
 
-        // Check if the book is currently borrowed. If not, it means it was never borrowed
-        // or it has already been returned, therefore throw an exception.
+    // Checks each book of a batch, releases the borrowed ones and removes all their loans at once. Books users wait
+    // for are returned one at a time instead, so that they are handed to the next in line.
+    private void returnBooks(List<String> ISBNs, long[] keys, int[] items, RuntimeException[] failures,
+                             List<ReadyReservation> ready) {
+        if (!reservations.isEmpty()) {
+            int unreserved = 0;
+            for (int i = 0; i < keys.length; i++) {
+                int item = items[i];
+                if (reservations.peek(keys[i]) == null) {
+                    items[unreserved] = item;
+                    keys[unreserved++] = keys[i];
+                    continue;
+                }
+                try {
+                    LibraryStatus status = returnBook(ISBNs.get(item), keys[i], ready);
+                    if (status != LibraryStatus.SUCCESS) {
+                        failures[item] = failure(status);
+                    }
+                } catch (RuntimeException e) {
+                    failures[item] = new DatabaseWriteException("Database write failed!", e);
+                }
+            }
+            keys = Arrays.copyOf(keys, unreserved);
+        }
+        Book[] books = databaseService.getBooksByISBN(ISBNsOf(ISBNs, items, keys.length));
+
+        int claimed = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int item = items[i];
+            Book book = books[i];
+            if (book == null) {
+                failures[item] = new BookNotFoundException("Book not found!");
+                continue;
+            }
+            RuntimeException failure = claimForReturn(book);
+            if (failure != null) {
+                failures[item] = failure;
+                continue;
+            }
+            items[claimed] = item;
+            books[claimed] = book;
+            keys[claimed] = keys[i];
+            claimed++;
+        }
+        if (claimed == 0) {
+            return;
+        }
+
+        int written = 0;
+        try {
+            databaseService.returnBooks(ISBNsOf(ISBNs, items, claimed));
+            written = claimed;
+        } catch (RuntimeException e) {
+            written = writtenBeforeFailure(e);
+            recordWriteFailures(e, written, claimed, items, failures);
+        } finally {
+            for (int i = 0; i < claimed; i++) {
+                settleReturn(books[i], i < written);
+            }
+        }
+
+        // A reservation may have been made while the books were being returned; it is served now. The returns
+        // stand if a loan to a waiting user cannot be recorded, and that user keeps waiting.
+        if (!reservations.isEmpty()) {
+            for (int i = 0; i < written; i++) {
+                try {
+                    lendToNextWaiter(books[i], ISBNs.get(items[i]), keys[i], ready);
+                } catch (RuntimeException e) {
+                    // The book stays available.
+                }
+            }
+        }
+    }
+
+    // Number of leading items a failed bulk write still wrote.
+    private static int writtenBeforeFailure(RuntimeException e) {
+        return e instanceof PartialBatchException ? ((PartialBatchException) e).getAppliedCount() : 0;
+    }
+
+    // Gives every claimed item of a batch that was not written its own failure, caused by the database's.
+    private static void recordWriteFailures(RuntimeException e, int written, int claimed, int[] items,
+                                            RuntimeException[] failures) {
+        for (int i = written; i < claimed; i++) {
+            failures[items[i]] = new DatabaseWriteException("Database write failed!", e);
+        }
+    }
+
+    // Claims a book of a batch for borrowing with the same check as the single borrow of the current mode.
+    private RuntimeException claimForBorrow(Book book) {
+        if (concurrencyMode == ConcurrencyMode.LOCK_FREE) {
+            return book.beginBorrow() ? null : new BookAlreadyBorrowedException("Book is already borrowed!");
+        }
+        if (book.isBorrowed()) {
+            return new BookAlreadyBorrowedException("Book is already borrowed!");
+        }
+        try {
+            book.borrow();
+            return null;
+        } catch (IllegalStateException e) {
+            return new BookAlreadyBorrowedException("Book is already borrowed!");
+        }
+    }
+
+    // Completes or rolls back a borrow claimed by claimForBorrow.
+    private void settleBorrow(Book book, boolean committed) {
+        if (concurrencyMode == ConcurrencyMode.LOCK_FREE) {
+            book.endBorrow(committed);
+        } else if (!committed) {
+            book.returnBook();
+        }
+    }
+
+    // Claims a book of a batch for returning with the same check as the single return of the current mode.
+    private RuntimeException claimForReturn(Book book) {
+        if (concurrencyMode == ConcurrencyMode.LOCK_FREE) {
+            return book.beginReturn() ? null : new BookNotBorrowedException("Book wasn't borrowed!");
+        }
         if (!book.isBorrowed()) {
-            throw new BookNotBorrowedException("Book wasn't borrowed!");
+            return new BookNotBorrowedException("Book wasn't borrowed!");
+        }
+        try {
+            book.returnBook();
+            return null;
+        } catch (IllegalStateException e) {
+            return new BookNotBorrowedException("Book wasn't borrowed!");
+        }
+    }
+
+    // Completes or rolls back a return claimed by claimForReturn.
+    private void settleReturn(Book book, boolean committed) {
+        if (concurrencyMode == ConcurrencyMode.LOCK_FREE) {
+            book.endReturn(committed);
+        } else if (!committed) {
+            book.borrow();
         }
+    }
+
+    private static void lockAll(Lock[] locks) {
+        for (Lock lock : locks) {
+            lock.lock();
+        }
+    }
+
+    private static void unlockAll(Lock[] locks) {
+        for (int i = locks.length - 1; i >= 0; i--) {
+            locks[i].unlock();
+        }
+    }
 
-        // Change the status of the book to not borrowed.
-        book.returnBook();
+    /**
+     * Claims the book with a compare-and-set, records the loan and only then marks the book as borrowed.
+     * While the loan is being recorded the book can be neither borrowed nor returned by another caller,
+     * so the database sees the loans of one book in the same order as the book's state changes.
+     *
+     * @param book   The book to be borrowed.
+     * @param ISBN   The International Standard Book Number of the book.
+     * @param userId The Id of the user borrowing the book.
+     * @return {@link LibraryStatus#SUCCESS}, or {@link LibraryStatus#BOOK_ALREADY_BORROWED} if the claim failed.
+     */
+    private LibraryStatus borrowAtomically(Book book, String ISBN, String userId) {
+        if (!book.beginBorrow()) {
+            return LibraryStatus.BOOK_ALREADY_BORROWED;
+        }
+        boolean committed = false;
+        try {
+            databaseService.borrowBook(ISBN, userId);
+            committed = true;
+        } finally {
+            book.endBorrow(committed);
+        }
+        return LibraryStatus.SUCCESS;
+    }
 
-        // Update the database to reflect the returned status of the book.
-        databaseService.returnBook(ISBN);
+    /**
+     * Claims the book with a compare-and-set, removes the loan and only then marks the book as available.
+     *
+     * @param book The book to be returned.
+     * @param ISBN The International Standard Book Number of the book.
+     * @return {@link LibraryStatus#SUCCESS}, or {@link LibraryStatus#BOOK_NOT_BORROWED} if the claim failed.
+     */
+    private LibraryStatus returnAtomically(Book book, String ISBN) {
+        if (!book.beginReturn()) {
+            return LibraryStatus.BOOK_NOT_BORROWED;
+        }
+        boolean committed = false;
+        try {
+            databaseService.returnBook(ISBN);
+            committed = true;
+        } finally {
+            book.endReturn(committed);
+        }
+        return LibraryStatus.SUCCESS;
     }
 
     /**
@@ -254,13 +1198,14 @@ public class Library {
     public void notifyUserWithBookReviews(String ISBN, String userId) {
 
         // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
             throw new IllegalArgumentException("Invalid ISBN.");
         }
 
         // Validate the user Id format (should be a 12-digit number).
         // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
+        if (!IdentifierValidator.isValidUserId(userId)) {
             throw new IllegalArgumentException("Invalid user Id.");
         }
 
@@ -272,6 +1217,88 @@ public class Library {
             throw new BookNotFoundException("Book not found!");
         }
 
+        notifyUserWithBookReviews(book, ISBN, userId);
+    }
+
+    /**
+     * Notifies a user with the reviews of a book that was already fetched and whose ISBN and user Id were validated.
+     *
+     * @param book   The book whose reviews are to be sent.
+     * @param ISBN   The ISBN of the book, as given by the caller.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     */
+    private void notifyUserWithBookReviews(Book book, String ISBN, String userId) {
+        User user = getUserToNotify(userId);
+        sendNotification(user, userId, buildReviewsNotification(book, ISBN));
+    }
+
+    /**
+     * Notifies a user with the reviews of a book like {@link #notifyUserWithBookReviews(Book, String, String)},
+     * but reports a missing user or a book without reviews as false instead of creating an exception.
+     * Failures of the services themselves are still thrown.
+     *
+     * @param book   The book whose reviews are to be sent.
+     * @param ISBN   The ISBN of the book, as given by the caller.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return true if the notification was sent or queued, false if there was nobody or nothing to send.
+     */
+    private boolean tryNotifyUserWithBookReviews(Book book, String ISBN, String userId) {
+        User user = databaseService.getUserById(userId);
+        if (user == null) {
+            return false;
+        }
+        String notificationMessage = buildReviewsNotificationOrNull(book, ISBN);
+        if (notificationMessage == null) {
+            return false;
+        }
+        sendNotification(user, userId, notificationMessage);
+        return true;
+    }
+
+    /**
+     * Sends a notification to a registered user.
+     *
+     * @param user                The user to be notified.
+     * @param userId              The Id of the user, as given by the caller.
+     * @param notificationMessage The message to be sent.
+     */
+    private void sendNotification(User user, String userId, String notificationMessage) {
+        // With an outbox, the notification is done once it is on disk; the outbox delivers it until it succeeds.
+        if (notificationOutbox != null) {
+            notificationOutbox.enqueue(userId, notificationMessage);
+            return;
+        }
+
+        // Attempt to send the notification to the user, retrying failures as the dispatcher's delivery allows.
+        notificationDispatcher.deliver(user, notificationMessage);
+    }
+
+    /**
+     * Notifies a user with the reviews of a book like {@link #notifyUserWithBookReviews(Book, String, String)},
+     * but returns as soon as the first attempt was made; delayed retries hold no thread.
+     *
+     * @param book   The book whose reviews are to be sent.
+     * @param ISBN   The ISBN of the book, as given by the caller.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return A future completed once the notification was delivered.
+     */
+    private CompletableFuture<Void> notifyUserWithBookReviewsAsync(Book book, String ISBN, String userId) {
+        User user = getUserToNotify(userId);
+        String notificationMessage = buildReviewsNotification(book, ISBN);
+        if (notificationOutbox != null) {
+            notificationOutbox.enqueue(userId, notificationMessage);
+            return CompletableFuture.completedFuture(null);
+        }
+        return notificationDispatcher.deliverAsync(user, notificationMessage);
+    }
+
+    /**
+     * Retrieves the registered user to be notified.
+     *
+     * @param userId The validated Id of the user.
+     * @return The user.
+     */
+    private User getUserToNotify(String userId) {
         // Retrieve the user associated with the user Id from the database.
         User user = databaseService.getUserById(userId);
 
@@ -279,45 +1306,119 @@ public class Library {
         if (user == null) {
             throw new UserNotRegisteredException("User not found!");
         }
+        return user;
+    }
+
+    /**
+     * Fetches the reviews of a book and builds the notification message carrying them.
+     *
+     * @param book The book whose reviews are to be sent.
+     * @param ISBN The ISBN of the book, as given by the caller.
+     * @return The notification message.
+     */
+    private String buildReviewsNotification(Book book, String ISBN) {
+        String notificationMessage = buildReviewsNotificationOrNull(book, ISBN);
+
+        // If no reviews are found, throw an exception.
+        if (notificationMessage == null) {
+            throw new NoReviewsFoundException("No reviews found!");
+        }
+        return notificationMessage;
+    }
 
-        // Fetch the list of reviews for the specified book using the review service.
-        List<String> reviews;
+    /**
+     * Fetches the reviews of a book and builds the notification message carrying them.
+     *
+     * @param book The book whose reviews are to be sent.
+     * @param ISBN The ISBN of the book, as given by the caller.
+     * @return The notification message, or null if the book has no reviews.
+     */
+    private String buildReviewsNotificationOrNull(Book book, String ISBN) {
+        // Lease a connection first: if none can be had, such as on a timeout of a busy pool, nothing was used,
+        // so nothing is handed back and the shared service stays open.
+        ReviewService connection;
         try {
-            reviews = reviewService.getReviewsForBook(ISBN);
+            connection = reviewService.lease();
+        } catch (ReviewException e) {
+            throw new ReviewServiceUnavailableException("Review service unavailable!");
+        }
+        // A service that does not lease, such as a plain mock, hands out no connection; use the service itself.
+        boolean leased = connection != null;
+        if (!leased) {
+            connection = reviewService;
+        }
+
+        // Stream the reviews for the specified book from the review service.
+        try {
+            // When the message only holds the top reviews, only those are fetched.
+            int maxReviews = reviewMessageBuilder.getMaxReviews();
+            Iterator<String> reviews = maxReviews == Integer.MAX_VALUE
+                    ? connection.iterateReviewsForBook(ISBN)
+                    : new PagedReviewIterator(connection, ISBN, maxReviews, maxReviews);
+
+            // A service that does not stream, such as a plain mock, hands out no iterator; read its list instead.
+            if (reviews == null) {
+                List<String> list = connection.getReviewsForBook(ISBN);
+                reviews = list == null ? null : list.iterator();
+            }
 
-            // If no reviews are found or the review list is empty, throw an exception.
-            if (reviews == null || reviews.isEmpty()) {
-                throw new NoReviewsFoundException("No reviews found!");
+            // If no reviews are found, there is nothing to send.
+            if (reviews == null || !reviews.hasNext()) {
+                return null;
             }
+
+            // Construct the notification message containing the book's title and its reviews.
+            // The reviews may still be fetched while it is written, so the connection is kept until it is complete.
+            return reviewMessageBuilder.build(book.getTitle(), reviews);
         } catch (ReviewException e) {
             // If there's an issue fetching the reviews, throw a service unavailable exception.
             throw new ReviewServiceUnavailableException("Review service unavailable!");
         } finally {
-            // Always close the review service connection after attempting to fetch the reviews.
-            reviewService.close();
+            // Always hand the review service connection back after attempting to fetch the reviews.
+            if (leased) {
+                reviewService.release(connection);
+            } else {
+                reviewService.close();
+            }
         }
+    }
 
-        // Construct the notification message containing the book's title and its reviews.
-        String notificationMessage = "Reviews for '" + book.getTitle() + "':\n" + String.join("\n", reviews);
+    /**
+     * Notifies a user with the reviews of a specified book without waiting for the notification.
+     * The arguments are validated on the calling thread; looking up the book and the user, fetching the reviews
+     * and delivering the notification run on the library's notification dispatcher.
+     *
+     * @param ISBN   The ISBN of the book whose reviews are to be sent.
+     * @param userId The Id of the user to whom the reviews are to be sent.
+     * @return A future completed once the notification was delivered, or failed with the same exception
+     *         {@link #notifyUserWithBookReviews(String, String)} would have thrown.
+     */
+    public CompletableFuture<Void> notifyUserWithBookReviewsAsync(String ISBN, String userId) {
+        // Validate the ISBN. If it's invalid, throw an exception.
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
 
-        // Attempt to send the notification to the user. If it fails, retry up to 5 times.
-        int retryCount = 0;
-        while (retryCount < 5) {
-            try {
-                user.sendNotification(notificationMessage);
-                return;
-            } catch (NotificationException e) {
-                retryCount++;
-                System.err.println("Notification failed! Retrying attempt " + retryCount + "/5");
-            }
+        // Validate the user Id format (should be a 12-digit number).
+        // If it's invalid, throw an exception.
+        if (!IdentifierValidator.isValidUserId(userId)) {
+            throw new IllegalArgumentException("Invalid user Id.");
         }
 
-        // If all retry attempts fail, throw a notification exception.
-        throw new NotificationException("Notification failed!");
+        return notificationDispatcher.submit(() -> {
+            Book book = databaseService.getBookByISBN(ISBN);
+            if (book == null) {
+                throw new BookNotFoundException("Book not found!");
+            }
+            return notifyUserWithBookReviewsAsync(book, ISBN, userId);
+        }).thenCompose(delivered -> delivered);
     }
 
     /**
      * Fetches a book by its ISBN and notifies the user with its reviews.
+     * The notification is optional: if it fails, the book is still returned and the failure is counted in
+     * {@link #getFailedNotificationCount()}.
      *
      * @param ISBN   The International Standard Book Number of the book to be fetched.
      * @param userId The Id of the user to be notified with the book's reviews.
@@ -325,13 +1426,14 @@ public class Library {
      */
     public Book getBookByISBN(String ISBN, String userId) {
         // Validate the ISBN. If it's invalid, throw an exception.
-        if (!isISBNValid(ISBN)) {
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
             throw new IllegalArgumentException("Invalid ISBN.");
         }
 
         // Validate the user Id format (should be a 12-digit number). 
         // If it's invalid, throw an exception.
-        if (userId == null || !userId.matches("\\d{12}")) {
+        if (!IdentifierValidator.isValidUserId(userId)) {
             throw new IllegalArgumentException("Invalid user Id.");
         }
 
@@ -348,16 +1450,173 @@ public class Library {
             throw new BookAlreadyBorrowedException("Book was already borrowed!");
         }
 
-        // Attempt to notify the user with the book's reviews.
-        // This step is optional, so even if it fails, the book should still be returned.
+        // Attempt to notify the user with the book's reviews, reusing the book fetched above.
+        // This step is optional, so even if it fails, the book should still be returned; the failure is counted.
+        boolean notified;
         try {
-            notifyUserWithBookReviews(ISBN, userId);
-        } catch (Exception e) {
-            System.out.println("Notification failed!");
+            notified = tryNotifyUserWithBookReviews(book, ISBN, userId);
+        } catch (RuntimeException e) {
+            notified = false;
+        }
+        if (!notified) {
+            failedNotifications.incrementAndGet();
         }
 
         // Return the retrieved book.
         return book;
     }
-}
 
+    /**
+     * Fetches a book by its ISBN and notifies the user with its reviews without waiting for the notification.
+     * The book is looked up on the calling thread; the notification is handed to the library's notification
+     * dispatcher, and its failure does not affect the returned book but is counted in
+     * {@link #getFailedNotificationCount()}.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be fetched.
+     * @param userId The Id of the user to be notified with the book's reviews.
+     * @return A future holding the book, or failed with the exception {@link #getBookByISBN(String, String)}
+     *         would have thrown for a missing or borrowed book.
+     */
+    public CompletableFuture<Book> getBookByISBNAsync(String ISBN, String userId) {
+        // Validate the ISBN. If it's invalid, throw an exception.
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+
+        // Validate the user Id format (should be a 12-digit number).
+        // If it's invalid, throw an exception.
+        if (!IdentifierValidator.isValidUserId(userId)) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+
+        CompletableFuture<Book> result = new CompletableFuture<>();
+        Book book = databaseService.getBookByISBN(ISBN);
+        if (book == null) {
+            result.completeExceptionally(new BookNotFoundException("Book not found!"));
+            return result;
+        }
+        if (book.isBorrowed()) {
+            result.completeExceptionally(new BookAlreadyBorrowedException("Book was already borrowed!"));
+            return result;
+        }
+
+        // The notification is optional, so its failure is only counted.
+        notificationDispatcher.submit(() -> notifyUserWithBookReviewsAsync(book, ISBN, userId))
+                .thenCompose(delivered -> delivered)
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        failedNotifications.incrementAndGet();
+                    }
+                });
+
+        result.complete(book);
+        return result;
+    }
+
+    /**
+     * Retrieves the number of review notifications sent by {@link #getBookByISBN(String, String)} and
+     * {@link #getBookByISBNAsync(String, String)} that failed, including those for a missing user or a book without
+     * reviews.
+     *
+     * @return The number of failed notifications.
+     */
+    public long getFailedNotificationCount() {
+        return failedNotifications.get();
+    }
+
+    /**
+     * Finds a page of the books of an author.
+     *
+     * @param author The author of the books, matched regardless of case, accents and extra whitespace.
+     * @param offset The number of matching books to skip, the sum of the sizes of the previous pages.
+     * @param limit  The maximum number of books in the page.
+     * @return The books in the page, in the order they were added. A page smaller than limit is the last one.
+     * @throws UnsupportedOperationException If the database does not index authors.
+     */
+    public List<Book> getBooksByAuthor(String author, int offset, int limit) {
+        // Validate the author. If it's blank, throw an exception.
+        if (author == null || author.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid author.");
+        }
+        checkPage(offset, limit);
+        return Collections.unmodifiableList(Arrays.asList(databaseService.findBooksByAuthor(author, offset, limit)));
+    }
+
+    /**
+     * Finds a page of the books whose title starts with a prefix.
+     *
+     * @param prefix The beginning of the title, matched regardless of case, accents and extra whitespace.
+     * @param offset The number of matching books to skip, the sum of the sizes of the previous pages.
+     * @param limit  The maximum number of books in the page.
+     * @return The books in the page, ordered by title. A page smaller than limit is the last one.
+     * @throws UnsupportedOperationException If the database does not index titles.
+     */
+    public List<Book> getBooksByTitlePrefix(String prefix, int offset, int limit) {
+        // Validate the prefix. If it's blank, throw an exception.
+        if (prefix == null || prefix.trim().isEmpty()) {
+            throw new IllegalArgumentException("Invalid title prefix.");
+        }
+        checkPage(offset, limit);
+        return Collections.unmodifiableList(Arrays.asList(databaseService.findBooksByTitlePrefix(prefix, offset, limit)));
+    }
+
+    /**
+     * Retrieves the user currently holding a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The user holding the book, or null if the book is not borrowed.
+     */
+    public User getBorrower(String ISBN) {
+        // Validate the ISBN. If it's invalid, throw an exception.
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+
+        // The loan index answers with the borrower's Id, which is then resolved to the user.
+        String borrowerId = databaseService.getBorrowerId(key);
+        return borrowerId == null ? null : databaseService.getUserById(borrowerId);
+    }
+
+    /**
+     * Retrieves the books a user currently holds.
+     *
+     * @param userId The Id of the user.
+     * @return The user's books, in the order they were borrowed. Empty if the user holds none.
+     */
+    public List<Book> getBorrowedBooks(String userId) {
+        // Validate the user Id format (should be a 12-digit number).
+        // If it's invalid, throw an exception.
+        if (!IdentifierValidator.isValidUserId(userId)) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+
+        // Fetch all the books of the user's loans in one call.
+        long[] ISBNs = databaseService.getBorrowedISBNs(userId);
+        if (ISBNs.length == 0) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(databaseService.getBooksByISBN(ISBNs)));
+    }
+
+    private static void checkPage(int offset, int limit) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid offset.");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit.");
+        }
+    }
+
+    // A user a reserved book was lent to, notified once the locks of the return are released.
+    private static final class ReadyReservation {
+        final Book book;
+        final String userId;
+
+        ReadyReservation(Book book, String userId) {
+            this.book = book;
+            this.userId = userId;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ac.il.bgu.qa;
+
+/**
+ * Outcome of a {@link Library} operation called through its {@code try} methods.
+ * Each constant stands for the exception the throwing variant of the operation would have thrown, so expected
+ * outcomes such as a borrowed book cost a comparison instead of an exception.
+ */
+public enum LibraryStatus {
+
+    /**
+     * The operation succeeded.
+     */
+    SUCCESS,
+
+    /**
+     * The ISBN is not a valid ISBN-13; the throwing variant throws an {@link IllegalArgumentException}.
+     */
+    INVALID_ISBN,
+
+    /**
+     * The user Id is not a 12 digit number; the throwing variant throws an {@link IllegalArgumentException}.
+     */
+    INVALID_USER_ID,
+
+    /**
+     * No book has the ISBN; the throwing variant throws a {@link ac.il.bgu.qa.errors.BookNotFoundException}.
+     */
+    BOOK_NOT_FOUND,
+
+    /**
+     * No user has the Id; the throwing variant throws a {@link ac.il.bgu.qa.errors.UserNotRegisteredException}.
+     */
+    USER_NOT_REGISTERED,
+
+    /**
+     * The book is borrowed; the throwing variant throws a {@link ac.il.bgu.qa.errors.BookAlreadyBorrowedException}.
+     */
+    BOOK_ALREADY_BORROWED,
+
+    /**
+     * The book is not borrowed; the throwing variant throws a {@link ac.il.bgu.qa.errors.BookNotBorrowedException}.
+     */
+    BOOK_NOT_BORROWED;
+
+    /**
+     * Checks whether the operation succeeded.
+     *
+     * @return true for {@link #SUCCESS}, otherwise false.
+     */
+    public boolean isSuccess() {
+        return this == SUCCESS;
+    }
+}
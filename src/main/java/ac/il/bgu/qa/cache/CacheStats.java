@@ -0,0 +1,79 @@
+package ac.il.bgu.qa.cache;
+
+/**
+ * Immutable snapshot of the counters of a cache.
+ */
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long expirations;
+
+    /**
+     * Constructs a new CacheStats snapshot.
+     *
+     * @param hits        The number of lookups answered from the cache.
+     * @param misses      The number of lookups that had to load the value.
+     * @param evictions   The number of entries dropped to stay within the size bound.
+     * @param expirations The number of entries dropped because they outlived their time to live.
+     */
+    public CacheStats(long hits, long misses, long evictions, long expirations) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+    }
+
+    /**
+     * Retrieves the number of lookups answered from the cache.
+     *
+     * @return The hit count.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Retrieves the number of lookups that had to load the value.
+     *
+     * @return The miss count.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Retrieves the number of entries dropped to stay within the size bound.
+     *
+     * @return The eviction count.
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Retrieves the number of entries dropped because they outlived their time to live.
+     *
+     * @return The expiration count.
+     */
+    public long getExpirations() {
+        return expirations;
+    }
+
+    /**
+     * Retrieves the ratio of lookups answered from the cache.
+     *
+     * @return The hit rate between 0 and 1, or 0 if there were no lookups.
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", expirations=" + expirations + "}";
+    }
+}
@@ -0,0 +1,329 @@
+package ac.il.bgu.qa.cache;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ISBNKey;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.DatabaseService;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Read-through cache in front of another {@link DatabaseService}.
+ * Books and users are cached by ISBN key and user Id in bounded LRU caches with a time to live. A book missing from
+ * the cache is loaded through the same overload it was asked for, so the String methods reach the underlying
+ * database with the ISBN exactly as given.
+ * Every write goes to the underlying database first and then invalidates the affected entry, so a
+ * lookup after {@link #borrowBook} or {@link #returnBook} sees the new state of the book even if the
+ * underlying database returns a fresh object per lookup. Absent books and users are not cached.
+ */
+public class CachingDatabaseService implements DatabaseService {
+
+    private final DatabaseService delegate;
+    private final ExpiringLruCache<Long, Book> books;
+    private final ExpiringLruCache<String, User> users;
+
+    /**
+     * Constructs a new caching decorator.
+     *
+     * @param delegate    The database to be cached.
+     * @param maximumSize The maximal number of cached books, and separately of cached users.
+     * @param timeToLive  How long an entry stays valid after it was loaded.
+     * @param unit        The unit of the time to live.
+     */
+    public CachingDatabaseService(DatabaseService delegate, int maximumSize, long timeToLive, TimeUnit unit) {
+        this(delegate, maximumSize, unit.toNanos(timeToLive), System::nanoTime);
+    }
+
+    /**
+     * Constructs a new caching decorator with an explicit clock.
+     *
+     * @param delegate        The database to be cached.
+     * @param maximumSize     The maximal number of cached books, and separately of cached users.
+     * @param timeToLiveNanos How long an entry stays valid after it was loaded, in nanoseconds.
+     * @param clock           The source of the current time in nanoseconds.
+     */
+    public CachingDatabaseService(DatabaseService delegate, int maximumSize, long timeToLiveNanos, LongSupplier clock) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid database service.");
+        }
+        this.delegate = delegate;
+        this.books = new ExpiringLruCache<>(maximumSize, timeToLiveNanos, clock);
+        this.users = new ExpiringLruCache<>(maximumSize, timeToLiveNanos, clock);
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        delegate.addBook(ISBN, book);
+        invalidateBook(ISBN);
+    }
+
+    @Override
+    public void addBook(long ISBN, Book book) {
+        delegate.addBook(ISBN, book);
+        books.invalidate(ISBN);
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        delegate.registerUser(id, user);
+        users.invalidate(id);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            return delegate.getBookByISBN(ISBN);
+        }
+        // Cached by key, but a miss is loaded under the ISBN as given, which a String keyed database stores.
+        Book book = books.get(key);
+        if (book == null) {
+            long version = books.version(key);
+            book = delegate.getBookByISBN(ISBN);
+            if (book != null) {
+                books.putIfUnchanged(key, book, version);
+            }
+        }
+        return book;
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        Book book = books.get(ISBN);
+        if (book == null) {
+            long version = books.version(ISBN);
+            book = delegate.getBookByISBN(ISBN);
+            if (book != null) {
+                books.putIfUnchanged(ISBN, book, version);
+            }
+        }
+        return book;
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        if (userId == null) {
+            return delegate.getUserById(null);
+        }
+        User user = users.get(userId);
+        if (user == null) {
+            long version = users.version(userId);
+            user = delegate.getUserById(userId);
+            if (user != null) {
+                users.putIfUnchanged(userId, user, version);
+            }
+        }
+        return user;
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        delegate.borrowBook(ISBN, userId);
+        invalidateBook(ISBN);
+    }
+
+    @Override
+    public void borrowBook(long ISBN, String userId) {
+        delegate.borrowBook(ISBN, userId);
+        books.invalidate(ISBN);
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        delegate.returnBook(ISBN);
+        invalidateBook(ISBN);
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        delegate.returnBook(ISBN);
+        books.invalidate(ISBN);
+    }
+
+    @Override
+    public Book[] getBooksByISBN(long[] ISBNs) {
+        Book[] result = new Book[ISBNs.length];
+
+        // Answer what the cache holds and load the rest with a single call to the underlying database.
+        int[] missing = new int[ISBNs.length];
+        int misses = 0;
+        for (int i = 0; i < ISBNs.length; i++) {
+            result[i] = books.get(ISBNs[i]);
+            if (result[i] == null) {
+                missing[misses++] = i;
+            }
+        }
+        if (misses > 0) {
+            long[] keys = new long[misses];
+            long[] versions = new long[misses];
+            for (int j = 0; j < misses; j++) {
+                keys[j] = ISBNs[missing[j]];
+                versions[j] = books.version(keys[j]);
+            }
+            Book[] loaded = delegate.getBooksByISBN(keys);
+            for (int j = 0; j < misses; j++) {
+                result[missing[j]] = loaded[j];
+                if (loaded[j] != null) {
+                    books.putIfUnchanged(keys[j], loaded[j], versions[j]);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void addBooks(long[] ISBNs, Book[] books) {
+        try {
+            delegate.addBooks(ISBNs, books);
+        } finally {
+            // A batch may fail after writing some of its books, so every book is invalidated either way.
+            for (long ISBN : ISBNs) {
+                this.books.invalidate(ISBN);
+            }
+        }
+    }
+
+    @Override
+    public void borrowBooks(long[] ISBNs, String userId) {
+        try {
+            delegate.borrowBooks(ISBNs, userId);
+        } finally {
+            for (long ISBN : ISBNs) {
+                books.invalidate(ISBN);
+            }
+        }
+    }
+
+    @Override
+    public void returnBooks(long[] ISBNs) {
+        try {
+            delegate.returnBooks(ISBNs);
+        } finally {
+            for (long ISBN : ISBNs) {
+                books.invalidate(ISBN);
+            }
+        }
+    }
+
+    @Override
+    public Book[] getBooksByISBN(String[] ISBNs) {
+        Book[] result = new Book[ISBNs.length];
+        long[] keys = new long[ISBNs.length];
+
+        // Answer what the cache holds and load the rest, under the ISBNs as given, with a single call.
+        int[] missing = new int[ISBNs.length];
+        int misses = 0;
+        for (int i = 0; i < ISBNs.length; i++) {
+            keys[i] = ISBNKey.of(ISBNs[i]);
+            result[i] = keys[i] == ISBNKey.INVALID ? null : books.get(keys[i]);
+            if (result[i] == null) {
+                missing[misses++] = i;
+            }
+        }
+        if (misses > 0) {
+            String[] missingISBNs = new String[misses];
+            long[] versions = new long[misses];
+            for (int j = 0; j < misses; j++) {
+                missingISBNs[j] = ISBNs[missing[j]];
+                long key = keys[missing[j]];
+                versions[j] = key == ISBNKey.INVALID ? 0 : books.version(key);
+            }
+            Book[] loaded = delegate.getBooksByISBN(missingISBNs);
+            for (int j = 0; j < misses; j++) {
+                long key = keys[missing[j]];
+                result[missing[j]] = loaded[j];
+                if (loaded[j] != null && key != ISBNKey.INVALID) {
+                    books.putIfUnchanged(key, loaded[j], versions[j]);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void addBooks(String[] ISBNs, Book[] books) {
+        try {
+            delegate.addBooks(ISBNs, books);
+        } finally {
+            for (String ISBN : ISBNs) {
+                invalidateBook(ISBN);
+            }
+        }
+    }
+
+    @Override
+    public void borrowBooks(String[] ISBNs, String userId) {
+        try {
+            delegate.borrowBooks(ISBNs, userId);
+        } finally {
+            for (String ISBN : ISBNs) {
+                invalidateBook(ISBN);
+            }
+        }
+    }
+
+    @Override
+    public void returnBooks(String[] ISBNs) {
+        try {
+            delegate.returnBooks(ISBNs);
+        } finally {
+            for (String ISBN : ISBNs) {
+                invalidateBook(ISBN);
+            }
+        }
+    }
+
+    @Override
+    public Book[] findBooksByAuthor(String author, int offset, int limit) {
+        return delegate.findBooksByAuthor(author, offset, limit);
+    }
+
+    @Override
+    public Book[] findBooksByTitlePrefix(String prefix, int offset, int limit) {
+        return delegate.findBooksByTitlePrefix(prefix, offset, limit);
+    }
+
+    @Override
+    public String getBorrowerId(long ISBN) {
+        return delegate.getBorrowerId(ISBN);
+    }
+
+    @Override
+    public long[] getBorrowedISBNs(String userId) {
+        return delegate.getBorrowedISBNs(userId);
+    }
+
+    /**
+     * Retrieves the counters of the book cache.
+     *
+     * @return A snapshot of the book cache statistics.
+     */
+    public CacheStats getBookStats() {
+        return books.stats();
+    }
+
+    /**
+     * Retrieves the counters of the user cache.
+     *
+     * @return A snapshot of the user cache statistics.
+     */
+    public CacheStats getUserStats() {
+        return users.stats();
+    }
+
+    /**
+     * Drops every cached book and user, for example after the underlying database was changed directly.
+     */
+    public void invalidateAll() {
+        books.invalidateAll();
+        users.invalidateAll();
+    }
+
+    private void invalidateBook(String ISBN) {
+        long key = ISBNKey.of(ISBN);
+        if (key != ISBNKey.INVALID) {
+            books.invalidate(key);
+        }
+    }
+}
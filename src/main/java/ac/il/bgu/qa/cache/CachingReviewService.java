@@ -0,0 +1,271 @@
+package ac.il.bgu.qa.cache;
+
+import ac.il.bgu.qa.ISBNKey;
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.services.ReviewService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Caching wrapper around a {@link ReviewService}, keyed by the ISBN of the book.
+ * <ul>
+ *     <li>Reviews stay valid for a time to live after they were fetched.</li>
+ *     <li>A book without reviews is cached negatively for a separate, usually shorter, time to live.</li>
+ *     <li>Once reviews expire they are still served for a stale window while a background task refreshes them,
+ *     so a slow review backend only delays the refresh and not the caller.</li>
+ *     <li>Memory is bounded by the total number of cached reviews; the least recently used books are evicted first.</li>
+ * </ul>
+ * Failures of the review backend are never cached. Each fetch leases a connection from the underlying service and
+ * releases it afterwards, so {@link #close()} is a no-op and callers may keep calling it after every lookup.
+ * <p>
+ * The cache holds whole lists of reviews. Pages and iterators are therefore cut from the cached list, which is
+ * fetched in full on a miss; the paging and streaming of the underlying service are not used.
+ */
+public class CachingReviewService implements ReviewService {
+
+    private final ReviewService delegate;
+    private final long maximumWeight;
+    private final long timeToLiveNanos;
+    private final long negativeTimeToLiveNanos;
+    private final long staleWindowNanos;
+    private final Executor refreshExecutor;
+    private final LongSupplier clock;
+
+    // Cached reviews by ISBN key, the least recently used first. Guarded by this.
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    // Bumped by every invalidation so that fetches started before it are not cached.
+    private long version;
+
+    private long hits;
+    private long staleHits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    /**
+     * Constructs a new caching wrapper.
+     *
+     * @param delegate           The review service to be cached.
+     * @param maximumWeight      The maximal number of reviews kept in memory; a book without reviews counts as one.
+     * @param timeToLive         How long fetched reviews stay valid.
+     * @param negativeTimeToLive How long the absence of reviews stays valid.
+     * @param staleWindow        How long expired reviews are still served while being refreshed, 0 to disable.
+     * @param unit               The unit of the three durations.
+     * @param refreshExecutor    Runs the background refreshes, may be null when the stale window is 0.
+     */
+    public CachingReviewService(ReviewService delegate, long maximumWeight, long timeToLive, long negativeTimeToLive,
+                                long staleWindow, TimeUnit unit, Executor refreshExecutor) {
+        this(delegate, maximumWeight, unit.toNanos(timeToLive), unit.toNanos(negativeTimeToLive),
+                unit.toNanos(staleWindow), refreshExecutor, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new caching wrapper with an explicit clock.
+     *
+     * @param delegate                The review service to be cached.
+     * @param maximumWeight           The maximal number of reviews kept in memory.
+     * @param timeToLiveNanos         How long fetched reviews stay valid, in nanoseconds.
+     * @param negativeTimeToLiveNanos How long the absence of reviews stays valid, in nanoseconds.
+     * @param staleWindowNanos        How long expired reviews are still served while being refreshed, in nanoseconds.
+     * @param refreshExecutor         Runs the background refreshes, may be null when the stale window is 0.
+     * @param clock                   The source of the current time in nanoseconds.
+     */
+    public CachingReviewService(ReviewService delegate, long maximumWeight, long timeToLiveNanos,
+                                long negativeTimeToLiveNanos, long staleWindowNanos, Executor refreshExecutor,
+                                LongSupplier clock) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        } else if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Invalid maximum weight.");
+        } else if (timeToLiveNanos <= 0 || negativeTimeToLiveNanos <= 0 || staleWindowNanos < 0) {
+            throw new IllegalArgumentException("Invalid time to live.");
+        } else if (staleWindowNanos > 0 && refreshExecutor == null) {
+            throw new IllegalArgumentException("Invalid refresh executor.");
+        }
+        this.delegate = delegate;
+        this.maximumWeight = maximumWeight;
+        this.timeToLiveNanos = timeToLiveNanos;
+        this.negativeTimeToLiveNanos = negativeTimeToLiveNanos;
+        this.staleWindowNanos = staleWindowNanos;
+        this.refreshExecutor = refreshExecutor;
+        this.clock = clock;
+    }
+
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            return fetch(ISBN);
+        }
+
+        long version;
+        Entry stale = null;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                long age = clock.getAsLong() - entry.fetchedAt;
+                if (age < (entry.isNegative() ? negativeTimeToLiveNanos : timeToLiveNanos)) {
+                    hits++;
+                    return entry.reviews;
+                }
+                if (!entry.isNegative() && age < timeToLiveNanos + staleWindowNanos) {
+                    staleHits++;
+                    if (entry.refreshing) {
+                        return entry.reviews;
+                    }
+                    entry.refreshing = true;
+                    stale = entry;
+                } else {
+                    remove(key);
+                    expirations++;
+                }
+            }
+            if (stale == null) {
+                misses++;
+            }
+            version = this.version;
+        }
+
+        // The refresh is submitted outside the monitor, so an executor that blocks or runs the task on the
+        // calling thread does not stall every other lookup.
+        if (stale != null) {
+            scheduleRefresh(key, ISBN, stale, version);
+            return stale.reviews;
+        }
+        return store(key, fetch(ISBN), version);
+    }
+
+    /**
+     * Does nothing: the wrapper releases the underlying connection after each of its own fetches.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Retrieves the counters of the cache. Stale hits are counted as hits.
+     *
+     * @return A snapshot of the cache statistics.
+     */
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits + staleHits, misses, evictions, expirations);
+    }
+
+    /**
+     * Retrieves the number of lookups answered with expired reviews while they were being refreshed.
+     *
+     * @return The stale hit count.
+     */
+    public synchronized long getStaleHits() {
+        return staleHits;
+    }
+
+    /**
+     * Drops the cached reviews of a book, for example after a new review was written.
+     *
+     * @param ISBN The ISBN of the book.
+     */
+    public synchronized void invalidate(String ISBN) {
+        long key = ISBNKey.of(ISBN);
+        if (key != ISBNKey.INVALID) {
+            remove(key);
+            version++;
+        }
+    }
+
+    // Fetches from the review backend over a leased connection.
+    private List<String> fetch(String ISBN) {
+        ReviewService connection = delegate.lease();
+        try {
+            return connection.getReviewsForBook(ISBN);
+        } finally {
+            delegate.release(connection);
+        }
+    }
+
+    private void scheduleRefresh(long key, String ISBN, Entry stale, long version) {
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    store(key, fetch(ISBN), version);
+                } catch (RuntimeException e) {
+                    // Keep serving the stale reviews until the stale window ends.
+                    synchronized (this) {
+                        stale.refreshing = false;
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                stale.refreshing = false;
+            }
+        }
+    }
+
+    // Caches fetched reviews unless the book was invalidated meanwhile, and returns the list handed out to callers.
+    private List<String> store(long key, List<String> reviews, long expectedVersion) {
+        List<String> cached = reviews == null || reviews.isEmpty()
+                ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(reviews));
+        Entry entry = new Entry(cached, clock.getAsLong());
+        synchronized (this) {
+            if (version != expectedVersion) {
+                return cached;
+            }
+            remove(key);
+            if (entry.weight() <= maximumWeight) {
+                entries.put(key, entry);
+                weight += entry.weight();
+                evictToWeight();
+            }
+        }
+        return cached;
+    }
+
+    private void evictToWeight() {
+        Iterator<Map.Entry<Long, Entry>> eldest = entries.entrySet().iterator();
+        while (weight > maximumWeight && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(long key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight();
+        }
+    }
+
+    // Reviews of one book with the time they were fetched. Guarded by the enclosing cache.
+    private static class Entry {
+        final List<String> reviews;
+        final long fetchedAt;
+        boolean refreshing;
+
+        Entry(List<String> reviews, long fetchedAt) {
+            this.reviews = reviews;
+            this.fetchedAt = fetchedAt;
+        }
+
+        boolean isNegative() {
+            return reviews.isEmpty();
+        }
+
+        long weight() {
+            return Math.max(1, reviews.size());
+        }
+    }
+}
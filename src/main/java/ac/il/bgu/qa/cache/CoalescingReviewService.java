@@ -0,0 +1,195 @@
+package ac.il.bgu.qa.cache;
+
+import ac.il.bgu.qa.ISBNKey;
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.services.ReviewPage;
+import ac.il.bgu.qa.services.ReviewService;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wrapper around a {@link ReviewService} that lets concurrent requests for the same book share one fetch.
+ * The first caller for an ISBN fetches from the underlying service; callers arriving while that fetch is in
+ * flight wait for it and receive the same result or the same exception. Nothing is kept once the fetch ends,
+ * so this is not a cache; it combines well with {@link CachingReviewService} in front of it.
+ * <p>
+ * Each fetch leases its own connection from the underlying service and hands it back when the fetch ends, so
+ * fetches of different books never share a pooled connection and {@link #close()} is a no-op. A service without
+ * pooling leases itself to every fetch; it is reference counted instead and only closed once no fetch is using
+ * it, so one fetch never tears down the connection another fetch is still using.
+ * <p>
+ * Pages are not shared: each page request is forwarded to the underlying service over a connection leased for
+ * it. Iterators run over the list of a shared fetch, since an iterator cannot keep a leased connection.
+ */
+public class CoalescingReviewService implements ReviewService {
+
+    private final ReviewService delegate;
+
+    // Fetches in flight by ISBN key. An entry lives only while its fetch runs.
+    private final ConcurrentHashMap<Long, CompletableFuture<List<String>>> inFlight = new ConcurrentHashMap<>();
+
+    // Fetches holding a leased connection, and those of them using the underlying service itself. Guarded by this.
+    private int references;
+    private int sharedReferences;
+
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Constructs a new coalescing wrapper.
+     *
+     * @param delegate The review service whose fetches should be shared.
+     */
+    public CoalescingReviewService(ReviewService delegate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        }
+        this.delegate = delegate;
+    }
+
+    /**
+     * Fetches the reviews of a book, sharing the fetch with concurrent callers asking for the same ISBN.
+     *
+     * @param ISBN The ISBN of the book.
+     * @return The reviews of the book.
+     * @throws ReviewException If the shared fetch failed.
+     */
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            return fetch(ISBN);
+        }
+
+        CompletableFuture<List<String>> mine = new CompletableFuture<>();
+        CompletableFuture<List<String>> leader = inFlight.putIfAbsent(key, mine);
+        if (leader != null) {
+            coalesced.incrementAndGet();
+            return await(leader);
+        }
+
+        try {
+            List<String> reviews = fetch(ISBN);
+            mine.complete(reviews);
+            return reviews;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Fetches one page of the reviews of a book from the underlying service, without sharing it.
+     *
+     * @param ISBN         The ISBN of the book.
+     * @param cursor       The cursor of the page, or null for the first page.
+     * @param pageSizeHint The number of reviews the caller wants on the page.
+     * @return The page of reviews.
+     * @throws ReviewException If the fetch failed.
+     */
+    @Override
+    public ReviewPage getReviewsPage(String ISBN, String cursor, int pageSizeHint) throws ReviewException {
+        ReviewService connection = acquire();
+        try {
+            return connection.getReviewsPage(ISBN, cursor, pageSizeHint);
+        } finally {
+            giveBack(connection);
+        }
+    }
+
+    /**
+     * Does nothing: every fetch hands its connection back to the underlying service once it ends.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Retrieves the number of fetches sent to the underlying service.
+     *
+     * @return The fetch count.
+     */
+    public long getFetchCount() {
+        return fetches.get();
+    }
+
+    /**
+     * Retrieves the number of lookups answered by joining a fetch already in flight.
+     *
+     * @return The coalesced lookup count.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * Retrieves the number of fetches currently holding a connection of the underlying service.
+     *
+     * @return The number of outstanding references.
+     */
+    public synchronized int getReferenceCount() {
+        return references;
+    }
+
+    // Fetches over a connection leased for this fetch alone.
+    private List<String> fetch(String ISBN) {
+        ReviewService connection = acquire();
+        try {
+            fetches.incrementAndGet();
+            return connection.getReviewsForBook(ISBN);
+        } finally {
+            giveBack(connection);
+        }
+    }
+
+    // Leases a connection. The lease itself may wait for a pooled connection, so it runs outside the monitor.
+    private ReviewService acquire() {
+        ReviewService connection = delegate.lease();
+        // A service that does not lease, such as a plain mock, hands out no connection; it is used itself.
+        if (connection == null) {
+            connection = delegate;
+        }
+        synchronized (this) {
+            references++;
+            if (connection == delegate) {
+                sharedReferences++;
+            }
+        }
+        return connection;
+    }
+
+    // Hands a connection back. A service without pooling is only closed once no fetch is using it; this happens
+    // under the monitor so that a fetch starting meanwhile uses the service only after it was closed.
+    private void giveBack(ReviewService connection) {
+        synchronized (this) {
+            references--;
+            if (connection == delegate) {
+                if (--sharedReferences == 0) {
+                    delegate.close();
+                }
+                return;
+            }
+        }
+        delegate.release(connection);
+    }
+
+    private static List<String> await(CompletableFuture<List<String>> leader) {
+        try {
+            return leader.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package ac.il.bgu.qa.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache that evicts the least recently used entry and drops entries older than a time to live.
+ * All methods are thread-safe.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class ExpiringLruCache<K, V> {
+
+    // Entries in access order, the least recently used first.
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final int maximumSize;
+    private final long timeToLiveNanos;
+    // Source of the current time in nanoseconds, replaceable for tests.
+    private final LongSupplier clock;
+
+    // Number of version stripes, a power of two.
+    private static final int VERSION_STRIPES = 64;
+
+    // Invalidation counters striped by key hash. An invalidation only increments the stripe of its key, so a value
+    // loaded before it is not stored after it, while loads of keys in other stripes are unaffected.
+    private final long[] versions = new long[VERSION_STRIPES];
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    /**
+     * Constructs a new cache.
+     *
+     * @param maximumSize     The maximal number of entries.
+     * @param timeToLiveNanos How long an entry stays valid after it was stored, in nanoseconds.
+     * @param clock           The source of the current time in nanoseconds.
+     */
+    public ExpiringLruCache(int maximumSize, long timeToLiveNanos, LongSupplier clock) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Invalid maximum size.");
+        } else if (timeToLiveNanos <= 0) {
+            throw new IllegalArgumentException("Invalid time to live.");
+        } else if (clock == null) {
+            throw new IllegalArgumentException("Invalid clock.");
+        }
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = timeToLiveNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Retrieves a value if it is cached and still valid.
+     *
+     * @param key The key to look up.
+     * @return The cached value, or null if there is none.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (clock.getAsLong() - entry.storedAt >= timeToLiveNanos) {
+            entries.remove(key);
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Stores a value, evicting the least recently used entry if the cache is full.
+     *
+     * @param key   The key of the value.
+     * @param value The value to be cached.
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, clock.getAsLong()));
+        if (entries.size() > maximumSize) {
+            Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Stores a value loaded from the backing store, unless the key may have been invalidated since the load started.
+     *
+     * @param key             The key of the value.
+     * @param value           The value to be cached.
+     * @param expectedVersion The result of {@link #version(Object)} for the key, taken before the value was loaded.
+     * @return true if the value was stored, false if it may be stale and was dropped.
+     */
+    public synchronized boolean putIfUnchanged(K key, V value, long expectedVersion) {
+        if (versions[stripe(key)] != expectedVersion) {
+            return false;
+        }
+        put(key, value);
+        return true;
+    }
+
+    /**
+     * Retrieves the invalidation version of a key, to be passed to {@link #putIfUnchanged}.
+     * Keys share versions in stripes, so an invalidation may occasionally discard the load of another key.
+     *
+     * @param key The key about to be loaded.
+     * @return The number of invalidations of the key's stripe so far.
+     */
+    public synchronized long version(K key) {
+        return versions[stripe(key)];
+    }
+
+    /**
+     * Drops the value of a key.
+     *
+     * @param key The key to be invalidated.
+     */
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+        versions[stripe(key)]++;
+    }
+
+    /**
+     * Drops every cached value.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        for (int i = 0; i < VERSION_STRIPES; i++) {
+            versions[i]++;
+        }
+    }
+
+    /**
+     * Retrieves the number of cached entries, including expired ones not dropped yet.
+     *
+     * @return The number of entries.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Retrieves a snapshot of the cache's counters.
+     *
+     * @return The current statistics.
+     */
+    public synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, expirations);
+    }
+
+    private static int stripe(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (VERSION_STRIPES - 1);
+    }
+
+    // A cached value with the time it was stored.
+    private static class Entry<V> {
+        final V value;
+        final long storedAt;
+
+        Entry(V value, long storedAt) {
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+}
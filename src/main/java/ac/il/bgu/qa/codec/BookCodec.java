@@ -0,0 +1,149 @@
+package ac.il.bgu.qa.codec;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ISBNKey;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary encoding of a {@link Book}.
+ * <p>
+ * A book is {@code [byte 'B'][byte version][byte flags][ISBN][title][author]}. The flags hold the borrowed state
+ * and whether the ISBN is packed: a valid ISBN is stored as its {@link ISBNKey} in 6 bytes and decoded to its bare
+ * 13 digit form, any other ISBN as a string. Strings are length-prefixed UTF-8.
+ * <p>
+ * Books are read and written at the buffer's position. The ISBN key and the borrowed state of an encoded book can
+ * be read in place with {@link #peekISBNKey(ByteBuffer)} and {@link #peekBorrowed(ByteBuffer)}, without decoding it.
+ */
+public final class BookCodec {
+
+    /**
+     * The version written by this codec.
+     */
+    public static final byte VERSION = 1;
+
+    private static final byte TAG = 'B';
+
+    private static final int BORROWED = 1;
+    private static final int PACKED_ISBN = 1 << 1;
+
+    // Tag, version and flags.
+    private static final int HEADER_SIZE = 3;
+    private static final int PACKED_ISBN_SIZE = 6;
+
+    private BookCodec() {
+    }
+
+    /**
+     * Computes the number of bytes a book takes once encoded.
+     *
+     * @param book The book to be encoded.
+     * @return The encoded size.
+     */
+    public static int encodedSize(Book book) {
+        long key = ISBNKey.of(book.getISBN());
+        return HEADER_SIZE + (key == ISBNKey.INVALID ? CodecSupport.stringSize(book.getISBN()) : PACKED_ISBN_SIZE)
+                + CodecSupport.stringSize(book.getTitle()) + CodecSupport.stringSize(book.getAuthor());
+    }
+
+    /**
+     * Writes a book at the buffer's position.
+     *
+     * @param book   The book to be encoded.
+     * @param buffer The buffer to write to, with at least {@link #encodedSize(Book)} bytes remaining.
+     */
+    public static void encode(Book book, ByteBuffer buffer) {
+        if (book == null) {
+            throw new IllegalArgumentException("Invalid book.");
+        }
+        long key = ISBNKey.of(book.getISBN());
+        int flags = (book.isBorrowed() ? BORROWED : 0) | (key == ISBNKey.INVALID ? 0 : PACKED_ISBN);
+        buffer.put(TAG).put(VERSION).put((byte) flags);
+        if (key == ISBNKey.INVALID) {
+            CodecSupport.putString(buffer, book.getISBN());
+        } else {
+            buffer.putShort((short) (key >>> 32)).putInt((int) key);
+        }
+        CodecSupport.putString(buffer, book.getTitle());
+        CodecSupport.putString(buffer, book.getAuthor());
+    }
+
+    /**
+     * Reads a book at the buffer's position and moves the position past it.
+     *
+     * @param buffer The buffer to read from.
+     * @return The decoded book, borrowed if it was borrowed when encoded.
+     * @throws IllegalArgumentException If the buffer does not hold a book of a supported version.
+     */
+    public static Book decode(ByteBuffer buffer) {
+        int flags = readHeader(buffer);
+        String ISBN = (flags & PACKED_ISBN) != 0 ? ISBNKey.toString(getPackedISBN(buffer)) : CodecSupport.getString(buffer);
+        Book book = new Book(ISBN, CodecSupport.getString(buffer), CodecSupport.getString(buffer));
+        if ((flags & BORROWED) != 0) {
+            book.borrow();
+        }
+        return book;
+    }
+
+    /**
+     * Moves the buffer's position past an encoded book without decoding it.
+     *
+     * @param buffer The buffer positioned at the book.
+     */
+    public static void skip(ByteBuffer buffer) {
+        int flags = readHeader(buffer);
+        if ((flags & PACKED_ISBN) != 0) {
+            buffer.position(buffer.position() + PACKED_ISBN_SIZE);
+        } else {
+            CodecSupport.skipString(buffer);
+        }
+        CodecSupport.skipString(buffer);
+        CodecSupport.skipString(buffer);
+    }
+
+    /**
+     * Reads the ISBN key of the book at the buffer's position, leaving the position unchanged.
+     *
+     * @param buffer The buffer positioned at the book.
+     * @return The ISBN key, or {@link ISBNKey#INVALID} if the book's ISBN is not a valid ISBN-13.
+     */
+    public static long peekISBNKey(ByteBuffer buffer) {
+        int start = buffer.position();
+        checkHeader(buffer, start);
+        if ((buffer.get(start + 2) & PACKED_ISBN) == 0) {
+            return ISBNKey.INVALID;
+        }
+        return (long) (buffer.getShort(start + HEADER_SIZE) & 0xFFFF) << 32
+                | buffer.getInt(start + HEADER_SIZE + 2) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Reads whether the book at the buffer's position is borrowed, leaving the position unchanged.
+     *
+     * @param buffer The buffer positioned at the book.
+     * @return true if the book was borrowed when encoded, false otherwise.
+     */
+    public static boolean peekBorrowed(ByteBuffer buffer) {
+        checkHeader(buffer, buffer.position());
+        return (buffer.get(buffer.position() + 2) & BORROWED) != 0;
+    }
+
+    private static long getPackedISBN(ByteBuffer buffer) {
+        long high = buffer.getShort() & 0xFFFF;
+        return high << 32 | buffer.getInt() & 0xFFFFFFFFL;
+    }
+
+    private static int readHeader(ByteBuffer buffer) {
+        checkHeader(buffer, buffer.position());
+        buffer.position(buffer.position() + 2);
+        return buffer.get();
+    }
+
+    private static void checkHeader(ByteBuffer buffer, int start) {
+        if (buffer.get(start) != TAG) {
+            throw new IllegalArgumentException("Invalid book encoding.");
+        } else if (buffer.get(start + 1) != VERSION) {
+            throw new IllegalArgumentException("Unsupported book encoding version.");
+        }
+    }
+}
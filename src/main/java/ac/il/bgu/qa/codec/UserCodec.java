@@ -0,0 +1,94 @@
+package ac.il.bgu.qa.codec;
+
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.validation.IdentifierValidator;
+
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+/**
+ * Compact binary encoding of a {@link User}.
+ * <p>
+ * A user is {@code [byte 'U'][byte version][byte flags][Id][name]}. A valid 12 digit Id is packed into 5 bytes,
+ * any other Id is stored as a length-prefixed UTF-8 string, as is the name. The notification service is not
+ * encoded; decoding asks a resolver for it.
+ */
+public final class UserCodec {
+
+    /**
+     * The version written by this codec.
+     */
+    public static final byte VERSION = 1;
+
+    private static final byte TAG = 'U';
+
+    private static final int PACKED_ID = 1;
+
+    // Tag, version and flags.
+    private static final int HEADER_SIZE = 3;
+    private static final int PACKED_ID_SIZE = 5;
+
+    private UserCodec() {
+    }
+
+    /**
+     * Computes the number of bytes a user takes once encoded.
+     *
+     * @param user The user to be encoded.
+     * @return The encoded size.
+     */
+    public static int encodedSize(User user) {
+        long key = IdentifierValidator.parseUserId(user.getId());
+        return HEADER_SIZE + (key < 0 ? CodecSupport.stringSize(user.getId()) : PACKED_ID_SIZE)
+                + CodecSupport.stringSize(user.getName());
+    }
+
+    /**
+     * Writes a user at the buffer's position.
+     *
+     * @param user   The user to be encoded.
+     * @param buffer The buffer to write to, with at least {@link #encodedSize(User)} bytes remaining.
+     */
+    public static void encode(User user, ByteBuffer buffer) {
+        if (user == null) {
+            throw new IllegalArgumentException("Invalid user.");
+        }
+        long key = IdentifierValidator.parseUserId(user.getId());
+        buffer.put(TAG).put(VERSION).put((byte) (key < 0 ? 0 : PACKED_ID));
+        if (key < 0) {
+            CodecSupport.putString(buffer, user.getId());
+        } else {
+            buffer.put((byte) (key >>> 32)).putInt((int) key);
+        }
+        CodecSupport.putString(buffer, user.getName());
+    }
+
+    /**
+     * Reads a user at the buffer's position and moves the position past it.
+     *
+     * @param buffer               The buffer to read from.
+     * @param notificationServices Finds the notification service of the user, by user Id.
+     * @return The decoded user.
+     * @throws IllegalArgumentException If the buffer does not hold a user of a supported version.
+     */
+    public static User decode(ByteBuffer buffer, Function<String, NotificationService> notificationServices) {
+        int start = buffer.position();
+        if (buffer.get(start) != TAG) {
+            throw new IllegalArgumentException("Invalid user encoding.");
+        } else if (buffer.get(start + 1) != VERSION) {
+            throw new IllegalArgumentException("Unsupported user encoding version.");
+        }
+        buffer.position(start + 2);
+        int flags = buffer.get();
+        String id;
+        if ((flags & PACKED_ID) != 0) {
+            long high = buffer.get() & 0xFF;
+            id = String.format("%012d", high << 32 | buffer.getInt() & 0xFFFFFFFFL);
+        } else {
+            id = CodecSupport.getString(buffer);
+        }
+        String name = CodecSupport.getString(buffer);
+        return new User(name, id, notificationServices.apply(id));
+    }
+}
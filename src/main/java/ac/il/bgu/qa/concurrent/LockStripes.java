@@ -0,0 +1,107 @@
+package ac.il.bgu.qa.concurrent;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared by hashing keys onto them.
+ * Operations on keys of different stripes run in parallel while operations on the same key serialise,
+ * without allocating a lock per key.
+ */
+public class LockStripes {
+
+    private final Lock[] locks;
+
+    /**
+     * Constructs a set of lock stripes.
+     *
+     * @param stripes The minimal number of stripes, rounded up to a power of two.
+     */
+    public LockStripes(int stripes) {
+        if (stripes <= 0 || stripes > (1 << 20)) {
+            throw new IllegalArgumentException("Invalid number of stripes.");
+        }
+        int size = Integer.highestOneBit(stripes - 1) << 1;
+        if (stripes == 1) {
+            size = 1;
+        }
+        locks = new Lock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Constructs lock stripes sized for the number of available processors.
+     */
+    public LockStripes() {
+        this(Runtime.getRuntime().availableProcessors() * 16);
+    }
+
+    /**
+     * Retrieves the lock guarding a key.
+     *
+     * @param key The key to be locked.
+     * @return The lock of the key's stripe.
+     */
+    public Lock forKey(long key) {
+        return locks[indexOf(key)];
+    }
+
+    /**
+     * Retrieves the index of the stripe guarding a key.
+     * Callers that hold several stripes at once acquire them in increasing index order.
+     *
+     * @param key The key to be locked.
+     * @return The index of the key's stripe.
+     */
+    public int indexOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & (locks.length - 1);
+    }
+
+    /**
+     * Retrieves the lock of a stripe.
+     *
+     * @param index The index of the stripe.
+     * @return The lock of the stripe.
+     */
+    public Lock get(int index) {
+        return locks[index];
+    }
+
+    /**
+     * Retrieves the distinct locks guarding a set of keys, in increasing stripe order.
+     *
+     * @param keys The keys to be locked.
+     * @return The locks to acquire in the returned order.
+     */
+    public Lock[] forKeys(long[] keys) {
+        int[] indexes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            indexes[i] = indexOf(keys[i]);
+        }
+        Arrays.sort(indexes);
+        int distinct = 0;
+        for (int i = 0; i < indexes.length; i++) {
+            if (i == 0 || indexes[i] != indexes[i - 1]) {
+                indexes[distinct++] = indexes[i];
+            }
+        }
+        Lock[] result = new Lock[distinct];
+        for (int i = 0; i < distinct; i++) {
+            result[i] = locks[indexes[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves the number of stripes.
+     *
+     * @return The number of locks.
+     */
+    public int size() {
+        return locks.length;
+    }
+}
@@ -0,0 +1,18 @@
+package ac.il.bgu.qa.errors;
+
+/**
+ * Represents a custom exception that is thrown when the database fails
+ * to record a change to one item of a batch.
+ */
+public class DatabaseWriteException extends RuntimeException {
+
+    /**
+     * Constructs a new DatabaseWriteException with the specified detail message and cause.
+     *
+     * @param message the detail message.
+     * @param cause   the failure reported by the database.
+     */
+    public DatabaseWriteException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
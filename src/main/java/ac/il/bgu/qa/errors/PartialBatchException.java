@@ -0,0 +1,31 @@
+package ac.il.bgu.qa.errors;
+
+/**
+ * Represents a custom exception that is thrown when a batch write to the database
+ * fails part way, after some of its items were already written.
+ */
+public class PartialBatchException extends RuntimeException {
+
+    // Number of leading items of the batch that were written before the failure.
+    private final int appliedCount;
+
+    /**
+     * Constructs a new PartialBatchException for the failure of one item of a batch.
+     *
+     * @param appliedCount the number of leading items that were written, which is also the index of the failed item.
+     * @param cause        the failure of the item.
+     */
+    public PartialBatchException(int appliedCount, RuntimeException cause) {
+        super(cause.getMessage(), cause);
+        this.appliedCount = appliedCount;
+    }
+
+    /**
+     * Retrieves the number of leading items of the batch that were written before the failure.
+     *
+     * @return the number of written items.
+     */
+    public int getAppliedCount() {
+        return appliedCount;
+    }
+}
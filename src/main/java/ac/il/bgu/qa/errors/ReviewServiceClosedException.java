@@ -0,0 +1,17 @@
+package ac.il.bgu.qa.errors;
+
+/**
+ * Represents a custom exception that is thrown when a connection is requested
+ * from a review service that was already shut down.
+ */
+public class ReviewServiceClosedException extends ReviewException {
+
+    /**
+     * Constructs a new ReviewServiceClosedException with the specified detail message.
+     *
+     * @param message the detail message.
+     */
+    public ReviewServiceClosedException(String message) {
+        super(message);
+    }
+}
@@ -6,6 +6,13 @@ package ac.il.bgu.qa.errors;
  */
 public class UserNotRegisteredException extends RuntimeException {
 
+    /**
+     * Shared instance without a stack trace, for hot paths that signal this outcome often.
+     * Its stack trace and suppressed exceptions cannot be changed, so it can be thrown from any thread.
+     */
+    public static final UserNotRegisteredException STACKLESS =
+            new UserNotRegisteredException("User not found!", false);
+
     /**
      * Constructs a new UserNotRegisteredException with the specified detail message.
      *
@@ -14,4 +21,14 @@ public class UserNotRegisteredException extends RuntimeException {
     public UserNotRegisteredException(String message) {
         super(message);
     }
+
+    /**
+     * Constructs a new UserNotRegisteredException with the specified detail message, optionally without a stack trace.
+     *
+     * @param message            the detail message.
+     * @param writableStackTrace false to skip capturing the stack trace.
+     */
+    protected UserNotRegisteredException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
 }
@@ -0,0 +1,106 @@
+package ac.il.bgu.qa.notifications;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calling a notification service that keeps failing.
+ * After a number of consecutive failures the breaker opens and rejects calls for a cool-down period. It then lets a
+ * single trial call through: if the trial succeeds the breaker closes again, otherwise it stays open for another
+ * period. A trial whose outcome was not reported within a cool-down period is considered lost, and the next call
+ * becomes a new trial, so a caller that dies mid-trial cannot keep the breaker half open. All methods are
+ * thread-safe.
+ */
+public class CircuitBreaker {
+
+    /**
+     * The states of a circuit breaker.
+     */
+    public enum State {
+        /** Calls pass through. */
+        CLOSED,
+        /** Calls are rejected until the cool-down period ends. */
+        OPEN,
+        /** One trial call is in progress; other calls are rejected until it reports or a cool-down period ends. */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier clock;
+
+    // Guarded by this.
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    // When the breaker opened, or when the current trial call started.
+    private long openedAt;
+
+    /**
+     * Constructs a new closed circuit breaker.
+     *
+     * @param failureThreshold The number of consecutive failures that opens the breaker.
+     * @param openNanos        How long the breaker stays open before a trial call, in nanoseconds.
+     * @param clock            The source of the current time in nanoseconds.
+     */
+    public CircuitBreaker(int failureThreshold, long openNanos, LongSupplier clock) {
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("Invalid failure threshold.");
+        } else if (openNanos < 0) {
+            throw new IllegalArgumentException("Invalid open duration.");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * Asks whether a call may be made now. A caller that is allowed must report the outcome with
+     * {@link #onSuccess()} or {@link #onFailure()}.
+     *
+     * @return true if the call may be made, false if it should fail fast.
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+            case HALF_OPEN:
+                long now = clock.getAsLong();
+                if (now - openedAt >= openNanos) {
+                    state = State.HALF_OPEN;
+                    openedAt = now;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Records a successful call, closing the breaker.
+     */
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Records a failed call, opening the breaker if the trial call failed or too many calls failed in a row.
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.getAsLong();
+        }
+    }
+
+    /**
+     * Retrieves the current state of the breaker.
+     *
+     * @return The state.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,219 @@
+package ac.il.bgu.qa.notifications;
+
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.services.NotificationService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NotificationService} that batches the notifications of each user into a single digest.
+ * The first notification for a user opens a window; the messages received for that user until the window ends,
+ * or until the batch reaches its maximum size, are joined and sent to the underlying service in one call.
+ * Digests are delivered through a {@link NotificationDelivery}, so they are retried and guarded like any other
+ * notification. {@link #close()} sends every open batch and makes later notifications pass straight through.
+ * <p>
+ * Accepting a notification never fails, since it is only buffered; delivery failures are counted instead. If the
+ * scheduler refuses to end a new window, for example because it was shut down, the message is sent on its own.
+ */
+public class NotificationAggregator implements NotificationService, AutoCloseable {
+
+    // Separates the messages of a digest.
+    private static final String SEPARATOR = "\n\n";
+
+    private final NotificationService delegate;
+    private final NotificationDelivery delivery;
+    private final int maxMessages;
+    private final long windowNanos;
+    private final ScheduledExecutorService scheduler;
+
+    // Open batches by user Id. Guarded by this.
+    private final Map<String, Batch> batches = new HashMap<>();
+    private boolean closed;
+
+    private long received;
+    private long delivered;
+    private long failed;
+
+    /**
+     * Constructs a new aggregator that delivers digests with up to 5 immediate attempts.
+     *
+     * @param delegate    The service receiving the digests.
+     * @param maxMessages The number of messages that completes a batch before its window ends.
+     * @param window      How long a batch stays open after its first message.
+     * @param unit        The unit of the window.
+     * @param scheduler   Ends the windows.
+     */
+    public NotificationAggregator(NotificationService delegate, int maxMessages, long window, TimeUnit unit,
+                                  ScheduledExecutorService scheduler) {
+        this(delegate, NotificationDelivery.immediate(), maxMessages, window, unit, scheduler);
+    }
+
+    /**
+     * Constructs a new aggregator.
+     *
+     * @param delegate    The service receiving the digests.
+     * @param delivery    How digests are retried and guarded.
+     * @param maxMessages The number of messages that completes a batch before its window ends.
+     * @param window      How long a batch stays open after its first message.
+     * @param unit        The unit of the window.
+     * @param scheduler   Ends the windows.
+     */
+    public NotificationAggregator(NotificationService delegate, NotificationDelivery delivery, int maxMessages,
+                                  long window, TimeUnit unit, ScheduledExecutorService scheduler) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        } else if (delivery == null) {
+            throw new IllegalArgumentException("Invalid notification delivery.");
+        } else if (maxMessages <= 0) {
+            throw new IllegalArgumentException("Invalid batch size.");
+        } else if (window <= 0) {
+            throw new IllegalArgumentException("Invalid window.");
+        } else if (scheduler == null) {
+            throw new IllegalArgumentException("Invalid scheduler.");
+        }
+        this.delegate = delegate;
+        this.delivery = delivery;
+        this.maxMessages = maxMessages;
+        this.windowNanos = unit.toNanos(window);
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Adds a message to the open batch of a user, sending the batch at once if it is full.
+     *
+     * @param userId  The unique identifier of the user to be notified.
+     * @param message The content of the notification message.
+     */
+    @Override
+    public void notifyUser(String userId, String message) throws NotificationException {
+        List<String> full;
+        synchronized (this) {
+            received++;
+            Batch batch = closed ? null : batches.get(userId);
+            if (batch == null && !closed) {
+                batch = open(userId);
+            }
+            if (batch == null) {
+                full = Collections.singletonList(message);
+            } else {
+                batch.messages.add(message);
+                if (batch.messages.size() < maxMessages) {
+                    return;
+                }
+                batches.remove(userId);
+                batch.cancelWindow();
+                full = batch.messages;
+            }
+        }
+        send(userId, full);
+    }
+
+    /**
+     * Sends every open batch and passes later notifications straight to the underlying service.
+     */
+    @Override
+    public void close() {
+        Map<String, Batch> open;
+        synchronized (this) {
+            closed = true;
+            open = new HashMap<>(batches);
+            batches.clear();
+        }
+        for (Map.Entry<String, Batch> entry : open.entrySet()) {
+            entry.getValue().cancelWindow();
+            send(entry.getKey(), entry.getValue().messages);
+        }
+    }
+
+    /**
+     * Retrieves the number of messages accepted so far.
+     *
+     * @return The received message count.
+     */
+    public synchronized long getReceivedCount() {
+        return received;
+    }
+
+    /**
+     * Retrieves the number of digests the underlying service accepted.
+     *
+     * @return The delivered digest count.
+     */
+    public synchronized long getDeliveredCount() {
+        return delivered;
+    }
+
+    /**
+     * Retrieves the number of digests that could not be delivered.
+     *
+     * @return The failed digest count.
+     */
+    public synchronized long getFailedCount() {
+        return failed;
+    }
+
+    /**
+     * Retrieves the number of users with an open batch.
+     *
+     * @return The open batch count.
+     */
+    public synchronized int getOpenBatchCount() {
+        return batches.size();
+    }
+
+    // Opens a batch for a user once its window end is scheduled. Returns null if the scheduler refused it. Called
+    // under this, so the window cannot end before the batch is published.
+    private Batch open(String userId) {
+        Batch batch = new Batch();
+        try {
+            batch.windowEnd = scheduler.schedule(() -> flush(userId, batch), windowNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+        batches.put(userId, batch);
+        return batch;
+    }
+
+    // Sends the batch when its window ends, unless it was already sent because it filled up.
+    private void flush(String userId, Batch expected) {
+        synchronized (this) {
+            if (batches.get(userId) != expected) {
+                return;
+            }
+            batches.remove(userId);
+        }
+        send(userId, expected.messages);
+    }
+
+    private void send(String userId, List<String> messages) {
+        delivery.deliverAsync(delegate, userId, String.join(SEPARATOR, messages)).whenComplete((ignored, e) -> {
+            synchronized (this) {
+                if (e == null) {
+                    delivered++;
+                } else {
+                    failed++;
+                }
+            }
+        });
+    }
+
+    // Messages of one user waiting for the end of their window. Guarded by the enclosing aggregator.
+    private static class Batch {
+        final List<String> messages = new ArrayList<>();
+        ScheduledFuture<?> windowEnd;
+
+        void cancelWindow() {
+            if (windowEnd != null) {
+                windowEnd.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package ac.il.bgu.qa.notifications;
+
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.services.NotificationService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Delivers notifications to users, retrying failures according to a {@link RetryPolicy} within a shared
+ * {@link RetryBudget}, and failing fast through one {@link CircuitBreaker} per {@link NotificationService}
+ * while that service is unhealthy.
+ * Delayed retries are scheduled on a {@link ScheduledExecutorService}, so no thread waits out a backoff;
+ * retries without delay run at once on the thread that saw the failure.
+ */
+public class NotificationDelivery {
+
+    // Breaker key for users whose notification service is unknown.
+    private static final Object UNKNOWN_SERVICE = new Object();
+
+    private final RetryPolicy retryPolicy;
+    private final RetryBudget retryBudget;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final ScheduledExecutorService scheduler;
+    private final LongSupplier clock;
+
+    // Circuit breakers by notification service.
+    private final ConcurrentHashMap<Object, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new delivery.
+     *
+     * @param retryPolicy      How often and after which delay failed notifications are retried.
+     * @param retryBudget      The budget shared by all retries.
+     * @param failureThreshold The number of consecutive failures of a notification service that opens its breaker,
+     *                         or 0 to never open it.
+     * @param openDuration     How long a breaker stays open before a trial call.
+     * @param unit             The unit of the open duration.
+     * @param scheduler        Runs the delayed retries, may be null if the retry policy never delays.
+     */
+    public NotificationDelivery(RetryPolicy retryPolicy, RetryBudget retryBudget, int failureThreshold,
+                                long openDuration, TimeUnit unit, ScheduledExecutorService scheduler) {
+        this(retryPolicy, retryBudget, failureThreshold, unit.toNanos(openDuration), scheduler, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new delivery with an explicit clock for the circuit breakers.
+     *
+     * @param retryPolicy      How often and after which delay failed notifications are retried.
+     * @param retryBudget      The budget shared by all retries.
+     * @param failureThreshold The number of consecutive failures that opens a breaker, or 0 to never open it.
+     * @param openNanos        How long a breaker stays open before a trial call, in nanoseconds.
+     * @param scheduler        Runs the delayed retries, may be null if the retry policy never delays.
+     * @param clock            The source of the current time in nanoseconds.
+     */
+    public NotificationDelivery(RetryPolicy retryPolicy, RetryBudget retryBudget, int failureThreshold,
+                                long openNanos, ScheduledExecutorService scheduler, LongSupplier clock) {
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("Invalid retry policy.");
+        } else if (retryBudget == null) {
+            throw new IllegalArgumentException("Invalid retry budget.");
+        } else if (failureThreshold < 0) {
+            throw new IllegalArgumentException("Invalid failure threshold.");
+        } else if (scheduler == null && retryPolicy.delayNanos(1, 0) > 0) {
+            throw new IllegalArgumentException("Invalid scheduler.");
+        }
+        this.retryPolicy = retryPolicy;
+        this.retryBudget = retryBudget;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openNanos;
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates the delivery Library uses by default: up to 5 attempts back to back, no budget and no breaker.
+     *
+     * @return A new delivery.
+     */
+    public static NotificationDelivery immediate() {
+        return new NotificationDelivery(RetryPolicy.immediate(5), RetryBudget.unlimited(), 0, 0, null, System::nanoTime);
+    }
+
+    /**
+     * Sends a notification to a user and waits for the outcome.
+     *
+     * @param user    The user to be notified.
+     * @param message The content of the notification.
+     * @throws NotificationException If every allowed attempt failed or the user's notification service is unhealthy.
+     */
+    public void deliver(User user, String message) throws NotificationException {
+        try {
+            deliverAsync(user, message).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new NotificationException("Notification failed!");
+        }
+    }
+
+    /**
+     * Sends a notification to a user without waiting for delayed retries.
+     *
+     * @param user    The user to be notified.
+     * @param message The content of the notification.
+     * @return A future completed once the notification was delivered, or failed with a {@link NotificationException}.
+     */
+    public CompletableFuture<Void> deliverAsync(User user, String message) {
+        return deliverAsync(user::sendNotification, user.getNotificationService(), message);
+    }
+
+    /**
+     * Sends a notification straight to a notification service without waiting for delayed retries.
+     * This serves callers that know the recipient's Id and service but have no {@link User} for them.
+     *
+     * @param service The notification service of the recipient.
+     * @param userId  The Id of the user to be notified.
+     * @param message The content of the notification.
+     * @return A future completed once the notification was delivered, or failed with a {@link NotificationException}.
+     */
+    public CompletableFuture<Void> deliverAsync(NotificationService service, String userId, String message) {
+        if (service == null) {
+            throw new IllegalArgumentException("Invalid notification service.");
+        }
+        return deliverAsync(notification -> service.notifyUser(userId, notification), service, message);
+    }
+
+    private CompletableFuture<Void> deliverAsync(Consumer<String> send, NotificationService service, String message) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        retryBudget.onAttempt();
+        attempt(send, message, breakerFor(service), 1, result);
+        return result;
+    }
+
+    /**
+     * Retrieves the circuit breaker guarding a notification service.
+     *
+     * @param service The notification service.
+     * @return The breaker, or null if the delivery has no breakers or the service was never called.
+     */
+    public CircuitBreaker getCircuitBreaker(NotificationService service) {
+        return breakers.get(service == null ? UNKNOWN_SERVICE : service);
+    }
+
+    private void attempt(Consumer<String> send, String message, CircuitBreaker breaker, int attempt,
+                         CompletableFuture<Void> result) {
+        while (true) {
+            if (breaker != null && !breaker.tryAcquire()) {
+                result.completeExceptionally(new NotificationException("Notification service unavailable!"));
+                return;
+            }
+            // The outcome is reported however the call ends, so that a failed trial never leaves the breaker half open.
+            boolean delivered = false;
+            try {
+                send.accept(message);
+                delivered = true;
+            } catch (NotificationException e) {
+                // Retried below.
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            } catch (Error e) {
+                result.completeExceptionally(e);
+                throw e;
+            } finally {
+                if (breaker != null) {
+                    if (delivered) {
+                        breaker.onSuccess();
+                    } else {
+                        breaker.onFailure();
+                    }
+                }
+            }
+            if (delivered) {
+                result.complete(null);
+                return;
+            }
+
+            if (attempt >= retryPolicy.getMaxAttempts() || !retryBudget.tryRetry()) {
+                result.completeExceptionally(new NotificationException("Notification failed!"));
+                return;
+            }
+            long delay = retryPolicy.delayNanos(attempt, ThreadLocalRandom.current().nextDouble());
+            attempt++;
+            if (delay > 0) {
+                int next = attempt;
+                try {
+                    scheduler.schedule(() -> attempt(send, message, breaker, next, result), delay, TimeUnit.NANOSECONDS);
+                } catch (RejectedExecutionException e) {
+                    result.completeExceptionally(new NotificationException("Notification failed!"));
+                }
+                return;
+            }
+        }
+    }
+
+    private CircuitBreaker breakerFor(NotificationService service) {
+        if (failureThreshold == 0) {
+            return null;
+        }
+        return breakers.computeIfAbsent(service == null ? UNKNOWN_SERVICE : service,
+                key -> new CircuitBreaker(failureThreshold, openNanos, clock));
+    }
+}
@@ -0,0 +1,338 @@
+package ac.il.bgu.qa.notifications;
+
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.NotificationException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs notification jobs for {@link ac.il.bgu.qa.Library} and delivers notifications to users through a
+ * {@link NotificationDelivery}.
+ * <p>
+ * A dispatcher either runs jobs on the caller's thread ({@link #direct()}), on a bounded pool of platform threads,
+ * or on one virtual thread per job where the JDK provides them. At most a fixed number of jobs may be pending,
+ * counting both queued and running ones; a job submitted beyond that is handled by the {@link RejectionPolicy}.
+ * Queue depth, running jobs and rejections are exposed as metrics.
+ */
+public class NotificationDispatcher {
+
+    /**
+     * What to do with a job submitted while the dispatcher is at capacity.
+     */
+    public enum RejectionPolicy {
+        /** The returned future fails at once with a {@link RejectedExecutionException}. */
+        ABORT,
+        /** The job runs on the submitting thread, which slows the producer down to the delivery rate. */
+        CALLER_RUNS
+    }
+
+    private final Executor executor;
+    private final ExecutorService ownedExecutor;
+    private final Semaphore capacity;
+    private final RejectionPolicy rejectionPolicy;
+    private final NotificationDelivery delivery;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxQueued = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Constructs a dispatcher on a pool of platform threads.
+     *
+     * @param threads         The number of delivery threads.
+     * @param queueCapacity   The number of jobs that may wait for a thread.
+     * @param rejectionPolicy What to do with a job submitted while the queue is full.
+     */
+    public NotificationDispatcher(int threads, int queueCapacity, RejectionPolicy rejectionPolicy) {
+        this(threads, queueCapacity, rejectionPolicy, NotificationDelivery.immediate());
+    }
+
+    /**
+     * Constructs a dispatcher on a pool of platform threads with its own delivery.
+     *
+     * @param threads         The number of delivery threads.
+     * @param queueCapacity   The number of jobs that may wait for a thread.
+     * @param rejectionPolicy What to do with a job submitted while the queue is full.
+     * @param delivery        How notifications are retried and guarded.
+     */
+    public NotificationDispatcher(int threads, int queueCapacity, RejectionPolicy rejectionPolicy,
+                                  NotificationDelivery delivery) {
+        this(newPool(threads, queueCapacity), threads + queueCapacity, rejectionPolicy, delivery);
+    }
+
+    private NotificationDispatcher(ExecutorService executor, int maxPending, RejectionPolicy rejectionPolicy,
+                                   NotificationDelivery delivery) {
+        this(executor, executor, maxPending, rejectionPolicy, delivery);
+    }
+
+    private NotificationDispatcher(Executor executor, ExecutorService ownedExecutor, int maxPending,
+                                   RejectionPolicy rejectionPolicy, NotificationDelivery delivery) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        } else if (rejectionPolicy == null) {
+            throw new IllegalArgumentException("Invalid rejection policy.");
+        } else if (delivery == null) {
+            throw new IllegalArgumentException("Invalid notification delivery.");
+        }
+        this.executor = executor;
+        this.ownedExecutor = ownedExecutor;
+        this.capacity = new Semaphore(maxPending);
+        this.rejectionPolicy = rejectionPolicy;
+        this.delivery = delivery;
+    }
+
+    /**
+     * Creates a dispatcher that runs every job on the submitting thread before returning.
+     * This is what {@link ac.il.bgu.qa.Library} uses unless it is given another dispatcher.
+     *
+     * @return A new synchronous dispatcher.
+     */
+    public static NotificationDispatcher direct() {
+        return direct(NotificationDelivery.immediate());
+    }
+
+    /**
+     * Creates a dispatcher that runs every job on the submitting thread, with its own delivery.
+     * Delayed retries still run on the delivery's scheduler.
+     *
+     * @param delivery How notifications are retried and guarded.
+     * @return A new synchronous dispatcher.
+     */
+    public static NotificationDispatcher direct(NotificationDelivery delivery) {
+        return new NotificationDispatcher(Runnable::run, null, Integer.MAX_VALUE, RejectionPolicy.CALLER_RUNS, delivery);
+    }
+
+    /**
+     * Creates a dispatcher that runs each job on its own virtual thread, or on a pool of platform threads
+     * as large as the number of processors if the running JDK has no virtual threads.
+     *
+     * @param maxPending      The number of jobs that may be queued or running at once.
+     * @param rejectionPolicy What to do with a job submitted beyond that.
+     * @return A new dispatcher.
+     */
+    public static NotificationDispatcher virtualThreads(int maxPending, RejectionPolicy rejectionPolicy) {
+        return virtualThreads(maxPending, rejectionPolicy, NotificationDelivery.immediate());
+    }
+
+    /**
+     * Creates a dispatcher on virtual threads, or on platform threads where there are none, with its own delivery.
+     *
+     * @param maxPending      The number of jobs that may be queued or running at once.
+     * @param rejectionPolicy What to do with a job submitted beyond that.
+     * @param delivery        How notifications are retried and guarded.
+     * @return A new dispatcher.
+     */
+    public static NotificationDispatcher virtualThreads(int maxPending, RejectionPolicy rejectionPolicy,
+                                                        NotificationDelivery delivery) {
+        ExecutorService executor = newVirtualThreadExecutor();
+        if (executor == null) {
+            int threads = Math.min(maxPending, Runtime.getRuntime().availableProcessors());
+            return new NotificationDispatcher(threads, maxPending - threads, rejectionPolicy, delivery);
+        }
+        return new NotificationDispatcher(executor, maxPending, rejectionPolicy, delivery);
+    }
+
+    /**
+     * Submits a job, returning at once unless the dispatcher is direct or the job runs on the caller
+     * under {@link RejectionPolicy#CALLER_RUNS}.
+     *
+     * @param job The job to be run.
+     * @param <T> The type of the job's result.
+     * @return A future completed with the job's result or failure.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> job) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!capacity.tryAcquire()) {
+            rejected.incrementAndGet();
+            if (rejectionPolicy == RejectionPolicy.CALLER_RUNS) {
+                running.incrementAndGet();
+                run(job, future);
+            } else {
+                future.completeExceptionally(new RejectedExecutionException("Notification queue is full."));
+            }
+            return future;
+        }
+
+        maxQueued.accumulateAndGet(queued.incrementAndGet(), Math::max);
+        try {
+            executor.execute(() -> {
+                queued.decrementAndGet();
+                running.incrementAndGet();
+                try {
+                    run(job, future);
+                } finally {
+                    capacity.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The executor was shut down.
+            queued.decrementAndGet();
+            capacity.release();
+            rejected.incrementAndGet();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Sends a notification to a user and waits for the outcome, retrying failures as the delivery allows.
+     *
+     * @param user    The user to be notified.
+     * @param message The content of the notification.
+     * @throws NotificationException If every allowed attempt failed or the user's notification service is unhealthy.
+     */
+    public void deliver(User user, String message) throws NotificationException {
+        delivery.deliver(user, message);
+    }
+
+    /**
+     * Sends a notification to a user without waiting for it; delayed retries hold no thread.
+     *
+     * @param user    The user to be notified.
+     * @param message The content of the notification.
+     * @return A future completed once the notification was delivered, or failed with a {@link NotificationException}.
+     */
+    public CompletableFuture<Void> deliverAsync(User user, String message) {
+        return delivery.deliverAsync(user, message);
+    }
+
+    /**
+     * Retrieves the delivery used by this dispatcher.
+     *
+     * @return The notification delivery.
+     */
+    public NotificationDelivery getDelivery() {
+        return delivery;
+    }
+
+    /**
+     * Stops accepting jobs. Jobs already submitted still run.
+     */
+    public void shutdown() {
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Waits for the submitted jobs to finish after {@link #shutdown()}.
+     *
+     * @param timeout How long to wait.
+     * @param unit    The unit of the timeout.
+     * @return true if every job finished, false if the timeout elapsed first.
+     * @throws InterruptedException If the waiting thread was interrupted.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return ownedExecutor == null || ownedExecutor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Retrieves the number of jobs waiting to start.
+     *
+     * @return The current queue depth.
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * Retrieves the highest queue depth seen so far.
+     *
+     * @return The maximal queue depth.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueued.get();
+    }
+
+    /**
+     * Retrieves the number of jobs currently running.
+     *
+     * @return The running job count.
+     */
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    /**
+     * Retrieves the number of jobs that finished successfully.
+     *
+     * @return The completed job count.
+     */
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * Retrieves the number of jobs that finished with an exception.
+     *
+     * @return The failed job count.
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Retrieves the number of jobs submitted while the dispatcher was at capacity or shut down,
+     * including those run on the caller's thread.
+     *
+     * @return The rejected job count.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    private <T> void run(Supplier<T> job, CompletableFuture<T> future) {
+        try {
+            T result = job.get();
+            completed.incrementAndGet();
+            future.complete(result);
+        } catch (Throwable e) {
+            failed.incrementAndGet();
+            future.completeExceptionally(e);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    private static ExecutorService newPool(int threads, int queueCapacity) {
+        if (threads <= 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        }
+        // The queue is bounded by the capacity semaphore, not by the queue itself.
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                daemonThreads());
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "notification-dispatcher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Looked up reflectively so the code still compiles and runs on JDKs without virtual threads.
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
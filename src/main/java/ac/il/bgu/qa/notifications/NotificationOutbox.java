@@ -0,0 +1,486 @@
+package ac.il.bgu.qa.notifications;
+
+import ac.il.bgu.qa.User;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Durable queue of notifications backed by an append-only log file, giving at-least-once delivery across restarts.
+ * <p>
+ * {@link #enqueue(String, String)} returns only once the notification is on disk. Concurrent enqueues are group
+ * committed: a single writer thread appends everything enqueued while the previous fsync ran and syncs it with one
+ * more fsync, so the cost of a sync is shared by all the callers waiting on it. A drainer thread delivers the queued
+ * notifications through a {@link NotificationDelivery} and appends an acknowledgement once a notification was
+ * delivered; a failed delivery is tried again after the redelivery delay. When the outbox is opened, the log is
+ * replayed and every notification without an acknowledgement is queued again, so a notification may be delivered
+ * twice but is never lost. The log is compacted to the pending notifications each time it is opened.
+ * <p>
+ * Each record is {@code [int length][byte type][long sequence][payload][int CRC32]}; replay stops at the first
+ * torn or corrupt record and the log is cut there.
+ */
+public class NotificationOutbox implements AutoCloseable {
+
+    private static final byte ENQUEUED = 1;
+    private static final byte ACKNOWLEDGED = 2;
+
+    // Length prefix, type, sequence and checksum.
+    private static final int RECORD_OVERHEAD = 4 + 1 + 8 + 4;
+
+    private final Path file;
+    private final Function<String, User> recipients;
+    private final NotificationDelivery delivery;
+    private final long redeliveryNanos;
+
+    private FileChannel channel;
+
+    // Records appended but not yet written. Guarded by this.
+    private ByteBuffer unwritten = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+    private long nextSequence;
+    private long appendedRecords;
+    private long durableRecords;
+    private IOException writeFailure;
+    private boolean closed;
+
+    // Notifications enqueued and not yet acknowledged, by sequence. Guarded by this.
+    private final Map<Long, Entry> pending = new LinkedHashMap<>();
+
+    private final DelayQueue<Entry> ready = new DelayQueue<>();
+    private final Thread writer;
+    private Thread drainer;
+
+    private long enqueued;
+    private long delivered;
+    private long redeliveries;
+    private long undeliverable;
+    private long commits;
+
+    /**
+     * Opens an outbox, replaying and compacting its log file if it exists, and starts its writer thread.
+     * Delivery starts with {@link #startDraining()}.
+     *
+     * @param file            The log file.
+     * @param recipients      Finds the user a notification is addressed to, or returns null for an unknown user.
+     * @param delivery        Delivers the notifications.
+     * @param redeliveryDelay How long to wait before delivering a failed notification again.
+     * @param unit            The unit of the redelivery delay.
+     * @throws IOException If the log file could not be read or written.
+     */
+    public NotificationOutbox(Path file, Function<String, User> recipients, NotificationDelivery delivery,
+                              long redeliveryDelay, TimeUnit unit) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Invalid outbox file.");
+        } else if (recipients == null) {
+            throw new IllegalArgumentException("Invalid recipient lookup.");
+        } else if (delivery == null) {
+            throw new IllegalArgumentException("Invalid notification delivery.");
+        } else if (redeliveryDelay < 0) {
+            throw new IllegalArgumentException("Invalid redelivery delay.");
+        }
+        this.file = file;
+        this.recipients = recipients;
+        this.delivery = delivery;
+        this.redeliveryNanos = unit.toNanos(redeliveryDelay);
+
+        replay();
+        compact();
+        ready.addAll(pending.values());
+
+        writer = new Thread(this::writeLoop, "notification-outbox-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Durably records a notification and queues it for delivery.
+     *
+     * @param userId  The Id of the user to be notified.
+     * @param message The content of the notification.
+     * @return The sequence number of the notification.
+     * @throws UncheckedIOException If the log could not be written.
+     */
+    public long enqueue(String userId, String message) {
+        if (userId == null || message == null) {
+            throw new IllegalArgumentException("Invalid notification.");
+        }
+        byte[] id = userId.getBytes(StandardCharsets.UTF_8);
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(4 + id.length + 4 + text.length);
+        payload.putInt(id.length).put(id).putInt(text.length).put(text).flip();
+
+        Entry entry;
+        synchronized (this) {
+            ensureOpen();
+            entry = new Entry(nextSequence++, userId, message);
+            long ticket = append(ENQUEUED, entry.sequence, payload);
+            pending.put(entry.sequence, entry);
+            enqueued++;
+            notifyAll();
+            awaitDurable(ticket);
+        }
+        ready.put(entry);
+        return entry.sequence;
+    }
+
+    /**
+     * Starts the drainer thread that delivers the queued notifications.
+     */
+    public synchronized void startDraining() {
+        ensureOpen();
+        if (drainer == null) {
+            drainer = new Thread(this::drainLoop, "notification-outbox-drainer");
+            drainer.setDaemon(true);
+            drainer.start();
+        }
+    }
+
+    /**
+     * Stops delivering, writes every appended record and closes the log. Undelivered notifications stay in the
+     * log and are delivered after the outbox is opened again.
+     *
+     * @throws IOException If the log could not be written or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        Thread drainerToStop;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            drainerToStop = drainer;
+        }
+        if (drainerToStop != null) {
+            drainerToStop.interrupt();
+            joinUninterruptibly(drainerToStop);
+        }
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        joinUninterruptibly(writer);
+        channel.close();
+        synchronized (this) {
+            if (writeFailure != null) {
+                throw writeFailure;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of notifications enqueued and not yet delivered.
+     *
+     * @return The pending notification count.
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Retrieves the number of notifications enqueued since the outbox was opened.
+     *
+     * @return The enqueued notification count.
+     */
+    public synchronized long getEnqueuedCount() {
+        return enqueued;
+    }
+
+    /**
+     * Retrieves the number of notifications delivered since the outbox was opened.
+     *
+     * @return The delivered notification count.
+     */
+    public synchronized long getDeliveredCount() {
+        return delivered;
+    }
+
+    /**
+     * Retrieves the number of deliveries that failed and were queued again.
+     *
+     * @return The redelivery count.
+     */
+    public synchronized long getRedeliveryCount() {
+        return redeliveries;
+    }
+
+    /**
+     * Retrieves the number of notifications dropped because their user is unknown.
+     *
+     * @return The undeliverable notification count.
+     */
+    public synchronized long getUndeliverableCount() {
+        return undeliverable;
+    }
+
+    /**
+     * Retrieves the number of group commits, each ending with one fsync.
+     *
+     * @return The commit count.
+     */
+    public synchronized long getCommitCount() {
+        return commits;
+    }
+
+    private void drainLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Entry entry;
+            try {
+                entry = ready.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            User user = recipients.apply(entry.userId);
+            if (user == null) {
+                acknowledge(entry, false);
+                continue;
+            }
+            try {
+                delivery.deliver(user, entry.message);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    redeliveries++;
+                }
+                entry.notBefore = System.nanoTime() + redeliveryNanos;
+                ready.put(entry);
+                continue;
+            }
+            acknowledge(entry, true);
+        }
+    }
+
+    // Records that a notification needs no further delivery. The acknowledgement is not waited for:
+    // if it is lost in a crash, the notification is delivered once more.
+    private synchronized void acknowledge(Entry entry, boolean wasDelivered) {
+        if (pending.remove(entry.sequence) == null) {
+            return;
+        }
+        if (wasDelivered) {
+            delivered++;
+        } else {
+            undeliverable++;
+        }
+        if (!closed) {
+            append(ACKNOWLEDGED, entry.sequence, ByteBuffer.allocate(0));
+            notifyAll();
+        }
+    }
+
+    // Encodes a record into the unwritten buffer and returns the record's ticket. The caller wakes the writer.
+    private long append(byte type, long sequence, ByteBuffer payload) {
+        int length = 1 + 8 + payload.remaining();
+        if (unwritten.remaining() < 4 + length + 4) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(unwritten.capacity() * 2, unwritten.position() + length + 8));
+            unwritten.flip();
+            unwritten = grown.put(unwritten);
+        }
+        int start = unwritten.position();
+        unwritten.putInt(length).put(type).putLong(sequence).put(payload);
+        CRC32 crc = new CRC32();
+        ByteBuffer covered = unwritten.duplicate();
+        covered.position(start + 4).limit(unwritten.position());
+        crc.update(covered);
+        unwritten.putInt((int) crc.getValue());
+        return ++appendedRecords;
+    }
+
+    private void awaitDurable(long ticket) {
+        boolean interrupted = false;
+        while (durableRecords < ticket && writeFailure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (durableRecords < ticket) {
+            throw new UncheckedIOException("Outbox write failed.", writeFailure);
+        }
+    }
+
+    // Writes whatever was appended while the previous batch was being synced, then syncs it with one fsync.
+    private void writeLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long batchEnd;
+            synchronized (this) {
+                while (unwritten.position() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Only close stops the writer, so every appended record is written.
+                    }
+                }
+                if (unwritten.position() == 0) {
+                    return;
+                }
+                batch = unwritten;
+                unwritten = spare;
+                spare = batch;
+                batchEnd = appendedRecords;
+            }
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    writeFailure = e;
+                    notifyAll();
+                }
+                return;
+            } finally {
+                batch.clear();
+            }
+            synchronized (this) {
+                durableRecords = batchEnd;
+                commits++;
+                notifyAll();
+            }
+        }
+    }
+
+    // Reads the log, keeping the notifications without an acknowledgement in sequence order.
+    private void replay() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(file));
+        CRC32 crc = new CRC32();
+        while (log.remaining() >= RECORD_OVERHEAD) {
+            int start = log.position();
+            int length = log.getInt();
+            if (length < 9 || length > log.remaining() - 4) {
+                break;
+            }
+            ByteBuffer covered = log.duplicate();
+            covered.limit(start + 4 + length);
+            crc.reset();
+            crc.update(covered);
+            log.position(start + 4 + length);
+            if (log.getInt() != (int) crc.getValue()) {
+                break;
+            }
+
+            ByteBuffer record = log.duplicate();
+            record.position(start + 4).limit(start + 4 + length);
+            byte type = record.get();
+            long sequence = record.getLong();
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            if (type == ENQUEUED) {
+                String userId = readString(record);
+                String message = readString(record);
+                pending.put(sequence, new Entry(sequence, userId, message));
+            } else if (type == ACKNOWLEDGED) {
+                pending.remove(sequence);
+            }
+        }
+    }
+
+    // Rewrites the log with only the pending notifications and opens it for appending.
+    private void compact() throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<Entry> entries = new ArrayList<>(pending.values());
+            for (Entry entry : entries) {
+                byte[] id = entry.userId.getBytes(StandardCharsets.UTF_8);
+                byte[] text = entry.message.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer payload = ByteBuffer.allocate(4 + id.length + 4 + text.length);
+                payload.putInt(id.length).put(id).putInt(text.length).put(text).flip();
+                append(ENQUEUED, entry.sequence, payload);
+                if (unwritten.position() > 1 << 20) {
+                    flushTo(out);
+                }
+            }
+            flushTo(out);
+            out.force(true);
+        }
+        appendedRecords = 0;
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void flushTo(FileChannel out) throws IOException {
+        unwritten.flip();
+        while (unwritten.hasRemaining()) {
+            out.write(unwritten);
+        }
+        unwritten.clear();
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Outbox is closed.");
+        }
+        if (writeFailure != null) {
+            throw new UncheckedIOException("Outbox write failed.", writeFailure);
+        }
+    }
+
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // A queued notification with the earliest time of its next delivery attempt.
+    private static class Entry implements Delayed {
+        final long sequence;
+        final String userId;
+        final String message;
+        volatile long notBefore = System.nanoTime();
+
+        Entry(long sequence, String userId, String message) {
+            this.sequence = sequence;
+            this.userId = userId;
+            this.message = message;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(notBefore - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Entry that = (Entry) other;
+            int byTime = Long.compare(notBefore, that.notBefore);
+            return byTime != 0 ? byTime : Long.compare(sequence, that.sequence);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ac.il.bgu.qa.notifications;
+
+/**
+ * Limits retries to a fraction of the notifications being sent, so a failing notification service receives at most
+ * that much extra traffic instead of a multiple of it.
+ * Every first attempt deposits a fraction of a token, every retry withdraws a whole one, and the balance is capped
+ * so that a long healthy period cannot pay for an unbounded retry storm later. All methods are thread-safe.
+ */
+public class RetryBudget {
+
+    private final double depositPerAttempt;
+    private final double maxBalance;
+
+    // Guarded by this.
+    private double balance;
+
+    /**
+     * Constructs a new retry budget that starts full.
+     *
+     * @param retryRatio The number of retries allowed per first attempt, for example 0.2 for one retry in five.
+     * @param maxRetries The number of retries that may be saved up.
+     */
+    public RetryBudget(double retryRatio, int maxRetries) {
+        if (!(retryRatio >= 0) || maxRetries < 0) {
+            throw new IllegalArgumentException("Invalid retry budget.");
+        }
+        this.depositPerAttempt = retryRatio;
+        this.maxBalance = maxRetries;
+        this.balance = maxRetries;
+    }
+
+    /**
+     * Creates a budget that allows every retry.
+     *
+     * @return A new unlimited budget.
+     */
+    public static RetryBudget unlimited() {
+        return new RetryBudget(0, 0) {
+            @Override
+            public boolean tryRetry() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Records a first attempt, adding to the budget.
+     */
+    public synchronized void onAttempt() {
+        balance = Math.min(maxBalance, balance + depositPerAttempt);
+    }
+
+    /**
+     * Takes one retry from the budget if there is one left.
+     *
+     * @return true if the retry may be made, otherwise false.
+     */
+    public synchronized boolean tryRetry() {
+        if (balance < 1) {
+            return false;
+        }
+        balance--;
+        return true;
+    }
+}
@@ -0,0 +1,77 @@
+package ac.il.bgu.qa.notifications;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how often and after which delay a failed notification is attempted again.
+ * The delay grows exponentially from an initial delay up to a maximum. A jitter fraction randomizes each delay
+ * downwards, so deliveries that failed together do not all retry at the same moment.
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long initialDelayNanos;
+    private final long maxDelayNanos;
+    private final double multiplier;
+    private final double jitter;
+
+    /**
+     * Constructs a new retry policy.
+     *
+     * @param maxAttempts  The number of attempts per notification, including the first one.
+     * @param initialDelay The delay before the first retry.
+     * @param maxDelay     The upper bound of any delay.
+     * @param multiplier   The factor by which the delay grows after each retry, at least 1.
+     * @param jitter       The fraction of each delay that is randomized, between 0 and 1.
+     * @param unit         The unit of both delays.
+     */
+    public RetryPolicy(int maxAttempts, long initialDelay, long maxDelay, double multiplier, double jitter,
+                       TimeUnit unit) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Invalid number of attempts.");
+        } else if (initialDelay < 0 || maxDelay < initialDelay) {
+            throw new IllegalArgumentException("Invalid delay.");
+        } else if (!(multiplier >= 1)) {
+            throw new IllegalArgumentException("Invalid multiplier.");
+        } else if (!(jitter >= 0 && jitter <= 1)) {
+            throw new IllegalArgumentException("Invalid jitter.");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialDelayNanos = unit.toNanos(initialDelay);
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Creates a policy that retries at once, without any delay.
+     *
+     * @param maxAttempts The number of attempts per notification, including the first one.
+     * @return A new retry policy.
+     */
+    public static RetryPolicy immediate(int maxAttempts) {
+        return new RetryPolicy(maxAttempts, 0, 0, 1, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Retrieves the number of attempts per notification, including the first one.
+     *
+     * @return The maximal number of attempts.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Computes the delay before a retry.
+     *
+     * @param retry  The number of the retry, starting at 1 for the second attempt.
+     * @param random A uniformly distributed number between 0 and 1 used for the jitter.
+     * @return The delay in nanoseconds.
+     */
+    public long delayNanos(int retry, double random) {
+        double delay = initialDelayNanos * Math.pow(multiplier, retry - 1);
+        delay = Math.min(delay, maxDelayNanos);
+        return (long) (delay * (1 - jitter * random));
+    }
+}
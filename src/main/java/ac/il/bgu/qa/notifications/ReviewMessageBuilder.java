@@ -0,0 +1,161 @@
+package ac.il.bgu.qa.notifications;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes review notifications for {@link ac.il.bgu.qa.Library} while the reviews stream in from the review service.
+ * <p>
+ * Each thread writes into its own reused buffer, so building a message copies every review once and allocates
+ * only the resulting string, instead of a joined review string and a concatenated message on top of the review list.
+ * A message may be capped at a maximum length: once the next review would not fit, the {@link TruncationPolicy}
+ * decides what is kept, the message ends with {@link #TRUNCATION_MARKER}, and the remaining reviews are never read.
+ * The title line is always written in full.
+ * <p>
+ * A message may also be limited to the top reviews of a book, in which case {@link ac.il.bgu.qa.Library} fetches
+ * only that many from the review service, page by page.
+ */
+public class ReviewMessageBuilder {
+
+    /**
+     * What to keep of a message that reaches the cap.
+     */
+    public enum TruncationPolicy {
+        /** Only whole reviews are kept; the review that does not fit and all after it are left out. */
+        WHOLE_REVIEWS,
+        /** The review that does not fit is cut so the message fills the cap. */
+        CUT_REVIEW
+    }
+
+    /**
+     * Ends a message that was truncated.
+     */
+    public static final String TRUNCATION_MARKER = "\n...";
+
+    // A buffer that grew beyond this for a large message is dropped rather than kept by its thread.
+    private static final int RETAINED_CAPACITY = 16 * 1024;
+
+    private final int maxReviews;
+    private final int maxLength;
+    private final TruncationPolicy truncationPolicy;
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private final AtomicLong built = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+
+    /**
+     * Constructs a builder that caps its messages.
+     *
+     * @param maxLength        The maximal length of a message, including the truncation marker.
+     * @param truncationPolicy What to keep of a message that reaches the cap.
+     */
+    public ReviewMessageBuilder(int maxLength, TruncationPolicy truncationPolicy) {
+        this(Integer.MAX_VALUE, maxLength, truncationPolicy);
+    }
+
+    /**
+     * Constructs a builder that writes at most the top reviews of a book and caps its messages.
+     *
+     * @param maxReviews       The maximal number of reviews in a message.
+     * @param maxLength        The maximal length of a message, including the truncation marker.
+     * @param truncationPolicy What to keep of a message that reaches the cap.
+     */
+    public ReviewMessageBuilder(int maxReviews, int maxLength, TruncationPolicy truncationPolicy) {
+        if (maxReviews <= 0) {
+            throw new IllegalArgumentException("Invalid maximum reviews.");
+        } else if (maxLength <= TRUNCATION_MARKER.length()) {
+            throw new IllegalArgumentException("Invalid maximum length.");
+        } else if (truncationPolicy == null) {
+            throw new IllegalArgumentException("Invalid truncation policy.");
+        }
+        this.maxReviews = maxReviews;
+        this.maxLength = maxLength;
+        this.truncationPolicy = truncationPolicy;
+    }
+
+    /**
+     * Creates a builder that writes every review, as {@link ac.il.bgu.qa.Library} does unless it is given another builder.
+     *
+     * @return A new builder without a cap.
+     */
+    public static ReviewMessageBuilder unlimited() {
+        return new ReviewMessageBuilder(Integer.MAX_VALUE, TruncationPolicy.WHOLE_REVIEWS);
+    }
+
+    /**
+     * Writes the notification of the reviews of a book, one review per line under the title line.
+     *
+     * @param title   The title of the book.
+     * @param reviews The reviews of the book, read only as far as the message has room for them,
+     *                and never beyond the maximal number of reviews.
+     * @return The notification message.
+     */
+    public String build(String title, Iterator<String> reviews) {
+        StringBuilder buffer = buffers.get();
+        buffer.setLength(0);
+        buffer.append("Reviews for '").append(title).append("':");
+
+        boolean cut = false;
+        int written = 0;
+        while (written < maxReviews && reviews.hasNext()) {
+            // A missing review is written as "null", as joining the list of reviews did.
+            String review = String.valueOf(reviews.next());
+            // Room for the marker is kept as long as more reviews may follow.
+            int reserved = written + 1 < maxReviews && reviews.hasNext() ? TRUNCATION_MARKER.length() : 0;
+            if ((long) buffer.length() + 1 + review.length() + reserved > maxLength) {
+                truncate(buffer, review);
+                cut = true;
+                break;
+            }
+            buffer.append('\n').append(review);
+            written++;
+        }
+
+        String message = buffer.toString();
+        if (buffer.capacity() > RETAINED_CAPACITY) {
+            buffers.remove();
+        }
+        built.incrementAndGet();
+        if (cut) {
+            truncated.incrementAndGet();
+        }
+        return message;
+    }
+
+    /**
+     * Retrieves the maximal number of reviews in a message.
+     *
+     * @return The maximal review count, {@link Integer#MAX_VALUE} if every review is written.
+     */
+    public int getMaxReviews() {
+        return maxReviews;
+    }
+
+    /**
+     * Retrieves the number of messages built so far.
+     *
+     * @return The built message count.
+     */
+    public long getBuiltCount() {
+        return built.get();
+    }
+
+    /**
+     * Retrieves the number of messages that reached the cap.
+     *
+     * @return The truncated message count.
+     */
+    public long getTruncatedCount() {
+        return truncated.get();
+    }
+
+    private void truncate(StringBuilder buffer, String review) {
+        if (truncationPolicy == TruncationPolicy.CUT_REVIEW) {
+            int room = maxLength - TRUNCATION_MARKER.length() - buffer.length() - 1;
+            if (room > 0) {
+                buffer.append('\n').append(review, 0, room);
+            }
+        }
+        buffer.append(TRUNCATION_MARKER);
+    }
+}
@@ -0,0 +1,93 @@
+package ac.il.bgu.qa.pool;
+
+/**
+ * Immutable snapshot of the counters of a connection pool.
+ */
+public class PoolStats {
+
+    private final int idle;
+    private final int leased;
+    private final int waiting;
+    private final long created;
+    private final long destroyed;
+    private final long timeouts;
+
+    /**
+     * Constructs a new PoolStats snapshot.
+     *
+     * @param idle      The number of connections waiting in the pool.
+     * @param leased    The number of connections currently leased.
+     * @param waiting   The number of callers currently waiting for a connection.
+     * @param created   The number of connections opened so far.
+     * @param destroyed The number of connections closed so far, because they were idle too long or unhealthy.
+     * @param timeouts  The number of leases that gave up waiting for a connection.
+     */
+    public PoolStats(int idle, int leased, int waiting, long created, long destroyed, long timeouts) {
+        this.idle = idle;
+        this.leased = leased;
+        this.waiting = waiting;
+        this.created = created;
+        this.destroyed = destroyed;
+        this.timeouts = timeouts;
+    }
+
+    /**
+     * Retrieves the number of connections waiting in the pool.
+     *
+     * @return The idle connection count.
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    /**
+     * Retrieves the number of connections currently leased.
+     *
+     * @return The leased connection count.
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * Retrieves the number of callers currently waiting for a connection.
+     *
+     * @return The waiting caller count.
+     */
+    public int getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * Retrieves the number of connections opened so far.
+     *
+     * @return The created connection count.
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * Retrieves the number of connections closed so far.
+     *
+     * @return The destroyed connection count.
+     */
+    public long getDestroyed() {
+        return destroyed;
+    }
+
+    /**
+     * Retrieves the number of leases that gave up waiting for a connection.
+     *
+     * @return The timeout count.
+     */
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{idle=" + idle + ", leased=" + leased + ", waiting=" + waiting + ", created=" + created
+                + ", destroyed=" + destroyed + ", timeouts=" + timeouts + "}";
+    }
+}
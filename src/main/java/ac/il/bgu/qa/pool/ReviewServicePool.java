@@ -0,0 +1,352 @@
+package ac.il.bgu.qa.pool;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.errors.ReviewServiceClosedException;
+import ac.il.bgu.qa.services.ReviewService;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Pool of reusable connections to the review backend.
+ * Each connection is a {@link ReviewService} opened by a factory and closed only when the pool drops it,
+ * so callers no longer pay for a new connection on every lookup:
+ * <ul>
+ *     <li>The pool opens the minimum number of connections up front and never opens more than the maximum.</li>
+ *     <li>Idle connections are reused most recently used first; those idle longer than the idle timeout are closed
+ *     as long as the pool stays above its minimum size.</li>
+ *     <li>An idle connection is checked before it is leased and closed if the health check rejects it.</li>
+ *     <li>When every connection is leased, {@link #lease()} waits up to the borrow timeout and then fails with a
+ *     {@link ReviewException}.</li>
+ * </ul>
+ * The pool is itself a {@link ReviewService}: {@link #getReviewsForBook(String)} leases a connection for one
+ * lookup, and {@link #close()} shuts the pool down. All methods are thread-safe.
+ */
+public class ReviewServicePool implements ReviewService {
+
+    private final Supplier<? extends ReviewService> factory;
+    private final Predicate<? super ReviewService> healthCheck;
+    private final int minimumSize;
+    private final int maximumSize;
+    private final long idleTimeoutNanos;
+    private final long borrowTimeoutNanos;
+    private final LongSupplier clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    // Idle connections, the most recently released first. Guarded by lock.
+    private final ArrayDeque<IdleConnection> idle = new ArrayDeque<>();
+
+    // Connections handed out and not yet released, compared by identity. Guarded by lock.
+    private final Set<ReviewService> leased = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // Idle plus leased connections plus connections being opened. Guarded by lock.
+    private int size;
+    private int waiting;
+    private boolean closed;
+
+    private long created;
+    private long destroyed;
+    private long timeouts;
+
+    /**
+     * Constructs a new pool and opens its minimum number of connections.
+     *
+     * @param factory       Opens a new connection to the review backend.
+     * @param healthCheck   Tells whether an idle connection may still be used.
+     * @param minimumSize   The number of connections kept open even when idle.
+     * @param maximumSize   The maximal number of open connections.
+     * @param idleTimeout   How long a connection above the minimum may stay idle before it is closed.
+     * @param borrowTimeout How long a lease waits for a connection when all of them are in use.
+     * @param unit          The unit of both timeouts.
+     */
+    public ReviewServicePool(Supplier<? extends ReviewService> factory, Predicate<? super ReviewService> healthCheck,
+                             int minimumSize, int maximumSize, long idleTimeout, long borrowTimeout, TimeUnit unit) {
+        this(factory, healthCheck, minimumSize, maximumSize, unit.toNanos(idleTimeout), unit.toNanos(borrowTimeout),
+                System::nanoTime);
+    }
+
+    /**
+     * Constructs a new pool with an explicit clock for idle eviction and opens its minimum number of connections.
+     *
+     * @param factory            Opens a new connection to the review backend.
+     * @param healthCheck        Tells whether an idle connection may still be used.
+     * @param minimumSize        The number of connections kept open even when idle.
+     * @param maximumSize        The maximal number of open connections.
+     * @param idleTimeoutNanos   How long a connection above the minimum may stay idle, in nanoseconds.
+     * @param borrowTimeoutNanos How long a lease waits for a connection, in nanoseconds.
+     * @param clock              The source of the current time in nanoseconds.
+     */
+    public ReviewServicePool(Supplier<? extends ReviewService> factory, Predicate<? super ReviewService> healthCheck,
+                             int minimumSize, int maximumSize, long idleTimeoutNanos, long borrowTimeoutNanos,
+                             LongSupplier clock) {
+        if (factory == null) {
+            throw new IllegalArgumentException("Invalid connection factory.");
+        } else if (healthCheck == null) {
+            throw new IllegalArgumentException("Invalid health check.");
+        } else if (minimumSize < 0 || maximumSize <= 0 || minimumSize > maximumSize) {
+            throw new IllegalArgumentException("Invalid pool size.");
+        } else if (idleTimeoutNanos <= 0 || borrowTimeoutNanos < 0) {
+            throw new IllegalArgumentException("Invalid timeout.");
+        }
+        this.factory = factory;
+        this.healthCheck = healthCheck;
+        this.minimumSize = minimumSize;
+        this.maximumSize = maximumSize;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.borrowTimeoutNanos = borrowTimeoutNanos;
+        this.clock = clock;
+
+        for (int i = 0; i < minimumSize; i++) {
+            idle.addFirst(new IdleConnection(open(), clock.getAsLong()));
+            size++;
+        }
+    }
+
+    /**
+     * Leases a connection, reusing a healthy idle one, opening a new one below the maximum size,
+     * or waiting for one to be released.
+     *
+     * @return The leased connection, to be handed back with {@link #release(ReviewService)}.
+     * @throws ReviewException If no connection became available within the borrow timeout.
+     * @throws ReviewServiceClosedException If the pool was closed.
+     */
+    @Override
+    public ReviewService lease() throws ReviewException {
+        List<ReviewService> unusable = new ArrayList<>();
+        try {
+            return lease(unusable);
+        } finally {
+            closeAll(unusable);
+        }
+    }
+
+    /**
+     * Hands a leased connection back to the pool, or closes it if the pool was shut down.
+     *
+     * @param connection The connection obtained from {@link #lease()}.
+     */
+    @Override
+    public void release(ReviewService connection) {
+        List<ReviewService> unusable = new ArrayList<>();
+        lock.lock();
+        try {
+            if (!leased.remove(connection)) {
+                throw new IllegalArgumentException("Invalid review connection.");
+            }
+            if (closed) {
+                unusable.add(connection);
+                size--;
+            } else {
+                idle.addFirst(new IdleConnection(connection, clock.getAsLong()));
+                evictIdle(unusable);
+            }
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        closeAll(unusable);
+    }
+
+    /**
+     * Fetches the reviews of a book over a connection leased for this lookup only.
+     *
+     * @param ISBN The ISBN of the book.
+     * @return The reviews of the book.
+     * @throws ReviewException If no connection was available or the lookup failed.
+     */
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        ReviewService connection = lease();
+        try {
+            return connection.getReviewsForBook(ISBN);
+        } finally {
+            release(connection);
+        }
+    }
+
+    /**
+     * Closes the connections that were idle longer than the idle timeout, keeping at least the minimum size.
+     * Leases and releases already do this; a scheduler may call it to trim a pool that sees no traffic.
+     */
+    public void evictIdle() {
+        List<ReviewService> unusable = new ArrayList<>();
+        lock.lock();
+        try {
+            evictIdle(unusable);
+        } finally {
+            lock.unlock();
+        }
+        closeAll(unusable);
+    }
+
+    /**
+     * Shuts the pool down: idle connections are closed at once, leased ones when they are released,
+     * and waiting or later leases fail.
+     */
+    @Override
+    public void close() {
+        List<ReviewService> unusable = new ArrayList<>();
+        lock.lock();
+        try {
+            closed = true;
+            for (IdleConnection connection : idle) {
+                unusable.add(connection.connection);
+            }
+            size -= idle.size();
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        closeAll(unusable);
+    }
+
+    /**
+     * Retrieves the counters of the pool.
+     *
+     * @return A snapshot of the pool statistics.
+     */
+    public PoolStats getStats() {
+        lock.lock();
+        try {
+            return new PoolStats(idle.size(), leased.size(), waiting, created, destroyed, timeouts);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReviewService lease(List<ReviewService> unusable) {
+        long remaining = borrowTimeoutNanos;
+        lock.lock();
+        try {
+            while (true) {
+                if (closed) {
+                    throw new ReviewServiceClosedException("Review service pool is closed.");
+                }
+                evictIdle(unusable);
+
+                IdleConnection candidate;
+                while ((candidate = idle.pollFirst()) != null) {
+                    if (isHealthy(candidate.connection)) {
+                        leased.add(candidate.connection);
+                        return candidate.connection;
+                    }
+                    unusable.add(candidate.connection);
+                    size--;
+                }
+
+                if (size < maximumSize) {
+                    // Reserve the slot and open the connection without holding the lock.
+                    size++;
+                    ReviewService connection;
+                    lock.unlock();
+                    try {
+                        connection = open();
+                    } catch (RuntimeException e) {
+                        lock.lock();
+                        size--;
+                        available.signal();
+                        throw e;
+                    }
+                    lock.lock();
+                    if (closed) {
+                        size--;
+                        unusable.add(connection);
+                        throw new ReviewServiceClosedException("Review service pool is closed.");
+                    }
+                    leased.add(connection);
+                    return connection;
+                }
+
+                if (remaining <= 0) {
+                    timeouts++;
+                    throw new ReviewException("Timed out waiting for a review connection.");
+                }
+                waiting++;
+                try {
+                    remaining = available.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ReviewException("Interrupted while waiting for a review connection.");
+                } finally {
+                    waiting--;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReviewService open() {
+        ReviewService connection = factory.get();
+        if (connection == null) {
+            throw new ReviewException("Review connection factory returned no connection.");
+        }
+        lock.lock();
+        try {
+            created++;
+        } finally {
+            lock.unlock();
+        }
+        return connection;
+    }
+
+    private boolean isHealthy(ReviewService connection) {
+        try {
+            return healthCheck.test(connection);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    // Moves the connections idle for too long to the list to be closed. The oldest idle connections are last.
+    private void evictIdle(List<ReviewService> unusable) {
+        long now = clock.getAsLong();
+        while (size > minimumSize && !idle.isEmpty() && now - idle.peekLast().releasedAt >= idleTimeoutNanos) {
+            unusable.add(idle.pollLast().connection);
+            size--;
+        }
+    }
+
+    // Closes dropped connections outside the lock, since closing may talk to the backend.
+    private void closeAll(List<ReviewService> unusable) {
+        for (ReviewService connection : unusable) {
+            try {
+                connection.close();
+            } catch (RuntimeException e) {
+                // The connection is dropped either way.
+            }
+        }
+        if (!unusable.isEmpty()) {
+            lock.lock();
+            try {
+                destroyed += unusable.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // A connection waiting in the pool with the time it was released.
+    private static class IdleConnection {
+        final ReviewService connection;
+        final long releasedAt;
+
+        IdleConnection(ReviewService connection, long releasedAt) {
+            this.connection = connection;
+            this.releasedAt = releasedAt;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ac.il.bgu.qa.reservations;
+
+import ac.il.bgu.qa.storage.LongObjectHashMap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * First-in first-out queues of the users waiting for borrowed books, one per ISBN key.
+ * A user waits at most once per book; reserving again keeps their place. All methods are thread-safe, and
+ * {@link #isEmpty()} reads a volatile count without locking so that callers can skip the queues while nobody waits.
+ */
+public class ReservationQueue {
+
+    // Waiting user Ids by ISBN key. Guarded by this.
+    private final LongObjectHashMap<ArrayDeque<String>> queues = new LongObjectHashMap<>();
+
+    // Number of reservations over all books. Written under this, read without locking.
+    private volatile int count;
+
+    /**
+     * Appends a user to the queue of a book, unless they already wait for it.
+     *
+     * @param ISBN   The canonical key of the book's ISBN.
+     * @param userId The Id of the waiting user.
+     * @return The position of the user in the queue, 1 for the next in line.
+     */
+    public synchronized int reserve(long ISBN, String userId) {
+        ArrayDeque<String> queue = queues.get(ISBN);
+        if (queue == null) {
+            queue = new ArrayDeque<>(4);
+            queues.put(ISBN, queue);
+        }
+        int position = 1;
+        for (String waiting : queue) {
+            if (waiting.equals(userId)) {
+                return position;
+            }
+            position++;
+        }
+        queue.addLast(userId);
+        count++;
+        return position;
+    }
+
+    /**
+     * Retrieves the next user in line for a book without removing them.
+     *
+     * @param ISBN The canonical key of the book's ISBN.
+     * @return The Id of the next user, or null if nobody waits for the book.
+     */
+    public synchronized String peek(long ISBN) {
+        ArrayDeque<String> queue = queues.get(ISBN);
+        return queue == null ? null : queue.peekFirst();
+    }
+
+    /**
+     * Removes the next user in line for a book.
+     *
+     * @param ISBN The canonical key of the book's ISBN.
+     * @return The Id of the removed user, or null if nobody waits for the book.
+     */
+    public synchronized String poll(long ISBN) {
+        ArrayDeque<String> queue = queues.get(ISBN);
+        if (queue == null) {
+            return null;
+        }
+        String userId = queue.pollFirst();
+        removed(ISBN, queue);
+        return userId;
+    }
+
+    /**
+     * Removes a user from the queue of a book.
+     *
+     * @param ISBN   The canonical key of the book's ISBN.
+     * @param userId The Id of the user.
+     * @return true if the user was waiting for the book, false otherwise.
+     */
+    public synchronized boolean cancel(long ISBN, String userId) {
+        ArrayDeque<String> queue = queues.get(ISBN);
+        if (queue == null || !queue.remove(userId)) {
+            return false;
+        }
+        removed(ISBN, queue);
+        return true;
+    }
+
+    /**
+     * Retrieves the users waiting for a book.
+     *
+     * @param ISBN The canonical key of the book's ISBN.
+     * @return The Ids of the waiting users, next in line first.
+     */
+    public synchronized List<String> getWaiters(long ISBN) {
+        ArrayDeque<String> queue = queues.get(ISBN);
+        return queue == null ? Collections.emptyList() : new ArrayList<>(queue);
+    }
+
+    /**
+     * Retrieves the number of reservations over all books.
+     *
+     * @return The number of reservations.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Checks whether anybody waits for any book.
+     *
+     * @return true if there are no reservations, false otherwise.
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    // Accounts for a removed reservation, dropping the queue of the book once it is empty. Called under this.
+    private void removed(long ISBN, ArrayDeque<String> queue) {
+        count--;
+        if (queue.isEmpty()) {
+            queues.remove(ISBN);
+        }
+    }
+}
@@ -1,10 +1,18 @@
 package ac.il.bgu.qa.services;
 
 import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ISBNKey;
 import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.PartialBatchException;
 
 /**
  * Provides an interface for services responsible for managing the database of books and users.
+ * <p>
+ * Books can also be addressed by their canonical {@link ISBNKey}. The key based methods default to the
+ * String based ones using the bare 13 digit form of the ISBN; implementations with numeric storage
+ * should override them to avoid formatting the key. The Library passes ISBNs as its callers gave them, to the single
+ * book methods and to the String based batch methods alike, so a database keyed by the ISBN String sees each book
+ * under one key.
  */
 public interface DatabaseService {
 
@@ -56,4 +64,237 @@ public interface DatabaseService {
      * @param ISBN The International Standard Book Number of the book to be returned.
      */
     void returnBook(String ISBN);
+
+    /**
+     * Adds a book to the database using the canonical key of its ISBN.
+     *
+     * @param ISBN The canonical key of the book's ISBN.
+     * @param book The book to be added.
+     */
+    default void addBook(long ISBN, Book book) {
+        addBook(ISBNKey.toString(ISBN), book);
+    }
+
+    /**
+     * Fetches a book from the database using the canonical key of its ISBN.
+     *
+     * @param ISBN The canonical key of the ISBN.
+     * @return The book with the given ISBN or null if the book does not exist in the database.
+     */
+    default Book getBookByISBN(long ISBN) {
+        return getBookByISBN(ISBNKey.toString(ISBN));
+    }
+
+    /**
+     * Borrows a book identified by the canonical key of its ISBN for a user identified by their userId.
+     *
+     * @param ISBN   The canonical key of the ISBN of the book to be borrowed.
+     * @param userId The unique identifier for the user borrowing the book.
+     */
+    default void borrowBook(long ISBN, String userId) {
+        borrowBook(ISBNKey.toString(ISBN), userId);
+    }
+
+    /**
+     * Marks a book identified by the canonical key of its ISBN as returned in the database.
+     *
+     * @param ISBN The canonical key of the ISBN of the book to be returned.
+     */
+    default void returnBook(long ISBN) {
+        returnBook(ISBNKey.toString(ISBN));
+    }
+
+    /**
+     * Fetches several books from the database in one call.
+     *
+     * @param ISBNs The canonical keys of the ISBNs.
+     * @return The books in the order of the keys, with null for every book that does not exist in the database.
+     */
+    default Book[] getBooksByISBN(long[] ISBNs) {
+        Book[] books = new Book[ISBNs.length];
+        for (int i = 0; i < ISBNs.length; i++) {
+            books[i] = getBookByISBN(ISBNs[i]);
+        }
+        return books;
+    }
+
+    /**
+     * Adds several books to the database in one call.
+     * The books are written in order; if one fails, the books before it stay added.
+     *
+     * @param ISBNs The canonical keys of the books' ISBNs.
+     * @param books The books to be added, in the order of the keys.
+     * @throws PartialBatchException If some books were added before one failed. Any other exception means that
+     *                               no book was added.
+     */
+    default void addBooks(long[] ISBNs, Book[] books) {
+        for (int i = 0; i < ISBNs.length; i++) {
+            try {
+                addBook(ISBNs[i], books[i]);
+            } catch (RuntimeException e) {
+                throw i == 0 ? e : new PartialBatchException(i, e);
+            }
+        }
+    }
+
+    /**
+     * Borrows several books for one user in one call.
+     * The loans are written in order; if one fails, the loans before it stay recorded.
+     *
+     * @param ISBNs  The canonical keys of the ISBNs of the books to be borrowed.
+     * @param userId The unique identifier for the user borrowing the books.
+     * @throws PartialBatchException If some loans were recorded before one failed. Any other exception means that
+     *                               no loan was recorded.
+     */
+    default void borrowBooks(long[] ISBNs, String userId) {
+        for (int i = 0; i < ISBNs.length; i++) {
+            try {
+                borrowBook(ISBNs[i], userId);
+            } catch (RuntimeException e) {
+                throw i == 0 ? e : new PartialBatchException(i, e);
+            }
+        }
+    }
+
+    /**
+     * Marks several books as returned in one call.
+     * The returns are written in order; if one fails, the returns before it stay recorded.
+     *
+     * @param ISBNs The canonical keys of the ISBNs of the books to be returned.
+     * @throws PartialBatchException If some returns were recorded before one failed. Any other exception means
+     *                               that no return was recorded.
+     */
+    default void returnBooks(long[] ISBNs) {
+        for (int i = 0; i < ISBNs.length; i++) {
+            try {
+                returnBook(ISBNs[i]);
+            } catch (RuntimeException e) {
+                throw i == 0 ? e : new PartialBatchException(i, e);
+            }
+        }
+    }
+
+    /**
+     * Fetches several books from the database in one call.
+     *
+     * @param ISBNs The International Standard Book Numbers of the books.
+     * @return The books in the order of the ISBNs, with null for every book that does not exist in the database.
+     */
+    default Book[] getBooksByISBN(String[] ISBNs) {
+        Book[] books = new Book[ISBNs.length];
+        for (int i = 0; i < ISBNs.length; i++) {
+            books[i] = getBookByISBN(ISBNs[i]);
+        }
+        return books;
+    }
+
+    /**
+     * Adds several books to the database in one call.
+     * The books are written in order; if one fails, the books before it stay added.
+     *
+     * @param ISBNs The International Standard Book Numbers identifying the books.
+     * @param books The books to be added, in the order of the ISBNs.
+     * @throws PartialBatchException If some books were added before one failed. Any other exception means that
+     *                               no book was added.
+     */
+    default void addBooks(String[] ISBNs, Book[] books) {
+        for (int i = 0; i < ISBNs.length; i++) {
+            try {
+                addBook(ISBNs[i], books[i]);
+            } catch (RuntimeException e) {
+                throw i == 0 ? e : new PartialBatchException(i, e);
+            }
+        }
+    }
+
+    /**
+     * Borrows several books for one user in one call.
+     * The loans are written in order; if one fails, the loans before it stay recorded.
+     *
+     * @param ISBNs  The International Standard Book Numbers of the books to be borrowed.
+     * @param userId The unique identifier for the user borrowing the books.
+     * @throws PartialBatchException If some loans were recorded before one failed. Any other exception means that
+     *                               no loan was recorded.
+     */
+    default void borrowBooks(String[] ISBNs, String userId) {
+        for (int i = 0; i < ISBNs.length; i++) {
+            try {
+                borrowBook(ISBNs[i], userId);
+            } catch (RuntimeException e) {
+                throw i == 0 ? e : new PartialBatchException(i, e);
+            }
+        }
+    }
+
+    /**
+     * Marks several books as returned in one call.
+     * The returns are written in order; if one fails, the returns before it stay recorded.
+     *
+     * @param ISBNs The International Standard Book Numbers of the books to be returned.
+     * @throws PartialBatchException If some returns were recorded before one failed. Any other exception means
+     *                               that no return was recorded.
+     */
+    default void returnBooks(String[] ISBNs) {
+        for (int i = 0; i < ISBNs.length; i++) {
+            try {
+                returnBook(ISBNs[i]);
+            } catch (RuntimeException e) {
+                throw i == 0 ? e : new PartialBatchException(i, e);
+            }
+        }
+    }
+
+    /**
+     * Finds the books of an author.
+     * Implementations without an author index do not support this search; of the storage package, the in-memory and
+     * event-sourced databases index authors and the memory-mapped one does not.
+     *
+     * @param author The author of the books, matched regardless of case, accents and extra whitespace.
+     * @param offset The number of matching books to skip.
+     * @param limit  The maximum number of books to return.
+     * @return The matching books, at most limit of them.
+     * @throws UnsupportedOperationException If the database does not index authors.
+     */
+    default Book[] findBooksByAuthor(String author, int offset, int limit) {
+        throw new UnsupportedOperationException("Author search is not supported.");
+    }
+
+    /**
+     * Finds the books whose title starts with a prefix, ordered by title.
+     * Implementations without a title index do not support this search; of the storage package, the in-memory and
+     * event-sourced databases index titles and the memory-mapped one does not.
+     *
+     * @param prefix The beginning of the title, matched regardless of case, accents and extra whitespace.
+     * @param offset The number of matching books to skip.
+     * @param limit  The maximum number of books to return.
+     * @return The matching books, at most limit of them.
+     * @throws UnsupportedOperationException If the database does not index titles.
+     */
+    default Book[] findBooksByTitlePrefix(String prefix, int offset, int limit) {
+        throw new UnsupportedOperationException("Title search is not supported.");
+    }
+
+    /**
+     * Retrieves the Id of the user currently holding a book.
+     * Implementations that do not index loans do not support this lookup.
+     *
+     * @param ISBN The canonical key of the book's ISBN.
+     * @return The Id of the borrower, or null if the book is not borrowed.
+     * @throws UnsupportedOperationException If the database does not index loans.
+     */
+    default String getBorrowerId(long ISBN) {
+        throw new UnsupportedOperationException("Loan lookup is not supported.");
+    }
+
+    /**
+     * Retrieves the books a user currently holds.
+     * Implementations that do not index loans by user do not support this lookup.
+     *
+     * @param userId The unique identifier for the user.
+     * @return The canonical keys of the ISBNs of the user's books, empty if the user holds none.
+     * @throws UnsupportedOperationException If the database does not index loans by user.
+     */
+    default long[] getBorrowedISBNs(String userId) {
+        throw new UnsupportedOperationException("Loan lookup is not supported.");
+    }
 }
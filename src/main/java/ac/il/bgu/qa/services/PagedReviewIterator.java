@@ -0,0 +1,102 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the reviews of a book by fetching them page by page from a {@link ReviewService}.
+ * A page is only fetched once the previous one was consumed, and no page is fetched past the review limit,
+ * so stopping early or asking for the top reviews never transfers the rest of them.
+ * {@link #hasNext()} and {@link #next()} throw a {@link ReviewException} if fetching a page fails.
+ */
+public class PagedReviewIterator implements Iterator<String> {
+
+    private final ReviewService service;
+    private final String ISBN;
+    private final int limit;
+    private final int pageSizeHint;
+
+    private Iterator<String> page = Collections.emptyIterator();
+    private String cursor;
+    private boolean lastPage;
+    private int returned;
+    private int pages;
+
+    /**
+     * Constructs an iterator over at most the first {@code limit} reviews of a book.
+     *
+     * @param service      The service to fetch the pages from.
+     * @param ISBN         The International Standard Book Number (ISBN) of the book.
+     * @param limit        The maximal number of reviews to return.
+     * @param pageSizeHint The number of reviews to ask for per page; fewer are asked for near the limit.
+     */
+    public PagedReviewIterator(ReviewService service, String ISBN, int limit, int pageSizeHint) {
+        if (service == null) {
+            throw new IllegalArgumentException("Invalid review service.");
+        } else if (limit < 0) {
+            throw new IllegalArgumentException("Invalid limit.");
+        } else if (pageSizeHint <= 0) {
+            throw new IllegalArgumentException("Invalid page size.");
+        }
+        this.service = service;
+        this.ISBN = ISBN;
+        this.limit = limit;
+        this.pageSizeHint = pageSizeHint;
+    }
+
+    @Override
+    public boolean hasNext() throws ReviewException {
+        if (returned >= limit) {
+            return false;
+        }
+        while (!page.hasNext()) {
+            if (lastPage) {
+                return false;
+            }
+            fetchPage();
+        }
+        return true;
+    }
+
+    @Override
+    public String next() throws ReviewException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        returned++;
+        return page.next();
+    }
+
+    /**
+     * Retrieves the number of pages fetched so far.
+     *
+     * @return The fetched page count.
+     */
+    public int getPageCount() {
+        return pages;
+    }
+
+    private void fetchPage() {
+        ReviewPage fetched = service.getReviewsPage(ISBN, cursor, Math.min(pageSizeHint, limit - returned));
+        pages++;
+        // A service that returns no page has no (further) reviews. One that returns no first page at all, such as
+        // a plain mock, does not page; its list is read instead.
+        if (fetched == null) {
+            lastPage = true;
+            if (pages == 1) {
+                List<String> reviews = service.getReviewsForBook(ISBN);
+                if (reviews != null) {
+                    page = reviews.iterator();
+                }
+            }
+            return;
+        }
+        page = fetched.getReviews().iterator();
+        cursor = fetched.getNextCursor();
+        lastPage = fetched.isLast();
+    }
+}
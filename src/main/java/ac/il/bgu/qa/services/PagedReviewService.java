@@ -0,0 +1,53 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Base class for review services whose backend returns reviews in pages.
+ * Subclasses implement {@link #getReviewsPage(String, String, int)}; streaming walks the pages lazily,
+ * and {@link #getReviewsForBook(String)} is kept for callers of the list API by collecting every page.
+ */
+public abstract class PagedReviewService implements ReviewService {
+
+    private final int pageSize;
+
+    /**
+     * Constructs a new paged review service.
+     *
+     * @param pageSize The number of reviews to ask for per page when streaming or collecting every review.
+     */
+    protected PagedReviewService(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page size.");
+        }
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public abstract ReviewPage getReviewsPage(String ISBN, String cursor, int pageSizeHint) throws ReviewException;
+
+    /**
+     * Fetches every review for a book by collecting all of its pages.
+     * Prefer {@link #iterateReviewsForBook(String)} or {@link #getReviewsPage(String, String, int)}, which do not
+     * hold every review at once.
+     *
+     * @param ISBN The International Standard Book Number (ISBN) of the book.
+     * @return A list of reviews associated with the given book's ISBN.
+     * @throws ReviewException If there's an issue fetching the reviews.
+     */
+    @Override
+    public List<String> getReviewsForBook(String ISBN) throws ReviewException {
+        List<String> reviews = new ArrayList<>();
+        iterateReviewsForBook(ISBN).forEachRemaining(reviews::add);
+        return reviews;
+    }
+
+    @Override
+    public Iterator<String> iterateReviewsForBook(String ISBN) throws ReviewException {
+        return new PagedReviewIterator(this, ISBN, Integer.MAX_VALUE, pageSize);
+    }
+}
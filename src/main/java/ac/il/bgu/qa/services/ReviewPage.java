@@ -0,0 +1,56 @@
+package ac.il.bgu.qa.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable page of the reviews of a book, as returned by {@link ReviewService#getReviewsPage(String, String, int)}.
+ */
+public class ReviewPage {
+
+    private final List<String> reviews;
+    private final String nextCursor;
+
+    /**
+     * Constructs a new ReviewPage.
+     *
+     * @param reviews    The reviews on this page, copied.
+     * @param nextCursor The cursor of the following page, or null if this is the last page.
+     */
+    public ReviewPage(List<String> reviews, String nextCursor) {
+        if (reviews == null) {
+            throw new IllegalArgumentException("Invalid reviews.");
+        }
+        // Copied, so that a caller changing its list afterwards does not change the page.
+        this.reviews = Collections.unmodifiableList(new ArrayList<>(reviews));
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Retrieves the reviews on this page.
+     *
+     * @return The unmodifiable list of reviews.
+     */
+    public List<String> getReviews() {
+        return reviews;
+    }
+
+    /**
+     * Retrieves the cursor to pass for the following page.
+     *
+     * @return The cursor of the following page, or null if this is the last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Checks whether no page follows this one.
+     *
+     * @return true if this is the last page, false otherwise.
+     */
+    public boolean isLast() {
+        return nextCursor == null;
+    }
+}
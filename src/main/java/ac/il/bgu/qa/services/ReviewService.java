@@ -2,6 +2,8 @@ package ac.il.bgu.qa.services;
 
 import ac.il.bgu.qa.errors.ReviewException;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -18,8 +20,79 @@ public interface ReviewService {
      */
     List<String> getReviewsForBook(String ISBN) throws ReviewException;
 
+    /**
+     * Fetches one page of the reviews for a book. The first page is fetched with a null cursor and every following
+     * page with the cursor of the page before it, until a page has no next cursor.
+     * A service without paging fetches the whole list from {@link #getReviewsForBook(String)} for each page and
+     * returns a slice of it, with the offset of the following page as cursor.
+     *
+     * @param ISBN         The International Standard Book Number (ISBN) of the book.
+     * @param cursor       The cursor of the page, or null for the first page.
+     * @param pageSizeHint The number of reviews the caller wants on the page; a service may return fewer or more.
+     * @return The page of reviews.
+     * @throws ReviewException If there's an issue fetching the reviews.
+     */
+    default ReviewPage getReviewsPage(String ISBN, String cursor, int pageSizeHint) throws ReviewException {
+        if (pageSizeHint <= 0) {
+            throw new IllegalArgumentException("Invalid page size.");
+        }
+        int offset;
+        try {
+            offset = cursor == null ? 0 : Integer.parseInt(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor.");
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid cursor.");
+        }
+        List<String> reviews = getReviewsForBook(ISBN);
+        if (reviews == null || offset >= reviews.size()) {
+            return new ReviewPage(Collections.<String>emptyList(), null);
+        }
+        int end = (int) Math.min(reviews.size(), (long) offset + pageSizeHint);
+        return new ReviewPage(reviews.subList(offset, end),
+                end < reviews.size() ? Integer.toString(end) : null);
+    }
+
+    /**
+     * Fetches the reviews for a book one at a time, so a caller that stops early or writes them out as they come
+     * never needs all of them at once. The iterator may fetch lazily and throw a {@link ReviewException} from
+     * {@link Iterator#hasNext()} or {@link Iterator#next()}; it must be consumed before the connection is released.
+     * A service without streaming iterates over the list from {@link #getReviewsForBook(String)}.
+     *
+     * @param ISBN The International Standard Book Number (ISBN) of the book.
+     * @return An iterator over the reviews of the book, empty if there are none.
+     * @throws ReviewException If there's an issue fetching the reviews.
+     */
+    default Iterator<String> iterateReviewsForBook(String ISBN) throws ReviewException {
+        List<String> reviews = getReviewsForBook(ISBN);
+        return reviews == null ? Collections.<String>emptyIterator() : reviews.iterator();
+    }
+
     /**
      * Closes the review service, performing any necessary cleanup operations.
      */
     void close();
+
+    /**
+     * Leases a connection to the review backend for one or more lookups.
+     * The connection must be handed back with {@link #release(ReviewService)} once the caller is done with it.
+     * A service without pooling leases itself.
+     *
+     * @return The leased connection.
+     * @throws ReviewException If no connection could be obtained.
+     */
+    default ReviewService lease() throws ReviewException {
+        return this;
+    }
+
+    /**
+     * Hands back a connection obtained from {@link #lease()}.
+     * A service without pooling closes the connection, as callers did after every lookup.
+     *
+     * @param connection The connection to be handed back.
+     */
+    default void release(ReviewService connection) {
+        connection.close();
+    }
 }
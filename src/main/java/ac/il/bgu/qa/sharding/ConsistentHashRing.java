@@ -0,0 +1,89 @@
+package ac.il.bgu.qa.sharding;
+
+import java.util.Arrays;
+
+/**
+ * Consistent hash ring mapping long keys to a fixed number of nodes.
+ * <p>
+ * Every node is placed on the ring at several pseudo-random points, its virtual nodes, and a key belongs to the
+ * node owning the first point at or after the key's hash. More virtual nodes spread the keys more evenly, and
+ * growing the ring from n to n + 1 nodes moves only about 1 / (n + 1) of the keys. The ring is immutable and
+ * therefore thread-safe.
+ */
+public final class ConsistentHashRing {
+
+    // Hashes of the virtual nodes in ascending order, and the node owning each of them.
+    private final long[] points;
+    private final int[] owners;
+
+    private final int nodeCount;
+
+    /**
+     * Constructs a ring.
+     *
+     * @param nodeCount    The number of nodes, numbered from 0.
+     * @param virtualNodes The number of points of each node on the ring.
+     */
+    public ConsistentHashRing(int nodeCount, int virtualNodes) {
+        if (nodeCount <= 0) {
+            throw new IllegalArgumentException("Invalid node count.");
+        }
+        if (virtualNodes <= 0 || (long) nodeCount * virtualNodes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid virtual node count.");
+        }
+        this.nodeCount = nodeCount;
+        int size = nodeCount * virtualNodes;
+        long[] hashes = new long[size];
+        for (int node = 0; node < nodeCount; node++) {
+            for (int replica = 0; replica < virtualNodes; replica++) {
+                hashes[node * virtualNodes + replica] = hash((long) node << 32 | replica);
+            }
+        }
+        // Sort the points and carry the owner of each along.
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        this.points = new long[size];
+        this.owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = order[i] / virtualNodes;
+        }
+    }
+
+    /**
+     * Finds the node owning a key.
+     *
+     * @param key The key to be placed.
+     * @return The number of the owning node.
+     */
+    public int nodeFor(long key) {
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * Retrieves the number of nodes on the ring.
+     *
+     * @return The node count.
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    // The finalisation step of MurmurHash3, so that neighbouring keys land far apart on the ring.
+    private static long hash(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,170 @@
+package ac.il.bgu.qa.sharding;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ISBNKey;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.LibraryStatus;
+import ac.il.bgu.qa.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Library facade partitioning the catalog over several independent {@link Library} shards.
+ * <p>
+ * Each book lives on exactly one shard, chosen by a {@link ConsistentHashRing} over the canonical {@link ISBNKey}
+ * of its ISBN, and every book operation is handled by that shard alone, so shards with their own databases do not
+ * contend with each other. Users are replicated instead: registering a user registers them on every shard, so any
+ * shard can check the borrower of its books without asking the others.
+ * <p>
+ * The facade holds no state of its own besides the ring, so it is as thread-safe as its shards. Registrations are
+ * serialized by the facade, so that two registrations of one user Id never interleave across the shards.
+ */
+public class ShardedLibrary {
+
+    /**
+     * The number of points each shard gets on the ring unless specified otherwise.
+     */
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    // The partitions, indexed by ring node
+    private final List<Library> shards;
+
+    // Places ISBN keys on the shards
+    private final ConsistentHashRing ring;
+
+    // Constructor for ShardedLibrary, with the default number of virtual nodes per shard
+    public ShardedLibrary(List<Library> shards) {
+        this(shards, DEFAULT_VIRTUAL_NODES);
+    }
+
+    // Constructor for ShardedLibrary, initializes the shards and the number of points of each on the ring
+    public ShardedLibrary(List<Library> shards, int virtualNodes) {
+        if (shards == null || shards.isEmpty() || shards.contains(null)) {
+            throw new IllegalArgumentException("Invalid shard list.");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        this.ring = new ConsistentHashRing(shards.size(), virtualNodes);
+    }
+
+    /**
+     * Adds a book to the shard owning its ISBN.
+     *
+     * @param book The book to be added.
+     */
+    public void addBook(Book book) {
+        if (book == null) {
+            throw new IllegalArgumentException("Invalid book.");
+        }
+        shardFor(book.getISBN()).addBook(book);
+    }
+
+    /**
+     * Registers a user on every shard that does not know them yet.
+     * The first of those shards validates the user, so an invalid user is registered nowhere. A shard cannot forget
+     * a user, so a registration that failed part way is not undone; registering the user again completes it.
+     *
+     * @param user The user to be registered.
+     * @throws IllegalArgumentException If the user is invalid or already registered on every shard.
+     */
+    public synchronized void registerUser(User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("Invalid user.");
+        }
+        List<Library> missing = new ArrayList<>();
+        for (Library shard : shards) {
+            if (!shard.isUserRegistered(user.getId())) {
+                missing.add(shard);
+            }
+        }
+        if (missing.isEmpty()) {
+            throw new IllegalArgumentException("User already exists.");
+        }
+        for (Library shard : missing) {
+            shard.registerUser(user);
+        }
+    }
+
+    /**
+     * Borrows a book from the shard owning its ISBN.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be borrowed.
+     * @param userId The Id of the user borrowing the book.
+     */
+    public void borrowBook(String ISBN, String userId) {
+        shardFor(ISBN).borrowBook(ISBN, userId);
+    }
+
+    /**
+     * Returns a book to the shard owning its ISBN.
+     *
+     * @param ISBN The International Standard Book Number of the book to be returned.
+     */
+    public void returnBook(String ISBN) {
+        shardFor(ISBN).returnBook(ISBN);
+    }
+
+    /**
+     * Borrows a book from the shard owning its ISBN, reporting the outcome as a status instead of throwing.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be borrowed.
+     * @param userId The Id of the user borrowing the book.
+     * @return {@link LibraryStatus#SUCCESS} if the book was borrowed, otherwise the reason it was not.
+     */
+    public LibraryStatus tryBorrowBook(String ISBN, String userId) {
+        long key = ISBNKey.of(ISBN);
+        return key == ISBNKey.INVALID ? LibraryStatus.INVALID_ISBN
+                : shards.get(ring.nodeFor(key)).tryBorrowBook(ISBN, userId);
+    }
+
+    /**
+     * Returns a book to the shard owning its ISBN, reporting the outcome as a status instead of throwing.
+     *
+     * @param ISBN The International Standard Book Number of the book to be returned.
+     * @return {@link LibraryStatus#SUCCESS} if the book was returned, otherwise the reason it was not.
+     */
+    public LibraryStatus tryReturnBook(String ISBN) {
+        long key = ISBNKey.of(ISBN);
+        return key == ISBNKey.INVALID ? LibraryStatus.INVALID_ISBN : shards.get(ring.nodeFor(key)).tryReturnBook(ISBN);
+    }
+
+    /**
+     * Fetches a book from the shard owning its ISBN and notifies the user with its reviews.
+     *
+     * @param ISBN   The International Standard Book Number of the book to be fetched.
+     * @param userId The Id of the user to be notified with the book's reviews.
+     * @return The book with the given ISBN.
+     */
+    public Book getBookByISBN(String ISBN, String userId) {
+        return shardFor(ISBN).getBookByISBN(ISBN, userId);
+    }
+
+    /**
+     * Retrieves the shard owning a book.
+     *
+     * @param ISBN The International Standard Book Number of the book.
+     * @return The shard handling every operation on the book.
+     */
+    public Library getShard(String ISBN) {
+        return shardFor(ISBN);
+    }
+
+    /**
+     * Retrieves the shards of the library.
+     *
+     * @return The shards, in ring node order.
+     */
+    public List<Library> getShards() {
+        return shards;
+    }
+
+    private Library shardFor(String ISBN) {
+        // Validate the ISBN. If it's invalid, throw an exception.
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return shards.get(ring.nodeFor(key));
+    }
+}
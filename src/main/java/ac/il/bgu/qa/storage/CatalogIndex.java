@@ -0,0 +1,276 @@
+package ac.il.bgu.qa.storage;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Secondary indexes of a catalog, by author and by title prefix, holding ISBN keys.
+ * <p>
+ * Authors and titles are normalised before being indexed or searched: accents are stripped, letters are lower
+ * cased and runs of whitespace collapse into one space, so "Amos  Oz" and "amos oz" are the same author.
+ * <p>
+ * The author index maps a normalised author to the keys of its books, in the order they were added. The title
+ * index is an array of normalised titles sorted together with their keys; a prefix search finds the first match
+ * by binary search and every other match follows it. New and removed titles are buffered and merged into the sorted
+ * array by {@link #mergePendingTitles()}, which a title search requires first, so that bulk loads sort once and
+ * replacing many books copies the array once.
+ * <p>
+ * This class is not thread-safe; the owning database guards it with its own lock.
+ */
+public class CatalogIndex {
+
+    private static final String[] NO_TITLES = new String[0];
+    private static final long[] NO_KEYS = new long[0];
+
+    // Orders pending titles like the sorted array: by title, then by key.
+    private static final Comparator<TitleEntry> TITLE_ORDER =
+            Comparator.<TitleEntry, String>comparing(entry -> entry.title).thenComparingLong(entry -> entry.key);
+
+    // Keys of the books of each normalised author, in insertion order.
+    private final Map<String, Postings> authors = new HashMap<>();
+
+    // Normalised titles in ascending order, and the key of the book of each title.
+    private String[] titles = NO_TITLES;
+    private long[] titleKeys = NO_KEYS;
+
+    // Titles added and removed since the last merge.
+    private final List<TitleEntry> pendingTitles = new ArrayList<>();
+    private final List<TitleEntry> pendingRemovals = new ArrayList<>();
+
+    /**
+     * Indexes a book.
+     *
+     * @param ISBN   The canonical key of the book's ISBN.
+     * @param title  The title of the book, or null if it has none.
+     * @param author The author of the book, or null if it has none.
+     */
+    public void add(long ISBN, String title, String author) {
+        String normalisedAuthor = normalise(author);
+        if (normalisedAuthor != null) {
+            authors.computeIfAbsent(normalisedAuthor, ignored -> new Postings()).add(ISBN);
+        }
+        String normalisedTitle = normalise(title);
+        if (normalisedTitle != null) {
+            pendingTitles.add(new TitleEntry(normalisedTitle, ISBN));
+        }
+    }
+
+    /**
+     * Removes a book from the index, given the title and author it was indexed with.
+     *
+     * @param ISBN   The canonical key of the book's ISBN.
+     * @param title  The title the book was indexed with.
+     * @param author The author the book was indexed with.
+     */
+    public void remove(long ISBN, String title, String author) {
+        String normalisedAuthor = normalise(author);
+        if (normalisedAuthor != null) {
+            Postings postings = authors.get(normalisedAuthor);
+            if (postings != null && postings.remove(ISBN) && postings.size == 0) {
+                authors.remove(normalisedAuthor);
+            }
+        }
+        String normalisedTitle = normalise(title);
+        if (normalisedTitle != null) {
+            pendingRemovals.add(new TitleEntry(normalisedTitle, ISBN));
+        }
+    }
+
+    /**
+     * Finds the books of an author.
+     *
+     * @param author The author, matched after normalisation.
+     * @param offset The number of matching books to skip.
+     * @param limit  The maximum number of keys to return.
+     * @return The keys of the matching books, in the order they were added.
+     */
+    public long[] findByAuthor(String author, int offset, int limit) {
+        String normalisedAuthor = normalise(author);
+        Postings postings = normalisedAuthor == null ? null : authors.get(normalisedAuthor);
+        if (postings == null || offset >= postings.size) {
+            return NO_KEYS;
+        }
+        return Arrays.copyOfRange(postings.keys, offset, offset + Math.min(limit, postings.size - offset));
+    }
+
+    /**
+     * Finds the books whose title starts with a prefix. Pending titles must have been merged first.
+     *
+     * @param prefix The title prefix, matched after normalisation.
+     * @param offset The number of matching books to skip.
+     * @param limit  The maximum number of keys to return.
+     * @return The keys of the matching books, ordered by title.
+     * @throws IllegalStateException If titles were added or removed since the last {@link #mergePendingTitles()}.
+     */
+    public long[] findByTitlePrefix(String prefix, int offset, int limit) {
+        if (hasPendingTitles()) {
+            throw new IllegalStateException("Title index is not merged.");
+        }
+        String normalisedPrefix = normalise(prefix);
+        if (normalisedPrefix == null) {
+            return NO_KEYS;
+        }
+        int first = lowerBound(normalisedPrefix);
+        if (first > titles.length - 1 - offset) {
+            return NO_KEYS;
+        }
+        int start = first + offset;
+        int end = start;
+        while (end < titles.length && end - start < limit && titles[end].startsWith(normalisedPrefix)) {
+            end++;
+        }
+        return Arrays.copyOfRange(titleKeys, start, end);
+    }
+
+    /**
+     * Checks whether titles were added or removed since the last merge.
+     *
+     * @return true if a title search must be preceded by {@link #mergePendingTitles()}, false otherwise.
+     */
+    public boolean hasPendingTitles() {
+        return !pendingTitles.isEmpty() || !pendingRemovals.isEmpty();
+    }
+
+    /**
+     * Sorts the titles added since the last merge into the title index and drops the titles removed since then.
+     * Costs one pass over the whole index, so a bulk load or a run of replacements is best followed by a single merge.
+     */
+    public void mergePendingTitles() {
+        if (!hasPendingTitles()) {
+            return;
+        }
+        TitleEntry[] pending = pendingTitles.toArray(new TitleEntry[0]);
+        TitleEntry[] removed = pendingRemovals.toArray(new TitleEntry[0]);
+        pendingTitles.clear();
+        pendingRemovals.clear();
+        Arrays.sort(pending, TITLE_ORDER);
+        Arrays.sort(removed, TITLE_ORDER);
+
+        // Merges the sorted array with the added titles, and each removed title cancels one equal entry of either.
+        String[] mergedTitles = new String[titles.length + pending.length];
+        long[] mergedKeys = new long[mergedTitles.length];
+        int i = 0;
+        int j = 0;
+        int r = 0;
+        int k = 0;
+        while (i < titles.length || j < pending.length) {
+            String title;
+            long key;
+            if (j == pending.length || i < titles.length && compare(titles[i], titleKeys[i], pending[j]) <= 0) {
+                title = titles[i];
+                key = titleKeys[i++];
+            } else {
+                title = pending[j].title;
+                key = pending[j++].key;
+            }
+            while (r < removed.length && compare(title, key, removed[r]) > 0) {
+                r++;
+            }
+            if (r < removed.length && compare(title, key, removed[r]) == 0) {
+                r++;
+                continue;
+            }
+            mergedTitles[k] = title;
+            mergedKeys[k++] = key;
+        }
+        titles = k == mergedTitles.length ? mergedTitles : Arrays.copyOf(mergedTitles, k);
+        titleKeys = k == mergedKeys.length ? mergedKeys : Arrays.copyOf(mergedKeys, k);
+    }
+
+    /**
+     * Retrieves the number of distinct normalised authors.
+     *
+     * @return The number of authors.
+     */
+    public int getAuthorCount() {
+        return authors.size();
+    }
+
+    /**
+     * Normalises an author or a title for indexing: strips accents, lower cases and collapses whitespace.
+     *
+     * @param text The text to be normalised.
+     * @return The normalised text, or null if the text is null or blank.
+     */
+    public static String normalise(String text) {
+        if (text == null) {
+            return null;
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder normalised = new StringBuilder(decomposed.length());
+        boolean space = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = normalised.length() > 0;
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                if (space) {
+                    normalised.append(' ');
+                    space = false;
+                }
+                normalised.append(c);
+            }
+        }
+        return normalised.length() == 0 ? null : normalised.toString().toLowerCase(Locale.ROOT);
+    }
+
+    private static int compare(String title, long key, TitleEntry entry) {
+        int order = title.compareTo(entry.title);
+        return order != 0 ? order : Long.compare(key, entry.key);
+    }
+
+    // The index of the first title not smaller than the given one.
+    private int lowerBound(String title) {
+        int low = 0;
+        int high = titles.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (titles[middle].compareTo(title) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // A growable array of keys.
+    private static final class Postings {
+        long[] keys = new long[2];
+        int size;
+
+        void add(long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+
+        boolean remove(long key) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    System.arraycopy(keys, i + 1, keys, i, --size - i);
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // A title waiting to be merged into or removed from the sorted array.
+    private static final class TitleEntry {
+        final String title;
+        final long key;
+
+        TitleEntry(String title, long key) {
+            this.title = title;
+            this.key = key;
+        }
+    }
+}
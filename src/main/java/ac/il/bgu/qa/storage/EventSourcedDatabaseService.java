@@ -0,0 +1,926 @@
+package ac.il.bgu.qa.storage;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ISBNKey;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.codec.BookCodec;
+import ac.il.bgu.qa.codec.UserCodec;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.validation.IdentifierValidator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Event-sourced implementation of {@link DatabaseService}: every change is an event appended to a binary log,
+ * and the books, users and loans are the state rebuilt from that log.
+ * <p>
+ * Events are buffered and written in batches, each ending with one fsync, once a batch is full, once the flush
+ * interval elapsed, or on {@link #flush()}; a crash loses at most the events of the unwritten batch. The log is kept
+ * as an audit trail and can be read back with {@link #forEachEvent(EventVisitor)}.
+ * <p>
+ * Every so many events the state is written to a snapshot, and the log continues in a new segment starting at the
+ * snapshot's event index. Opening the database loads the latest valid snapshot and replays only the segments after
+ * it, so recovery time depends on the events since the last snapshot rather than on the whole history. Each event is
+ * {@code [int length][byte type][payload][int CRC32]}; a torn event at the end of the last segment is cut off.
+ * Every payload starts with the ISBN key or the numeric user Id, and the books and users of the log and of the
+ * snapshots follow in the encoding of {@link BookCodec} and {@link UserCodec}.
+ * A segment is also continued in a new one once it would outgrow a maximum size, so that every segment can be read
+ * into a single buffer.
+ * <p>
+ * The first failure to write the log is kept: the batch being written is cut off the log again, and every later
+ * change, {@link #flush()}, {@link #snapshot()} and {@link #close()} fails with it, so the database never acknowledges
+ * a change it cannot log. Like a crash, the failure loses the events of the unwritten batch.
+ * After {@link #close()}, changes, {@link #flush()} and {@link #snapshot()} throw an
+ * {@link IllegalStateException}; reads still see the state.
+ * <p>
+ * A {@link CatalogIndex} rebuilt along with the books answers author and title prefix searches.
+ * Notification services cannot be stored, so the users rebuilt from the log get theirs from a resolver.
+ * All methods are thread-safe.
+ */
+public class EventSourcedDatabaseService implements DatabaseService, AutoCloseable {
+
+    /**
+     * The kinds of event in the log.
+     */
+    public enum EventType {
+        ADD_BOOK, REGISTER_USER, BORROW, RETURN
+    }
+
+    /**
+     * Receives the events of the log during {@link #forEachEvent(EventVisitor)}.
+     */
+    public interface EventVisitor {
+        /**
+         * Receives one event.
+         *
+         * @param index   The position of the event in the log, starting at 0.
+         * @param type    The kind of event.
+         * @param key     The ISBN key of the book, or the numeric Id of the user for {@link EventType#REGISTER_USER}.
+         * @param userKey The numeric Id of the borrower for {@link EventType#BORROW}, -1 otherwise.
+         */
+        void visit(long index, EventType type, long key, long userKey);
+    }
+
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    /**
+     * The size at which a log segment is continued in a new one unless specified otherwise, in bytes.
+     */
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 1L << 30;
+
+    private static final int SNAPSHOT_MAGIC = 0x4C534E50;
+    // Version 2 stores books and users in the encoding of BookCodec and UserCodec.
+    private static final int VERSION = 2;
+
+    // Length prefix, type and checksum of an event.
+    private static final int EVENT_OVERHEAD = 4 + 1 + 4;
+
+    private final Path directory;
+    private final Function<String, NotificationService> notificationServices;
+    private final int batchSize;
+    private final long snapshotInterval;
+    private final long maxSegmentBytes;
+
+    // State rebuilt from the log. Guarded by lock.
+    private final LongObjectHashMap<Book> books = new LongObjectHashMap<>();
+    private final LongObjectHashMap<User> users = new LongObjectHashMap<>();
+    private final LoanIndex loans = new LoanIndex();
+    private final CatalogIndex catalog = new CatalogIndex();
+
+    // Events appended but not yet written, and the log position. Guarded by lock.
+    private ByteBuffer unwritten = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+    private int unwrittenEvents;
+    private long eventCount;
+    private long lastSnapshot;
+
+    // Reads proceed in parallel; changes and the swap of the unwritten batch are exclusive.
+    private final StampedLock lock = new StampedLock();
+
+    // Serializes writing batches, rotating segments and writing snapshots; never taken inside lock.
+    private final Object logLock = new Object();
+    private FileChannel segment;
+    private long commits;
+
+    // Set once by close() while holding both logLock and the write lock, so no change is appended after the final
+    // batch was taken.
+    private volatile boolean closed;
+
+    // Index of the first event of the batch being written. Guarded by logLock.
+    private long batchStart;
+
+    // The first failure to write the log; once set, nothing is appended any more. Written under logLock.
+    private volatile IOException failure;
+
+    private final long recoveredEvents;
+    private final Thread flusher;
+
+    /**
+     * Opens the database in a directory, recovering its state from the latest snapshot and the log after it.
+     *
+     * @param directory            The directory holding the log segments and snapshots.
+     * @param notificationServices Finds the notification service of a user rebuilt from the log, by user Id.
+     * @param batchSize            The number of events written with one fsync.
+     * @param flushInterval        The longest time an event stays unwritten, or 0 to write only full batches.
+     * @param unit                 The unit of the flush interval.
+     * @param snapshotInterval     The number of events between snapshots, or 0 to snapshot only on demand.
+     * @throws IOException If the log could not be read or opened for appending.
+     */
+    public EventSourcedDatabaseService(Path directory, Function<String, NotificationService> notificationServices,
+                                       int batchSize, long flushInterval, TimeUnit unit,
+                                       long snapshotInterval) throws IOException {
+        this(directory, notificationServices, batchSize, flushInterval, unit, snapshotInterval,
+                DEFAULT_MAX_SEGMENT_BYTES);
+    }
+
+    /**
+     * Opens the database in a directory with an explicit maximum segment size.
+     *
+     * @param directory            The directory holding the log segments and snapshots.
+     * @param notificationServices Finds the notification service of a user rebuilt from the log, by user Id.
+     * @param batchSize            The number of events written with one fsync.
+     * @param flushInterval        The longest time an event stays unwritten, or 0 to write only full batches.
+     * @param unit                 The unit of the flush interval.
+     * @param snapshotInterval     The number of events between snapshots, or 0 to snapshot only on demand.
+     * @param maxSegmentBytes      The size at which a segment is continued in a new one, in bytes.
+     * @throws IOException If the log could not be read or opened for appending.
+     */
+    public EventSourcedDatabaseService(Path directory, Function<String, NotificationService> notificationServices,
+                                       int batchSize, long flushInterval, TimeUnit unit, long snapshotInterval,
+                                       long maxSegmentBytes) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Invalid directory.");
+        } else if (notificationServices == null) {
+            throw new IllegalArgumentException("Invalid notification service resolver.");
+        } else if (batchSize <= 0) {
+            throw new IllegalArgumentException("Invalid batch size.");
+        } else if (flushInterval < 0) {
+            throw new IllegalArgumentException("Invalid flush interval.");
+        } else if (snapshotInterval < 0) {
+            throw new IllegalArgumentException("Invalid snapshot interval.");
+        } else if (maxSegmentBytes <= 0 || maxSegmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid segment size.");
+        }
+        this.directory = directory;
+        this.notificationServices = notificationServices;
+        this.batchSize = batchSize;
+        this.snapshotInterval = snapshotInterval;
+        this.maxSegmentBytes = maxSegmentBytes;
+
+        Files.createDirectories(directory);
+        recoveredEvents = recover();
+
+        if (flushInterval > 0) {
+            long intervalNanos = unit.toNanos(flushInterval);
+            flusher = new Thread(() -> flushPeriodically(intervalNanos), "event-log-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        addBook(requireISBN(ISBN), book);
+    }
+
+    @Override
+    public void addBook(long ISBN, Book book) {
+        if (book == null) {
+            throw new IllegalArgumentException("Invalid book.");
+        }
+        ByteBuffer payload = ByteBuffer.allocate(8 + BookCodec.encodedSize(book));
+        payload.putLong(ISBN);
+        BookCodec.encode(book, payload);
+        long stamp = lock.writeLock();
+        try {
+            requireWritable();
+            index(ISBN, book, books.put(ISBN, book));
+            append(EventType.ADD_BOOK, payload);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        afterAppend();
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        long key = IdentifierValidator.parseUserId(id);
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        if (user == null) {
+            throw new IllegalArgumentException("Invalid user.");
+        }
+        ByteBuffer payload = ByteBuffer.allocate(8 + UserCodec.encodedSize(user));
+        payload.putLong(key);
+        UserCodec.encode(user, payload);
+        long stamp = lock.writeLock();
+        try {
+            requireWritable();
+            users.put(key, user);
+            append(EventType.REGISTER_USER, payload);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        afterAppend();
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = ISBNKey.of(ISBN);
+        return key == ISBNKey.INVALID ? null : getBookByISBN(key);
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        long stamp = lock.readLock();
+        try {
+            return books.get(ISBN);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = IdentifierValidator.parseUserId(userId);
+        if (key < 0) {
+            return null;
+        }
+        long stamp = lock.readLock();
+        try {
+            return users.get(key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        borrowBook(requireISBN(ISBN), userId);
+    }
+
+    @Override
+    public void borrowBook(long ISBN, String userId) {
+        long userKey = IdentifierValidator.parseUserId(userId);
+        if (userKey < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        ByteBuffer payload = ByteBuffer.allocate(16);
+        payload.putLong(ISBN).putLong(userKey);
+        long stamp = lock.writeLock();
+        try {
+            requireWritable();
+            loans.put(ISBN, userKey);
+            append(EventType.BORROW, payload);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        afterAppend();
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        returnBook(requireISBN(ISBN));
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        ByteBuffer payload = ByteBuffer.allocate(8);
+        payload.putLong(ISBN);
+        long stamp = lock.writeLock();
+        try {
+            requireWritable();
+            loans.remove(ISBN);
+            append(EventType.RETURN, payload);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        afterAppend();
+    }
+
+    /**
+     * Writes every buffered event to the log and syncs it to disk.
+     *
+     * @throws UncheckedIOException If the log could not be written, now or before.
+     * @throws IllegalStateException If the database was closed.
+     */
+    public void flush() {
+        synchronized (logLock) {
+            requireWritable();
+            ByteBuffer batch = takeBatch();
+            try {
+                writeBatch(batch);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Event log write failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Writes the current state to a snapshot and continues the log in a new segment, so a later recovery starts
+     * from here. Does nothing if no event was appended since the last snapshot.
+     *
+     * @throws UncheckedIOException If the snapshot or the log could not be written, or the log failed before.
+     * @throws IllegalStateException If the database was closed.
+     */
+    public void snapshot() {
+        synchronized (logLock) {
+            requireWritable();
+            ByteBuffer batch;
+            ByteBuffer image;
+            long index;
+            long stamp = lock.writeLock();
+            try {
+                if (eventCount == lastSnapshot) {
+                    return;
+                }
+                batch = swapBatch();
+                index = eventCount;
+                image = encodeState(index);
+                lastSnapshot = index;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            try {
+                writeBatch(batch);
+                // The new segment exists before the snapshot, so every snapshot is followed by its segment.
+                startSegment(index);
+                Path temporary = directory.resolve(SNAPSHOT_PREFIX + index + ".tmp");
+                try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    while (image.hasRemaining()) {
+                        out.write(image);
+                    }
+                    out.force(true);
+                }
+                Files.move(temporary, directory.resolve(name(SNAPSHOT_PREFIX, index, SNAPSHOT_SUFFIX)),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Snapshot failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Reads the whole log back, oldest event first. Buffered events are written first.
+     *
+     * @param visitor The callback receiving each event.
+     * @throws IOException If the log could not be read.
+     */
+    public void forEachEvent(EventVisitor visitor) throws IOException {
+        flush();
+        synchronized (logLock) {
+            for (long start : list(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(directory.resolve(name(SEGMENT_PREFIX, start, SEGMENT_SUFFIX))));
+                long index = start;
+                ByteBuffer event;
+                while ((event = nextEvent(log)) != null) {
+                    EventType type = EventType.values()[event.get() - 1];
+                    long key = event.getLong();
+                    visitor.visit(index++, type, key, type == EventType.BORROW ? event.getLong() : -1L);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered events, stops the flusher and closes the log.
+     *
+     * @throws IOException If the log could not be written or closed, now or before.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (logLock) {
+            if (closed) {
+                return;
+            }
+            long stamp = lock.writeLock();
+            try {
+                closed = true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        if (flusher != null) {
+            flusher.interrupt();
+            boolean interrupted = false;
+            while (flusher.isAlive()) {
+                try {
+                    flusher.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (logLock) {
+            try {
+                if (failure == null) {
+                    writeBatch(takeBatch());
+                }
+            } finally {
+                segment.close();
+            }
+            if (failure != null) {
+                throw new IOException("Event log write failed.", failure);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of events in the log, including the buffered ones.
+     *
+     * @return The event count.
+     */
+    public long getEventCount() {
+        long stamp = lock.readLock();
+        try {
+            return eventCount;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Retrieves the number of events replayed from the log when the database was opened,
+     * which excludes the events covered by the snapshot it started from.
+     *
+     * @return The recovered event count.
+     */
+    public long getRecoveredEventCount() {
+        return recoveredEvents;
+    }
+
+    /**
+     * Retrieves the number of batches written, each ending with one fsync.
+     *
+     * @return The commit count.
+     */
+    public long getCommitCount() {
+        synchronized (logLock) {
+            return commits;
+        }
+    }
+
+    @Override
+    public Book[] findBooksByAuthor(String author, int offset, int limit) {
+        long stamp = lock.readLock();
+        try {
+            return toBooks(catalog.findByAuthor(author, offset, limit));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Book[] findBooksByTitlePrefix(String prefix, int offset, int limit) {
+        long stamp = lock.readLock();
+        try {
+            if (catalog.hasPendingTitles()) {
+                // Merging new titles changes the index, so it needs the write lock.
+                long writeStamp = lock.tryConvertToWriteLock(stamp);
+                if (writeStamp == 0L) {
+                    lock.unlockRead(stamp);
+                    writeStamp = lock.writeLock();
+                }
+                stamp = writeStamp;
+                catalog.mergePendingTitles();
+            }
+            return toBooks(catalog.findByTitlePrefix(prefix, offset, limit));
+        } finally {
+            lock.unlock(stamp);
+        }
+    }
+
+    @Override
+    public String getBorrowerId(long ISBN) {
+        long stamp = lock.readLock();
+        try {
+            long userKey = loans.getHolder(ISBN);
+            return userKey == LoanIndex.NO_HOLDER ? null : String.format("%012d", userKey);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public long[] getBorrowedISBNs(String userId) {
+        long userKey = IdentifierValidator.parseUserId(userId);
+        if (userKey < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        long stamp = lock.readLock();
+        try {
+            return loans.getLoans(userKey);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Retrieves the number of books in the database.
+     *
+     * @return The number of books.
+     */
+    public int getBookCount() {
+        long stamp = lock.readLock();
+        try {
+            return books.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Retrieves the number of registered users.
+     *
+     * @return The number of users.
+     */
+    public int getUserCount() {
+        long stamp = lock.readLock();
+        try {
+            return users.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Retrieves the number of books currently borrowed.
+     *
+     * @return The number of active loans.
+     */
+    public int getLoanCount() {
+        long stamp = lock.readLock();
+        try {
+            return loans.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Replaces the index entries of a previous book with those of the new one. Called under the write lock or while
+    // recovering.
+    private void index(long ISBN, Book book, Book previous) {
+        if (previous != null) {
+            if (Objects.equals(previous.getTitle(), book.getTitle())
+                    && Objects.equals(previous.getAuthor(), book.getAuthor())) {
+                return;
+            }
+            catalog.remove(ISBN, previous.getTitle(), previous.getAuthor());
+        }
+        catalog.add(ISBN, book.getTitle(), book.getAuthor());
+    }
+
+    // Looks up the books of index keys. Called under the lock.
+    private Book[] toBooks(long[] ISBNs) {
+        Book[] result = new Book[ISBNs.length];
+        for (int i = 0; i < ISBNs.length; i++) {
+            result[i] = books.get(ISBNs[i]);
+        }
+        return result;
+    }
+
+    // Encodes an event into the unwritten batch. Called under the write lock.
+    private void append(EventType type, ByteBuffer payload) {
+        payload.flip();
+        int length = 1 + payload.remaining();
+        if (unwritten.remaining() < 4 + length + 4) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(unwritten.capacity() * 2, unwritten.position() + length + 8));
+            unwritten.flip();
+            unwritten = grown.put(unwritten);
+        }
+        int start = unwritten.position();
+        unwritten.putInt(length).put((byte) (type.ordinal() + 1)).put(payload);
+        CRC32 crc = new CRC32();
+        ByteBuffer covered = unwritten.duplicate();
+        covered.position(start + 4).limit(unwritten.position());
+        crc.update(covered);
+        unwritten.putInt((int) crc.getValue());
+        unwrittenEvents++;
+        eventCount++;
+    }
+
+    // Writes the batch once it is full and takes a snapshot once one is due. Called after the write lock is released.
+    private void afterAppend() {
+        boolean full;
+        boolean snapshotDue;
+        long stamp = lock.readLock();
+        try {
+            full = unwrittenEvents >= batchSize;
+            snapshotDue = snapshotInterval > 0 && eventCount - lastSnapshot >= snapshotInterval;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        if (snapshotDue) {
+            snapshot();
+        } else if (full) {
+            flush();
+        }
+    }
+
+    private ByteBuffer takeBatch() {
+        long stamp = lock.writeLock();
+        try {
+            return swapBatch();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Hands the unwritten events to the caller, who must hold logLock, and starts an empty batch.
+    private ByteBuffer swapBatch() {
+        batchStart = eventCount - unwrittenEvents;
+        ByteBuffer batch = unwritten;
+        unwritten = spare;
+        unwritten.clear();
+        spare = batch;
+        unwrittenEvents = 0;
+        batch.flip();
+        return batch;
+    }
+
+    // Writes a batch taken by swapBatch and syncs it, first continuing the log in a new segment if the batch would
+    // outgrow the current one. A failure is kept. Called holding logLock.
+    private void writeBatch(ByteBuffer batch) throws IOException {
+        if (!batch.hasRemaining()) {
+            return;
+        }
+        long start = -1;
+        try {
+            start = segment.size();
+            if (start > 0 && start + batch.remaining() > maxSegmentBytes) {
+                startSegment(batchStart);
+                start = segment.size();
+            }
+            while (batch.hasRemaining()) {
+                segment.write(batch);
+            }
+            segment.force(false);
+        } catch (IOException e) {
+            failure = e;
+            // Cut off the part of the batch that was written, so the log does not end in torn or unsynced events.
+            if (start >= 0) {
+                try {
+                    segment.truncate(start);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        commits++;
+    }
+
+    // Continues the log in a new segment starting at an event index. A failure is kept, since the old segment may
+    // already be closed. Called holding logLock.
+    private void startSegment(long start) throws IOException {
+        try {
+            segment.close();
+            segment = openSegment(start);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    // Fails if the database was closed or the log could not be written before. Changes call it under the write
+    // lock, so a change either fails here or is appended before close() takes the final batch.
+    private void requireWritable() {
+        if (closed) {
+            throw new IllegalStateException("Database is closed.");
+        }
+        IOException e = failure;
+        if (e != null) {
+            throw new UncheckedIOException("Event log write failed.", e);
+        }
+    }
+
+    private void flushPeriodically(long intervalNanos) {
+        // Once the log failed there is nothing left to write.
+        while (!Thread.currentThread().isInterrupted() && failure == null) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(intervalNanos);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                flush();
+            } catch (UncheckedIOException | IllegalStateException e) {
+                // A write failure is kept and reported to every later caller; a closed database needs no flush.
+            }
+        }
+    }
+
+    // Loads the latest valid snapshot, replays the segments after it and opens the last segment for appending.
+    private long recover() throws IOException {
+        List<Long> snapshots = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        Collections.reverse(snapshots);
+        for (long index : snapshots) {
+            if (loadSnapshot(index)) {
+                break;
+            }
+        }
+
+        List<Long> segments = new ArrayList<>();
+        for (long start : list(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (start >= lastSnapshot) {
+                segments.add(start);
+            }
+        }
+        long replayed = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            long start = segments.get(i);
+            if (start != eventCount) {
+                throw new IOException("Event log is not contiguous at event " + eventCount + ".");
+            }
+            Path file = directory.resolve(name(SEGMENT_PREFIX, start, SEGMENT_SUFFIX));
+            ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(file));
+            ByteBuffer event;
+            while ((event = nextEvent(log)) != null) {
+                apply(event);
+                eventCount++;
+                replayed++;
+            }
+            if (log.hasRemaining()) {
+                if (i != segments.size() - 1) {
+                    throw new IOException("Event log is corrupt at event " + eventCount + ".");
+                }
+                // A torn event at the end of the log was never acknowledged to a caller.
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(log.position());
+                    channel.force(true);
+                }
+            }
+        }
+
+        loans.forEach((ISBN, userKey) -> {
+            Book book = books.get(ISBN);
+            if (book != null) {
+                book.tryBorrow();
+            }
+        });
+        segment = openSegment(segments.isEmpty() ? eventCount : segments.get(segments.size() - 1));
+        return replayed;
+    }
+
+    private boolean loadSnapshot(long index) throws IOException {
+        ByteBuffer image = ByteBuffer.wrap(Files.readAllBytes(directory.resolve(name(SNAPSHOT_PREFIX, index, SNAPSHOT_SUFFIX))));
+        if (image.remaining() < 16 + 4) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer covered = image.duplicate();
+        covered.limit(image.limit() - 4);
+        crc.update(covered);
+        if (image.getInt(image.limit() - 4) != (int) crc.getValue()
+                || image.getInt() != SNAPSHOT_MAGIC || image.getInt() != VERSION || image.getLong() != index) {
+            return false;
+        }
+        for (int i = image.getInt(); i > 0; i--) {
+            long key = image.getLong();
+            Book book = BookCodec.decode(image);
+            books.put(key, book);
+            catalog.add(key, book.getTitle(), book.getAuthor());
+        }
+        for (int i = image.getInt(); i > 0; i--) {
+            long key = image.getLong();
+            users.put(key, UserCodec.decode(image, notificationServices));
+        }
+        for (int i = image.getInt(); i > 0; i--) {
+            loans.put(image.getLong(), image.getLong());
+        }
+        eventCount = index;
+        lastSnapshot = index;
+        return true;
+    }
+
+    private ByteBuffer encodeState(long index) {
+        int[] size = {4 + 4 + 8 + 4 + 4 + 4 + loans.size() * 16 + 4};
+        books.forEach((key, book) -> size[0] += 8 + BookCodec.encodedSize(book));
+        users.forEach((key, user) -> size[0] += 8 + UserCodec.encodedSize(user));
+
+        ByteBuffer image = ByteBuffer.allocate(size[0]);
+        image.putInt(SNAPSHOT_MAGIC).putInt(VERSION).putLong(index);
+        image.putInt(books.size());
+        books.forEach((key, book) -> {
+            image.putLong(key);
+            BookCodec.encode(book, image);
+        });
+        image.putInt(users.size());
+        users.forEach((key, user) -> {
+            image.putLong(key);
+            UserCodec.encode(user, image);
+        });
+        image.putInt(loans.size());
+        loans.forEach((ISBN, userKey) -> image.putLong(ISBN).putLong(userKey));
+        CRC32 crc = new CRC32();
+        crc.update(image.array(), 0, image.position());
+        image.putInt((int) crc.getValue());
+        image.flip();
+        return image;
+    }
+
+    private void apply(ByteBuffer event) {
+        EventType type = EventType.values()[event.get() - 1];
+        long key = event.getLong();
+        switch (type) {
+            case ADD_BOOK:
+                Book book = BookCodec.decode(event);
+                index(key, book, books.put(key, book));
+                break;
+            case REGISTER_USER:
+                users.put(key, UserCodec.decode(event, notificationServices));
+                break;
+            case BORROW:
+                loans.put(key, event.getLong());
+                break;
+            case RETURN:
+                loans.remove(key);
+                break;
+        }
+    }
+
+    // Returns the body of the next event, from its type on, or null at the end of the log or at a torn or corrupt
+    // event, leaving the log positioned at that event.
+    private static ByteBuffer nextEvent(ByteBuffer log) {
+        if (log.remaining() < EVENT_OVERHEAD) {
+            return null;
+        }
+        int start = log.position();
+        int length = log.getInt(start);
+        if (length < 1 + 8 || length > log.remaining() - 8) {
+            return null;
+        }
+        ByteBuffer body = log.duplicate();
+        body.position(start + 4).limit(start + 4 + length);
+        int type = body.get(start + 4);
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+        if (log.getInt(start + 4 + length) != (int) crc.getValue() || type < 1 || type > EventType.values().length) {
+            return null;
+        }
+        log.position(start + 4 + length + 4);
+        return body;
+    }
+
+    private FileChannel openSegment(long start) throws IOException {
+        return FileChannel.open(directory.resolve(name(SEGMENT_PREFIX, start, SEGMENT_SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Lists the event indexes of the files with a prefix and suffix, in ascending order.
+    private List<Long> list(String prefix, String suffix) throws IOException {
+        List<Long> indexes = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    indexes.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours.
+                }
+            }
+        }
+        Collections.sort(indexes);
+        return indexes;
+    }
+
+    // Zero pads the index so the files also sort by name.
+    private static String name(String prefix, long index, String suffix) {
+        return String.format("%s%020d%s", prefix, index, suffix);
+    }
+
+    private static long requireISBN(String ISBN) {
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return key;
+    }
+}
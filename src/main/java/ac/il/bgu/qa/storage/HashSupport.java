@@ -0,0 +1,39 @@
+package ac.il.bgu.qa.storage;
+
+/**
+ * Hashing helpers shared by the primitive keyed maps of the storage package.
+ */
+final class HashSupport {
+
+    // Largest power of two table size an array can hold.
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private HashSupport() {
+    }
+
+    /**
+     * Spreads the bits of a key so that sequential keys do not cluster in a linear probed table.
+     *
+     * @param key The key to hash.
+     * @return The mixed hash of the key.
+     */
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Computes the power of two table size needed to hold a number of entries under a load factor.
+     *
+     * @param expectedSize The number of entries to hold.
+     * @param loadFactor   The maximum ratio of entries to slots.
+     * @return The table size.
+     */
+    static int tableSize(int expectedSize, float loadFactor) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 2) / (double) loadFactor) + 1;
+        if (needed >= MAX_CAPACITY) {
+            return MAX_CAPACITY;
+        }
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+}
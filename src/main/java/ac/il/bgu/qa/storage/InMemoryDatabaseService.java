@@ -0,0 +1,377 @@
+package ac.il.bgu.qa.storage;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ISBNKey;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.validation.IdentifierValidator;
+
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * In-memory implementation of {@link DatabaseService}.
+ * Books are keyed by the canonical {@link ISBNKey} of their ISBN and users by the numeric value of their Id,
+ * both in open addressing maps. The {@link LoanIndex} maps an ISBN key straight to the borrower's numeric Id
+ * and back, so a loan costs a few longs and no objects. A {@link CatalogIndex} kept up to date by every added book answers
+ * author and title prefix searches. All methods are thread-safe.
+ */
+public class InMemoryDatabaseService implements DatabaseService {
+
+    // Books by ISBN key.
+    private final LongObjectHashMap<Book> books;
+
+    // Users by numeric user Id.
+    private final LongObjectHashMap<User> users;
+
+    // Numeric Id of the borrower by ISBN key, and the ISBN keys held by each borrower.
+    private final LoanIndex loans;
+
+    // Author and title indexes of the books.
+    private final CatalogIndex catalog = new CatalogIndex();
+
+    // Guards the three tables and the catalog index. Reads proceed in parallel, writes are exclusive.
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Constructs an empty database sized for the expected number of books and users.
+     *
+     * @param expectedBooks The number of books the database should hold without resizing.
+     * @param expectedUsers The number of users the database should hold without resizing.
+     */
+    public InMemoryDatabaseService(int expectedBooks, int expectedUsers) {
+        this.books = new LongObjectHashMap<>(expectedBooks);
+        this.users = new LongObjectHashMap<>(expectedUsers);
+        this.loans = new LoanIndex(expectedBooks / 4);
+    }
+
+    /**
+     * Constructs an empty database with a small default capacity.
+     */
+    public InMemoryDatabaseService() {
+        this(1024, 1024);
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        addBook(requireISBN(ISBN), book);
+    }
+
+    @Override
+    public void addBook(long ISBN, Book book) {
+        if (book == null) {
+            throw new IllegalArgumentException("Invalid book.");
+        }
+        long stamp = lock.writeLock();
+        try {
+            index(ISBN, book, books.put(ISBN, book));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        long key = IdentifierValidator.parseUserId(id);
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        if (user == null) {
+            throw new IllegalArgumentException("Invalid user.");
+        }
+        long stamp = lock.writeLock();
+        try {
+            users.put(key, user);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = ISBNKey.of(ISBN);
+        return key == ISBNKey.INVALID ? null : getBookByISBN(key);
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        long stamp = lock.readLock();
+        try {
+            return books.get(ISBN);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = IdentifierValidator.parseUserId(userId);
+        if (key < 0) {
+            return null;
+        }
+        long stamp = lock.readLock();
+        try {
+            return users.get(key);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        borrowBook(requireISBN(ISBN), userId);
+    }
+
+    @Override
+    public void borrowBook(long ISBN, String userId) {
+        long userKey = IdentifierValidator.parseUserId(userId);
+        if (userKey < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        long stamp = lock.writeLock();
+        try {
+            loans.put(ISBN, userKey);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        returnBook(requireISBN(ISBN));
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        long stamp = lock.writeLock();
+        try {
+            loans.remove(ISBN);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Book[] getBooksByISBN(long[] ISBNs) {
+        Book[] result = new Book[ISBNs.length];
+        long stamp = lock.readLock();
+        try {
+            for (int i = 0; i < ISBNs.length; i++) {
+                result[i] = books.get(ISBNs[i]);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return result;
+    }
+
+    @Override
+    public void addBooks(long[] ISBNs, Book[] books) {
+        for (Book book : books) {
+            if (book == null) {
+                throw new IllegalArgumentException("Invalid book.");
+            }
+        }
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 0; i < ISBNs.length; i++) {
+                index(ISBNs[i], books[i], this.books.put(ISBNs[i], books[i]));
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void borrowBooks(long[] ISBNs, String userId) {
+        long userKey = IdentifierValidator.parseUserId(userId);
+        if (userKey < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        long stamp = lock.writeLock();
+        try {
+            for (long ISBN : ISBNs) {
+                loans.put(ISBN, userKey);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void returnBooks(long[] ISBNs) {
+        long stamp = lock.writeLock();
+        try {
+            for (long ISBN : ISBNs) {
+                loans.remove(ISBN);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Book[] getBooksByISBN(String[] ISBNs) {
+        Book[] result = new Book[ISBNs.length];
+        long stamp = lock.readLock();
+        try {
+            for (int i = 0; i < ISBNs.length; i++) {
+                long key = ISBNKey.of(ISBNs[i]);
+                result[i] = key == ISBNKey.INVALID ? null : books.get(key);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return result;
+    }
+
+    @Override
+    public void addBooks(String[] ISBNs, Book[] books) {
+        addBooks(requireISBNs(ISBNs), books);
+    }
+
+    @Override
+    public void borrowBooks(String[] ISBNs, String userId) {
+        borrowBooks(requireISBNs(ISBNs), userId);
+    }
+
+    @Override
+    public void returnBooks(String[] ISBNs) {
+        returnBooks(requireISBNs(ISBNs));
+    }
+
+    @Override
+    public Book[] findBooksByAuthor(String author, int offset, int limit) {
+        long stamp = lock.readLock();
+        try {
+            return toBooks(catalog.findByAuthor(author, offset, limit));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Book[] findBooksByTitlePrefix(String prefix, int offset, int limit) {
+        long stamp = lock.readLock();
+        try {
+            if (catalog.hasPendingTitles()) {
+                // Merging new titles changes the index, so it needs the write lock.
+                long writeStamp = lock.tryConvertToWriteLock(stamp);
+                if (writeStamp == 0L) {
+                    lock.unlockRead(stamp);
+                    writeStamp = lock.writeLock();
+                }
+                stamp = writeStamp;
+                catalog.mergePendingTitles();
+            }
+            return toBooks(catalog.findByTitlePrefix(prefix, offset, limit));
+        } finally {
+            lock.unlock(stamp);
+        }
+    }
+
+    @Override
+    public String getBorrowerId(long ISBN) {
+        long stamp = lock.readLock();
+        try {
+            long userKey = loans.getHolder(ISBN);
+            return userKey == LoanIndex.NO_HOLDER ? null : String.format("%012d", userKey);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public long[] getBorrowedISBNs(String userId) {
+        long userKey = IdentifierValidator.parseUserId(userId);
+        if (userKey < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        long stamp = lock.readLock();
+        try {
+            return loans.getLoans(userKey);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Retrieves the number of books in the database.
+     *
+     * @return The number of books.
+     */
+    public int getBookCount() {
+        long stamp = lock.readLock();
+        try {
+            return books.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Retrieves the number of registered users.
+     *
+     * @return The number of users.
+     */
+    public int getUserCount() {
+        long stamp = lock.readLock();
+        try {
+            return users.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Retrieves the number of books currently borrowed.
+     *
+     * @return The number of active loans.
+     */
+    public int getLoanCount() {
+        long stamp = lock.readLock();
+        try {
+            return loans.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Replaces the index entries of a previous book with those of the new one. Called under the write lock.
+    private void index(long ISBN, Book book, Book previous) {
+        if (previous != null) {
+            if (Objects.equals(previous.getTitle(), book.getTitle())
+                    && Objects.equals(previous.getAuthor(), book.getAuthor())) {
+                return;
+            }
+            catalog.remove(ISBN, previous.getTitle(), previous.getAuthor());
+        }
+        catalog.add(ISBN, book.getTitle(), book.getAuthor());
+    }
+
+    // Looks up the books of index keys. Called under the lock.
+    private Book[] toBooks(long[] ISBNs) {
+        Book[] result = new Book[ISBNs.length];
+        for (int i = 0; i < ISBNs.length; i++) {
+            result[i] = books.get(ISBNs[i]);
+        }
+        return result;
+    }
+
+    private static long requireISBN(String ISBN) {
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return key;
+    }
+
+    // Parses every ISBN of a batch before any of it is written, so an invalid one writes nothing.
+    private static long[] requireISBNs(String[] ISBNs) {
+        long[] keys = new long[ISBNs.length];
+        for (int i = 0; i < ISBNs.length; i++) {
+            keys[i] = requireISBN(ISBNs[i]);
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,147 @@
+package ac.il.bgu.qa.storage;
+
+import java.util.Arrays;
+
+/**
+ * Bidirectional index of loans between ISBN keys and numeric user Ids.
+ * The holder of a book is found in a {@link LongLongHashMap} and the books of a user in an adjacency array of
+ * ISBN keys, so both directions cost one hash lookup and neither allocates a boxed number. The index is not
+ * thread-safe.
+ */
+public class LoanIndex {
+
+    // Value returned by lookups of books nobody holds.
+    public static final long NO_HOLDER = LongLongHashMap.NO_VALUE;
+
+    private static final long[] NO_LOANS = new long[0];
+
+    // Numeric Id of the holder by ISBN key.
+    private final LongLongHashMap holders;
+
+    // ISBN keys held by each numeric user Id, in borrow order. The first element counts the keys that follow it.
+    private final LongObjectHashMap<long[]> loansByUser;
+
+    /**
+     * Constructs an empty index sized for the given number of loans.
+     *
+     * @param expectedLoans The number of loans the index should hold without resizing.
+     */
+    public LoanIndex(int expectedLoans) {
+        this.holders = new LongLongHashMap(expectedLoans);
+        this.loansByUser = new LongObjectHashMap<>(expectedLoans);
+    }
+
+    /**
+     * Constructs an empty index with a small default capacity.
+     */
+    public LoanIndex() {
+        this(16);
+    }
+
+    /**
+     * Records that a user holds a book, moving the book from its previous holder if it had one.
+     *
+     * @param ISBN    The canonical key of the book's ISBN.
+     * @param userKey The numeric Id of the user.
+     * @return The numeric Id of the previous holder, or {@link #NO_HOLDER} if the book was not held.
+     */
+    public long put(long ISBN, long userKey) {
+        long previous = holders.put(ISBN, userKey);
+        if (previous == userKey) {
+            return previous;
+        }
+        if (previous != NO_HOLDER) {
+            unlink(previous, ISBN);
+        }
+        long[] loans = loansByUser.get(userKey);
+        if (loans == null) {
+            loans = new long[3];
+        } else if (loans[0] == loans.length - 1) {
+            loans = Arrays.copyOf(loans, loans.length * 2 - 1);
+        }
+        loans[(int) ++loans[0]] = ISBN;
+        loansByUser.put(userKey, loans);
+        return previous;
+    }
+
+    /**
+     * Records that a book was returned.
+     *
+     * @param ISBN The canonical key of the book's ISBN.
+     * @return The numeric Id of the holder, or {@link #NO_HOLDER} if the book was not held.
+     */
+    public long remove(long ISBN) {
+        long holder = holders.remove(ISBN);
+        if (holder != NO_HOLDER) {
+            unlink(holder, ISBN);
+        }
+        return holder;
+    }
+
+    /**
+     * Retrieves the holder of a book.
+     *
+     * @param ISBN The canonical key of the book's ISBN.
+     * @return The numeric Id of the holder, or {@link #NO_HOLDER} if the book is not held.
+     */
+    public long getHolder(long ISBN) {
+        return holders.get(ISBN);
+    }
+
+    /**
+     * Retrieves the books a user holds.
+     *
+     * @param userKey The numeric Id of the user.
+     * @return A copy of the ISBN keys of the user's books, in the order they were borrowed.
+     */
+    public long[] getLoans(long userKey) {
+        long[] loans = loansByUser.get(userKey);
+        return loans == null ? NO_LOANS : Arrays.copyOfRange(loans, 1, 1 + (int) loans[0]);
+    }
+
+    /**
+     * Retrieves the number of books a user holds.
+     *
+     * @param userKey The numeric Id of the user.
+     * @return The number of the user's loans.
+     */
+    public int getLoanCount(long userKey) {
+        long[] loans = loansByUser.get(userKey);
+        return loans == null ? 0 : (int) loans[0];
+    }
+
+    /**
+     * Retrieves the number of books held.
+     *
+     * @return The number of loans.
+     */
+    public int size() {
+        return holders.size();
+    }
+
+    /**
+     * Visits every loan in table order.
+     *
+     * @param visitor The callback receiving each ISBN key and the numeric Id of its holder.
+     */
+    public void forEach(LongLongHashMap.EntryVisitor visitor) {
+        holders.forEach(visitor);
+    }
+
+    // Removes a book from the adjacency array of a user, dropping the array with the user's last loan.
+    private void unlink(long userKey, long ISBN) {
+        long[] loans = loansByUser.get(userKey);
+        int count = (int) loans[0];
+        if (count == 1) {
+            loansByUser.remove(userKey);
+            return;
+        }
+        for (int i = 1; i <= count; i++) {
+            if (loans[i] == ISBN) {
+                System.arraycopy(loans, i + 1, loans, i, count - i);
+                loans[0] = count - 1;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package ac.il.bgu.qa.storage;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash set of non-negative long keys.
+ * The keys live in one primitive array, so no entry object or boxed number is allocated per key.
+ * The set is not thread-safe.
+ */
+public class LongHashSet {
+
+    // Marker of an unused slot in the key array.
+    private static final long EMPTY = -1L;
+
+    // Maximum ratio of keys to slots before the table is doubled.
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int size;
+    private int threshold;
+
+    /**
+     * Constructs an empty set sized for the given number of keys.
+     *
+     * @param expectedSize The number of keys the set should hold without resizing.
+     */
+    public LongHashSet(int expectedSize) {
+        allocate(HashSupport.tableSize(expectedSize, LOAD_FACTOR));
+    }
+
+    /**
+     * Constructs an empty set with a small default capacity.
+     */
+    public LongHashSet() {
+        this(16);
+    }
+
+    /**
+     * Checks whether a key is present.
+     *
+     * @param key The key to look up.
+     * @return true if the key is in the set, otherwise false.
+     */
+    public boolean contains(long key) {
+        if (key < 0) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        for (int slot = HashSupport.mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if (current == key) {
+                return true;
+            }
+            if (current == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Adds a key to the set.
+     *
+     * @param key The non-negative key.
+     * @return true if the key was added, false if it was already present.
+     */
+    public boolean add(long key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key.");
+        }
+        int mask = keys.length - 1;
+        int slot = HashSupport.mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        if (++size > threshold) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a key from the set.
+     *
+     * @param key The key to remove.
+     * @return true if the key was present, otherwise false.
+     */
+    public boolean remove(long key) {
+        if (key < 0) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        int slot = HashSupport.mix(key) & mask;
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        shiftBack(slot);
+        size--;
+        return true;
+    }
+
+    /**
+     * Retrieves the number of keys in the set.
+     *
+     * @return The number of keys.
+     */
+    public int size() {
+        return size;
+    }
+
+    // Backward shift deletion, see LongObjectHashMap.
+    private void shiftBack(int freed) {
+        int mask = keys.length - 1;
+        int slot = freed;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long key = keys[slot];
+            if (key == EMPTY) {
+                break;
+            }
+            int home = HashSupport.mix(key) & mask;
+            if (((slot - home) & mask) >= ((slot - freed) & mask)) {
+                keys[freed] = key;
+                freed = slot;
+            }
+        }
+        keys[freed] = EMPTY;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (long key : oldKeys) {
+            if (key != EMPTY) {
+                int slot = HashSupport.mix(key) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+}
@@ -0,0 +1,206 @@
+package ac.il.bgu.qa.storage;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from non-negative long keys to long values.
+ * Both keys and values live in primitive arrays, so no entry object or boxed number is allocated
+ * per mapping. The map is not thread-safe.
+ */
+public class LongLongHashMap {
+
+    // Value returned by lookups of absent keys, and marker of an unused slot in the key array.
+    public static final long NO_VALUE = -1L;
+
+    // Maximum ratio of entries to slots before the table is doubled.
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+    private int threshold;
+
+    /**
+     * Constructs an empty map sized for the given number of entries.
+     *
+     * @param expectedSize The number of entries the map should hold without resizing.
+     */
+    public LongLongHashMap(int expectedSize) {
+        allocate(HashSupport.tableSize(expectedSize, LOAD_FACTOR));
+    }
+
+    /**
+     * Constructs an empty map with a small default capacity.
+     */
+    public LongLongHashMap() {
+        this(16);
+    }
+
+    /**
+     * Retrieves the value mapped to a key.
+     *
+     * @param key The key to look up.
+     * @return The mapped value, or {@link #NO_VALUE} if the key is not present.
+     */
+    public long get(long key) {
+        // Negative keys are never stored, and NO_VALUE would match every unused slot.
+        if (key < 0) {
+            return NO_VALUE;
+        }
+        int mask = keys.length - 1;
+        for (int slot = HashSupport.mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if (current == key) {
+                return values[slot];
+            }
+            if (current == NO_VALUE) {
+                return NO_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Checks whether a key is present.
+     *
+     * @param key The key to look up.
+     * @return true if the key is mapped, otherwise false.
+     */
+    public boolean containsKey(long key) {
+        return get(key) != NO_VALUE;
+    }
+
+    /**
+     * Maps a key to a value, replacing any previous mapping.
+     *
+     * @param key   The non-negative key.
+     * @param value The non-negative value.
+     * @return The previously mapped value, or {@link #NO_VALUE} if there was none.
+     */
+    public long put(long key, long value) {
+        if (key < 0 || value < 0) {
+            throw new IllegalArgumentException("Negative key or value.");
+        }
+        int mask = keys.length - 1;
+        int slot = HashSupport.mix(key) & mask;
+        while (keys[slot] != NO_VALUE) {
+            if (keys[slot] == key) {
+                long previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > threshold) {
+            rehash(keys.length << 1);
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Removes the mapping of a key.
+     *
+     * @param key The key to remove.
+     * @return The removed value, or {@link #NO_VALUE} if the key was not present.
+     */
+    public long remove(long key) {
+        if (key < 0) {
+            return NO_VALUE;
+        }
+        int mask = keys.length - 1;
+        int slot = HashSupport.mix(key) & mask;
+        while (keys[slot] != key) {
+            if (keys[slot] == NO_VALUE) {
+                return NO_VALUE;
+            }
+            slot = (slot + 1) & mask;
+        }
+        long previous = values[slot];
+        shiftBack(slot);
+        size--;
+        return previous;
+    }
+
+    /**
+     * Retrieves the number of entries in the map.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Visits every entry of the map in table order.
+     *
+     * @param visitor The callback receiving each key and value.
+     */
+    public void forEach(EntryVisitor visitor) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != NO_VALUE) {
+                visitor.visit(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Removes every entry of the map, keeping its capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, NO_VALUE);
+        size = 0;
+    }
+
+    // Backward shift deletion, see LongObjectHashMap.
+    private void shiftBack(int freed) {
+        int mask = keys.length - 1;
+        int slot = freed;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long key = keys[slot];
+            if (key == NO_VALUE) {
+                break;
+            }
+            int home = HashSupport.mix(key) & mask;
+            if (((slot - home) & mask) >= ((slot - freed) & mask)) {
+                keys[freed] = key;
+                values[freed] = values[slot];
+                freed = slot;
+            }
+        }
+        keys[freed] = NO_VALUE;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != NO_VALUE) {
+                int slot = HashSupport.mix(key) & mask;
+                while (keys[slot] != NO_VALUE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, NO_VALUE);
+        values = new long[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Receives the entries of a map during {@link #forEach}.
+     */
+    public interface EntryVisitor {
+        void visit(long key, long value);
+    }
+}
@@ -0,0 +1,221 @@
+package ac.il.bgu.qa.storage;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from non-negative long keys to object values.
+ * Keys and values are kept in two parallel arrays probed linearly, so an entry costs two array
+ * slots instead of a node object and a boxed key. The map is not thread-safe.
+ *
+ * @param <V> The type of the values.
+ */
+public class LongObjectHashMap<V> {
+
+    // Marks an unused slot in the key array. Keys are never negative.
+    private static final long EMPTY = -1L;
+
+    // Maximum ratio of entries to slots before the table is doubled.
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int threshold;
+
+    /**
+     * Constructs an empty map sized for the given number of entries.
+     *
+     * @param expectedSize The number of entries the map should hold without resizing.
+     */
+    public LongObjectHashMap(int expectedSize) {
+        allocate(HashSupport.tableSize(expectedSize, LOAD_FACTOR));
+    }
+
+    /**
+     * Constructs an empty map with a small default capacity.
+     */
+    public LongObjectHashMap() {
+        this(16);
+    }
+
+    /**
+     * Retrieves the value mapped to a key.
+     *
+     * @param key The key to look up.
+     * @return The mapped value, or null if the key is not present.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        // Negative keys are never stored, and EMPTY would match every unused slot.
+        if (key < 0) {
+            return null;
+        }
+        int mask = keys.length - 1;
+        for (int slot = HashSupport.mix(key) & mask; ; slot = (slot + 1) & mask) {
+            long current = keys[slot];
+            if (current == key) {
+                return (V) values[slot];
+            }
+            if (current == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Checks whether a key is present.
+     *
+     * @param key The key to look up.
+     * @return true if the key is mapped, otherwise false.
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Maps a key to a value, replacing any previous mapping.
+     *
+     * @param key   The non-negative key.
+     * @param value The non-null value.
+     * @return The previously mapped value, or null if there was none.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key.");
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Null value.");
+        }
+        int mask = keys.length - 1;
+        int slot = HashSupport.mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > threshold) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Removes the mapping of a key.
+     *
+     * @param key The key to remove.
+     * @return The removed value, or null if the key was not present.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if (key < 0) {
+            return null;
+        }
+        int mask = keys.length - 1;
+        int slot = HashSupport.mix(key) & mask;
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) {
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+        V previous = (V) values[slot];
+        shiftBack(slot);
+        size--;
+        return previous;
+    }
+
+    /**
+     * Retrieves the number of entries in the map.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Visits every entry of the map in table order.
+     *
+     * @param visitor The callback receiving each key and value.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryVisitor<? super V> visitor) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY) {
+                visitor.visit(keys[slot], (V) values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Removes every entry of the map, keeping its capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    // Backward shift deletion: moves following entries of the probe chain into the freed slot
+    // so lookups never need tombstones.
+    private void shiftBack(int freed) {
+        int mask = keys.length - 1;
+        int slot = freed;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long key = keys[slot];
+            if (key == EMPTY) {
+                break;
+            }
+            int home = HashSupport.mix(key) & mask;
+            // Move the entry only if its home slot is not between the freed slot and its position.
+            if (((slot - home) & mask) >= ((slot - freed) & mask)) {
+                keys[freed] = key;
+                values[freed] = values[slot];
+                freed = slot;
+            }
+        }
+        keys[freed] = EMPTY;
+        values[freed] = null;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != EMPTY) {
+                int slot = HashSupport.mix(key) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new Object[capacity];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Receives the entries of a map during {@link #forEach}.
+     *
+     * @param <V> The type of the values.
+     */
+    public interface EntryVisitor<V> {
+        void visit(long key, V value);
+    }
+}
@@ -0,0 +1,532 @@
+package ac.il.bgu.qa.storage;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ISBNKey;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.services.DatabaseService;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.validation.IdentifierValidator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+/**
+ * Persistent implementation of {@link DatabaseService} over memory-mapped files.
+ * <p>
+ * Books and users are fixed-size records in two files, each laid out as an open addressing hash table keyed by
+ * the canonical {@link ISBNKey} of the ISBN or the numeric user Id, so the files are their own index. Opening a
+ * database only maps the files, whatever their size; a record is read when it is first looked up, and the
+ * resulting object is kept so every lookup of a book returns the same {@link Book}, as with the in-memory database.
+ * <p>
+ * The borrow table lives in the book records: a loan is the borrower's Id in the record of the book, so
+ * {@link #borrowBook(long, String)} and {@link #returnBook(long)} are a single aligned 8 byte write that a crash
+ * either applied or did not. A new record is written before its key is set, so a crash while adding leaves no
+ * partial record behind. Writes survive a crash of the process at once; they survive a crash of the machine once
+ * {@link #sync()} returned, which every write does itself if the database syncs on write.
+ * <p>
+ * Notification services cannot be stored, so the users read from disk get theirs from a resolver.
+ * Records keep fixed-size fields rather than the variable-length encoding of {@link ac.il.bgu.qa.codec.BookCodec},
+ * since a slot of the hash table is addressed by its index and a loan is written in place.
+ * Titles, authors and names longer than their fields are rejected. Authors and titles are not indexed, since an
+ * index would have to be rebuilt from every record on opening, so author and title searches are not supported.
+ * All methods are thread-safe.
+ */
+public class MappedDatabaseService implements DatabaseService, AutoCloseable {
+
+    // File header: magic, version, slot size, capacity and record count, padded to keep slots 8 byte aligned.
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int SLOT_SIZE_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int COUNT_OFFSET = 16;
+    private static final int HEADER_SIZE = 64;
+
+    private static final int VERSION = 1;
+    private static final int BOOKS_MAGIC = 0x4C424B53;
+    private static final int USERS_MAGIC = 0x4C555352;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // Field lengths in bytes of UTF-8, and the length stored for a null field.
+    private static final int TITLE_BYTES = 126;
+    private static final int AUTHOR_BYTES = 94;
+    private static final int NAME_BYTES = 118;
+    private static final short NULL_LENGTH = -1;
+
+    // Book record: key + 1 (0 for a free slot), borrower Id + 1 (0 when available), title, author.
+    private static final int BOOK_KEY = 0;
+    private static final int BOOK_BORROWER = 8;
+    private static final int BOOK_TITLE = 16;
+    private static final int BOOK_AUTHOR = BOOK_TITLE + 2 + TITLE_BYTES;
+    private static final int BOOK_SLOT_SIZE = BOOK_AUTHOR + 2 + AUTHOR_BYTES;
+
+    // User record: Id + 1 (0 for a free slot), name.
+    private static final int USER_KEY = 0;
+    private static final int USER_NAME = 8;
+    private static final int USER_SLOT_SIZE = USER_NAME + 2 + NAME_BYTES;
+
+    private final Table books;
+    private final Table users;
+    private final Function<String, NotificationService> notificationServices;
+    private final boolean syncOnWrite;
+
+    // Objects already read from the files, by key. Guarded by lock.
+    private final LongObjectHashMap<Book> loadedBooks = new LongObjectHashMap<>();
+    private final LongObjectHashMap<User> loadedUsers = new LongObjectHashMap<>();
+
+    // Guards the files and the loaded objects. Reads proceed in parallel, writes are exclusive.
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Opens the database in a directory, creating it sized for the expected number of books and users if it does
+     * not exist yet. Writes are synced by {@link #sync()} and {@link #close()} only.
+     *
+     * @param directory            The directory holding the database files.
+     * @param expectedBooks        The number of books a new database can hold.
+     * @param expectedUsers        The number of users a new database can hold.
+     * @param notificationServices Finds the notification service of a user read from disk, by user Id.
+     * @throws IOException If the files could not be created, opened or mapped.
+     */
+    public MappedDatabaseService(Path directory, int expectedBooks, int expectedUsers,
+                                 Function<String, NotificationService> notificationServices) throws IOException {
+        this(directory, expectedBooks, expectedUsers, notificationServices, false);
+    }
+
+    /**
+     * Opens the database in a directory, creating it sized for the expected number of books and users if it does
+     * not exist yet.
+     *
+     * @param directory            The directory holding the database files.
+     * @param expectedBooks        The number of books a new database can hold.
+     * @param expectedUsers        The number of users a new database can hold.
+     * @param notificationServices Finds the notification service of a user read from disk, by user Id.
+     * @param syncOnWrite          Whether every write is synced to disk before it returns.
+     * @throws IOException If the files could not be created, opened or mapped.
+     */
+    public MappedDatabaseService(Path directory, int expectedBooks, int expectedUsers,
+                                 Function<String, NotificationService> notificationServices,
+                                 boolean syncOnWrite) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Invalid directory.");
+        } else if (expectedBooks <= 0 || expectedUsers <= 0) {
+            throw new IllegalArgumentException("Invalid capacity.");
+        } else if (notificationServices == null) {
+            throw new IllegalArgumentException("Invalid notification service resolver.");
+        }
+        Files.createDirectories(directory);
+        this.books = Table.open(directory.resolve("books.db"), BOOKS_MAGIC, BOOK_SLOT_SIZE, expectedBooks);
+        this.users = Table.open(directory.resolve("users.db"), USERS_MAGIC, USER_SLOT_SIZE, expectedUsers);
+        this.notificationServices = notificationServices;
+        this.syncOnWrite = syncOnWrite;
+    }
+
+    @Override
+    public void addBook(String ISBN, Book book) {
+        addBook(requireISBN(ISBN), book);
+    }
+
+    @Override
+    public void addBook(long ISBN, Book book) {
+        if (book == null) {
+            throw new IllegalArgumentException("Invalid book.");
+        }
+        byte[] title = encode(book.getTitle(), TITLE_BYTES, "Invalid title.");
+        byte[] author = encode(book.getAuthor(), AUTHOR_BYTES, "Invalid author.");
+        long stamp = lock.writeLock();
+        try {
+            int slot = books.find(ISBN);
+            boolean added = slot < 0;
+            if (added) {
+                slot = books.claim(ISBN, "Book table is full.");
+            }
+            writeString(books.buffer, slot + BOOK_TITLE, title);
+            writeString(books.buffer, slot + BOOK_AUTHOR, author);
+            if (added) {
+                books.publish(slot, ISBN);
+            }
+            loadedBooks.put(ISBN, book);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        syncIfNeeded(books);
+    }
+
+    @Override
+    public void registerUser(String id, User user) {
+        long key = IdentifierValidator.parseUserId(id);
+        if (key < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        if (user == null) {
+            throw new IllegalArgumentException("Invalid user.");
+        }
+        byte[] name = encode(user.getName(), NAME_BYTES, "Invalid user name.");
+        long stamp = lock.writeLock();
+        try {
+            int slot = users.find(key);
+            boolean added = slot < 0;
+            if (added) {
+                slot = users.claim(key, "User table is full.");
+            }
+            writeString(users.buffer, slot + USER_NAME, name);
+            if (added) {
+                users.publish(slot, key);
+            }
+            loadedUsers.put(key, user);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        syncIfNeeded(users);
+    }
+
+    @Override
+    public Book getBookByISBN(String ISBN) {
+        long key = ISBNKey.of(ISBN);
+        return key == ISBNKey.INVALID ? null : getBookByISBN(key);
+    }
+
+    @Override
+    public Book getBookByISBN(long ISBN) {
+        long stamp = lock.readLock();
+        try {
+            Book book = loadedBooks.get(ISBN);
+            if (book != null || books.find(ISBN) < 0) {
+                return book;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        // First lookup of the book since the database was opened.
+        stamp = lock.writeLock();
+        try {
+            Book book = loadedBooks.get(ISBN);
+            if (book == null) {
+                int slot = books.find(ISBN);
+                book = new Book(ISBNKey.toString(ISBN), readString(books.buffer, slot + BOOK_TITLE),
+                        readString(books.buffer, slot + BOOK_AUTHOR));
+                if (books.buffer.getLong(slot + BOOK_BORROWER) != 0) {
+                    book.borrow();
+                }
+                loadedBooks.put(ISBN, book);
+            }
+            return book;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public User getUserById(String userId) {
+        long key = IdentifierValidator.parseUserId(userId);
+        if (key < 0) {
+            return null;
+        }
+        long stamp = lock.readLock();
+        try {
+            User user = loadedUsers.get(key);
+            if (user != null || users.find(key) < 0) {
+                return user;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        // First lookup of the user since the database was opened.
+        NotificationService notificationService = notificationServices.apply(userId);
+        stamp = lock.writeLock();
+        try {
+            User user = loadedUsers.get(key);
+            if (user == null) {
+                user = new User(readString(users.buffer, users.find(key) + USER_NAME), userId, notificationService);
+                loadedUsers.put(key, user);
+            }
+            return user;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void borrowBook(String ISBN, String userId) {
+        borrowBook(requireISBN(ISBN), userId);
+    }
+
+    @Override
+    public void borrowBook(long ISBN, String userId) {
+        long userKey = IdentifierValidator.parseUserId(userId);
+        if (userKey < 0) {
+            throw new IllegalArgumentException("Invalid user Id.");
+        }
+        setBorrower(ISBN, userKey + 1);
+    }
+
+    @Override
+    public void returnBook(String ISBN) {
+        returnBook(requireISBN(ISBN));
+    }
+
+    @Override
+    public void returnBook(long ISBN) {
+        setBorrower(ISBN, 0);
+    }
+
+    /**
+     * Retrieves the Id of the user currently holding a book, as recorded on disk.
+     *
+     * @param ISBN The canonical key of the book's ISBN.
+     * @return The Id of the borrower, or null if the book is not borrowed or does not exist.
+     */
+    @Override
+    public String getBorrowerId(long ISBN) {
+        long stamp = lock.readLock();
+        try {
+            int slot = books.find(ISBN);
+            long borrower = slot < 0 ? 0 : books.buffer.getLong(slot + BOOK_BORROWER);
+            return borrower == 0 ? null : String.format("%012d", borrower - 1);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Retrieves the number of books in the database.
+     *
+     * @return The number of books.
+     */
+    public int getBookCount() {
+        long stamp = lock.readLock();
+        try {
+            return books.count();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Retrieves the number of registered users.
+     *
+     * @return The number of users.
+     */
+    public int getUserCount() {
+        long stamp = lock.readLock();
+        try {
+            return users.count();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Retrieves the number of books currently borrowed. Loans are not counted on disk, so this scans every record.
+     *
+     * @return The number of active loans.
+     */
+    public int getLoanCount() {
+        long stamp = lock.readLock();
+        try {
+            int loans = 0;
+            for (int i = 0; i < books.capacity; i++) {
+                int slot = books.slot(i);
+                if (books.buffer.getLong(slot + BOOK_KEY) != 0 && books.buffer.getLong(slot + BOOK_BORROWER) != 0) {
+                    loans++;
+                }
+            }
+            return loans;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Writes every change to disk, so it survives a crash of the machine.
+     */
+    public void sync() {
+        long stamp = lock.readLock();
+        try {
+            books.buffer.force();
+            users.buffer.force();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Syncs every change to disk and closes the files.
+     *
+     * @throws IOException If a file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        sync();
+        books.channel.close();
+        users.channel.close();
+    }
+
+    private void setBorrower(long ISBN, long borrower) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = books.find(ISBN);
+            if (slot < 0) {
+                throw new BookNotFoundException("Book not found!");
+            }
+            books.buffer.putLong(slot + BOOK_BORROWER, borrower);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        syncIfNeeded(books);
+    }
+
+    private void syncIfNeeded(Table table) {
+        if (syncOnWrite) {
+            table.buffer.force();
+        }
+    }
+
+    private static byte[] encode(String value, int maxBytes, String error) {
+        if (value == null) {
+            return null;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxBytes) {
+            throw new IllegalArgumentException(error);
+        }
+        return bytes;
+    }
+
+    private static void writeString(ByteBuffer buffer, int offset, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putShort(offset, NULL_LENGTH);
+            return;
+        }
+        buffer.putShort(offset, (short) bytes.length);
+        ByteBuffer field = buffer.duplicate();
+        field.position(offset + 2);
+        field.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer, int offset) {
+        short length = buffer.getShort(offset);
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer field = buffer.duplicate();
+        field.position(offset + 2);
+        field.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long requireISBN(String ISBN) {
+        long key = ISBNKey.of(ISBN);
+        if (key == ISBNKey.INVALID) {
+            throw new IllegalArgumentException("Invalid ISBN.");
+        }
+        return key;
+    }
+
+    // A linear probed hash table of fixed-size slots in a mapped file. The first 8 bytes of a slot hold
+    // the key plus one, so the zeros of a new file are free slots. Guarded by the enclosing database's lock.
+    private static final class Table {
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        final int slotSize;
+        final int mask;
+
+        private Table(FileChannel channel, MappedByteBuffer buffer, int capacity, int slotSize) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.slotSize = slotSize;
+            this.mask = capacity - 1;
+        }
+
+        static Table open(Path file, int magic, int slotSize, int expected) throws IOException {
+            boolean created = !Files.exists(file) || Files.size(file) == 0;
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                int capacity;
+                if (created) {
+                    capacity = HashSupport.tableSize(expected, LOAD_FACTOR);
+                } else {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                    channel.read(header, 0);
+                    if (header.getInt(MAGIC_OFFSET) != magic || header.getInt(VERSION_OFFSET) != VERSION
+                            || header.getInt(SLOT_SIZE_OFFSET) != slotSize) {
+                        throw new IOException("Not a database file: " + file);
+                    }
+                    capacity = header.getInt(CAPACITY_OFFSET);
+                }
+                long size = HEADER_SIZE + (long) capacity * slotSize;
+                if (size > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Invalid capacity.");
+                }
+                if (!created && channel.size() != size) {
+                    throw new IOException("Database file has the wrong size: " + file);
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                if (created) {
+                    buffer.putInt(MAGIC_OFFSET, magic);
+                    buffer.putInt(VERSION_OFFSET, VERSION);
+                    buffer.putInt(SLOT_SIZE_OFFSET, slotSize);
+                    buffer.putInt(CAPACITY_OFFSET, capacity);
+                    buffer.force();
+                }
+                return new Table(channel, buffer, capacity, slotSize);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        int slot(int index) {
+            return HEADER_SIZE + index * slotSize;
+        }
+
+        // Returns the offset of the slot holding the key, or -1 if the key is absent.
+        int find(long key) {
+            long stored = key + 1;
+            for (int i = HashSupport.mix(key) & mask; ; i = (i + 1) & mask) {
+                long current = buffer.getLong(slot(i));
+                if (current == stored) {
+                    return slot(i);
+                } else if (current == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        // Returns the offset of the free slot the absent key goes to. The key is only set by publish.
+        int claim(long key, String fullError) {
+            if (count() >= (int) (capacity * LOAD_FACTOR)) {
+                throw new IllegalStateException(fullError);
+            }
+            int i = HashSupport.mix(key) & mask;
+            while (buffer.getLong(slot(i)) != 0) {
+                i = (i + 1) & mask;
+            }
+            return slot(i);
+        }
+
+        // Sets the key of a written record, which makes it visible to lookups.
+        void publish(int slot, long key) {
+            buffer.putLong(slot, key + 1);
+            buffer.putInt(COUNT_OFFSET, count() + 1);
+        }
+
+        int count() {
+            return buffer.getInt(COUNT_OFFSET);
+        }
+    }
+}
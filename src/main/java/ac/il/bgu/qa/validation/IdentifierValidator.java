@@ -0,0 +1,109 @@
+package ac.il.bgu.qa.validation;
+
+/**
+ * Validates the identifiers used throughout the library (ISBN-13 numbers and user Ids).
+ * Every check is a single pass over the characters of the input, without regular expressions
+ * and without creating temporary Strings, so it is safe to call on every request.
+ */
+public final class IdentifierValidator {
+
+    // Number of digits in an ISBN-13, hyphens excluded.
+    public static final int ISBN_LENGTH = 13;
+
+    // Number of digits in a user Id.
+    public static final int USER_ID_LENGTH = 12;
+
+    // Key returned for an input that is not a valid identifier.
+    public static final long INVALID_KEY = -1L;
+
+    private IdentifierValidator() {
+    }
+
+    /**
+     * Validates if input is of type ISBN-13.
+     * Hyphens may appear anywhere and are ignored, every other character must be a digit.
+     *
+     * @param isbn The International Standard Book Number to be validated.
+     * @return true if valid, false otherwise.
+     */
+    public static boolean isValidISBN(String isbn) {
+        return parseISBN(isbn) != INVALID_KEY;
+    }
+
+    /**
+     * Validates an ISBN-13 and packs its 13 digits into a canonical numeric key in the same pass.
+     * Hyphenated and bare forms of the same ISBN produce the same key.
+     *
+     * @param isbn The International Standard Book Number to be parsed.
+     * @return The canonical key of the ISBN, or {@link #INVALID_KEY} if the ISBN is not valid.
+     */
+    public static long parseISBN(String isbn) {
+        // Check if the ISBN is null
+        if (isbn == null) {
+            return INVALID_KEY;
+        }
+
+        // Odd position digits are multiplied by 1, even position digits are multiplied by 3.
+        // The 13th digit is the check digit and is not part of the sum.
+        int digits = 0;
+        int sum = 0;
+        int lastDigit = 0;
+        long key = 0;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            if (c < '0' || c > '9' || digits == ISBN_LENGTH) {
+                return INVALID_KEY;
+            }
+            int digit = c - '0';
+            if (digits < ISBN_LENGTH - 1) {
+                sum += (digits & 1) == 0 ? digit : digit * 3;
+            } else {
+                lastDigit = digit;
+            }
+            key = key * 10 + digit;
+            digits++;
+        }
+
+        if (digits != ISBN_LENGTH) {
+            return INVALID_KEY;
+        }
+
+        // Calculate the check digit and compare it with the last digit of the ISBN.
+        int checkDigit = (10 - (sum % 10)) % 10;
+        return checkDigit == lastDigit ? key : INVALID_KEY;
+    }
+
+    /**
+     * Validates if input is a user Id (exactly 12 digits).
+     *
+     * @param userId The user Id to be validated.
+     * @return true if valid, false otherwise.
+     */
+    public static boolean isValidUserId(String userId) {
+        return parseUserId(userId) != INVALID_KEY;
+    }
+
+    /**
+     * Validates a user Id and packs its 12 digits into a numeric key in the same pass.
+     *
+     * @param userId The user Id to be parsed.
+     * @return The numeric key of the user Id, or {@link #INVALID_KEY} if the user Id is not valid.
+     */
+    public static long parseUserId(String userId) {
+        if (userId == null || userId.length() != USER_ID_LENGTH) {
+            return INVALID_KEY;
+        }
+        long key = 0;
+        for (int i = 0; i < USER_ID_LENGTH; i++) {
+            char c = userId.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID_KEY;
+            }
+            key = key * 10 + (c - '0');
+        }
+        return key;
+    }
+}
@@ -1,14 +1,25 @@
 package ac.il.bgu.qa;
 
 import ac.il.bgu.qa.errors.*;
+import ac.il.bgu.qa.notifications.NotificationDispatcher;
+import ac.il.bgu.qa.notifications.NotificationOutbox;
+import ac.il.bgu.qa.notifications.ReviewMessageBuilder;
+import ac.il.bgu.qa.pool.ReviewServicePool;
 import ac.il.bgu.qa.services.*;;
+import ac.il.bgu.qa.storage.InMemoryDatabaseService;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.Assertions;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
 
 import static org.mockito.Mockito.*;
 
@@ -118,6 +129,96 @@ public class TestLibrary {
     }
     //endregion
 
+    //region AddBooks
+    @Test
+    public void givenFeedWithBadRows_whenAddBooks_validRowsAddedAndBadRowsReported(){
+        Book first = new Book("978-965-231-157-3", "Heroes", "Amit");
+        Book badISBN = new Book("1234", "Heroes", "Amit");
+        Book duplicate = new Book("9789652311573", "Heroes again", "Amit");
+        Book existing = new Book("978-0-306-40615-7", "Heroes", "Amit");
+        Book last = new Book("9780000000002", "Heroes", "Amit");
+        // The bulk lookups fall back to the single lookups stubbed below.
+        DatabaseService database = mock(DatabaseService.class, CALLS_REAL_METHODS);
+        Library loader = new Library(database, mockReviewService);
+
+        when(database.getBookByISBN("978-0-306-40615-7")).thenReturn(existing);
+
+        IngestReport report = loader.addBooks(Arrays.asList(first, badISBN, duplicate, existing, null, last).iterator(), 2);
+
+        Assertions.assertEquals(2, report.getAdded());
+        Assertions.assertEquals(4, report.getRejections().size());
+        Assertions.assertEquals(1, report.getRejections().get(0).getRow());
+        Assertions.assertEquals("Invalid ISBN.", report.getRejections().get(0).getReason());
+        Assertions.assertEquals("Duplicate ISBN in load.", report.getRejections().get(1).getReason());
+        Assertions.assertEquals("Book already exists.", report.getRejections().get(2).getReason());
+        Assertions.assertEquals("Invalid book.", report.getRejections().get(3).getReason());
+        Assertions.assertNull(report.getRejections().get(3).getISBN());
+        verify(database).addBooks(new String[]{"978-965-231-157-3"}, new Book[]{first});
+        verify(database).addBooks(new String[]{"9780000000002"}, new Book[]{last});
+    }
+
+    @Test
+    public void givenDatabaseFailsOnChunk_whenAddBooks_loadContinues(){
+        Book first = new Book("978-965-231-157-3", "Heroes", "Amit");
+        Book second = new Book("978-0-306-40615-7", "Heroes", "Amit");
+        DatabaseService database = mock(DatabaseService.class, CALLS_REAL_METHODS);
+        Library loader = new Library(database, mockReviewService);
+        doThrow(new RuntimeException("database down")).doNothing()
+                .when(database).addBooks(any(String[].class), any(Book[].class));
+
+        IngestReport report = loader.addBooks(Stream.of(first, second), 1);
+
+        Assertions.assertEquals(1, report.getAdded());
+        Assertions.assertEquals("database down", report.getRejections().get(0).getReason());
+    }
+
+    @Test
+    public void givenRowOfFailedChunkRepeated_whenAddBooks_laterRowAdded(){
+        Book first = new Book("978-965-231-157-3", "Heroes", "Amit");
+        Book again = new Book("9789652311573", "Heroes", "Amit");
+        DatabaseService database = mock(DatabaseService.class, CALLS_REAL_METHODS);
+        Library loader = new Library(database, mockReviewService);
+        doThrow(new RuntimeException("database down")).doNothing()
+                .when(database).addBooks(any(String[].class), any(Book[].class));
+
+        IngestReport report = loader.addBooks(Stream.of(first, again), 1);
+
+        Assertions.assertEquals(1, report.getAdded());
+        Assertions.assertEquals(1, report.getRejections().size());
+        Assertions.assertEquals(0, report.getRejections().get(0).getRow());
+        verify(database).addBooks(new String[]{"9789652311573"}, new Book[]{again});
+    }
+
+    @Test
+    public void givenLargeFeed_whenAddBooks_everyBookStored(){
+        InMemoryDatabaseService database = new InMemoryDatabaseService();
+        Library inMemoryLibrary = new Library(database, mockReviewService);
+        List<Book> feed = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            String body = String.format("978%09d", i);
+            int sum = 0;
+            for (int d = 0; d < 12; d++) {
+                sum += (d % 2 == 0 ? 1 : 3) * (body.charAt(d) - '0');
+            }
+            feed.add(new Book(body + (10 - sum % 10) % 10, "Title " + i, "Author"));
+        }
+        feed.add(feed.get(0));
+
+        IngestReport report = inMemoryLibrary.addBooks(feed.iterator(), 2_000);
+
+        Assertions.assertEquals(5_000, report.getAdded());
+        Assertions.assertEquals(5_000, database.getBookCount());
+        Assertions.assertEquals(5_000, report.getRejections().get(0).getRow());
+    }
+
+    @Test
+    public void givenInvalidChunkSize_whenAddBooks_ThrowIllegalArgException(){
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> library.addBooks(new ArrayList<Book>().iterator(), 0));
+        Assertions.assertEquals(e.getMessage(), "Invalid chunk size.");
+    }
+    //endregion
+
     //region registerUser
 
 
@@ -207,6 +308,15 @@ public class TestLibrary {
         verify(mockDatabaseService).registerUser(ID,user);
     }
 
+    @Test
+    public void givenRegisteredUser_whenIsUserRegistered_true(){
+        when(mockDatabaseService.getUserById("123456789012")).thenReturn(user);
+
+        Assertions.assertTrue(library.isUserRegistered("123456789012"));
+        Assertions.assertFalse(library.isUserRegistered("123456789013"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> library.isUserRegistered("1234"));
+    }
+
 
 
     //endregion
@@ -300,6 +410,392 @@ public class TestLibrary {
 
     }
 
+    @Test
+    public void givenBareISBN_whenBorrowBook_databaseGetsISBNAsGiven(){
+        String ISBN = "9789652311573";
+        String ID = "318434123789";
+
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(book);
+        when(mockDatabaseService.getUserById(ID)).thenReturn(user);
+        when(book.isBorrowed()).thenReturn(false);
+
+        library.borrowBook(ISBN, ID);
+
+        verify(mockDatabaseService).borrowBook(ISBN, ID);
+        verify(mockDatabaseService, never()).borrowBook(anyLong(), anyString());
+    }
+
+    //region BorrowBooks
+    @Test
+    public void givenSeveralBooks_whenBorrowBooks_userFetchedOnceAndLoansRecordedInBulk(){
+        String ID = "318434123789";
+        String otherISBN = "978-0-306-40615-7";
+        Book other = mock(Book.class);
+
+        when(mockDatabaseService.getBooksByISBN(new String[]{"978-965-231-157-3", otherISBN}))
+                .thenReturn(new Book[]{book, other});
+        when(mockDatabaseService.getUserById(ID)).thenReturn(user);
+
+        BatchResult result = library.borrowBooks(Arrays.asList("978-965-231-157-3", otherISBN), ID);
+
+        Assertions.assertTrue(result.isAllSuccessful());
+        verify(mockDatabaseService, times(1)).getUserById(ID);
+        verify(mockDatabaseService).borrowBooks(new String[]{"978-965-231-157-3", otherISBN}, ID);
+        verify(book).borrow();
+        verify(other).borrow();
+    }
+
+    @Test
+    public void givenFailingItems_whenBorrowBooks_otherItemsStillBorrowed(){
+        String ID = "318434123789";
+        Book borrowed = mock(Book.class);
+
+        String[] found = {"978-965-231-157-3", "9780000000002", "978-0-306-40615-7"};
+        when(mockDatabaseService.getBooksByISBN(found))
+                .thenReturn(new Book[]{book, null, borrowed});
+        when(mockDatabaseService.getUserById(ID)).thenReturn(user);
+        when(borrowed.isBorrowed()).thenReturn(true);
+
+        BatchResult result = library.borrowBooks(
+                Arrays.asList("1234", "978-965-231-157-3", "9780000000002", "978-0-306-40615-7"), ID);
+
+        Assertions.assertEquals(4, result.size());
+        Assertions.assertEquals(1, result.getSuccessCount());
+        Assertions.assertEquals("Invalid ISBN.", result.getFailure(0).getMessage());
+        Assertions.assertTrue(result.isSuccess(1));
+        Assertions.assertInstanceOf(BookNotFoundException.class, result.getFailure(2));
+        Assertions.assertInstanceOf(BookAlreadyBorrowedException.class, result.getFailure(3));
+        verify(mockDatabaseService).borrowBooks(new String[]{"978-965-231-157-3"}, ID);
+    }
+
+    @Test
+    public void givenUserNotRegistered_whenBorrowBooks_everyFoundBookFails(){
+        String ID = "318434123789";
+
+        when(mockDatabaseService.getBooksByISBN(new String[]{"978-965-231-157-3", "9789652311573"}))
+                .thenReturn(new Book[]{book, book});
+        when(mockDatabaseService.getUserById(ID)).thenReturn(null);
+
+        BatchResult result = library.borrowBooks(Arrays.asList("978-965-231-157-3", "9789652311573"), ID);
+
+        Assertions.assertInstanceOf(UserNotRegisteredException.class, result.getFailure(0));
+        Assertions.assertInstanceOf(UserNotRegisteredException.class, result.getFailure(1));
+        verify(mockDatabaseService, never()).borrowBooks(any(String[].class), anyString());
+    }
+
+    @Test
+    public void givenDatabaseFails_whenBorrowBooks_claimedBooksRolledBack(){
+        String ID = "318434123789";
+
+        when(mockDatabaseService.getBooksByISBN(new String[]{"978-965-231-157-3"})).thenReturn(new Book[]{book});
+        when(mockDatabaseService.getUserById(ID)).thenReturn(user);
+        RuntimeException failure = new RuntimeException("database down");
+        doThrow(failure).when(mockDatabaseService).borrowBooks(any(String[].class), anyString());
+
+        BatchResult result = library.borrowBooks(Arrays.asList("978-965-231-157-3"), ID);
+
+        Assertions.assertInstanceOf(DatabaseWriteException.class, result.getFailure(0));
+        Assertions.assertSame(failure, result.getFailure(0).getCause());
+        verify(book).borrow();
+        verify(book).returnBook();
+    }
+
+    @Test
+    public void givenDatabaseFailsPartWay_whenBorrowBooks_onlyUnwrittenBooksRolledBack(){
+        String ID = "318434123789";
+        Book second = mock(Book.class);
+        Book third = mock(Book.class);
+        // The bulk calls fall back to the single calls, the second of which fails.
+        DatabaseService database = mock(DatabaseService.class, CALLS_REAL_METHODS);
+        Library lending = new Library(database, mockReviewService);
+
+        when(database.getBookByISBN("978-965-231-157-3")).thenReturn(book);
+        when(database.getBookByISBN("978-0-306-40615-7")).thenReturn(second);
+        when(database.getBookByISBN("9780000000002")).thenReturn(third);
+        when(database.getUserById(ID)).thenReturn(user);
+        doThrow(new RuntimeException("database down")).when(database).borrowBook("978-0-306-40615-7", ID);
+
+        BatchResult result = lending.borrowBooks(
+                Arrays.asList("978-965-231-157-3", "978-0-306-40615-7", "9780000000002"), ID);
+
+        Assertions.assertTrue(result.isSuccess(0));
+        Assertions.assertInstanceOf(DatabaseWriteException.class, result.getFailure(1));
+        Assertions.assertInstanceOf(DatabaseWriteException.class, result.getFailure(2));
+        Assertions.assertNotSame(result.getFailure(1), result.getFailure(2));
+        verify(book, never()).returnBook();
+        verify(second).returnBook();
+        verify(third).returnBook();
+        verify(database, never()).borrowBook("9780000000002", ID);
+    }
+
+    @Test
+    public void givenBorrowedAndAvailableBooks_whenReturnBooks_onlyBorrowedReturned(){
+        Book available = mock(Book.class);
+
+        when(mockDatabaseService.getBooksByISBN(new String[]{"978-965-231-157-3", "978-0-306-40615-7"}))
+                .thenReturn(new Book[]{book, available});
+        when(book.isBorrowed()).thenReturn(true);
+
+        BatchResult result = library.returnBooks(Arrays.asList("978-965-231-157-3", "978-0-306-40615-7"));
+
+        Assertions.assertTrue(result.isSuccess(0));
+        Assertions.assertInstanceOf(BookNotBorrowedException.class, result.getFailure(1));
+        verify(mockDatabaseService).returnBooks(new String[]{"978-965-231-157-3"});
+        verify(book).returnBook();
+    }
+
+    @Test
+    public void givenStringKeyedDatabase_whenBulkLoadedBookBorrowedAndReturned_sameKeyUsed(){
+        Map<String, Book> stored = new HashMap<>();
+        Map<String, String> loans = new HashMap<>();
+        User reader = new User("Amit", "318434123781", mock(NotificationService.class));
+        DatabaseService database = mock(DatabaseService.class, CALLS_REAL_METHODS);
+        // A database keyed by the ISBN String exactly as it is handed over.
+        doAnswer(call -> stored.put(call.getArgument(0), call.getArgument(1)))
+                .when(database).addBook(anyString(), any(Book.class));
+        doAnswer(call -> stored.get(call.<String>getArgument(0))).when(database).getBookByISBN(anyString());
+        doAnswer(call -> loans.put(call.getArgument(0), call.getArgument(1)))
+                .when(database).borrowBook(anyString(), anyString());
+        doAnswer(call -> loans.remove(call.<String>getArgument(0))).when(database).returnBook(anyString());
+        doReturn(reader).when(database).getUserById("318434123781");
+        Library lending = new Library(database, mockReviewService);
+
+        lending.addBooks(Stream.of(new Book("978-965-231-157-3", "Heroes", "Amit")), 16);
+        lending.borrowBook("978-965-231-157-3", "318434123781");
+        Assertions.assertEquals("318434123781", loans.get("978-965-231-157-3"));
+        lending.returnBook("978-965-231-157-3");
+        BatchResult borrowed = lending.borrowBooks(Arrays.asList("978-965-231-157-3"), "318434123781");
+        Assertions.assertTrue(borrowed.isAllSuccessful());
+        Assertions.assertTrue(lending.returnBooks(Arrays.asList("978-965-231-157-3")).isAllSuccessful());
+
+        Assertions.assertEquals(Arrays.asList("978-965-231-157-3"), new ArrayList<>(stored.keySet()));
+        Assertions.assertTrue(loans.isEmpty());
+        Assertions.assertFalse(stored.get("978-965-231-157-3").isBorrowed());
+    }
+
+    @Test
+    public void givenNullList_whenBorrowBooks_ThrowIllegalArgException(){
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> library.borrowBooks(null, "318434123789"));
+        Assertions.assertEquals(e.getMessage(), "Invalid ISBN list.");
+    }
+    //endregion
+
+    //region Reservations
+    @Test
+    public void givenReservations_whenBookReturned_handedToNextWaiterAndNotified(){
+        InMemoryDatabaseService database = new InMemoryDatabaseService();
+        Library lending = new Library(database, mockReviewService);
+        NotificationService waiterNotifications = mock(NotificationService.class);
+        lending.addBook(new Book("978-965-231-157-3", "Heroes", "Amit"));
+        lending.registerUser(new User("Amit", "318434123781", mock(NotificationService.class)));
+        lending.registerUser(new User("Dana", "318434123782", waiterNotifications));
+        lending.registerUser(new User("Noa", "318434123783", mock(NotificationService.class)));
+
+        Assertions.assertEquals(0, lending.borrowOrReserve("978-965-231-157-3", "318434123781"));
+        Assertions.assertEquals(1, lending.borrowOrReserve("978-965-231-157-3", "318434123782"));
+        Assertions.assertEquals(2, lending.borrowOrReserve("978-965-231-157-3", "318434123783"));
+        Assertions.assertEquals(1, lending.borrowOrReserve("978-965-231-157-3", "318434123782"));
+        lending.returnBook("978-965-231-157-3");
+
+        Assertions.assertTrue(database.getBookByISBN("978-965-231-157-3").isBorrowed());
+        Assertions.assertEquals("318434123782", database.getBorrowerId(ISBNKey.of("978-965-231-157-3")));
+        Assertions.assertEquals(Arrays.asList("318434123783"), lending.getReservations("978-965-231-157-3"));
+        verify(waiterNotifications).notifyUser("318434123782",
+                "Your reservation of 'Heroes' is ready: the book is now borrowed for you.");
+    }
+
+    @Test
+    public void givenCancelledReservation_whenBookReturned_bookAvailable(){
+        InMemoryDatabaseService database = new InMemoryDatabaseService();
+        Library lending = new Library(database, mockReviewService);
+        lending.addBook(new Book("978-965-231-157-3", "Heroes", "Amit"));
+        lending.registerUser(new User("Amit", "318434123781", mock(NotificationService.class)));
+        lending.registerUser(new User("Dana", "318434123782", mock(NotificationService.class)));
+        lending.borrowOrReserve("978-965-231-157-3", "318434123781");
+        lending.borrowOrReserve("978-965-231-157-3", "318434123782");
+
+        Assertions.assertTrue(lending.cancelReservation("978-965-231-157-3", "318434123782"));
+        lending.returnBook("978-965-231-157-3");
+
+        Assertions.assertFalse(database.getBookByISBN("978-965-231-157-3").isBorrowed());
+        Assertions.assertEquals(0, database.getLoanCount());
+    }
+
+    @Test
+    public void givenReservation_whenBooksReturnedInBatch_handedToNextWaiterAndNotified(){
+        InMemoryDatabaseService database = new InMemoryDatabaseService();
+        Library lending = new Library(database, mockReviewService, ConcurrencyMode.TRANSACTIONAL);
+        NotificationService waiterNotifications = mock(NotificationService.class);
+        lending.addBook(new Book("978-965-231-157-3", "Heroes", "Amit"));
+        lending.addBook(new Book("978-0-306-40615-7", "Villains", "Amit"));
+        lending.registerUser(new User("Amit", "318434123781", mock(NotificationService.class)));
+        lending.registerUser(new User("Dana", "318434123782", waiterNotifications));
+        lending.borrowOrReserve("978-965-231-157-3", "318434123781");
+        lending.borrowOrReserve("978-0-306-40615-7", "318434123781");
+        lending.borrowOrReserve("978-965-231-157-3", "318434123782");
+
+        BatchResult result = lending.returnBooks(Arrays.asList("978-965-231-157-3", "978-0-306-40615-7"));
+
+        Assertions.assertTrue(result.isSuccess(0));
+        Assertions.assertTrue(result.isSuccess(1));
+        Assertions.assertEquals("318434123782", database.getBorrowerId(ISBNKey.of("978-965-231-157-3")));
+        Assertions.assertFalse(database.getBookByISBN("978-0-306-40615-7").isBorrowed());
+        Assertions.assertTrue(lending.getReservations("978-965-231-157-3").isEmpty());
+        verify(waiterNotifications).notifyUser("318434123782",
+                "Your reservation of 'Heroes' is ready: the book is now borrowed for you.");
+    }
+
+    @Test
+    public void givenLoanToWaiterFails_whenBookReturned_bookAvailableAndWaiterKeepsPlace(){
+        InMemoryDatabaseService database = spy(new InMemoryDatabaseService());
+        Library lending = new Library(database, mockReviewService);
+        NotificationService waiterNotifications = mock(NotificationService.class);
+        lending.addBook(new Book("978-965-231-157-3", "Heroes", "Amit"));
+        lending.registerUser(new User("Amit", "318434123781", mock(NotificationService.class)));
+        lending.registerUser(new User("Dana", "318434123782", waiterNotifications));
+        lending.borrowOrReserve("978-965-231-157-3", "318434123781");
+        lending.borrowOrReserve("978-965-231-157-3", "318434123782");
+        doThrow(new RuntimeException("disk full")).when(database).borrowBook("978-965-231-157-3", "318434123782");
+
+        Assertions.assertThrows(RuntimeException.class, () -> lending.returnBook("978-965-231-157-3"));
+
+        Assertions.assertFalse(database.getBookByISBN("978-965-231-157-3").isBorrowed());
+        Assertions.assertEquals(0, database.getLoanCount());
+        Assertions.assertEquals(Arrays.asList("318434123782"), lending.getReservations("978-965-231-157-3"));
+        verifyNoInteractions(waiterNotifications);
+    }
+
+    @Test
+    public void givenWaiterNotificationFails_whenBookReturned_bookHandedOffAndFailureCounted(){
+        InMemoryDatabaseService database = new InMemoryDatabaseService();
+        NotificationDispatcher dispatcher = NotificationDispatcher.direct();
+        Library lending = new Library(database, mockReviewService, ConcurrencyMode.TRANSACTIONAL, dispatcher);
+        NotificationService waiterNotifications = mock(NotificationService.class);
+        doThrow(new RuntimeException("offline")).when(waiterNotifications).notifyUser(anyString(), anyString());
+        lending.addBook(new Book("978-965-231-157-3", "Heroes", "Amit"));
+        lending.registerUser(new User("Amit", "318434123781", mock(NotificationService.class)));
+        lending.registerUser(new User("Dana", "318434123782", waiterNotifications));
+        lending.borrowOrReserve("978-965-231-157-3", "318434123781");
+        lending.borrowOrReserve("978-965-231-157-3", "318434123782");
+
+        Assertions.assertEquals(LibraryStatus.SUCCESS, lending.tryReturnBook("978-965-231-157-3"));
+
+        Assertions.assertEquals("318434123782", database.getBorrowerId(ISBNKey.of("978-965-231-157-3")));
+        Assertions.assertEquals(1, dispatcher.getFailedCount());
+    }
+    //endregion
+
+    //region Try
+    @Test
+    public void givenBorrowedBook_whenTryBorrowBook_statusReturnedWithoutThrowing(){
+        when(mockDatabaseService.getBookByISBN("978-965-231-157-3")).thenReturn(book);
+        when(mockDatabaseService.getUserById("318434123789")).thenReturn(user);
+        when(book.isBorrowed()).thenReturn(true);
+
+        Assertions.assertEquals(LibraryStatus.BOOK_ALREADY_BORROWED, library.tryBorrowBook("978-965-231-157-3", "318434123789"));
+        Assertions.assertEquals(LibraryStatus.BOOK_ALREADY_BORROWED, library.checkAvailability("978-965-231-157-3"));
+        Assertions.assertEquals(LibraryStatus.INVALID_ISBN, library.tryBorrowBook("1234", "318434123789"));
+        Assertions.assertEquals(LibraryStatus.INVALID_USER_ID, library.tryBorrowBook("978-965-231-157-3", "1234"));
+        Assertions.assertEquals(LibraryStatus.USER_NOT_REGISTERED, library.tryBorrowBook("978-965-231-157-3", "318434123780"));
+        Assertions.assertEquals(LibraryStatus.BOOK_NOT_FOUND, library.tryBorrowBook("978-0-306-40615-7", "318434123789"));
+        verify(book, never()).borrow();
+        verify(mockDatabaseService, never()).borrowBook(anyString(), anyString());
+    }
+
+    @Test
+    public void givenAvailableBook_whenTryBorrowAndReturn_success(){
+        when(mockDatabaseService.getBookByISBN("978-965-231-157-3")).thenReturn(book);
+        when(mockDatabaseService.getUserById("318434123789")).thenReturn(user);
+
+        Assertions.assertEquals(LibraryStatus.SUCCESS, library.checkAvailability("978-965-231-157-3"));
+        Assertions.assertEquals(LibraryStatus.SUCCESS, library.tryBorrowBook("978-965-231-157-3", "318434123789"));
+        Assertions.assertEquals(LibraryStatus.BOOK_NOT_BORROWED, library.tryReturnBook("978-965-231-157-3"));
+        when(book.isBorrowed()).thenReturn(true);
+        Assertions.assertEquals(LibraryStatus.SUCCESS, library.tryReturnBook("978-965-231-157-3"));
+        verify(mockDatabaseService).borrowBook("978-965-231-157-3", "318434123789");
+        verify(mockDatabaseService).returnBook("978-965-231-157-3");
+    }
+
+    @Test
+    public void givenNoReviews_whenGetBookByISBN_bookReturnedWithoutNoReviewsException(){
+        when(mockDatabaseService.getBookByISBN("978-965-231-157-3")).thenReturn(book);
+        when(mockDatabaseService.getUserById("318434123789")).thenReturn(user);
+        when(mockReviewService.getReviewsForBook(anyString())).thenReturn(new ArrayList<>());
+
+        Assertions.assertSame(book, library.getBookByISBN("978-965-231-157-3", "318434123789"));
+        Assertions.assertThrows(NoReviewsFoundException.class,
+                () -> library.notifyUserWithBookReviews("978-965-231-157-3", "318434123789"));
+    }
+    //endregion
+
+    //region Search
+    @Test
+    public void givenIndexedCatalog_whenSearchedByAuthorAndTitle_pagesReturned(){
+        InMemoryDatabaseService database = new InMemoryDatabaseService();
+        Library searchable = new Library(database, mockReviewService);
+        searchable.addBook(new Book("978-965-231-157-3", "Harry Potter", "J. K. Rowling"));
+        searchable.addBook(new Book("978-0-306-40615-7", "Harry's Game", "Gerald Seymour"));
+        searchable.addBook(new Book("978-1-4028-9462-6", "The Casual Vacancy", "J. K. Rowling"));
+
+        List<Book> rowling = searchable.getBooksByAuthor("j. k.  ROWLING", 1, 10);
+        List<Book> harry = searchable.getBooksByTitlePrefix("harry", 0, 1);
+
+        Assertions.assertEquals(1, rowling.size());
+        Assertions.assertEquals("The Casual Vacancy", rowling.get(0).getTitle());
+        Assertions.assertEquals(1, harry.size());
+        Assertions.assertEquals("Harry Potter", harry.get(0).getTitle());
+        Assertions.assertEquals("Harry's Game", searchable.getBooksByTitlePrefix("harry", 1, 1).get(0).getTitle());
+    }
+
+    @Test
+    public void givenBlankPrefix_whenGetBooksByTitlePrefix_ThrowIllegalArgException(){
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> library.getBooksByTitlePrefix(" ", 0, 10));
+        Assertions.assertEquals("Invalid title prefix.", e.getMessage());
+        verify(mockDatabaseService, never()).findBooksByTitlePrefix(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void givenInvalidPage_whenGetBooksByAuthor_ThrowIllegalArgException(){
+        IllegalArgumentException offset = Assertions.assertThrows(IllegalArgumentException.class, () -> library.getBooksByAuthor("Amit", -1, 10));
+        IllegalArgumentException limit = Assertions.assertThrows(IllegalArgumentException.class, () -> library.getBooksByAuthor("Amit", 0, 0));
+        Assertions.assertEquals("Invalid offset.", offset.getMessage());
+        Assertions.assertEquals("Invalid limit.", limit.getMessage());
+    }
+
+    @Test
+    public void givenBorrowedBooks_whenGetBorrowerAndBorrowedBooks_loansFoundBothWays(){
+        InMemoryDatabaseService database = new InMemoryDatabaseService();
+        Library lending = new Library(database, mockReviewService);
+        Book heroes = new Book("978-965-231-157-3", "Heroes", "Amit");
+        Book villains = new Book("978-0-306-40615-7", "Villains", "Amit");
+        User reader = new User("Amit", "318434123789", mock(NotificationService.class));
+        lending.addBook(heroes);
+        lending.addBook(villains);
+        lending.registerUser(reader);
+        lending.borrowBook("978-965-231-157-3", "318434123789");
+        lending.borrowBook("978-0-306-40615-7", "318434123789");
+        lending.returnBook("978-965-231-157-3");
+
+        Assertions.assertSame(reader, lending.getBorrower("978-0-306-40615-7"));
+        Assertions.assertNull(lending.getBorrower("978-965-231-157-3"));
+        Assertions.assertEquals(Arrays.asList(villains), lending.getBorrowedBooks("318434123789"));
+        Assertions.assertTrue(lending.getBorrowedBooks("318434123780").isEmpty());
+    }
+
+    @Test
+    public void givenInvalidUserId_whenGetBorrowedBooks_ThrowIllegalArgException(){
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> library.getBorrowedBooks("1234"));
+        Assertions.assertEquals("Invalid user Id.", e.getMessage());
+        verify(mockDatabaseService, never()).getBorrowedISBNs(anyString());
+    }
+
+    @Test
+    public void givenDatabaseWithoutIndex_whenGetBooksByAuthor_ThrowUnsupportedOperationException(){
+        Library unindexed = new Library(mock(DatabaseService.class, CALLS_REAL_METHODS), mockReviewService);
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> unindexed.getBooksByAuthor("Amit", 0, 10));
+    }
+    //endregion
+
                                 /// test returnBook ///
     @Test
     public void invalidISNB_throw_exception(){
@@ -414,6 +910,40 @@ public class TestLibrary {
 
 
 
+    @Test
+    public void given_rightIDAndISBN_bookFetchedOnceForLookupAndNotification() {
+        String ISBN = "978-965-231-157-3";
+        String ID = "318434123321";
+        List<String> reviews = new ArrayList<>();
+        reviews.add("review");
+
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(book);
+        when(mockDatabaseService.getUserById(ID)).thenReturn(user);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(reviews);
+
+        library.getBookByISBN(ISBN, ID);
+
+        verify(mockDatabaseService, times(1)).getBookByISBN(ISBN);
+        verify(user).sendNotification(anyString());
+        Assertions.assertEquals(0, library.getFailedNotificationCount());
+    }
+
+    @Test
+    public void given_notificationThrows_return_bookAndCountFailure() {
+        String ISBN = "978-965-231-157-3";
+        String ID = "318434123321";
+        List<String> reviews = new ArrayList<>();
+        reviews.add("review");
+
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(book);
+        when(mockDatabaseService.getUserById(ID)).thenReturn(user);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(reviews);
+        doThrow(new NotificationException("Notification failed!")).when(user).sendNotification(anyString());
+
+        Assertions.assertSame(book, library.getBookByISBN(ISBN, ID));
+        Assertions.assertEquals(1, library.getFailedNotificationCount());
+    }
+
                                 /// Test notifyUserWithBookReviews ///
 
     @Test
@@ -480,6 +1010,109 @@ public class TestLibrary {
         verify(mockReviewService).close();
     }
 
+    @Test
+    public void notify_givenLeasedConnection_connectionReleasedToReviewService(){
+        String ISBN = "978-965-231-157-3";
+        String ID = "318434123321";
+        ReviewService connection = mock(ReviewService.class);
+
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(book);
+        when(mockDatabaseService.getUserById(ID)).thenReturn(user);
+        doReturn(connection).when(mockReviewService).lease();
+        doNothing().when(mockReviewService).release(connection);
+        when(connection.getReviewsForBook(ISBN)).thenReturn(Arrays.asList("review"));
+
+        library.notifyUserWithBookReviews(ISBN,ID);
+
+        verify(mockReviewService).release(connection);
+        verify(connection, never()).close();
+        verify(mockReviewService, never()).getReviewsForBook(ISBN);
+    }
+
+    @Test
+    public void notify_givenPoolTimesOut_laterNotificationStillLeases(){
+        String ISBN = "978-965-231-157-3";
+        String ID = "318434123321";
+        ReviewServicePool pool = new ReviewServicePool(() -> {
+            ReviewService connection = mock(ReviewService.class);
+            when(connection.getReviewsForBook(ISBN)).thenReturn(Arrays.asList("review"));
+            return connection;
+        }, connection -> true, 0, 1, 1_000_000_000L, 1_000_000L, System::nanoTime);
+        Library pooled = new Library(mockDatabaseService, pool);
+
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(book);
+        when(mockDatabaseService.getUserById(ID)).thenReturn(user);
+        ReviewService busy = pool.lease();
+
+        Assertions.assertThrows(ReviewServiceUnavailableException.class,
+                () -> pooled.notifyUserWithBookReviews(ISBN, ID));
+        pool.release(busy);
+        pooled.notifyUserWithBookReviews(ISBN, ID);
+
+        verify(user).sendNotification(anyString());
+        Assertions.assertEquals(1, pool.getStats().getIdle());
+    }
+
+    @Test
+    public void notify_givenOutbox_notificationEnqueuedInsteadOfSent(){
+        String ISBN = "978-965-231-157-3";
+        String ID = "318434123321";
+        NotificationOutbox outbox = mock(NotificationOutbox.class);
+        library = new Library(mockDatabaseService, mockReviewService, ConcurrencyMode.LOCK_FREE,
+                NotificationDispatcher.direct(), outbox);
+
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(book);
+        when(mockDatabaseService.getUserById(ID)).thenReturn(user);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Arrays.asList("review"));
+        when(book.getTitle()).thenReturn("Title");
+
+        library.notifyUserWithBookReviews(ISBN,ID);
+
+        verify(outbox).enqueue(ID, "Reviews for 'Title':\nreview");
+        verify(user, never()).sendNotification(anyString());
+    }
+
+    @Test
+    public void notify_givenCappedMessages_reviewsAfterCapNeverRead(){
+        String ISBN = "978-965-231-157-3";
+        String ID = "318434123321";
+        Iterator<String> reviews = Arrays.asList("good", "bad", "ugly").iterator();
+        library = new Library(mockDatabaseService, mockReviewService, ConcurrencyMode.UNSYNCHRONIZED,
+                NotificationDispatcher.direct(), null,
+                new ReviewMessageBuilder(32, ReviewMessageBuilder.TruncationPolicy.WHOLE_REVIEWS));
+
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(book);
+        when(mockDatabaseService.getUserById(ID)).thenReturn(user);
+        doReturn(reviews).when(mockReviewService).iterateReviewsForBook(ISBN);
+        when(book.getTitle()).thenReturn("Title");
+
+        library.notifyUserWithBookReviews(ISBN,ID);
+
+        verify(user).sendNotification("Reviews for 'Title':\ngood\n...");
+        Assertions.assertEquals("ugly", reviews.next());
+        verify(mockReviewService, never()).getReviewsForBook(ISBN);
+    }
+
+    @Test
+    public void notify_givenTopReviewsOnly_onlyTopReviewsFetched(){
+        String ISBN = "978-965-231-157-3";
+        String ID = "318434123321";
+        library = new Library(mockDatabaseService, mockReviewService, ConcurrencyMode.UNSYNCHRONIZED,
+                NotificationDispatcher.direct(), null,
+                new ReviewMessageBuilder(2, Integer.MAX_VALUE, ReviewMessageBuilder.TruncationPolicy.WHOLE_REVIEWS));
+
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(book);
+        when(mockDatabaseService.getUserById(ID)).thenReturn(user);
+        doReturn(new ReviewPage(Arrays.asList("good", "bad"), "2")).when(mockReviewService).getReviewsPage(ISBN, null, 2);
+        when(book.getTitle()).thenReturn("Title");
+
+        library.notifyUserWithBookReviews(ISBN,ID);
+
+        verify(user).sendNotification("Reviews for 'Title':\ngood\nbad");
+        verify(mockReviewService, times(1)).getReviewsPage(anyString(), any(), anyInt());
+        verify(mockReviewService, never()).getReviewsForBook(ISBN);
+    }
+
     @Test
     public void notify_givenRightIDAndISBN_reviewServiceReturnException(){
         String ISBN = "978-965-231-157-3";
@@ -525,6 +1158,58 @@ public class TestLibrary {
         Assertions.assertThrows(NotificationException.class, () -> library.notifyUserWithBookReviews(ISBN,ID));
     }
 
+    @Test
+    public void notifyAsync_givenRightIDAndISBN_futureCompletesAfterDelivery(){
+        String ISBN = "978-965-231-157-3";
+        String ID = "318434123321";
+
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(book);
+        when(mockDatabaseService.getUserById(ID)).thenReturn(user);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Arrays.asList("review"));
+        when(book.getTitle()).thenReturn("Title");
+
+        Assertions.assertNull(library.notifyUserWithBookReviewsAsync(ISBN, ID).join());
+        verify(user).sendNotification("Reviews for 'Title':\nreview");
+    }
+
+    @Test
+    public void notifyAsync_givenMissingBook_futureFailsWithBookNotFoundException(){
+        String ISBN = "978-965-231-157-3";
+        String ID = "318434123321";
+
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(null);
+
+        CompletionException e = Assertions.assertThrows(CompletionException.class, () -> library.notifyUserWithBookReviewsAsync(ISBN, ID).join());
+        Assertions.assertTrue(e.getCause() instanceof BookNotFoundException);
+    }
+
+    @Test
+    public void notifyAsync_givenInvalidUserId_throwIllegalArgumentException(){
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> library.notifyUserWithBookReviewsAsync("978-965-231-157-3", "123"));
+        Assertions.assertEquals(e.getMessage(), "Invalid user Id.");
+    }
+
+    @Test
+    public void getBookAsync_givenFailingNotification_bookStillReturned(){
+        String ISBN = "978-965-231-157-3";
+        String ID = "318434123321";
+
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(book);
+        when(mockDatabaseService.getUserById(ID)).thenReturn(null);
+
+        Assertions.assertSame(book, library.getBookByISBNAsync(ISBN, ID).join());
+        Assertions.assertEquals(1, library.getFailedNotificationCount());
+    }
+
+    @Test
+    public void getBookAsync_givenBorrowedBook_futureFailsWithBookAlreadyBorrowedException(){
+        when(mockDatabaseService.getBookByISBN("978-965-231-157-3")).thenReturn(book);
+        when(book.isBorrowed()).thenReturn(true);
+
+        CompletionException e = Assertions.assertThrows(CompletionException.class, () -> library.getBookByISBNAsync("978-965-231-157-3", "318434123321").join());
+        Assertions.assertTrue(e.getCause() instanceof BookAlreadyBorrowedException);
+    }
+
     @Test
     public void givenISBNNull_whenAddBook_thenThrowException(){
         String ISBN = null;
@@ -0,0 +1,217 @@
+package ac.il.bgu.qa;
+
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.errors.BookNotBorrowedException;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.storage.InMemoryDatabaseService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.mockito.Mockito.mock;
+
+public class TestLibraryConcurrency {
+    private static final int THREADS = 8;
+    private static final String[] ISBNS = {"978-965-231-157-3", "978-0-306-40615-7", "9780000000002", "9780000000040"};
+
+    private InMemoryDatabaseService database;
+    private Library library;
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setUp(){
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    private void createLibrary(ConcurrencyMode mode){
+        database = new InMemoryDatabaseService();
+        library = new Library(database, mock(ReviewService.class), mode);
+        for (String isbn : ISBNS) {
+            library.addBook(new Book(isbn, "Heroes", "Amit"));
+        }
+        for (int i = 0; i < THREADS; i++) {
+            library.registerUser(new User("Amit", userId(i), mock(NotificationService.class)));
+        }
+    }
+
+    @AfterEach
+    public void tearDown(){
+        executor.shutdownNow();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ConcurrencyMode.class, names = {"LOCK_FREE", "TRANSACTIONAL"})
+    public void givenConcurrentBorrowers_whenBorrowSameBook_exactlyOneWins(ConcurrencyMode mode) throws Exception {
+        createLibrary(mode);
+        for (int round = 0; round < 200; round++) {
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicInteger winners = new AtomicInteger();
+            AtomicInteger losers = new AtomicInteger();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                String id = userId(i);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        library.borrowBook(ISBNS[0], id);
+                        winners.incrementAndGet();
+                    } catch (BookAlreadyBorrowedException e) {
+                        losers.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+
+            Assertions.assertEquals(1, winners.get());
+            Assertions.assertEquals(THREADS - 1, losers.get());
+            Assertions.assertEquals(1, database.getLoanCount());
+            library.returnBook(ISBNS[0]);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ConcurrencyMode.class, names = {"LOCK_FREE", "TRANSACTIONAL"})
+    public void givenConcurrentBorrowAndReturn_whenStress_noLostOrDuplicatedLoans(ConcurrencyMode mode) throws Exception {
+        createLibrary(mode);
+        AtomicReferenceArray<String> holders = new AtomicReferenceArray<>(ISBNS.length);
+        AtomicInteger borrows = new AtomicInteger();
+        AtomicInteger returns = new AtomicInteger();
+        AtomicInteger duplicates = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < THREADS; i++) {
+            String id = userId(i);
+            futures.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int n = 0; n < 20_000; n++) {
+                    int book = random.nextInt(ISBNS.length);
+                    try {
+                        library.borrowBook(ISBNS[book], id);
+                    } catch (BookAlreadyBorrowedException e) {
+                        continue;
+                    }
+                    borrows.incrementAndGet();
+                    // Nobody else may hold the book while this thread owns the loan.
+                    if (!holders.compareAndSet(book, null, id)) {
+                        duplicates.incrementAndGet();
+                    }
+                    holders.set(book, null);
+                    library.returnBook(ISBNS[book]);
+                    returns.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+
+        Assertions.assertEquals(0, duplicates.get());
+        Assertions.assertTrue(borrows.get() > 0);
+        Assertions.assertEquals(borrows.get(), returns.get());
+        Assertions.assertEquals(0, database.getLoanCount());
+        for (String isbn : ISBNS) {
+            Assertions.assertFalse(database.getBookByISBN(isbn).isBorrowed());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ConcurrencyMode.class, names = {"LOCK_FREE", "TRANSACTIONAL"})
+    public void givenConcurrentReservations_whenBookReturnedRepeatedly_everyUserGetsItOnce(ConcurrencyMode mode) throws Exception {
+        createLibrary(mode);
+        int rounds = 50;
+        AtomicInteger borrowedDirectly = new AtomicInteger();
+        for (int round = 0; round < rounds; round++) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                String id = userId(i);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    if (library.borrowOrReserve(ISBNS[0], id) == 0) {
+                        borrowedDirectly.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            // Every return hands the book on; a stranded reservation would leave this waiting for a loan forever.
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int returned = 0; returned < THREADS; ) {
+                    try {
+                        library.returnBook(ISBNS[0]);
+                        returned++;
+                    } catch (BookNotBorrowedException e) {
+                        Thread.yield();
+                    }
+                }
+                return null;
+            }));
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+
+            Assertions.assertTrue(library.getReservations(ISBNS[0]).isEmpty());
+            Assertions.assertEquals(0, database.getLoanCount());
+        }
+
+        int notified = 0;
+        for (int i = 0; i < THREADS; i++) {
+            notified += Mockito.mockingDetails(database.getUserById(userId(i)).getNotificationService()).getInvocations().size();
+        }
+        Assertions.assertEquals(rounds * THREADS, borrowedDirectly.get() + notified);
+    }
+
+    @Test
+    public void givenConcurrentRegistrations_whenSameUserTransactional_onlyOneRegistered() throws Exception {
+        createLibrary(ConcurrencyMode.TRANSACTIONAL);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger registered = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    library.registerUser(new User("Amit", "999999999999", mock(NotificationService.class)));
+                    registered.incrementAndGet();
+                } catch (IllegalArgumentException e) {
+                    Assertions.assertEquals("User already exists.", e.getMessage());
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        Assertions.assertEquals(1, registered.get());
+    }
+
+    @Test
+    public void givenBookNotBorrowed_whenReturnLockFree_ThrowBookNotBorrowedException(){
+        createLibrary(ConcurrencyMode.LOCK_FREE);
+        BookNotBorrowedException e = Assertions.assertThrows(BookNotBorrowedException.class, () -> library.returnBook(ISBNS[1]));
+        Assertions.assertEquals(e.getMessage(), "Book wasn't borrowed!");
+    }
+
+    private static String userId(int i) {
+        return String.format("%012d", 318434123000L + i);
+    }
+}
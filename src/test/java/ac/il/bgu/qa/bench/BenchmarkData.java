@@ -0,0 +1,62 @@
+package ac.il.bgu.qa.bench;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.NotificationService;
+
+/**
+ * Generates valid books and users for the benchmarks.
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Builds the n-th book of a synthetic catalog, with a valid ISBN-13 in hyphenated form.
+     *
+     * @param n The index of the book.
+     * @return A book with a unique ISBN.
+     */
+    static Book book(int n) {
+        return new Book(isbn(n), "Title " + n, "Author " + (char) ('A' + n % 26));
+    }
+
+    /**
+     * Builds a valid ISBN-13 for an index, prefixed with 978.
+     *
+     * @param n The index, smaller than one billion.
+     * @return The hyphenated ISBN.
+     */
+    static String isbn(int n) {
+        String body = String.format("978%09d", n);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = body.charAt(i) - '0';
+            sum += i % 2 == 0 ? digit : digit * 3;
+        }
+        int check = (10 - sum % 10) % 10;
+        return body.substring(0, 3) + "-" + body.substring(3) + "-" + check;
+    }
+
+    /**
+     * Builds the n-th user of a synthetic registry.
+     *
+     * @param n                   The index of the user.
+     * @param notificationService The notification service of the user.
+     * @return A user with a unique 12 digit Id.
+     */
+    static User user(int n, NotificationService notificationService) {
+        return new User("User " + n, userId(n), notificationService);
+    }
+
+    /**
+     * Builds a valid 12 digit user Id for an index.
+     *
+     * @param n The index of the user.
+     * @return The user Id.
+     */
+    static String userId(int n) {
+        return String.format("%012d", n);
+    }
+}
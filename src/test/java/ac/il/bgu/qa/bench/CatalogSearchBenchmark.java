@@ -0,0 +1,75 @@
+package ac.il.bgu.qa.bench;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ISBNKey;
+import ac.il.bgu.qa.storage.InMemoryDatabaseService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one page of author and title prefix search in {@link InMemoryDatabaseService} against scanning the
+ * whole catalog, which is what the front end did before the database indexed books.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CatalogSearchBenchmark {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"1000000"})
+    public int books;
+
+    private InMemoryDatabaseService database;
+    private List<Book> catalog;
+
+    @Setup
+    public void setUp() {
+        database = new InMemoryDatabaseService(books, 16);
+        catalog = new ArrayList<>(books);
+        for (int i = 0; i < books; i++) {
+            Book book = BenchmarkData.book(i);
+            database.addBook(ISBNKey.of(book.getISBN()), book);
+            catalog.add(book);
+        }
+        // Sort the titles once, as the first search after a bulk load would.
+        database.findBooksByTitlePrefix("title", 0, 1);
+    }
+
+    @Benchmark
+    public Book[] authorPage() {
+        int page = ThreadLocalRandom.current().nextInt(100);
+        return database.findBooksByAuthor("author " + (char) ('a' + page % 26), page * PAGE_SIZE, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Book[] titlePrefixPage() {
+        return database.findBooksByTitlePrefix("Title " + ThreadLocalRandom.current().nextInt(books / 10), 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Book> titlePrefixScan() {
+        String prefix = "Title " + ThreadLocalRandom.current().nextInt(books / 10);
+        List<Book> page = new ArrayList<>(PAGE_SIZE);
+        for (Book book : catalog) {
+            if (book.getTitle().startsWith(prefix) && page.size() < PAGE_SIZE) {
+                page.add(book);
+            }
+        }
+        return page;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CatalogSearchBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,127 @@
+package ac.il.bgu.qa.bench;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.codec.BookCodec;
+import ac.il.bgu.qa.codec.UserCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip latency of {@link BookCodec} and {@link UserCodec} against Java serialization of the same fields.
+ * {@link Book} and {@link User} are not serializable, so Java serialization writes plain serializable copies of them.
+ * {@link #main} prints the encoded sizes before running the benchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    private Book book;
+    private User user;
+    private SerializableBook serializableBook;
+    private SerializableUser serializableUser;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        book = BenchmarkData.book(42);
+        book.borrow();
+        user = BenchmarkData.user(42, null);
+        serializableBook = new SerializableBook(book);
+        serializableUser = new SerializableUser(user);
+        buffer = ByteBuffer.allocate(1024);
+    }
+
+    @Benchmark
+    public Book codecBook() {
+        buffer.clear();
+        BookCodec.encode(book, buffer);
+        buffer.flip();
+        return BookCodec.decode(buffer);
+    }
+
+    @Benchmark
+    public Object javaSerializationBook() throws IOException, ClassNotFoundException {
+        return roundTrip(serializableBook);
+    }
+
+    @Benchmark
+    public User codecUser() {
+        buffer.clear();
+        UserCodec.encode(user, buffer);
+        buffer.flip();
+        return UserCodec.decode(buffer, id -> null);
+    }
+
+    @Benchmark
+    public Object javaSerializationUser() throws IOException, ClassNotFoundException {
+        return roundTrip(serializableUser);
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        Book book = BenchmarkData.book(42);
+        User user = BenchmarkData.user(42, null);
+        System.out.printf("Book: codec %d bytes, Java serialization %d bytes%n",
+                BookCodec.encodedSize(book), serialize(new SerializableBook(book)).length);
+        System.out.printf("User: codec %d bytes, Java serialization %d bytes%n",
+                UserCodec.encodedSize(user), serialize(new SerializableUser(user)).length);
+        new Runner(new OptionsBuilder().include(CodecBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static Object roundTrip(Serializable value) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialize(value)))) {
+            return in.readObject();
+        }
+    }
+
+    private static byte[] serialize(Serializable value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    // The fields of a book as a class Java serialization accepts.
+    private static class SerializableBook implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final String ISBN;
+        final String title;
+        final String author;
+        final boolean borrowed;
+
+        SerializableBook(Book book) {
+            this.ISBN = book.getISBN();
+            this.title = book.getTitle();
+            this.author = book.getAuthor();
+            this.borrowed = book.isBorrowed();
+        }
+    }
+
+    // The fields of a user as a class Java serialization accepts.
+    private static class SerializableUser implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final String name;
+        final String id;
+
+        SerializableUser(User user) {
+            this.name = user.getName();
+            this.id = user.getId();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ac.il.bgu.qa.bench;
+
+import ac.il.bgu.qa.ConcurrencyMode;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.storage.InMemoryDatabaseService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checkout throughput (borrow followed by return of a random book) for each {@link ConcurrencyMode}.
+ * {@link #main} runs the benchmark with 1, 2, 4, ... threads up to twice the number of processors,
+ * so the scaling of the modes with the thread count can be compared.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentCheckoutBenchmark {
+
+    private static final int BOOKS = 10_000;
+    private static final int USERS = 256;
+
+    @State(Scope.Benchmark)
+    public static class LibraryState {
+
+        @Param({"LOCK_FREE", "TRANSACTIONAL"})
+        public ConcurrencyMode mode;
+
+        Library library;
+        String[] isbns;
+        final AtomicInteger nextUser = new AtomicInteger();
+
+        @Setup
+        public void setUp() {
+            InMemoryDatabaseService database = new InMemoryDatabaseService(BOOKS, USERS);
+            library = new Library(database, new NoReviews(), mode);
+            isbns = new String[BOOKS];
+            for (int i = 0; i < BOOKS; i++) {
+                isbns[i] = BenchmarkData.isbn(i);
+                library.addBook(BenchmarkData.book(i));
+            }
+            NotificationService notifications = (userId, message) -> { };
+            for (int i = 0; i < USERS; i++) {
+                library.registerUser(BenchmarkData.user(i, notifications));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class UserState {
+        String userId;
+
+        @Setup
+        public void setUp(LibraryState state) {
+            userId = BenchmarkData.userId(state.nextUser.getAndIncrement() % USERS);
+        }
+    }
+
+    @Benchmark
+    public boolean checkout(LibraryState state, UserState user) {
+        String isbn = state.isbns[ThreadLocalRandom.current().nextInt(BOOKS)];
+        try {
+            state.library.borrowBook(isbn, user.userId);
+        } catch (BookAlreadyBorrowedException e) {
+            return false;
+        }
+        state.library.returnBook(isbn);
+        return true;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+        for (int threads = 1; threads <= maxThreads; threads <<= 1) {
+            new Runner(new OptionsBuilder()
+                    .include(ConcurrentCheckoutBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+
+    // Review service that is never called by the checkout path.
+    private static class NoReviews implements ReviewService {
+        @Override
+        public List<String> getReviewsForBook(String ISBN) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
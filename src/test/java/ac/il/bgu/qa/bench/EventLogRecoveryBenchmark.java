@@ -0,0 +1,84 @@
+package ac.il.bgu.qa.bench;
+
+import ac.il.bgu.qa.ISBNKey;
+import ac.il.bgu.qa.storage.EventSourcedDatabaseService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recovery time of {@link EventSourcedDatabaseService} for a history of up to 100 million events, replayed either
+ * from the start of the log or from the latest snapshot. The history adds a catalog and a user registry, then
+ * borrows and returns random books until it holds the requested number of events.
+ * The 100 million event log takes about 2.5 GB of disk.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class EventLogRecoveryBenchmark {
+
+    private static final int BOOKS = 100_000;
+    private static final int USERS = 10_000;
+
+    @Param({"1000000", "10000000", "100000000"})
+    public long events;
+
+    // 0 replays the whole log.
+    @Param({"0", "1000000"})
+    public long snapshotInterval;
+
+    private Path directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("event-log-bench");
+        try (EventSourcedDatabaseService database = new EventSourcedDatabaseService(directory, id -> null,
+                65_536, 0, TimeUnit.MILLISECONDS, snapshotInterval)) {
+            long[] keys = new long[BOOKS];
+            for (int i = 0; i < BOOKS; i++) {
+                keys[i] = ISBNKey.of(BenchmarkData.isbn(i));
+                database.addBook(keys[i], BenchmarkData.book(i));
+            }
+            for (int i = 0; i < USERS; i++) {
+                database.registerUser(BenchmarkData.userId(i), BenchmarkData.user(i, null));
+            }
+            for (long n = database.getEventCount(); n < events; n += 2) {
+                long key = keys[(int) (n * 31 % BOOKS)];
+                database.borrowBook(key, BenchmarkData.userId((int) (n % USERS)));
+                database.returnBook(key);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public long recover() throws IOException {
+        try (EventSourcedDatabaseService database = new EventSourcedDatabaseService(directory, id -> null,
+                65_536, 0, TimeUnit.MILLISECONDS, 0)) {
+            return database.getEventCount();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EventLogRecoveryBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,76 @@
+package ac.il.bgu.qa.bench;
+
+import ac.il.bgu.qa.validation.IdentifierValidator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single pass {@link IdentifierValidator} with the regex based checks it replaced.
+ * Run with {@code mvn test-compile} followed by the {@link #main} method of this class.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IdentifierValidationBenchmark {
+
+    @Param({"978-965-231-157-3", "9789652311573", "123-45-6778hhy"})
+    public String isbn;
+
+    public String userId = "318434123789";
+
+    @Benchmark
+    public boolean legacyISBN() {
+        return legacyIsISBNValid(isbn);
+    }
+
+    @Benchmark
+    public boolean validatorISBN() {
+        return IdentifierValidator.isValidISBN(isbn);
+    }
+
+    @Benchmark
+    public boolean legacyUserId() {
+        return userId != null && userId.matches("\\d{12}");
+    }
+
+    @Benchmark
+    public boolean validatorUserId() {
+        return IdentifierValidator.isValidUserId(userId);
+    }
+
+    // The ISBN-13 check as it was implemented in Library before the validator was introduced.
+    private static boolean legacyIsISBNValid(String isbn) {
+        if (isbn == null) {
+            return false;
+        }
+        isbn = isbn.replaceAll("-", "");
+        if (isbn.length() != 13 || !isbn.matches("\\d+")) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = Integer.parseInt(String.valueOf(isbn.charAt(i)));
+            if (i % 2 == 0) {
+                sum += digit;
+            } else {
+                sum += digit * 3;
+            }
+        }
+        int checkDigit = 10 - (sum % 10);
+        if (checkDigit == 10) {
+            checkDigit = 0;
+        }
+        return checkDigit == Integer.parseInt(String.valueOf(isbn.charAt(12)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(IdentifierValidationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,113 @@
+package ac.il.bgu.qa.bench;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ISBNKey;
+import ac.il.bgu.qa.storage.InMemoryDatabaseService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup latency of {@link InMemoryDatabaseService} against the {@code HashMap<String, Book>} every shop used to write.
+ * Passing {@code footprint} to {@link #main} instead prints the retained heap of both stores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class InMemoryDatabaseBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int books;
+
+    private InMemoryDatabaseService database;
+    private Map<String, Book> hashMap;
+    private String[] isbns;
+    private long[] keys;
+
+    @Setup
+    public void setUp() {
+        database = new InMemoryDatabaseService(books, 16);
+        hashMap = new HashMap<>();
+        isbns = new String[books];
+        keys = new long[books];
+        for (int i = 0; i < books; i++) {
+            Book book = BenchmarkData.book(i);
+            isbns[i] = book.getISBN();
+            keys[i] = ISBNKey.of(book.getISBN());
+            database.addBook(keys[i], book);
+            hashMap.put(book.getISBN(), book);
+        }
+    }
+
+    @Benchmark
+    public Book hashMapByString() {
+        return hashMap.get(isbns[ThreadLocalRandom.current().nextInt(books)]);
+    }
+
+    @Benchmark
+    public Book inMemoryByString() {
+        return database.getBookByISBN(isbns[ThreadLocalRandom.current().nextInt(books)]);
+    }
+
+    @Benchmark
+    public Book inMemoryByKey() {
+        return database.getBookByISBN(keys[ThreadLocalRandom.current().nextInt(books)]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        if (args.length > 0 && args[0].equals("footprint")) {
+            int count = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+            printFootprint(count);
+            return;
+        }
+        new Runner(new OptionsBuilder().include(InMemoryDatabaseBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    // Measures the heap retained by each store beyond the books themselves, which both share.
+    private static void printFootprint(int count) {
+        Book[] shared = new Book[count];
+        for (int i = 0; i < count; i++) {
+            shared[i] = BenchmarkData.book(i);
+        }
+
+        long before = usedHeap();
+        InMemoryDatabaseService database = new InMemoryDatabaseService(count, 16);
+        for (Book book : shared) {
+            database.addBook(book.getISBN(), book);
+            database.borrowBook(book.getISBN(), "318434123789");
+        }
+        long inMemory = usedHeap() - before;
+
+        before = usedHeap();
+        Map<String, Book> books = new HashMap<>();
+        Map<String, String> loans = new HashMap<>();
+        for (Book book : shared) {
+            books.put(book.getISBN(), book);
+            loans.put(book.getISBN(), "318434123789");
+        }
+        long hashMaps = usedHeap() - before;
+
+        // Printing the sizes also keeps both stores reachable until they were measured.
+        System.out.printf(
+                "%d books and loans: InMemoryDatabaseService %d MB (%d entries), HashMap %d MB (%d entries)%n",
+                count, inMemory >> 20, database.getBookCount() + database.getLoanCount(),
+                hashMaps >> 20, books.size() + loans.size());
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
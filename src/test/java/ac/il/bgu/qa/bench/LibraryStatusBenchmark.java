@@ -0,0 +1,90 @@
+package ac.il.bgu.qa.bench;
+
+import ac.il.bgu.qa.ConcurrencyMode;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.LibraryStatus;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.storage.InMemoryDatabaseService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the expected failure of borrowing a borrowed book: the throwing {@link Library#borrowBook} against
+ * {@link Library#tryBorrowBook}, {@link Library#checkAvailability} and throwing the stackless singleton.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibraryStatusBenchmark {
+
+    private Library library;
+    private String isbn;
+    private String userId;
+
+    @Setup
+    public void setUp() {
+        library = new Library(new InMemoryDatabaseService(), new NoReviews(), ConcurrencyMode.LOCK_FREE);
+        isbn = BenchmarkData.isbn(1);
+        userId = BenchmarkData.userId(1);
+        library.addBook(BenchmarkData.book(1));
+        library.registerUser(BenchmarkData.user(1, (id, message) -> { }));
+        library.borrowBook(isbn, userId);
+    }
+
+    @Benchmark
+    public Object borrowThrowing() {
+        try {
+            library.borrowBook(isbn, userId);
+            return null;
+        } catch (BookAlreadyBorrowedException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public LibraryStatus borrowStatus() {
+        return library.tryBorrowBook(isbn, userId);
+    }
+
+    @Benchmark
+    public Object borrowStackless() {
+        try {
+            if (library.tryBorrowBook(isbn, userId) == LibraryStatus.BOOK_ALREADY_BORROWED) {
+                throw BookAlreadyBorrowedException.STACKLESS;
+            }
+            return null;
+        } catch (BookAlreadyBorrowedException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public LibraryStatus availability() {
+        return library.checkAvailability(isbn);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(LibraryStatusBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    // Review service that is never called by the borrow path.
+    private static class NoReviews implements ReviewService {
+        @Override
+        public List<String> getReviewsForBook(String ISBN) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ac.il.bgu.qa.bench;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ISBNKey;
+import ac.il.bgu.qa.storage.InMemoryDatabaseService;
+import ac.il.bgu.qa.storage.MappedDatabaseService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start and random lookup latency of {@link MappedDatabaseService} against {@link InMemoryDatabaseService}.
+ * A cold start of the mapped database opens the existing files and looks one book up; the in-memory database has
+ * to be filled with the whole catalog before its first lookup. Lookups are measured once both databases are warm.
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class MappedDatabaseBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int books;
+
+    private Path directory;
+    private MappedDatabaseService mapped;
+    private InMemoryDatabaseService inMemory;
+    private Book[] catalog;
+    private long[] keys;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("mapped-bench");
+        mapped = new MappedDatabaseService(directory, books, 16, id -> null);
+        inMemory = new InMemoryDatabaseService(books, 16);
+        catalog = new Book[books];
+        keys = new long[books];
+        for (int i = 0; i < books; i++) {
+            catalog[i] = BenchmarkData.book(i);
+            keys[i] = ISBNKey.of(catalog[i].getISBN());
+            mapped.addBook(keys[i], catalog[i]);
+            inMemory.addBook(keys[i], catalog[i]);
+        }
+        mapped.close();
+        mapped = new MappedDatabaseService(directory, books, 16, id -> null);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mapped.close();
+        Files.deleteIfExists(directory.resolve("books.db"));
+        Files.deleteIfExists(directory.resolve("users.db"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public Book mappedColdStart() throws IOException {
+        try (MappedDatabaseService database = new MappedDatabaseService(directory, books, 16, id -> null)) {
+            return database.getBookByISBN(keys[ThreadLocalRandom.current().nextInt(books)]);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public Book inMemoryColdStart() {
+        InMemoryDatabaseService database = new InMemoryDatabaseService(books, 16);
+        database.addBooks(keys, catalog);
+        return database.getBookByISBN(keys[ThreadLocalRandom.current().nextInt(books)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Book mappedLookup() {
+        return mapped.getBookByISBN(keys[ThreadLocalRandom.current().nextInt(books)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Book inMemoryLookup() {
+        return inMemory.getBookByISBN(keys[ThreadLocalRandom.current().nextInt(books)]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MappedDatabaseBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,61 @@
+package ac.il.bgu.qa.bench;
+
+import ac.il.bgu.qa.notifications.NotificationDelivery;
+import ac.il.bgu.qa.notifications.NotificationOutbox;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable enqueue throughput of {@link NotificationOutbox} on local disk. Every enqueue waits for its fsync,
+ * so the throughput with many threads shows how much group commit shares a sync between concurrent callers.
+ * {@link #main} runs the benchmark with 1, 4, 16 and 64 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NotificationOutboxBenchmark {
+
+    private static final String MESSAGE = "Reviews for 'Title 1':\nA fine book.\nCould be shorter.";
+
+    private Path directory;
+    private NotificationOutbox outbox;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("outbox-bench");
+        // Nothing is drained, so the benchmark measures the log alone.
+        outbox = new NotificationOutbox(directory.resolve("outbox.log"), id -> null,
+                NotificationDelivery.immediate(), 1, TimeUnit.SECONDS);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        outbox.close();
+        Files.deleteIfExists(directory.resolve("outbox.log"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public long enqueue() {
+        return outbox.enqueue(BenchmarkData.userId(1), MESSAGE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads = 1; threads <= 64; threads <<= 2) {
+            new Runner(new OptionsBuilder()
+                    .include(NotificationOutboxBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package ac.il.bgu.qa.bench;
+
+import ac.il.bgu.qa.ConcurrencyMode;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.errors.BookAlreadyBorrowedException;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.sharding.ShardedLibrary;
+import ac.il.bgu.qa.storage.InMemoryDatabaseService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checkout throughput (borrow followed by return of a random book) of a {@link ShardedLibrary} over 1, 2, 4, ...
+ * in-memory shards. Each thread is bound to one shard and only checks out the books that shard owns, so with as
+ * many threads as shards, which is how {@link #main} runs each shard count, no two threads share a shard and near
+ * linear scaling shows as a throughput proportional to the shard count.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShardedLibraryBenchmark {
+
+    private static final int BOOKS = 100_000;
+    private static final int USERS = 256;
+
+    @State(Scope.Benchmark)
+    public static class LibraryState {
+
+        @Param({"1", "2", "4", "8"})
+        public int shards;
+
+        ShardedLibrary library;
+        // The ISBNs of the books each shard owns.
+        String[][] isbnsByShard;
+        final AtomicInteger nextThread = new AtomicInteger();
+
+        @Setup
+        public void setUp() {
+            List<Library> partitions = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                InMemoryDatabaseService database = new InMemoryDatabaseService(BOOKS / shards * 2, USERS);
+                partitions.add(new Library(database, new NoReviews(), ConcurrencyMode.LOCK_FREE));
+            }
+            library = new ShardedLibrary(partitions);
+            List<List<String>> owned = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                owned.add(new ArrayList<>());
+            }
+            for (int i = 0; i < BOOKS; i++) {
+                String isbn = BenchmarkData.isbn(i);
+                library.addBook(BenchmarkData.book(i));
+                owned.get(partitions.indexOf(library.getShard(isbn))).add(isbn);
+            }
+            isbnsByShard = new String[shards][];
+            for (int i = 0; i < shards; i++) {
+                isbnsByShard[i] = owned.get(i).toArray(new String[0]);
+            }
+            NotificationService notifications = (userId, message) -> { };
+            for (int i = 0; i < USERS; i++) {
+                library.registerUser(BenchmarkData.user(i, notifications));
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class UserState {
+        String userId;
+        String[] isbns;
+
+        @Setup
+        public void setUp(LibraryState state) {
+            int thread = state.nextThread.getAndIncrement();
+            userId = BenchmarkData.userId(thread % USERS);
+            isbns = state.isbnsByShard[thread % state.shards];
+        }
+    }
+
+    @Benchmark
+    public boolean checkout(LibraryState state, UserState user) {
+        String isbn = user.isbns[ThreadLocalRandom.current().nextInt(user.isbns.length)];
+        try {
+            state.library.borrowBook(isbn, user.userId);
+        } catch (BookAlreadyBorrowedException e) {
+            return false;
+        }
+        state.library.returnBook(isbn);
+        return true;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        int maxShards = Runtime.getRuntime().availableProcessors();
+        for (int shards = 1; shards <= maxShards; shards <<= 1) {
+            new Runner(new OptionsBuilder()
+                    .include(ShardedLibraryBenchmark.class.getSimpleName())
+                    .param("shards", String.valueOf(shards))
+                    .threads(shards)
+                    .build()).run();
+        }
+    }
+
+    // Review service that is never called by the checkout path.
+    private static class NoReviews implements ReviewService {
+        @Override
+        public List<String> getReviewsForBook(String ISBN) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
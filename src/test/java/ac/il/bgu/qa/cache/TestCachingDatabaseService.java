@@ -0,0 +1,143 @@
+package ac.il.bgu.qa.cache;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.DatabaseService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.*;
+
+public class TestCachingDatabaseService {
+    private static final String ISBN = "978-965-231-157-3";
+    private static final long KEY = 9789652311573L;
+    private static final long TTL = 1_000;
+
+    private DatabaseService mockDatabaseService;
+    private AtomicLong clock;
+    private CachingDatabaseService cache;
+    private Book book;
+
+    @BeforeEach
+    public void setUp(){
+        mockDatabaseService = mock(DatabaseService.class);
+        clock = new AtomicLong();
+        cache = new CachingDatabaseService(mockDatabaseService, 2, TTL, clock::get);
+        book = new Book(ISBN, "Heroes", "Amit");
+        when(mockDatabaseService.getBookByISBN(KEY)).thenReturn(book);
+    }
+
+    @Test
+    public void givenCachedBook_whenGetAgain_databaseQueriedOnce(){
+        when(mockDatabaseService.getBookByISBN(ISBN)).thenReturn(book);
+
+        Assertions.assertSame(book, cache.getBookByISBN(ISBN));
+        Assertions.assertSame(book, cache.getBookByISBN("9789652311573"));
+        Assertions.assertSame(book, cache.getBookByISBN(KEY));
+
+        verify(mockDatabaseService, times(1)).getBookByISBN(ISBN);
+        verify(mockDatabaseService, never()).getBookByISBN(KEY);
+        Assertions.assertEquals(2, cache.getBookStats().getHits());
+        Assertions.assertEquals(1, cache.getBookStats().getMisses());
+    }
+
+    @Test
+    public void givenStringKeyedDatabase_whenGetByHyphenatedISBN_bookFound(){
+        DatabaseService stringKeyed = mock(DatabaseService.class);
+        when(stringKeyed.getBookByISBN(ISBN)).thenReturn(book);
+        CachingDatabaseService wrapper = new CachingDatabaseService(stringKeyed, 2, TTL, clock::get);
+
+        Assertions.assertSame(book, wrapper.getBookByISBN(ISBN));
+        Assertions.assertArrayEquals(new Book[]{book}, wrapper.getBooksByISBN(new String[]{ISBN}));
+
+        verify(stringKeyed, times(1)).getBookByISBN(ISBN);
+        verify(stringKeyed, never()).getBookByISBN("9789652311573");
+    }
+
+    @Test
+    public void givenExpiredEntry_whenGet_reloadedFromDatabase(){
+        cache.getBookByISBN(KEY);
+        clock.addAndGet(TTL);
+        cache.getBookByISBN(KEY);
+
+        verify(mockDatabaseService, times(2)).getBookByISBN(KEY);
+        Assertions.assertEquals(1, cache.getBookStats().getExpirations());
+    }
+
+    @Test
+    public void givenBorrowOrReturn_whenGet_entryInvalidated(){
+        cache.getBookByISBN(KEY);
+        cache.borrowBook(ISBN, "318434123789");
+        cache.getBookByISBN(KEY);
+        cache.returnBook(KEY);
+        cache.getBookByISBN(KEY);
+
+        verify(mockDatabaseService).borrowBook(ISBN, "318434123789");
+        verify(mockDatabaseService).returnBook(KEY);
+        verify(mockDatabaseService, times(3)).getBookByISBN(KEY);
+    }
+
+    @Test
+    public void givenFullCache_whenGetNewBook_leastRecentlyUsedEvicted(){
+        when(mockDatabaseService.getBookByISBN(1L)).thenReturn(book);
+        when(mockDatabaseService.getBookByISBN(2L)).thenReturn(book);
+
+        cache.getBookByISBN(KEY);
+        cache.getBookByISBN(1L);
+        cache.getBookByISBN(KEY);
+        cache.getBookByISBN(2L);
+        cache.getBookByISBN(KEY);
+        cache.getBookByISBN(1L);
+
+        verify(mockDatabaseService, times(1)).getBookByISBN(KEY);
+        verify(mockDatabaseService, times(2)).getBookByISBN(1L);
+        Assertions.assertEquals(2, cache.getBookStats().getEvictions());
+    }
+
+    @Test
+    public void givenMissingUser_whenGet_notCached(){
+        User user = mock(User.class);
+        when(mockDatabaseService.getUserById("318434123789")).thenReturn(null, user);
+
+        Assertions.assertNull(cache.getUserById("318434123789"));
+        Assertions.assertSame(user, cache.getUserById("318434123789"));
+        Assertions.assertSame(user, cache.getUserById("318434123789"));
+
+        verify(mockDatabaseService, times(2)).getUserById("318434123789");
+    }
+
+    @Test
+    public void givenSomeBooksCached_whenGetBooksInBulk_onlyMissesLoaded(){
+        when(mockDatabaseService.getBooksByISBN(new long[]{1L})).thenReturn(new Book[]{null});
+        cache.getBookByISBN(KEY);
+
+        Book[] books = cache.getBooksByISBN(new long[]{KEY, 1L});
+
+        Assertions.assertSame(book, books[0]);
+        Assertions.assertNull(books[1]);
+        verify(mockDatabaseService).getBooksByISBN(new long[]{1L});
+    }
+
+    @Test
+    public void givenInvalidationDuringLoad_whenLoadCompletes_staleBookNotCached(){
+        ExpiringLruCache<Long, Book> lru = new ExpiringLruCache<>(4, TTL, clock::get);
+        long version = lru.version(KEY);
+        lru.invalidate(KEY);
+
+        Assertions.assertFalse(lru.putIfUnchanged(KEY, book, version));
+        Assertions.assertNull(lru.get(KEY));
+    }
+
+    @Test
+    public void givenInvalidationOfAnotherKeyDuringLoad_whenLoadCompletes_bookCached(){
+        ExpiringLruCache<Long, Book> lru = new ExpiringLruCache<>(4, TTL, clock::get);
+        long version = lru.version(KEY);
+        lru.invalidate(KEY + 1);
+
+        Assertions.assertTrue(lru.putIfUnchanged(KEY, book, version));
+        Assertions.assertSame(book, lru.get(KEY));
+    }
+}
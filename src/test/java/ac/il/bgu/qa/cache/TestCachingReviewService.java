@@ -0,0 +1,166 @@
+package ac.il.bgu.qa.cache;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.services.ReviewPage;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.*;
+
+public class TestCachingReviewService {
+    private static final String ISBN = "978-965-231-157-3";
+    private static final String OTHER_ISBN = "978-0-306-40615-7";
+    private static final long TTL = 1_000;
+    private static final long NEGATIVE_TTL = 100;
+    private static final long STALE_WINDOW = 500;
+
+    private ReviewService mockReviewService;
+    private AtomicLong clock;
+    private List<Runnable> refreshes;
+    private CachingReviewService cache;
+
+    @BeforeEach
+    public void setUp(){
+        mockReviewService = mock(ReviewService.class, CALLS_REAL_METHODS);
+        clock = new AtomicLong();
+        refreshes = new ArrayList<>();
+        cache = new CachingReviewService(mockReviewService, 3, TTL, NEGATIVE_TTL, STALE_WINDOW, refreshes::add, clock::get);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Arrays.asList("Great", "Boring"));
+    }
+
+    @Test
+    public void givenCachedReviews_whenGetAgain_backendQueriedAndClosedOnce(){
+        Assertions.assertEquals(Arrays.asList("Great", "Boring"), cache.getReviewsForBook(ISBN));
+        Assertions.assertEquals(Arrays.asList("Great", "Boring"), cache.getReviewsForBook("9789652311573"));
+        cache.close();
+
+        verify(mockReviewService, times(1)).getReviewsForBook(ISBN);
+        verify(mockReviewService, times(1)).close();
+        Assertions.assertEquals(1, cache.getStats().getHits());
+        Assertions.assertEquals(1, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void givenPagesRequested_whenCached_cutFromCachedList(){
+        ReviewPage first = cache.getReviewsPage(ISBN, null, 1);
+        ReviewPage second = cache.getReviewsPage(ISBN, first.getNextCursor(), 1);
+
+        Assertions.assertEquals(Arrays.asList("Great"), first.getReviews());
+        Assertions.assertEquals(Arrays.asList("Boring"), second.getReviews());
+        verify(mockReviewService, times(1)).getReviewsForBook(ISBN);
+        verify(mockReviewService, never()).getReviewsPage(anyString(), any(), anyInt());
+    }
+
+    @Test
+    public void givenNoReviews_whenGetWithinNegativeTTL_cachedNegatively(){
+        when(mockReviewService.getReviewsForBook(OTHER_ISBN)).thenReturn(null);
+
+        Assertions.assertTrue(cache.getReviewsForBook(OTHER_ISBN).isEmpty());
+        clock.addAndGet(NEGATIVE_TTL - 1);
+        Assertions.assertTrue(cache.getReviewsForBook(OTHER_ISBN).isEmpty());
+        verify(mockReviewService, times(1)).getReviewsForBook(OTHER_ISBN);
+
+        clock.addAndGet(1);
+        cache.getReviewsForBook(OTHER_ISBN);
+        verify(mockReviewService, times(2)).getReviewsForBook(OTHER_ISBN);
+        Assertions.assertTrue(refreshes.isEmpty());
+    }
+
+    @Test
+    public void givenExpiredReviewsInStaleWindow_whenGet_staleServedAndRefreshedOnce(){
+        cache.getReviewsForBook(ISBN);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Collections.singletonList("Updated"));
+        clock.addAndGet(TTL);
+
+        Assertions.assertEquals(Arrays.asList("Great", "Boring"), cache.getReviewsForBook(ISBN));
+        Assertions.assertEquals(Arrays.asList("Great", "Boring"), cache.getReviewsForBook(ISBN));
+        Assertions.assertEquals(1, refreshes.size());
+        verify(mockReviewService, times(1)).getReviewsForBook(ISBN);
+
+        refreshes.get(0).run();
+        Assertions.assertEquals(Collections.singletonList("Updated"), cache.getReviewsForBook(ISBN));
+        Assertions.assertEquals(2, cache.getStaleHits());
+    }
+
+    @Test
+    public void givenCallerRunsExecutor_whenRefreshScheduled_cacheMonitorNotHeld(){
+        List<Boolean> monitorHeld = new ArrayList<>();
+        CachingReviewService[] callerRuns = new CachingReviewService[1];
+        callerRuns[0] = new CachingReviewService(mockReviewService, 3, TTL, NEGATIVE_TTL, STALE_WINDOW, task -> {
+            monitorHeld.add(Thread.holdsLock(callerRuns[0]));
+            task.run();
+        }, clock::get);
+
+        callerRuns[0].getReviewsForBook(ISBN);
+        clock.addAndGet(TTL);
+        callerRuns[0].getReviewsForBook(ISBN);
+
+        Assertions.assertEquals(Collections.singletonList(false), monitorHeld);
+        verify(mockReviewService, times(2)).getReviewsForBook(ISBN);
+    }
+
+    @Test
+    public void givenReviewsPastStaleWindow_whenGet_loadedSynchronously(){
+        cache.getReviewsForBook(ISBN);
+        clock.addAndGet(TTL + STALE_WINDOW);
+
+        cache.getReviewsForBook(ISBN);
+
+        Assertions.assertTrue(refreshes.isEmpty());
+        verify(mockReviewService, times(2)).getReviewsForBook(ISBN);
+        Assertions.assertEquals(1, cache.getStats().getExpirations());
+    }
+
+    @Test
+    public void givenFailingRefresh_whenGet_staleKeptAndRefreshRetried(){
+        cache.getReviewsForBook(ISBN);
+        when(mockReviewService.getReviewsForBook(ISBN)).thenThrow(new ReviewException("Review service unavailable"));
+        clock.addAndGet(TTL);
+
+        cache.getReviewsForBook(ISBN);
+        refreshes.get(0).run();
+
+        Assertions.assertEquals(Arrays.asList("Great", "Boring"), cache.getReviewsForBook(ISBN));
+        Assertions.assertEquals(2, refreshes.size());
+    }
+
+    @Test
+    public void givenBackendFailure_whenGet_failureNotCached(){
+        when(mockReviewService.getReviewsForBook(OTHER_ISBN))
+                .thenThrow(new ReviewException("Review service unavailable"))
+                .thenReturn(Collections.singletonList("Fine"));
+
+        Assertions.assertThrows(ReviewException.class, () -> cache.getReviewsForBook(OTHER_ISBN));
+        Assertions.assertEquals(Collections.singletonList("Fine"), cache.getReviewsForBook(OTHER_ISBN));
+        verify(mockReviewService, times(2)).close();
+    }
+
+    @Test
+    public void givenWeightExceeded_whenGet_leastRecentlyUsedEvicted(){
+        when(mockReviewService.getReviewsForBook(OTHER_ISBN)).thenReturn(Arrays.asList("A", "B"));
+
+        cache.getReviewsForBook(ISBN);
+        cache.getReviewsForBook(OTHER_ISBN);
+        cache.getReviewsForBook(ISBN);
+
+        verify(mockReviewService, times(2)).getReviewsForBook(ISBN);
+        Assertions.assertEquals(2, cache.getStats().getEvictions());
+    }
+
+    @Test
+    public void givenInvalidatedBook_whenGet_reloaded(){
+        cache.getReviewsForBook(ISBN);
+        cache.invalidate(ISBN);
+        cache.getReviewsForBook(ISBN);
+
+        verify(mockReviewService, times(2)).getReviewsForBook(ISBN);
+    }
+}
@@ -0,0 +1,172 @@
+package ac.il.bgu.qa.cache;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.services.ReviewPage;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.mockito.Mockito.*;
+
+public class TestCoalescingReviewService {
+    private static final int THREADS = 8;
+    private static final String ISBN = "978-965-231-157-3";
+    private static final String OTHER_ISBN = "978-0-306-40615-7";
+
+    private ReviewService mockReviewService;
+    private CoalescingReviewService coalescing;
+    private ExecutorService executor;
+    private CountDownLatch release;
+
+    @BeforeEach
+    public void setUp(){
+        mockReviewService = mock(ReviewService.class, CALLS_REAL_METHODS);
+        coalescing = new CoalescingReviewService(mockReviewService);
+        executor = Executors.newFixedThreadPool(THREADS);
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    public void tearDown(){
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void givenConcurrentLookups_whenSameISBN_backendFetchedAndClosedOnce() throws Exception {
+        List<String> reviews = Arrays.asList("Great", "Boring");
+        when(mockReviewService.getReviewsForBook(ISBN)).thenAnswer(invocation -> {
+            release.await();
+            return reviews;
+        });
+
+        List<Future<List<String>>> futures = lookUpConcurrently();
+
+        for (Future<List<String>> future : futures) {
+            Assertions.assertSame(reviews, future.get(10, TimeUnit.SECONDS));
+        }
+        verify(mockReviewService, times(1)).getReviewsForBook(ISBN);
+        verify(mockReviewService, times(1)).close();
+        Assertions.assertEquals(1, coalescing.getFetchCount());
+        Assertions.assertEquals(0, coalescing.getReferenceCount());
+    }
+
+    @Test
+    public void givenConcurrentLookups_whenFetchFails_everyCallerSeesFailure() throws Exception {
+        ReviewException failure = new ReviewException("Review service unavailable");
+        when(mockReviewService.getReviewsForBook(ISBN)).thenAnswer(invocation -> {
+            release.await();
+            throw failure;
+        });
+
+        List<Future<List<String>>> futures = lookUpConcurrently();
+
+        for (Future<List<String>> future : futures) {
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+            Assertions.assertSame(failure, e.getCause());
+        }
+        verify(mockReviewService, times(1)).close();
+    }
+
+    @Test
+    public void givenSequentialLookups_whenEachClosed_noCoalescingAndClosedPerLookup(){
+        when(mockReviewService.getReviewsForBook(ISBN)).thenReturn(Arrays.asList("Great"));
+
+        coalescing.getReviewsForBook(ISBN);
+        coalescing.close();
+        coalescing.getReviewsForBook(ISBN);
+        coalescing.close();
+        coalescing.close();
+
+        verify(mockReviewService, times(2)).getReviewsForBook(ISBN);
+        verify(mockReviewService, times(2)).close();
+        Assertions.assertEquals(0, coalescing.getCoalescedCount());
+    }
+
+    @Test
+    public void givenServiceWithoutPooling_whenDifferentISBNsInFlight_closedOnceBothEnded() throws Exception {
+        CountDownLatch bothFetching = new CountDownLatch(2);
+        when(mockReviewService.getReviewsForBook(anyString())).thenAnswer(invocation -> {
+            bothFetching.countDown();
+            bothFetching.await();
+            return Arrays.asList("Great");
+        });
+
+        Future<List<String>> first = executor.submit(() -> coalescing.getReviewsForBook(ISBN));
+        Future<List<String>> second = executor.submit(() -> coalescing.getReviewsForBook(OTHER_ISBN));
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+
+        verify(mockReviewService, times(1)).close();
+        Assertions.assertEquals(2, coalescing.getFetchCount());
+        Assertions.assertEquals(0, coalescing.getReferenceCount());
+    }
+
+    @Test
+    public void givenPooledService_whenDifferentISBNsInFlight_eachFetchLeasesItsOwnConnection() throws Exception {
+        ReviewService firstConnection = mock(ReviewService.class);
+        ReviewService secondConnection = mock(ReviewService.class);
+        CountDownLatch bothFetching = new CountDownLatch(2);
+        for (ReviewService connection : Arrays.asList(firstConnection, secondConnection)) {
+            when(connection.getReviewsForBook(anyString())).thenAnswer(invocation -> {
+                bothFetching.countDown();
+                bothFetching.await();
+                return Arrays.asList("Great");
+            });
+        }
+        doReturn(firstConnection, secondConnection).when(mockReviewService).lease();
+        doNothing().when(mockReviewService).release(any(ReviewService.class));
+
+        Future<List<String>> first = executor.submit(() -> coalescing.getReviewsForBook(ISBN));
+        Future<List<String>> second = executor.submit(() -> coalescing.getReviewsForBook(OTHER_ISBN));
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+
+        verify(firstConnection, times(1)).getReviewsForBook(anyString());
+        verify(secondConnection, times(1)).getReviewsForBook(anyString());
+        verify(mockReviewService).release(firstConnection);
+        verify(mockReviewService).release(secondConnection);
+        verify(mockReviewService, never()).getReviewsForBook(anyString());
+    }
+
+    @Test
+    public void givenPooledService_whenGetReviewsPage_forwardedOverLeasedConnection(){
+        ReviewService connection = mock(ReviewService.class);
+        ReviewPage page = new ReviewPage(Arrays.asList("Great"), "1");
+        when(connection.getReviewsPage(ISBN, null, 1)).thenReturn(page);
+        doReturn(connection).when(mockReviewService).lease();
+        doNothing().when(mockReviewService).release(any(ReviewService.class));
+
+        Assertions.assertSame(page, coalescing.getReviewsPage(ISBN, null, 1));
+
+        verify(mockReviewService).release(connection);
+        verify(mockReviewService, never()).getReviewsForBook(anyString());
+        Assertions.assertEquals(0, coalescing.getReferenceCount());
+    }
+
+    // Starts a lookup-then-close per thread and lets the shared fetch finish once every follower joined it.
+    private List<Future<List<String>>> lookUpConcurrently() throws InterruptedException {
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                try {
+                    return coalescing.getReviewsForBook(ISBN);
+                } finally {
+                    coalescing.close();
+                }
+            }));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (coalescing.getCoalescedCount() < THREADS - 1 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        return futures;
+    }
+}
@@ -0,0 +1,90 @@
+package ac.il.bgu.qa.codec;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ISBNKey;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+public class TestBookCodec {
+    private static final String ISBN = "978-965-231-157-3";
+
+    private static ByteBuffer encode(Book... books) {
+        int size = 0;
+        for (Book book : books) {
+            size += BookCodec.encodedSize(book);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (Book book : books) {
+            BookCodec.encode(book, buffer);
+        }
+        Assertions.assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void givenBook_whenEncodedAndDecoded_fieldsKeptAndISBNPacked(){
+        Book book = new Book(ISBN, "Heroes \u05d2\u05d9\u05d1\u05d5\u05e8\u05d9\u05dd \ud83d\udcd6", "Amit");
+        ByteBuffer buffer = encode(book);
+
+        Book decoded = BookCodec.decode(buffer);
+
+        Assertions.assertEquals("9789652311573", decoded.getISBN());
+        Assertions.assertEquals(book.getTitle(), decoded.getTitle());
+        Assertions.assertEquals("Amit", decoded.getAuthor());
+        Assertions.assertFalse(decoded.isBorrowed());
+        Assertions.assertEquals(3 + 6 + (1 + 7 + 7 * 2 + 1 + 4) + (1 + 4), buffer.position());
+    }
+
+    @Test
+    public void givenBorrowedBookWithNullAuthor_whenDecoded_borrowedAndNullKept(){
+        Book book = new Book(ISBN, "Heroes", null);
+        book.borrow();
+
+        Book decoded = BookCodec.decode(encode(book));
+
+        Assertions.assertTrue(decoded.isBorrowed());
+        Assertions.assertNull(decoded.getAuthor());
+    }
+
+    @Test
+    public void givenInvalidISBN_whenEncodedAndDecoded_keptAsString(){
+        Book decoded = BookCodec.decode(encode(new Book("1234", "Heroes", "Amit")));
+
+        Assertions.assertEquals("1234", decoded.getISBN());
+    }
+
+    @Test
+    public void givenEncodedBooks_whenPeekedAndSkipped_readInPlace(){
+        Book borrowed = new Book("978-0-306-40615-7", "Villains", "Amit");
+        borrowed.borrow();
+        ByteBuffer buffer = encode(new Book(ISBN, "Heroes", "Amit"), borrowed);
+
+        Assertions.assertEquals(ISBNKey.of(ISBN), BookCodec.peekISBNKey(buffer));
+        Assertions.assertFalse(BookCodec.peekBorrowed(buffer));
+        BookCodec.skip(buffer);
+        Assertions.assertEquals(ISBNKey.of("978-0-306-40615-7"), BookCodec.peekISBNKey(buffer));
+        Assertions.assertTrue(BookCodec.peekBorrowed(buffer));
+        Assertions.assertEquals("Villains", BookCodec.decode(buffer).getTitle());
+    }
+
+    @Test
+    public void givenDirectBuffer_whenDecoded_sameBook(){
+        ByteBuffer heap = encode(new Book(ISBN, "Heroes", "Amit"));
+        ByteBuffer direct = ByteBuffer.allocateDirect(heap.remaining());
+        direct.put(heap).flip();
+
+        Assertions.assertEquals("Heroes", BookCodec.decode(direct).getTitle());
+    }
+
+    @Test
+    public void givenUnknownVersion_whenDecode_throwIllegalArgumentException(){
+        ByteBuffer buffer = encode(new Book(ISBN, "Heroes", "Amit"));
+        buffer.put(1, (byte) 2);
+
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> BookCodec.decode(buffer));
+        Assertions.assertEquals("Unsupported book encoding version.", e.getMessage());
+    }
+}
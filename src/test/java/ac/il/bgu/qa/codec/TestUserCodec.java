@@ -0,0 +1,50 @@
+package ac.il.bgu.qa.codec;
+
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.NotificationService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.mockito.Mockito.mock;
+
+public class TestUserCodec {
+
+    private static ByteBuffer encode(User user) {
+        ByteBuffer buffer = ByteBuffer.allocate(UserCodec.encodedSize(user));
+        UserCodec.encode(user, buffer);
+        Assertions.assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void givenUser_whenEncodedAndDecoded_idPackedAndServiceResolved(){
+        NotificationService notificationService = mock(NotificationService.class);
+        ByteBuffer buffer = encode(new User("Amit", "012345678901", mock(NotificationService.class)));
+
+        User decoded = UserCodec.decode(buffer, id -> notificationService);
+
+        Assertions.assertEquals("012345678901", decoded.getId());
+        Assertions.assertEquals("Amit", decoded.getName());
+        Assertions.assertSame(notificationService, decoded.getNotificationService());
+        Assertions.assertEquals(3 + 5 + 1 + 4, buffer.position());
+    }
+
+    @Test
+    public void givenInvalidId_whenEncodedAndDecoded_keptAsString(){
+        User decoded = UserCodec.decode(encode(new User(null, "0123", null)), id -> null);
+
+        Assertions.assertEquals("0123", decoded.getId());
+        Assertions.assertNull(decoded.getName());
+    }
+
+    @Test
+    public void givenBookEncoding_whenDecodedAsUser_throwIllegalArgumentException(){
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{'B', 1, 0, 1, 1, 1});
+
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> UserCodec.decode(buffer, id -> null));
+        Assertions.assertEquals("Invalid user encoding.", e.getMessage());
+    }
+}
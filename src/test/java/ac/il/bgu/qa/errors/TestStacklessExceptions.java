@@ -0,0 +1,28 @@
+package ac.il.bgu.qa.errors;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestStacklessExceptions {
+
+    @Test
+    public void givenStacklessInstances_whenInspected_noStackTraceAndLibraryMessages(){
+        RuntimeException[] instances = {BookNotFoundException.STACKLESS, BookAlreadyBorrowedException.STACKLESS,
+                BookNotBorrowedException.STACKLESS, UserNotRegisteredException.STACKLESS};
+        String[] messages = {"Book not found!", "Book is already borrowed!", "Book wasn't borrowed!", "User not found!"};
+
+        for (int i = 0; i < instances.length; i++) {
+            Assertions.assertEquals(0, instances[i].getStackTrace().length);
+            Assertions.assertEquals(messages[i], instances[i].getMessage());
+        }
+    }
+
+    @Test
+    public void givenStacklessInstance_whenSuppressedAdded_staysUnchanged(){
+        BookNotFoundException.STACKLESS.addSuppressed(new IllegalStateException());
+        BookNotFoundException.STACKLESS.setStackTrace(new Throwable().getStackTrace());
+
+        Assertions.assertEquals(0, BookNotFoundException.STACKLESS.getSuppressed().length);
+        Assertions.assertEquals(0, BookNotFoundException.STACKLESS.getStackTrace().length);
+    }
+}
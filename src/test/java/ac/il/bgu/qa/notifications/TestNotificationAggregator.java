@@ -0,0 +1,115 @@
+package ac.il.bgu.qa.notifications;
+
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.services.NotificationService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TestNotificationAggregator {
+    private static final String ID = "318434123321";
+    private static final String OTHER_ID = "318434123789";
+
+    private NotificationService mockNotificationService;
+    private List<Runnable> windowEnds;
+    private NotificationAggregator aggregator;
+
+    @BeforeEach
+    public void setUp(){
+        mockNotificationService = mock(NotificationService.class);
+        windowEnds = new ArrayList<>();
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            windowEnds.add(invocation.getArgument(0));
+            return mock(ScheduledFuture.class);
+        });
+        aggregator = new NotificationAggregator(mockNotificationService, 3, 1, TimeUnit.SECONDS, scheduler);
+    }
+
+    @Test
+    public void givenMessagesWithinWindow_whenWindowEnds_singleDigestPerUser(){
+        aggregator.notifyUser(ID, "first");
+        aggregator.notifyUser(OTHER_ID, "other");
+        aggregator.notifyUser(ID, "second");
+        verify(mockNotificationService, never()).notifyUser(anyString(), anyString());
+
+        windowEnds.forEach(Runnable::run);
+
+        verify(mockNotificationService).notifyUser(ID, "first\n\nsecond");
+        verify(mockNotificationService).notifyUser(OTHER_ID, "other");
+        Assertions.assertEquals(2, aggregator.getDeliveredCount());
+        Assertions.assertEquals(0, aggregator.getOpenBatchCount());
+    }
+
+    @Test
+    public void givenFullBatch_whenNotify_sentBeforeWindowEnds(){
+        aggregator.notifyUser(ID, "1");
+        aggregator.notifyUser(ID, "2");
+        aggregator.notifyUser(ID, "3");
+
+        verify(mockNotificationService).notifyUser(ID, "1\n\n2\n\n3");
+        windowEnds.get(0).run();
+        verifyNoMoreInteractions(mockNotificationService);
+    }
+
+    @Test
+    public void givenAnyRecipientId_whenFlushed_digestSentToServiceUnderThatId(){
+        aggregator.notifyUser("group:readers", "first");
+
+        windowEnds.forEach(Runnable::run);
+
+        verify(mockNotificationService).notifyUser("group:readers", "first");
+        Assertions.assertEquals(1, aggregator.getDeliveredCount());
+    }
+
+    @Test
+    public void givenOpenBatches_whenClose_flushedAndLaterMessagesPassThrough(){
+        aggregator.notifyUser(ID, "first");
+
+        aggregator.close();
+        verify(mockNotificationService).notifyUser(ID, "first");
+
+        aggregator.notifyUser(ID, "late");
+        verify(mockNotificationService).notifyUser(ID, "late");
+        Assertions.assertEquals(2, aggregator.getReceivedCount());
+    }
+
+    @Test
+    public void givenSchedulerRejects_whenNotify_messageSentAloneAndNoBatchLeftOpen(){
+        ScheduledExecutorService stopped = mock(ScheduledExecutorService.class);
+        when(stopped.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class)))
+                .thenThrow(new RejectedExecutionException("shut down"));
+        NotificationAggregator rejecting = new NotificationAggregator(mockNotificationService, 3, 1, TimeUnit.SECONDS,
+                stopped);
+
+        rejecting.notifyUser(ID, "first");
+        rejecting.notifyUser(ID, "second");
+        rejecting.close();
+
+        verify(mockNotificationService).notifyUser(ID, "first");
+        verify(mockNotificationService).notifyUser(ID, "second");
+        Assertions.assertEquals(0, rejecting.getOpenBatchCount());
+        Assertions.assertEquals(2, rejecting.getDeliveredCount());
+    }
+
+    @Test
+    public void givenFailingService_whenFlushed_digestRetriedAndFailureCounted(){
+        doThrow(new NotificationException("down")).when(mockNotificationService).notifyUser(anyString(), anyString());
+
+        aggregator.notifyUser(ID, "first");
+        aggregator.close();
+
+        verify(mockNotificationService, times(5)).notifyUser(ID, "first");
+        Assertions.assertEquals(1, aggregator.getFailedCount());
+    }
+}
@@ -0,0 +1,167 @@
+package ac.il.bgu.qa.notifications;
+
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.services.NotificationService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TestNotificationDelivery {
+    private static final long OPEN_NANOS = 1_000;
+
+    private NotificationService notificationService;
+    private User user;
+    private ScheduledExecutorService scheduler;
+    private List<Runnable> scheduled;
+    private List<Long> delays;
+    private AtomicLong clock;
+
+    @BeforeEach
+    public void setUp(){
+        notificationService = mock(NotificationService.class);
+        user = new User("Amit", "318434123321", notificationService);
+        scheduled = new ArrayList<>();
+        delays = new ArrayList<>();
+        clock = new AtomicLong();
+        scheduler = mock(ScheduledExecutorService.class);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), eq(TimeUnit.NANOSECONDS))).thenAnswer(invocation -> {
+            scheduled.add(invocation.getArgument(0));
+            delays.add(invocation.getArgument(1));
+            return null;
+        });
+    }
+
+    private NotificationDelivery createDelivery(RetryBudget budget, int failureThreshold){
+        RetryPolicy backoff = new RetryPolicy(4, 100, 250, 2, 0, TimeUnit.NANOSECONDS);
+        return new NotificationDelivery(backoff, budget, failureThreshold, OPEN_NANOS, scheduler, clock::get);
+    }
+
+    @Test
+    public void givenFailingService_whenDeliverAsync_retriesScheduledWithExponentialBackoff(){
+        doThrow(new NotificationException("down")).when(notificationService).notifyUser(anyString(), anyString());
+        NotificationDelivery delivery = createDelivery(RetryBudget.unlimited(), 0);
+
+        CompletableFuture<Void> future = delivery.deliverAsync(user, "message");
+        while (!scheduled.isEmpty()) {
+            Assertions.assertFalse(future.isDone());
+            scheduled.remove(0).run();
+        }
+
+        Assertions.assertEquals(Arrays.asList(100L, 200L, 250L), delays);
+        verify(notificationService, times(4)).notifyUser("318434123321", "message");
+        CompletionException e = Assertions.assertThrows(CompletionException.class, future::join);
+        Assertions.assertEquals("Notification failed!", e.getCause().getMessage());
+    }
+
+    @Test
+    public void givenRecoveringService_whenRetried_futureCompletes(){
+        doThrow(new NotificationException("down")).doNothing().when(notificationService).notifyUser(anyString(), anyString());
+        NotificationDelivery delivery = createDelivery(RetryBudget.unlimited(), 0);
+
+        CompletableFuture<Void> future = delivery.deliverAsync(user, "message");
+        scheduled.remove(0).run();
+
+        Assertions.assertTrue(future.isDone());
+        Assertions.assertFalse(future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void givenExhaustedBudget_whenDeliverFails_notRetried(){
+        doThrow(new NotificationException("down")).when(notificationService).notifyUser(anyString(), anyString());
+        NotificationDelivery delivery = createDelivery(new RetryBudget(0, 1), 0);
+
+        delivery.deliverAsync(user, "first");
+        scheduled.remove(0).run();
+        CompletableFuture<Void> second = delivery.deliverAsync(user, "second");
+
+        Assertions.assertTrue(second.isCompletedExceptionally());
+        Assertions.assertTrue(scheduled.isEmpty());
+        verify(notificationService, times(1)).notifyUser("318434123321", "second");
+    }
+
+    @Test
+    public void givenConsecutiveFailures_whenBreakerOpens_deliveryFailsFast(){
+        doThrow(new NotificationException("down")).when(notificationService).notifyUser(anyString(), anyString());
+        NotificationDelivery delivery = createDelivery(RetryBudget.unlimited(), 2);
+
+        delivery.deliverAsync(user, "message");
+        scheduled.remove(0).run();
+
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, delivery.getCircuitBreaker(notificationService).getState());
+        NotificationException e = Assertions.assertThrows(NotificationException.class, () -> delivery.deliver(user, "other"));
+        Assertions.assertEquals("Notification service unavailable!", e.getMessage());
+        verify(notificationService, never()).notifyUser("318434123321", "other");
+    }
+
+    @Test
+    public void givenOpenBreaker_whenCoolDownElapsedAndTrialSucceeds_breakerCloses(){
+        doThrow(new NotificationException("down")).doThrow(new NotificationException("down")).doNothing()
+                .when(notificationService).notifyUser(anyString(), anyString());
+        NotificationDelivery delivery = createDelivery(RetryBudget.unlimited(), 2);
+        delivery.deliverAsync(user, "message");
+        scheduled.remove(0).run();
+
+        clock.addAndGet(OPEN_NANOS);
+        delivery.deliver(user, "message");
+
+        Assertions.assertEquals(CircuitBreaker.State.CLOSED, delivery.getCircuitBreaker(notificationService).getState());
+    }
+
+    @Test
+    public void givenTrialThrowsError_whenDeliver_breakerOpensAgain(){
+        doThrow(new NotificationException("down")).doThrow(new NotificationException("down"))
+                .doThrow(new AssertionError("crash")).when(notificationService).notifyUser(anyString(), anyString());
+        NotificationDelivery delivery = createDelivery(RetryBudget.unlimited(), 2);
+        delivery.deliverAsync(user, "message");
+        scheduled.remove(0).run();
+
+        clock.addAndGet(OPEN_NANOS);
+        Assertions.assertThrows(AssertionError.class, () -> delivery.deliver(user, "message"));
+
+        Assertions.assertEquals(CircuitBreaker.State.OPEN, delivery.getCircuitBreaker(notificationService).getState());
+    }
+
+    @Test
+    public void givenTrialNeverReported_whenCoolDownElapsed_nextCallIsNewTrial(){
+        CircuitBreaker breaker = new CircuitBreaker(1, OPEN_NANOS, clock::get);
+        breaker.onFailure();
+        clock.addAndGet(OPEN_NANOS);
+        Assertions.assertTrue(breaker.tryAcquire());
+
+        Assertions.assertFalse(breaker.tryAcquire());
+        clock.addAndGet(OPEN_NANOS);
+
+        Assertions.assertTrue(breaker.tryAcquire());
+        Assertions.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    public void givenDefaultDelivery_whenServiceFails_fiveImmediateAttempts(){
+        doThrow(new NotificationException("down")).when(notificationService).notifyUser(anyString(), anyString());
+
+        Assertions.assertThrows(NotificationException.class, () -> NotificationDelivery.immediate().deliver(user, "message"));
+        verify(notificationService, times(5)).notifyUser("318434123321", "message");
+    }
+
+    @Test
+    public void givenJitter_whenDelay_randomizedBelowBackoff(){
+        RetryPolicy policy = new RetryPolicy(5, 100, 1_000, 2, 0.5, TimeUnit.NANOSECONDS);
+
+        Assertions.assertEquals(400, policy.delayNanos(3, 0));
+        Assertions.assertEquals(200, policy.delayNanos(3, 1));
+        Assertions.assertEquals(1_000, policy.delayNanos(10, 0));
+    }
+}
@@ -0,0 +1,128 @@
+package ac.il.bgu.qa.notifications;
+
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.NotificationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.*;
+
+public class TestNotificationDispatcher {
+    private NotificationDispatcher dispatcher;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        release.countDown();
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+            dispatcher.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void givenBusyThreads_whenSubmit_queueDepthReported() throws Exception {
+        dispatcher = new NotificationDispatcher(1, 2, NotificationDispatcher.RejectionPolicy.ABORT);
+
+        CompletableFuture<String> first = dispatcher.submit(this::blockUntilReleased);
+        CompletableFuture<String> second = dispatcher.submit(this::blockUntilReleased);
+        awaitRunning(1);
+
+        Assertions.assertEquals(1, dispatcher.getQueueDepth());
+        release.countDown();
+        Assertions.assertEquals("done", first.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals("done", second.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, dispatcher.getQueueDepth());
+        Assertions.assertTrue(dispatcher.getMaxQueueDepth() >= 1);
+        Assertions.assertEquals(2, dispatcher.getCompletedCount());
+    }
+
+    @Test
+    public void givenFullQueueAndAbortPolicy_whenSubmit_futureRejected() throws Exception {
+        dispatcher = new NotificationDispatcher(1, 1, NotificationDispatcher.RejectionPolicy.ABORT);
+        dispatcher.submit(this::blockUntilReleased);
+        dispatcher.submit(this::blockUntilReleased);
+        awaitRunning(1);
+
+        CompletableFuture<String> rejected = dispatcher.submit(() -> "late");
+
+        CompletionException e = Assertions.assertThrows(CompletionException.class, rejected::join);
+        Assertions.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        Assertions.assertEquals(1, dispatcher.getRejectedCount());
+    }
+
+    @Test
+    public void givenFullQueueAndCallerRunsPolicy_whenSubmit_jobRunsOnCaller() throws Exception {
+        dispatcher = new NotificationDispatcher(1, 0, NotificationDispatcher.RejectionPolicy.CALLER_RUNS);
+        dispatcher.submit(this::blockUntilReleased);
+        awaitRunning(1);
+
+        CompletableFuture<Thread> ranOn = dispatcher.submit(Thread::currentThread);
+
+        Assertions.assertSame(Thread.currentThread(), ranOn.getNow(null));
+        Assertions.assertEquals(1, dispatcher.getRejectedCount());
+    }
+
+    @Test
+    public void givenDirectDispatcher_whenSubmit_jobRunsBeforeReturning(){
+        dispatcher = NotificationDispatcher.direct();
+
+        CompletableFuture<Thread> ranOn = dispatcher.submit(Thread::currentThread);
+
+        Assertions.assertSame(Thread.currentThread(), ranOn.getNow(null));
+        Assertions.assertEquals(0, dispatcher.getRejectedCount());
+    }
+
+    @Test
+    public void givenVirtualThreadDispatcher_whenSubmit_jobCompletes() throws Exception {
+        dispatcher = NotificationDispatcher.virtualThreads(4, NotificationDispatcher.RejectionPolicy.ABORT);
+
+        Assertions.assertEquals("done", dispatcher.submit(() -> "done").get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void givenFailingJob_whenSubmit_futureFailsAndCounted(){
+        dispatcher = NotificationDispatcher.direct();
+
+        CompletableFuture<Object> future = dispatcher.submit(() -> {
+            throw new NotificationException("Notification failed!");
+        });
+
+        Assertions.assertTrue(future.isCompletedExceptionally());
+        Assertions.assertEquals(1, dispatcher.getFailedCount());
+    }
+
+    @Test
+    public void givenFailingNotificationService_whenDeliver_retriedFiveTimes(){
+        dispatcher = NotificationDispatcher.direct();
+        User user = mock(User.class);
+        doThrow(new NotificationException("Exception")).when(user).sendNotification("message");
+
+        NotificationException e = Assertions.assertThrows(NotificationException.class, () -> dispatcher.deliver(user, "message"));
+        Assertions.assertEquals(e.getMessage(), "Notification failed!");
+        verify(user, times(5)).sendNotification("message");
+    }
+
+    private String blockUntilReleased() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "done";
+    }
+
+    private void awaitRunning(int jobs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (dispatcher.getRunningCount() < jobs && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ac.il.bgu.qa.notifications;
+
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.NotificationException;
+import ac.il.bgu.qa.services.NotificationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TestNotificationOutbox {
+    private static final String ID = "318434123321";
+    private static final String UNKNOWN_ID = "318434123789";
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private NotificationService mockNotificationService;
+    private User user;
+    private NotificationOutbox outbox;
+
+    @BeforeEach
+    public void setUp(){
+        file = directory.resolve("outbox.log");
+        mockNotificationService = mock(NotificationService.class);
+        user = new User("Amit", ID, mockNotificationService);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    private NotificationOutbox open() throws IOException {
+        outbox = new NotificationOutbox(file, id -> ID.equals(id) ? user : null,
+                new NotificationDelivery(RetryPolicy.immediate(1), RetryBudget.unlimited(), 0, 0, TimeUnit.NANOSECONDS, null),
+                1, TimeUnit.MILLISECONDS);
+        return outbox;
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            Assertions.assertTrue(System.nanoTime() < deadline, "Condition not reached in time.");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void givenEnqueue_whenReturned_recordIsOnDisk() throws IOException {
+        open();
+
+        outbox.enqueue(ID, "message");
+
+        Assertions.assertTrue(Files.size(file) > 0);
+        Assertions.assertTrue(outbox.getCommitCount() >= 1);
+        Assertions.assertEquals(1, outbox.getPendingCount());
+        verify(mockNotificationService, never()).notifyUser(anyString(), anyString());
+    }
+
+    @Test
+    public void givenDraining_whenEnqueue_deliveredAndAcknowledged() throws Exception {
+        open().startDraining();
+
+        outbox.enqueue(ID, "first");
+        outbox.enqueue(ID, "second");
+        awaitCondition(() -> outbox.getPendingCount() == 0);
+
+        verify(mockNotificationService).notifyUser(ID, "first");
+        verify(mockNotificationService).notifyUser(ID, "second");
+        Assertions.assertEquals(2, outbox.getDeliveredCount());
+    }
+
+    @Test
+    public void givenUndeliveredNotifications_whenReopened_deliveredAfterRestart() throws Exception {
+        open().enqueue(ID, "first");
+        outbox.enqueue(ID, "second");
+        outbox.close();
+
+        open().startDraining();
+        Assertions.assertEquals(2, outbox.getPendingCount());
+        awaitCondition(() -> outbox.getPendingCount() == 0);
+
+        verify(mockNotificationService).notifyUser(ID, "first");
+        verify(mockNotificationService).notifyUser(ID, "second");
+    }
+
+    @Test
+    public void givenDeliveredNotifications_whenReopened_notDeliveredAgain() throws Exception {
+        open().startDraining();
+        outbox.enqueue(ID, "message");
+        awaitCondition(() -> outbox.getPendingCount() == 0);
+        outbox.close();
+
+        open();
+
+        Assertions.assertEquals(0, outbox.getPendingCount());
+        Assertions.assertEquals(0, Files.size(file));
+    }
+
+    @Test
+    public void givenFailingService_whenDelivered_redeliveredUntilSuccess() throws Exception {
+        doThrow(new NotificationException("down")).doThrow(new NotificationException("down")).doNothing()
+                .when(mockNotificationService).notifyUser(anyString(), anyString());
+        open().startDraining();
+
+        outbox.enqueue(ID, "message");
+        awaitCondition(() -> outbox.getPendingCount() == 0);
+
+        verify(mockNotificationService, times(3)).notifyUser(ID, "message");
+        Assertions.assertEquals(2, outbox.getRedeliveryCount());
+        Assertions.assertEquals(1, outbox.getDeliveredCount());
+    }
+
+    @Test
+    public void givenUnknownUser_whenDrained_countedUndeliverable() throws Exception {
+        open().startDraining();
+
+        outbox.enqueue(UNKNOWN_ID, "message");
+        awaitCondition(() -> outbox.getPendingCount() == 0);
+
+        Assertions.assertEquals(1, outbox.getUndeliverableCount());
+        Assertions.assertEquals(0, outbox.getDeliveredCount());
+        verify(mockNotificationService, never()).notifyUser(anyString(), anyString());
+    }
+
+    @Test
+    public void givenTornLastRecord_whenReopened_earlierRecordsReplayed() throws Exception {
+        open().enqueue(ID, "first");
+        outbox.close();
+        Files.write(file, new byte[]{0, 0, 0, 40, 1, 0}, StandardOpenOption.APPEND);
+
+        open();
+
+        Assertions.assertEquals(1, outbox.getPendingCount());
+        outbox.enqueue(ID, "second");
+        outbox.close();
+        open();
+        Assertions.assertEquals(2, outbox.getPendingCount());
+    }
+
+    @Test
+    public void givenClosedOutbox_whenEnqueue_illegalStateExceptionThrown() throws IOException {
+        open().close();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> outbox.enqueue(ID, "message"));
+    }
+}
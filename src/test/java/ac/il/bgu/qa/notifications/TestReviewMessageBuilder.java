@@ -0,0 +1,78 @@
+package ac.il.bgu.qa.notifications;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+public class TestReviewMessageBuilder {
+
+    @Test
+    public void givenUnlimitedBuilder_whenBuild_allReviewsOnePerLine(){
+        ReviewMessageBuilder builder = ReviewMessageBuilder.unlimited();
+
+        String message = builder.build("Title", Arrays.asList("good", "bad").iterator());
+
+        Assertions.assertEquals("Reviews for 'Title':\ngood\nbad", message);
+        Assertions.assertEquals(0, builder.getTruncatedCount());
+    }
+
+    @Test
+    public void givenNullReview_whenBuild_writtenAsNull(){
+        String message = ReviewMessageBuilder.unlimited().build("Title", Arrays.asList("good", null).iterator());
+
+        Assertions.assertEquals("Reviews for 'Title':\ngood\nnull", message);
+    }
+
+    @Test
+    public void givenWholeReviewsPolicy_whenCapReached_lastFittingReviewKept(){
+        ReviewMessageBuilder builder = new ReviewMessageBuilder(32, ReviewMessageBuilder.TruncationPolicy.WHOLE_REVIEWS);
+        Iterator<String> reviews = Arrays.asList("good", "bad", "ugly").iterator();
+
+        String message = builder.build("Title", reviews);
+
+        Assertions.assertEquals("Reviews for 'Title':\ngood\n...", message);
+        Assertions.assertTrue(reviews.hasNext());
+        Assertions.assertEquals(1, builder.getTruncatedCount());
+    }
+
+    @Test
+    public void givenCutReviewPolicy_whenCapReached_messageFillsCap(){
+        ReviewMessageBuilder builder = new ReviewMessageBuilder(32, ReviewMessageBuilder.TruncationPolicy.CUT_REVIEW);
+
+        String message = builder.build("Title", Arrays.asList("good", "terrible", "ugly").iterator());
+
+        Assertions.assertEquals("Reviews for 'Title':\ngood\nte\n...", message);
+        Assertions.assertEquals(32, message.length());
+    }
+
+    @Test
+    public void givenLastReviewFitsWithoutMarker_whenBuild_notTruncated(){
+        ReviewMessageBuilder builder = new ReviewMessageBuilder(29, ReviewMessageBuilder.TruncationPolicy.WHOLE_REVIEWS);
+
+        String message = builder.build("Title", Arrays.asList("good", "bad").iterator());
+
+        Assertions.assertEquals("Reviews for 'Title':\ngood\nbad", message);
+        Assertions.assertEquals(0, builder.getTruncatedCount());
+    }
+
+    @Test
+    public void givenReusedBuffer_whenBuildAgain_noLeftoverFromPreviousMessage(){
+        ReviewMessageBuilder builder = ReviewMessageBuilder.unlimited();
+        builder.build("Long title", Collections.nCopies(1000, "a long review").iterator());
+
+        String message = builder.build("T", Collections.singletonList("r").iterator());
+
+        Assertions.assertEquals("Reviews for 'T':\nr", message);
+        Assertions.assertEquals(2, builder.getBuiltCount());
+    }
+
+    @Test
+    public void givenTinyCap_whenConstruct_throwIllegalArgumentException(){
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new ReviewMessageBuilder(4, ReviewMessageBuilder.TruncationPolicy.CUT_REVIEW));
+        Assertions.assertEquals("Invalid maximum length.", e.getMessage());
+    }
+}
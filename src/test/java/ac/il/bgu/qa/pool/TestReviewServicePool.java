@@ -0,0 +1,147 @@
+package ac.il.bgu.qa.pool;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import ac.il.bgu.qa.errors.ReviewServiceClosedException;
+import ac.il.bgu.qa.services.ReviewService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.Mockito.*;
+
+public class TestReviewServicePool {
+    private static final String ISBN = "978-965-231-157-3";
+    private static final long IDLE_TIMEOUT = 1_000;
+
+    private List<ReviewService> opened;
+    private List<ReviewService> unhealthy;
+    private AtomicLong clock;
+
+    @BeforeEach
+    public void setUp(){
+        opened = new ArrayList<>();
+        unhealthy = new ArrayList<>();
+        clock = new AtomicLong();
+    }
+
+    private ReviewServicePool createPool(int minimumSize, int maximumSize, long borrowTimeoutNanos){
+        return new ReviewServicePool(() -> {
+            ReviewService connection = mock(ReviewService.class);
+            when(connection.getReviewsForBook(ISBN)).thenReturn(Arrays.asList("Great"));
+            opened.add(connection);
+            return connection;
+        }, connection -> !unhealthy.contains(connection), minimumSize, maximumSize, IDLE_TIMEOUT, borrowTimeoutNanos, clock::get);
+    }
+
+    @Test
+    public void givenMinimumSize_whenConstructed_connectionsOpenedUpFront(){
+        ReviewServicePool pool = createPool(2, 4, 0);
+
+        Assertions.assertEquals(2, opened.size());
+        Assertions.assertEquals(2, pool.getStats().getIdle());
+    }
+
+    @Test
+    public void givenReleasedConnection_whenLeaseAgain_reusedWithoutClosing(){
+        ReviewServicePool pool = createPool(0, 4, 0);
+
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertEquals(Arrays.asList("Great"), pool.getReviewsForBook(ISBN));
+        }
+
+        Assertions.assertEquals(1, opened.size());
+        verify(opened.get(0), never()).close();
+        Assertions.assertEquals(1, pool.getStats().getCreated());
+    }
+
+    @Test
+    public void givenAllLeased_whenBorrowTimeoutElapses_throwReviewException(){
+        ReviewServicePool pool = createPool(0, 1, TimeUnit.MILLISECONDS.toNanos(10));
+        pool.lease();
+
+        ReviewException e = Assertions.assertThrows(ReviewException.class, pool::lease);
+        Assertions.assertEquals("Timed out waiting for a review connection.", e.getMessage());
+        Assertions.assertEquals(1, pool.getStats().getTimeouts());
+    }
+
+    @Test
+    public void givenAllLeased_whenConnectionReleased_waitingLeaseReceivesIt() throws Exception {
+        ReviewServicePool pool = createPool(0, 1, TimeUnit.SECONDS.toNanos(10));
+        ReviewService connection = pool.lease();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ReviewService> waiter = executor.submit(pool::lease);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (pool.getStats().getWaiting() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+
+            pool.release(connection);
+
+            Assertions.assertSame(connection, waiter.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenUnhealthyIdleConnection_whenLease_closedAndReplaced(){
+        ReviewServicePool pool = createPool(1, 2, 0);
+        ReviewService broken = opened.get(0);
+        unhealthy.add(broken);
+
+        ReviewService connection = pool.lease();
+
+        Assertions.assertNotSame(broken, connection);
+        verify(broken).close();
+        Assertions.assertEquals(1, pool.getStats().getDestroyed());
+    }
+
+    @Test
+    public void givenConnectionsIdleTooLong_whenEvict_closedDownToMinimum(){
+        ReviewServicePool pool = createPool(1, 3, 0);
+        ReviewService first = pool.lease();
+        ReviewService second = pool.lease();
+        ReviewService third = pool.lease();
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+
+        clock.addAndGet(IDLE_TIMEOUT);
+        pool.evictIdle();
+
+        Assertions.assertEquals(1, pool.getStats().getIdle());
+        Assertions.assertEquals(2, pool.getStats().getDestroyed());
+        verify(third, never()).close();
+    }
+
+    @Test
+    public void givenClosedPool_whenLeasedConnectionReleased_connectionClosed(){
+        ReviewServicePool pool = createPool(1, 2, 0);
+        ReviewService connection = pool.lease();
+        ReviewService idle = pool.lease();
+        pool.release(idle);
+
+        pool.close();
+        verify(idle).close();
+        verify(connection, never()).close();
+
+        pool.release(connection);
+        verify(connection).close();
+        Assertions.assertThrows(ReviewServiceClosedException.class, pool::lease);
+    }
+
+    @Test
+    public void givenUnknownConnection_whenRelease_throwIllegalArgumentException(){
+        ReviewServicePool pool = createPool(0, 1, 0);
+
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> pool.release(mock(ReviewService.class)));
+        Assertions.assertEquals("Invalid review connection.", e.getMessage());
+    }
+}
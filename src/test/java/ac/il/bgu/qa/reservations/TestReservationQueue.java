@@ -0,0 +1,46 @@
+package ac.il.bgu.qa.reservations;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+public class TestReservationQueue {
+
+    @Test
+    public void givenReservations_whenPolled_servedInOrder(){
+        ReservationQueue queue = new ReservationQueue();
+        Assertions.assertEquals(1, queue.reserve(1, "a"));
+        Assertions.assertEquals(2, queue.reserve(1, "b"));
+        Assertions.assertEquals(1, queue.reserve(2, "c"));
+
+        Assertions.assertEquals("a", queue.peek(1));
+        Assertions.assertEquals("a", queue.poll(1));
+        Assertions.assertEquals("b", queue.poll(1));
+        Assertions.assertNull(queue.poll(1));
+        Assertions.assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void givenUserAlreadyWaiting_whenReserveAgain_placeKept(){
+        ReservationQueue queue = new ReservationQueue();
+        queue.reserve(1, "a");
+        queue.reserve(1, "b");
+
+        Assertions.assertEquals(1, queue.reserve(1, "a"));
+        Assertions.assertEquals(Arrays.asList("a", "b"), queue.getWaiters(1));
+        Assertions.assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void givenCancelledReservations_whenQueried_queueEmpty(){
+        ReservationQueue queue = new ReservationQueue();
+        queue.reserve(1, "a");
+
+        Assertions.assertTrue(queue.cancel(1, "a"));
+        Assertions.assertFalse(queue.cancel(1, "a"));
+        Assertions.assertTrue(queue.isEmpty());
+        Assertions.assertTrue(queue.getWaiters(1).isEmpty());
+        Assertions.assertNull(queue.peek(1));
+    }
+}
@@ -0,0 +1,118 @@
+package ac.il.bgu.qa.services;
+
+import ac.il.bgu.qa.errors.ReviewException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+public class TestPagedReviewService {
+    private static final String ISBN = "978-965-231-157-3";
+    private static final List<String> REVIEWS = Arrays.asList("r0", "r1", "r2", "r3", "r4");
+
+    private List<Integer> requestedSizes;
+    private PagedReviewService pagedService;
+
+    @BeforeEach
+    public void setUp(){
+        requestedSizes = new ArrayList<>();
+        // Backend that always returns two reviews per page, whatever the hint.
+        pagedService = new PagedReviewService(3) {
+            @Override
+            public ReviewPage getReviewsPage(String ISBN, String cursor, int pageSizeHint) {
+                requestedSizes.add(pageSizeHint);
+                int offset = cursor == null ? 0 : Integer.parseInt(cursor);
+                int end = Math.min(REVIEWS.size(), offset + 2);
+                return new ReviewPage(REVIEWS.subList(offset, end), end < REVIEWS.size() ? Integer.toString(end) : null);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Test
+    public void givenListService_whenGetReviewsPage_sliceWithOffsetCursor(){
+        ReviewService listService = mock(ReviewService.class, CALLS_REAL_METHODS);
+        doReturn(REVIEWS).when(listService).getReviewsForBook(ISBN);
+
+        ReviewPage first = listService.getReviewsPage(ISBN, null, 3);
+        ReviewPage second = listService.getReviewsPage(ISBN, first.getNextCursor(), 3);
+
+        Assertions.assertEquals(Arrays.asList("r0", "r1", "r2"), first.getReviews());
+        Assertions.assertEquals("3", first.getNextCursor());
+        Assertions.assertEquals(Arrays.asList("r3", "r4"), second.getReviews());
+        Assertions.assertTrue(second.isLast());
+    }
+
+    @Test
+    public void givenInvalidCursor_whenGetReviewsPage_throwIllegalArgumentException(){
+        ReviewService listService = mock(ReviewService.class, CALLS_REAL_METHODS);
+
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> listService.getReviewsPage(ISBN, "next", 3));
+        Assertions.assertEquals("Invalid cursor.", e.getMessage());
+    }
+
+    @Test
+    public void givenPagedService_whenGetReviewsForBook_everyPageCollected(){
+        Assertions.assertEquals(REVIEWS, pagedService.getReviewsForBook(ISBN));
+        Assertions.assertEquals(Arrays.asList(3, 3, 3), requestedSizes);
+    }
+
+    @Test
+    public void givenLimit_whenIterated_pagesPastLimitNeverFetched(){
+        PagedReviewIterator reviews = new PagedReviewIterator(pagedService, ISBN, 3, 3);
+
+        List<String> read = new ArrayList<>();
+        reviews.forEachRemaining(read::add);
+
+        Assertions.assertEquals(Arrays.asList("r0", "r1", "r2"), read);
+        Assertions.assertEquals(2, reviews.getPageCount());
+        Assertions.assertEquals(Arrays.asList(3, 1), requestedSizes);
+    }
+
+    @Test
+    public void givenStreaming_whenNothingRead_noPageFetched(){
+        Iterator<String> reviews = pagedService.iterateReviewsForBook(ISBN);
+
+        Assertions.assertTrue(requestedSizes.isEmpty());
+        Assertions.assertEquals("r0", reviews.next());
+        Assertions.assertEquals(1, requestedSizes.size());
+    }
+
+    @Test
+    public void givenServiceWithoutPages_whenIterated_listReadUpToLimit(){
+        ReviewService listService = mock(ReviewService.class);
+        when(listService.getReviewsForBook(ISBN)).thenReturn(REVIEWS);
+
+        List<String> read = new ArrayList<>();
+        new PagedReviewIterator(listService, ISBN, 2, 2).forEachRemaining(read::add);
+
+        Assertions.assertEquals(Arrays.asList("r0", "r1"), read);
+    }
+
+    @Test
+    public void givenListChangedAfterwards_whenPageRead_pageUnchanged(){
+        List<String> reviews = new ArrayList<>(REVIEWS);
+        ReviewPage page = new ReviewPage(reviews, null);
+
+        reviews.clear();
+
+        Assertions.assertEquals(REVIEWS, page.getReviews());
+    }
+
+    @Test
+    public void givenFailingPage_whenIterated_reviewExceptionThrown(){
+        ReviewService failing = mock(ReviewService.class);
+        when(failing.getReviewsPage(ISBN, null, 2)).thenThrow(new ReviewException("down"));
+
+        Assertions.assertThrows(ReviewException.class, () -> new PagedReviewIterator(failing, ISBN, 2, 2).hasNext());
+    }
+}
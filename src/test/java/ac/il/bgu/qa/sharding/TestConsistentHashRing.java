@@ -0,0 +1,45 @@
+package ac.il.bgu.qa.sharding;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestConsistentHashRing {
+    private static final int KEYS = 100_000;
+
+    @Test
+    public void givenVirtualNodes_whenKeysPlaced_spreadEvenly(){
+        ConsistentHashRing ring = new ConsistentHashRing(4, 128);
+        int[] counts = new int[4];
+        for (long key = 0; key < KEYS; key++) {
+            counts[ring.nodeFor(9_780_000_000_000L + key)]++;
+        }
+
+        for (int count : counts) {
+            Assertions.assertTrue(Math.abs(count - KEYS / 4) < KEYS / 4 / 5, "Unbalanced node: " + count);
+        }
+    }
+
+    @Test
+    public void givenRingGrown_whenKeysPlaced_onlyKeysOfNewNodeMove(){
+        ConsistentHashRing before = new ConsistentHashRing(4, 128);
+        ConsistentHashRing after = new ConsistentHashRing(5, 128);
+        int moved = 0;
+        for (long key = 0; key < KEYS; key++) {
+            int owner = after.nodeFor(key);
+            if (owner != before.nodeFor(key)) {
+                Assertions.assertEquals(4, owner);
+                moved++;
+            }
+        }
+
+        Assertions.assertTrue(moved < KEYS / 4, "Too many keys moved: " + moved);
+    }
+
+    @Test
+    public void givenInvalidSizes_whenConstructed_throwIllegalArgumentException(){
+        IllegalArgumentException nodes = Assertions.assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(0, 1));
+        IllegalArgumentException virtualNodes = Assertions.assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing(1, 0));
+        Assertions.assertEquals("Invalid node count.", nodes.getMessage());
+        Assertions.assertEquals("Invalid virtual node count.", virtualNodes.getMessage());
+    }
+}
@@ -0,0 +1,124 @@
+package ac.il.bgu.qa.sharding;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.Library;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.services.NotificationService;
+import ac.il.bgu.qa.services.ReviewService;
+import ac.il.bgu.qa.storage.InMemoryDatabaseService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+
+public class TestShardedLibrary {
+    private static final String[] ISBNS = {"978-965-231-157-3", "978-0-306-40615-7", "978-1-4028-9462-6",
+            "978-3-16-148410-0", "978-0-13-468599-1", "978-1-86197-876-9"};
+    private static final String ID = "318434123789";
+
+    private List<InMemoryDatabaseService> databases;
+    private ShardedLibrary library;
+
+    @BeforeEach
+    public void setUp(){
+        databases = new ArrayList<>();
+        List<Library> shards = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            InMemoryDatabaseService database = new InMemoryDatabaseService();
+            databases.add(database);
+            shards.add(new Library(database, mock(ReviewService.class)));
+        }
+        library = new ShardedLibrary(shards);
+    }
+
+    @Test
+    public void givenBooks_whenAdded_eachStoredOnlyOnItsShard(){
+        for (String ISBN : ISBNS) {
+            library.addBook(new Book(ISBN, "Heroes", "Amit"));
+        }
+
+        for (String ISBN : ISBNS) {
+            int shard = library.getShards().indexOf(library.getShard(ISBN));
+            for (int i = 0; i < databases.size(); i++) {
+                Assertions.assertEquals(i == shard, databases.get(i).getBookByISBN(ISBN) != null);
+            }
+        }
+        int stored = 0;
+        for (InMemoryDatabaseService database : databases) {
+            stored += database.getBookCount();
+        }
+        Assertions.assertEquals(ISBNS.length, stored);
+    }
+
+    @Test
+    public void givenReplicatedUser_whenBorrowingFromEveryShard_loansRecordedOnOwningShards(){
+        User user = new User("Amit", ID, mock(NotificationService.class));
+        library.registerUser(user);
+        for (String ISBN : ISBNS) {
+            library.addBook(new Book(ISBN, "Heroes", "Amit"));
+            library.borrowBook(ISBN, ID);
+        }
+        library.returnBook(ISBNS[0]);
+
+        for (InMemoryDatabaseService database : databases) {
+            Assertions.assertSame(user, database.getUserById(ID));
+        }
+        Assertions.assertNull(library.getShard(ISBNS[0]).getBorrower(ISBNS[0]));
+        for (int i = 1; i < ISBNS.length; i++) {
+            Assertions.assertSame(user, library.getShard(ISBNS[i]).getBorrower(ISBNS[i]));
+        }
+    }
+
+    @Test
+    public void givenShardFailingRegistration_whenRegisteredAgain_completedOnEveryShard(){
+        InMemoryDatabaseService failing = spy(new InMemoryDatabaseService());
+        doThrow(new IllegalStateException("down")).doCallRealMethod()
+                .when(failing).registerUser(anyString(), any(User.class));
+        library = new ShardedLibrary(Arrays.asList(new Library(databases.get(0), mock(ReviewService.class)),
+                new Library(failing, mock(ReviewService.class))));
+        User user = new User("Amit", ID, mock(NotificationService.class));
+
+        Assertions.assertThrows(IllegalStateException.class, () -> library.registerUser(user));
+        Assertions.assertSame(user, databases.get(0).getUserById(ID));
+        Assertions.assertNull(failing.getUserById(ID));
+
+        library.registerUser(user);
+        Assertions.assertSame(user, failing.getUserById(ID));
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> library.registerUser(user));
+        Assertions.assertEquals("User already exists.", e.getMessage());
+    }
+
+    @Test
+    public void givenBookOnAnotherShard_whenGetBookByISBN_routedToOwner(){
+        library.registerUser(new User("Amit", ID, mock(NotificationService.class)));
+        library.addBook(new Book(ISBNS[1], "Heroes", "Amit"));
+
+        Assertions.assertEquals("Heroes", library.getBookByISBN(ISBNS[1], ID).getTitle());
+        Assertions.assertThrows(BookNotFoundException.class, () -> library.getBookByISBN(ISBNS[2], ID));
+    }
+
+    @Test
+    public void givenInvalidArguments_whenCalled_throwIllegalArgumentException(){
+        IllegalArgumentException shards = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new ShardedLibrary(Collections.emptyList()));
+        IllegalArgumentException missingShard = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new ShardedLibrary(Arrays.asList(mock(Library.class), null)));
+        IllegalArgumentException ISBN = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> library.borrowBook("1234", ID));
+        IllegalArgumentException user = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> library.registerUser(null));
+
+        Assertions.assertEquals("Invalid shard list.", shards.getMessage());
+        Assertions.assertEquals("Invalid shard list.", missingShard.getMessage());
+        Assertions.assertEquals("Invalid ISBN.", ISBN.getMessage());
+        Assertions.assertEquals("Invalid user.", user.getMessage());
+    }
+}
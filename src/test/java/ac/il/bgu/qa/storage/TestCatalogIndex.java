@@ -0,0 +1,87 @@
+package ac.il.bgu.qa.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestCatalogIndex {
+
+    @Test
+    public void givenAuthorSpelledDifferently_whenFindByAuthor_sameBooksFound(){
+        CatalogIndex index = new CatalogIndex();
+        index.add(1, "Heroes", "Amos Oz");
+        index.add(2, "Villains", "  AMOS   oz ");
+        index.add(3, "Cafe", "Am\u00f3s Oz");
+
+        Assertions.assertArrayEquals(new long[]{1, 2, 3}, index.findByAuthor("amos oz", 0, 10));
+        Assertions.assertArrayEquals(new long[]{2}, index.findByAuthor("Amos Oz", 1, 1));
+        Assertions.assertArrayEquals(new long[0], index.findByAuthor("Amos Oz", 3, 1));
+        Assertions.assertEquals(1, index.getAuthorCount());
+    }
+
+    @Test
+    public void givenTitles_whenFindByTitlePrefix_matchesOrderedByTitle(){
+        CatalogIndex index = new CatalogIndex();
+        index.add(1, "Harry's Game", "Seymour");
+        index.add(2, "Hamlet", "Shakespeare");
+        index.add(3, "Harry Potter", "Rowling");
+        index.add(4, "Heroes", "Amit");
+        index.mergePendingTitles();
+        index.add(5, "Harry Potter", "Rowling");
+        index.mergePendingTitles();
+
+        Assertions.assertArrayEquals(new long[]{3, 5, 1}, index.findByTitlePrefix("HARRY", 0, 10));
+        Assertions.assertArrayEquals(new long[]{5}, index.findByTitlePrefix("harry", 1, 1));
+        Assertions.assertArrayEquals(new long[0], index.findByTitlePrefix("harry", 3, 10));
+        Assertions.assertArrayEquals(new long[0], index.findByTitlePrefix("zebra", 0, 10));
+    }
+
+    @Test
+    public void givenUnmergedTitles_whenFindByTitlePrefix_throwIllegalStateException(){
+        CatalogIndex index = new CatalogIndex();
+        index.add(1, "Heroes", "Amit");
+
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, () -> index.findByTitlePrefix("he", 0, 1));
+        Assertions.assertEquals("Title index is not merged.", e.getMessage());
+    }
+
+    @Test
+    public void givenRemovedBook_whenSearched_notFound(){
+        CatalogIndex index = new CatalogIndex();
+        index.add(1, "Heroes", "Amit");
+        index.add(2, "Heroines", "Amit");
+        index.remove(1, "Heroes", "Amit");
+        index.remove(2, "Heroines", "Amit");
+        index.add(2, "Heroines", "Dana");
+        index.mergePendingTitles();
+
+        Assertions.assertArrayEquals(new long[]{2}, index.findByTitlePrefix("hero", 0, 10));
+        Assertions.assertArrayEquals(new long[0], index.findByAuthor("Amit", 0, 10));
+        Assertions.assertEquals(1, index.getAuthorCount());
+    }
+
+    @Test
+    public void givenRemovalsBeforeMerge_whenMerged_eachRemovalDropsOneEntry(){
+        CatalogIndex index = new CatalogIndex();
+        index.add(1, "Heroes", "Amit");
+        index.add(2, "Heroines", "Amit");
+        index.mergePendingTitles();
+        index.remove(1, "Heroes", "Amit");
+        index.add(1, "Heroes", "Dana");
+        index.add(3, "Hermits", "Amit");
+        index.remove(3, "Hermits", "Amit");
+        index.remove(2, "Heroines", "Amit");
+
+        Assertions.assertTrue(index.hasPendingTitles());
+        index.mergePendingTitles();
+
+        Assertions.assertArrayEquals(new long[]{1}, index.findByTitlePrefix("her", 0, 10));
+        Assertions.assertFalse(index.hasPendingTitles());
+    }
+
+    @Test
+    public void givenBlankText_whenNormalised_null(){
+        Assertions.assertNull(CatalogIndex.normalise(" \t"));
+        Assertions.assertNull(CatalogIndex.normalise(null));
+        Assertions.assertEquals("les miserables", CatalogIndex.normalise(" Les  Mis\u00e9rables"));
+    }
+}
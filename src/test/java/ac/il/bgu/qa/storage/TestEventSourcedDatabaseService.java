@@ -0,0 +1,281 @@
+package ac.il.bgu.qa.storage;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ISBNKey;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.codec.BookCodec;
+import ac.il.bgu.qa.codec.UserCodec;
+import ac.il.bgu.qa.services.NotificationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+public class TestEventSourcedDatabaseService {
+    private static final String ISBN = "978-965-231-157-3";
+    private static final String OTHER_ISBN = "978-0-306-40615-7";
+    private static final String ID = "318434123321";
+
+    @TempDir
+    Path directory;
+
+    private NotificationService mockNotificationService;
+    private EventSourcedDatabaseService database;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        mockNotificationService = mock(NotificationService.class);
+        database = open(0);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    private EventSourcedDatabaseService open(long snapshotInterval) throws IOException {
+        return new EventSourcedDatabaseService(directory, id -> mockNotificationService, 4, 0, TimeUnit.MILLISECONDS,
+                snapshotInterval);
+    }
+
+    private void reopen(long snapshotInterval) throws IOException {
+        database.close();
+        database = open(snapshotInterval);
+    }
+
+    private void addCatalog() {
+        database.addBook(ISBN, new Book(ISBN, "Heroes", "Amit"));
+        database.addBook(OTHER_ISBN, new Book(OTHER_ISBN, "Villains", null));
+        database.registerUser(ID, new User("Amit", ID, mock(NotificationService.class)));
+        database.borrowBook(ISBN, ID);
+        database.borrowBook(OTHER_ISBN, ID);
+        database.returnBook(OTHER_ISBN);
+    }
+
+    private void assertCatalogRecovered() {
+        Book book = database.getBookByISBN(ISBN);
+        Assertions.assertEquals("Heroes", book.getTitle());
+        Assertions.assertTrue(book.isBorrowed());
+        Book other = database.getBookByISBN(OTHER_ISBN);
+        Assertions.assertNull(other.getAuthor());
+        Assertions.assertFalse(other.isBorrowed());
+        User user = database.getUserById(ID);
+        Assertions.assertEquals("Amit", user.getName());
+        Assertions.assertSame(mockNotificationService, user.getNotificationService());
+        Assertions.assertEquals(1, database.getLoanCount());
+        Assertions.assertEquals(ID, database.getBorrowerId(ISBNKey.of(ISBN)));
+        Assertions.assertArrayEquals(new long[]{ISBNKey.of(ISBN)}, database.getBorrowedISBNs(ID));
+        Assertions.assertEquals(6, database.getEventCount());
+    }
+
+    private Path lastSegment() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "events-*.log")) {
+            files.forEach(segments::add);
+        }
+        segments.sort(null);
+        return segments.get(segments.size() - 1);
+    }
+
+    @Test
+    public void givenEvents_whenReopened_stateReplayedFromLog() throws IOException {
+        addCatalog();
+
+        reopen(0);
+
+        assertCatalogRecovered();
+        Assertions.assertEquals(6, database.getRecoveredEventCount());
+    }
+
+    @Test
+    public void givenSnapshot_whenReopened_onlyLogTailReplayed() throws IOException {
+        addCatalog();
+        database.snapshot();
+        database.returnBook(ISBN);
+        database.borrowBook(ISBN, ID);
+
+        reopen(0);
+
+        Assertions.assertEquals(2, database.getRecoveredEventCount());
+        Assertions.assertEquals(8, database.getEventCount());
+        Assertions.assertTrue(database.getBookByISBN(ISBN).isBorrowed());
+    }
+
+    @Test
+    public void givenSnapshotInterval_whenEventsAppended_snapshotsTakenAutomatically() throws IOException {
+        reopen(4);
+        addCatalog();
+
+        reopen(4);
+
+        assertCatalogRecovered();
+        Assertions.assertEquals(2, database.getRecoveredEventCount());
+    }
+
+    @Test
+    public void givenCorruptLatestSnapshot_whenReopened_olderSnapshotAndLogUsed() throws IOException {
+        addCatalog();
+        database.snapshot();
+        database.returnBook(ISBN);
+        database.snapshot();
+        database.close();
+        Files.write(directory.resolve(String.format("snapshot-%020d.bin", 7)), new byte[]{1, 2, 3, 4},
+                StandardOpenOption.WRITE);
+
+        database = open(0);
+
+        Assertions.assertEquals(1, database.getRecoveredEventCount());
+        Assertions.assertFalse(database.getBookByISBN(ISBN).isBorrowed());
+    }
+
+    @Test
+    public void givenTornLastEvent_whenReopened_cutOffAndAppendingContinues() throws IOException {
+        addCatalog();
+        database.close();
+        Files.write(lastSegment(), new byte[]{0, 0, 0, 17, 3, 1}, StandardOpenOption.APPEND);
+
+        database = open(0);
+        assertCatalogRecovered();
+        database.returnBook(ISBN);
+        reopen(0);
+
+        Assertions.assertEquals(7, database.getEventCount());
+        Assertions.assertEquals(0, database.getLoanCount());
+    }
+
+    @Test
+    public void givenMaxSegmentSize_whenBatchesWritten_logContinuesInNewSegment() throws IOException {
+        database.close();
+        database = new EventSourcedDatabaseService(directory, id -> mockNotificationService, 4, 0,
+                TimeUnit.MILLISECONDS, 0, 100);
+        addCatalog();
+        database.flush();
+
+        Assertions.assertEquals(directory.resolve(String.format("events-%020d.log", 4)), lastSegment());
+        reopen(0);
+        assertCatalogRecovered();
+    }
+
+    @Test
+    public void givenLogWriteFailure_whenChangedAgain_failureReportedAndStateUnchanged() throws IOException {
+        addCatalog();
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            stream.forEach(files::add);
+        }
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+
+        Assertions.assertThrows(UncheckedIOException.class, () -> database.snapshot());
+        Assertions.assertThrows(UncheckedIOException.class, () -> database.returnBook(ISBN));
+        Assertions.assertThrows(UncheckedIOException.class, () -> database.flush());
+        Assertions.assertThrows(IOException.class, () -> database.close());
+
+        Assertions.assertEquals(1, database.getLoanCount());
+        Files.createDirectories(directory);
+    }
+
+    @Test
+    public void givenClosedDatabase_whenChanged_rejectedAndStateUnchanged() throws IOException {
+        database.addBook(ISBN, new Book(ISBN, "Heroes", "Amit"));
+        database.close();
+
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> database.addBook(OTHER_ISBN, new Book(OTHER_ISBN, "Villains", "Amit")));
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> database.registerUser(ID, new User("Amit", ID, mock(NotificationService.class))));
+        Assertions.assertThrows(IllegalStateException.class, () -> database.borrowBook(ISBN, ID));
+        Assertions.assertThrows(IllegalStateException.class, () -> database.returnBook(ISBN));
+        Assertions.assertThrows(IllegalStateException.class, () -> database.snapshot());
+
+        Assertions.assertEquals(1, database.getBookCount());
+        Assertions.assertEquals(0, database.getLoanCount());
+        reopen(0);
+        Assertions.assertEquals(1, database.getBookCount());
+        Assertions.assertEquals(1, database.getEventCount());
+    }
+
+    @Test
+    public void givenAddedBookAndUser_whenFlushed_payloadsUseTheCodecs() throws IOException {
+        database.addBook(ISBN, new Book(ISBN, "Heroes", "Amit"));
+        database.registerUser(ID, new User("Amit", ID, mock(NotificationService.class)));
+        database.flush();
+
+        // Each event is [int length][byte type][long key][record][int CRC32].
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(lastSegment()));
+        log.position(4 + 1 + 8);
+        Book book = BookCodec.decode(log);
+        log.position(log.position() + 4 + 4 + 1 + 8);
+        User user = UserCodec.decode(log, id -> mockNotificationService);
+
+        Assertions.assertEquals("9789652311573", book.getISBN());
+        Assertions.assertEquals("Heroes", book.getTitle());
+        Assertions.assertEquals(ID, user.getId());
+        Assertions.assertEquals("Amit", user.getName());
+    }
+
+    @Test
+    public void givenReplacedBook_whenReopened_searchesFindLatestBooks() throws IOException {
+        addCatalog();
+        database.snapshot();
+        database.addBook(OTHER_ISBN, new Book(OTHER_ISBN, "Heroines", "Amit"));
+
+        reopen(0);
+
+        Book[] found = database.findBooksByTitlePrefix("hero", 0, 10);
+        Assertions.assertEquals(2, found.length);
+        Assertions.assertEquals("Heroes", found[0].getTitle());
+        Assertions.assertEquals("Heroines", found[1].getTitle());
+        Assertions.assertEquals(2, database.findBooksByAuthor("amit", 0, 10).length);
+        Assertions.assertEquals(0, database.findBooksByTitlePrefix("villains", 0, 10).length);
+    }
+
+    @Test
+    public void givenBatchSize_whenEventsAppended_writtenOncePerFullBatch() throws IOException {
+        addCatalog();
+
+        Assertions.assertEquals(1, database.getCommitCount());
+        database.flush();
+        Assertions.assertEquals(2, database.getCommitCount());
+        database.flush();
+        Assertions.assertEquals(2, database.getCommitCount());
+    }
+
+    @Test
+    public void givenEvents_whenForEachEvent_auditTrailInOrder() throws IOException {
+        addCatalog();
+        database.snapshot();
+        database.returnBook(ISBN);
+
+        List<String> trail = new ArrayList<>();
+        database.forEachEvent((index, type, key, userKey) -> trail.add(index + " " + type + " " + key + " " + userKey));
+
+        long isbn = ISBNKey.of(ISBN);
+        long other = ISBNKey.of(OTHER_ISBN);
+        Assertions.assertEquals(Arrays.asList(
+                "0 ADD_BOOK " + isbn + " -1",
+                "1 ADD_BOOK " + other + " -1",
+                "2 REGISTER_USER " + Long.parseLong(ID) + " -1",
+                "3 BORROW " + isbn + " " + Long.parseLong(ID),
+                "4 BORROW " + other + " " + Long.parseLong(ID),
+                "5 RETURN " + other + " -1",
+                "6 RETURN " + isbn + " -1"), trail);
+    }
+}
@@ -0,0 +1,118 @@
+package ac.il.bgu.qa.storage;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ISBNKey;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.services.NotificationService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.mockito.Mockito.mock;
+
+public class TestInMemoryDatabaseService {
+    private InMemoryDatabaseService database;
+
+    @BeforeEach
+    public void setUp(){
+        database = new InMemoryDatabaseService(4, 4);
+    }
+
+    //region Books
+    @Test
+    public void givenBookAdded_whenGetByHyphenatedOrBareISBN_returnSameBook(){
+        Book book = new Book("978-965-231-157-3", "Heroes", "Amit");
+        database.addBook("978-965-231-157-3", book);
+
+        Assertions.assertSame(book, database.getBookByISBN("9789652311573"));
+        Assertions.assertSame(book, database.getBookByISBN(ISBNKey.of("978-965-231-157-3")));
+        Assertions.assertEquals(1, database.getBookCount());
+    }
+
+    @Test
+    public void givenUnknownOrInvalidISBN_whenGetBook_returnNull(){
+        Assertions.assertNull(database.getBookByISBN("978-965-231-157-3"));
+        Assertions.assertNull(database.getBookByISBN("1234"));
+        Assertions.assertNull(database.getBookByISBN((String) null));
+    }
+
+    @Test
+    public void givenInvalidISBN_whenAddBook_throwIllegalArgException(){
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> database.addBook("1234", new Book("1234", "Heroes", "Amit")));
+        Assertions.assertEquals("Invalid ISBN.", e.getMessage());
+    }
+
+    @Test
+    public void givenBookReplaced_whenSearched_onlyNewTitleAndAuthorFound(){
+        database.addBook("978-965-231-157-3", new Book("978-965-231-157-3", "Heroes", "Amit"));
+        database.findBooksByTitlePrefix("heroes", 0, 10);
+        Book replacement = new Book("978-965-231-157-3", "Villains", "Dana");
+        database.addBooks(new long[]{ISBNKey.of("978-965-231-157-3")}, new Book[]{replacement});
+
+        Assertions.assertEquals(0, database.findBooksByTitlePrefix("heroes", 0, 10).length);
+        Assertions.assertEquals(0, database.findBooksByAuthor("amit", 0, 10).length);
+        Assertions.assertSame(replacement, database.findBooksByTitlePrefix("vil", 0, 10)[0]);
+        Assertions.assertSame(replacement, database.findBooksByAuthor("dana", 0, 10)[0]);
+    }
+    //endregion
+
+    //region Users and loans
+    @Test
+    public void givenUserRegistered_whenGetUserById_returnUser(){
+        User user = new User("Amit", "012345678901", mock(NotificationService.class));
+        database.registerUser("012345678901", user);
+
+        Assertions.assertSame(user, database.getUserById("012345678901"));
+        Assertions.assertNull(database.getUserById("112345678901"));
+        Assertions.assertNull(database.getUserById("0123"));
+    }
+
+    @Test
+    public void givenBorrowAndReturn_whenCountLoans_loanTableUpdated(){
+        database.borrowBook("978-965-231-157-3", "318434123789");
+        Assertions.assertEquals(1, database.getLoanCount());
+
+        database.returnBook("9789652311573");
+        Assertions.assertEquals(0, database.getLoanCount());
+    }
+    //endregion
+
+    //region Maps
+    @Test
+    public void givenRandomOperations_whenCompareWithHashMap_sameContent(){
+        LongObjectHashMap<String> map = new LongObjectHashMap<>(2);
+        LongLongHashMap longMap = new LongLongHashMap(2);
+        Map<Long, String> reference = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            long key = random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                Assertions.assertEquals(reference.remove(key), map.remove(key));
+                longMap.remove(key);
+            } else {
+                Assertions.assertEquals(reference.put(key, "v" + i), map.put(key, "v" + i));
+                longMap.put(key, i);
+            }
+            Assertions.assertEquals(reference.size(), map.size());
+            Assertions.assertEquals(reference.size(), longMap.size());
+        }
+        for (long key = 0; key < 2_000; key++) {
+            Assertions.assertEquals(reference.get(key), map.get(key));
+            Assertions.assertEquals(reference.containsKey(key), longMap.containsKey(key));
+        }
+    }
+
+    @Test
+    public void givenNegativeKey_whenPut_throwIllegalArgException(){
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new LongObjectHashMap<String>().put(-1, "v"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new LongLongHashMap().put(-1, 1));
+        Assertions.assertNull(new LongObjectHashMap<String>().remove(-1));
+    }
+    //endregion
+}
@@ -0,0 +1,62 @@
+package ac.il.bgu.qa.storage;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestLoanIndex {
+
+    @Test
+    public void givenLoans_whenQueriedBothWays_holderAndLoansFound(){
+        LoanIndex index = new LoanIndex(2);
+        for (long ISBN = 1; ISBN <= 5; ISBN++) {
+            index.put(ISBN, 7);
+        }
+        index.put(6, 8);
+
+        Assertions.assertEquals(7, index.getHolder(3));
+        Assertions.assertEquals(LoanIndex.NO_HOLDER, index.getHolder(9));
+        Assertions.assertArrayEquals(new long[]{1, 2, 3, 4, 5}, index.getLoans(7));
+        Assertions.assertEquals(1, index.getLoanCount(8));
+        Assertions.assertEquals(6, index.size());
+    }
+
+    @Test
+    public void givenReturnedBooks_whenQueried_removedFromBothDirections(){
+        LoanIndex index = new LoanIndex();
+        index.put(1, 7);
+        index.put(2, 7);
+        index.put(3, 8);
+
+        Assertions.assertEquals(7, index.remove(1));
+        Assertions.assertEquals(8, index.remove(3));
+        Assertions.assertEquals(LoanIndex.NO_HOLDER, index.remove(3));
+
+        Assertions.assertArrayEquals(new long[]{2}, index.getLoans(7));
+        Assertions.assertArrayEquals(new long[0], index.getLoans(8));
+        Assertions.assertEquals(LoanIndex.NO_HOLDER, index.getHolder(1));
+    }
+
+    @Test
+    public void givenBookMovedToAnotherUser_whenQueried_onlyNewHolderHasIt(){
+        LoanIndex index = new LoanIndex();
+        index.put(1, 7);
+        index.put(2, 7);
+
+        Assertions.assertEquals(7, index.put(1, 8));
+        Assertions.assertEquals(8, index.put(1, 8));
+
+        Assertions.assertArrayEquals(new long[]{2}, index.getLoans(7));
+        Assertions.assertArrayEquals(new long[]{1}, index.getLoans(8));
+        Assertions.assertEquals(2, index.size());
+    }
+
+    @Test
+    public void givenSentinelKey_whenQueried_nothingFound(){
+        LoanIndex index = new LoanIndex();
+        index.put(1, 7);
+
+        Assertions.assertEquals(LoanIndex.NO_HOLDER, index.getHolder(-1));
+        Assertions.assertArrayEquals(new long[0], index.getLoans(-1));
+        Assertions.assertEquals(0, index.getLoanCount(-1));
+    }
+}
@@ -0,0 +1,147 @@
+package ac.il.bgu.qa.storage;
+
+import ac.il.bgu.qa.Book;
+import ac.il.bgu.qa.ISBNKey;
+import ac.il.bgu.qa.User;
+import ac.il.bgu.qa.errors.BookNotFoundException;
+import ac.il.bgu.qa.services.NotificationService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.mockito.Mockito.mock;
+
+public class TestMappedDatabaseService {
+    private static final String ISBN = "978-965-231-157-3";
+    private static final String ID = "318434123321";
+
+    @TempDir
+    Path directory;
+
+    private NotificationService mockNotificationService;
+    private MappedDatabaseService database;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        mockNotificationService = mock(NotificationService.class);
+        database = open();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        database.close();
+    }
+
+    private MappedDatabaseService open() throws IOException {
+        return new MappedDatabaseService(directory, 4, 4, id -> mockNotificationService);
+    }
+
+    private MappedDatabaseService reopen() throws IOException {
+        database.close();
+        database = open();
+        return database;
+    }
+
+    @Test
+    public void givenBookAdded_whenGetByHyphenatedOrBareISBN_returnSameBook(){
+        Book book = new Book(ISBN, "Heroes", "Amit");
+        database.addBook(ISBN, book);
+
+        Assertions.assertSame(book, database.getBookByISBN("9789652311573"));
+        Assertions.assertSame(book, database.getBookByISBN(ISBNKey.of(ISBN)));
+        Assertions.assertNull(database.getBookByISBN("978-0-306-40615-7"));
+        Assertions.assertEquals(1, database.getBookCount());
+    }
+
+    @Test
+    public void givenMappedDatabase_whenSearched_throwUnsupportedOperationException(){
+        database.addBook(ISBN, new Book(ISBN, "Heroes", "Amit"));
+
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> database.findBooksByAuthor("Amit", 0, 1));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> database.findBooksByTitlePrefix("He", 0, 1));
+    }
+
+    @Test
+    public void givenBooksAndUsers_whenReopened_readFromDisk() throws IOException {
+        database.addBook(ISBN, new Book(ISBN, "Heroes \u05d2\u05d9\u05d1\u05d5\u05e8\u05d9\u05dd", "Amit"));
+        database.registerUser(ID, new User("Amit", ID, mock(NotificationService.class)));
+
+        reopen();
+
+        Book book = database.getBookByISBN(ISBN);
+        Assertions.assertEquals("9789652311573", book.getISBN());
+        Assertions.assertEquals("Heroes \u05d2\u05d9\u05d1\u05d5\u05e8\u05d9\u05dd", book.getTitle());
+        Assertions.assertEquals("Amit", book.getAuthor());
+        Assertions.assertSame(book, database.getBookByISBN(ISBN));
+        User user = database.getUserById(ID);
+        Assertions.assertEquals("Amit", user.getName());
+        Assertions.assertSame(mockNotificationService, user.getNotificationService());
+    }
+
+    @Test
+    public void givenBorrowedBook_whenReopened_loanAndBorrowedStateKept() throws IOException {
+        database.addBook(ISBN, new Book(ISBN, "Heroes", "Amit"));
+        database.borrowBook(ISBN, ID);
+
+        reopen();
+
+        Assertions.assertTrue(database.getBookByISBN(ISBN).isBorrowed());
+        Assertions.assertEquals(ID, database.getBorrowerId(ISBNKey.of(ISBN)));
+        Assertions.assertEquals(1, database.getLoanCount());
+
+        database.returnBook(ISBN);
+        reopen();
+        Assertions.assertFalse(database.getBookByISBN(ISBN).isBorrowed());
+        Assertions.assertEquals(0, database.getLoanCount());
+    }
+
+    @Test
+    public void givenUnknownBook_whenBorrow_throwBookNotFoundException(){
+        Assertions.assertThrows(BookNotFoundException.class, () -> database.borrowBook(ISBN, ID));
+    }
+
+    @Test
+    public void givenTooLongTitle_whenAddBook_throwIllegalArgException(){
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            title.append('t');
+        }
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> database.addBook(ISBN, new Book(ISBN, title.toString(), "Amit")));
+        Assertions.assertEquals("Invalid title.", e.getMessage());
+    }
+
+    @Test
+    public void givenFullTable_whenAddBook_throwIllegalStateException(){
+        int added = 0;
+        IllegalStateException e = null;
+        for (int i = 0; e == null; i++) {
+            String isbn = ISBNKey.toString(9789652311573L + i * 10);
+            if (ISBNKey.of(isbn) == ISBNKey.INVALID) {
+                continue;
+            }
+            try {
+                database.addBook(isbn, new Book(isbn, "Title", "Author"));
+                added++;
+            } catch (IllegalStateException full) {
+                e = full;
+            }
+        }
+        Assertions.assertEquals("Book table is full.", e.getMessage());
+        Assertions.assertEquals(added, database.getBookCount());
+    }
+
+    @Test
+    public void givenForeignFile_whenOpen_throwIOException() throws IOException {
+        Path other = Files.createDirectory(directory.resolve("other"));
+        Files.write(other.resolve("books.db"), new byte[128]);
+
+        Assertions.assertThrows(IOException.class, () -> new MappedDatabaseService(other, 4, 4, id -> null));
+    }
+}
@@ -0,0 +1,75 @@
+package ac.il.bgu.qa.validation;
+
+import ac.il.bgu.qa.ISBNKey;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class TestIdentifierValidator {
+
+    //region ISBN
+    @Test
+    public void givenHyphenatedISBN_whenValidate_returnTrue(){
+        Assertions.assertTrue(IdentifierValidator.isValidISBN("978-965-231-157-3"));
+    }
+
+    @Test
+    public void givenBareISBN_whenValidate_returnTrue(){
+        Assertions.assertTrue(IdentifierValidator.isValidISBN("9789652311573"));
+    }
+
+    @Test
+    public void givenISBNWithCheckDigitZero_whenValidate_returnTrue(){
+        Assertions.assertTrue(IdentifierValidator.isValidISBN("978-0-306-40615-7"));
+        Assertions.assertTrue(IdentifierValidator.isValidISBN("9780000000002"));
+        Assertions.assertTrue(IdentifierValidator.isValidISBN("9780000000040"));
+    }
+
+    @Test
+    public void givenISBNWithLeadingAndDoubleHyphens_whenValidate_returnTrue(){
+        Assertions.assertTrue(IdentifierValidator.isValidISBN("-978--965-231-157-3-"));
+    }
+
+    @Test
+    public void givenInvalidISBN_whenValidate_returnFalse(){
+        Assertions.assertFalse(IdentifierValidator.isValidISBN(null));
+        Assertions.assertFalse(IdentifierValidator.isValidISBN(""));
+        Assertions.assertFalse(IdentifierValidator.isValidISBN("-------------"));
+        Assertions.assertFalse(IdentifierValidator.isValidISBN("123-45-6"));
+        Assertions.assertFalse(IdentifierValidator.isValidISBN("97896523115730"));
+        Assertions.assertFalse(IdentifierValidator.isValidISBN("123-45-6778hhy"));
+        Assertions.assertFalse(IdentifierValidator.isValidISBN("9780-134-567-890"));
+        Assertions.assertFalse(IdentifierValidator.isValidISBN("978 965 231 157 3"));
+        Assertions.assertFalse(IdentifierValidator.isValidISBN("978965231157\u0663"));
+    }
+
+    @Test
+    public void givenHyphenatedAndBareISBN_whenParse_sameKey(){
+        long key = IdentifierValidator.parseISBN("978-965-231-157-3");
+        Assertions.assertEquals(9789652311573L, key);
+        Assertions.assertEquals(key, IdentifierValidator.parseISBN("9789652311573"));
+        Assertions.assertEquals("9789652311573", ISBNKey.toString(key));
+    }
+
+    @Test
+    public void givenInvalidISBN_whenParse_returnInvalidKey(){
+        Assertions.assertEquals(ISBNKey.INVALID, IdentifierValidator.parseISBN("9780-134-567-890"));
+        Assertions.assertEquals(ISBNKey.INVALID, IdentifierValidator.parseISBN(null));
+    }
+    //endregion
+
+    //region UserId
+    @Test
+    public void givenTwelveDigits_whenValidateUserId_returnTrue(){
+        Assertions.assertTrue(IdentifierValidator.isValidUserId("318434123789"));
+    }
+
+    @Test
+    public void givenInvalidUserId_whenValidateUserId_returnFalse(){
+        Assertions.assertFalse(IdentifierValidator.isValidUserId(null));
+        Assertions.assertFalse(IdentifierValidator.isValidUserId("31843412378"));
+        Assertions.assertFalse(IdentifierValidator.isValidUserId("3184341237890"));
+        Assertions.assertFalse(IdentifierValidator.isValidUserId("31843412378a"));
+        Assertions.assertFalse(IdentifierValidator.isValidUserId("3184-4123789"));
+    }
+    //endregion
+}